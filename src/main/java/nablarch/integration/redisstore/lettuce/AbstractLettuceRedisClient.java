@@ -1,18 +1,74 @@
 package nablarch.integration.redisstore.lettuce;
 
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.resource.ClientResources;
 import nablarch.core.util.annotation.Published;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * {@link LettuceRedisClient} の共通処理をまとめた抽象クラス。
+ * <p>
+ * 文字列のキーを受け取るメソッドは、 {@link #encodeKey(String)} でキーをエンコードしてから
+ * エンコード済みのキーを受け取るメソッドを呼び出す。
+ * このため、サブクラスはエンコード済みのキーを受け取るメソッドを実装すればよい。
+ * </p>
  *
  * @author Tanaka Tomoyuki
  */
 @Published(tag = "architect")
 public abstract class AbstractLettuceRedisClient implements LettuceRedisClient {
+    /**
+     * {@link #setnxAndPexpireat(byte[], byte[], long)} を実現する Lua スクリプト。
+     * <p>
+     * {@code KEYS[1]} にキー、 {@code ARGV[1]} に値、 {@code ARGV[2]} に有効期限を渡して実行する。
+     * </p>
+     */
+    protected static final String SETNX_AND_PEXPIREAT_SCRIPT =
+            "redis.call('set', KEYS[1], ARGV[1], 'NX')\n"
+            + "return redis.call('pexpireat', KEYS[1], ARGV[2])";
+
+    /**
+     * {@link #hupdate(byte[], Map, Collection, long)} を実現する Lua スクリプト。
+     * <p>
+     * {@code KEYS[1]} にキー、 {@code ARGV} に {@link #hupdateArguments(Map, Collection, long)} で作成した引数を渡して実行する。<br>
+     * 更新した場合は {@code 1} を、部分更新の対象となるハッシュが存在しなかった場合は {@code 0} を返す。
+     * </p>
+     */
+    protected static final String HUPDATE_SCRIPT =
+            "if ARGV[2] == '1' then\n"
+            + "  redis.call('del', KEYS[1])\n"
+            + "elseif redis.call('type', KEYS[1]).ok ~= 'hash' then\n"
+            + "  return 0\n"
+            + "end\n"
+            + "local n = tonumber(ARGV[3])\n"
+            + "for i = 4, 3 + n * 2, 2 do\n"
+            + "  redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])\n"
+            + "end\n"
+            + "for i = 4 + n * 2, #ARGV do\n"
+            + "  redis.call('hdel', KEYS[1], ARGV[i])\n"
+            + "end\n"
+            + "redis.call('pexpire', KEYS[1], ARGV[1])\n"
+            + "return 1";
+
     private final String type;
 
+    private LettuceClientResources clientResources;
+
+    private LettuceClientOptions clientOptions;
+
+    private PendingWriteLimiter pendingWriteLimiter = PendingWriteLimiter.UNLIMITED;
+
     /**
      * コンストラクタ。
      * @param type 実装クラスを識別する値
@@ -26,6 +82,281 @@ public abstract class AbstractLettuceRedisClient implements LettuceRedisClient {
         return type;
     }
 
+    @Override
+    public void set(String key, byte[] value) {
+        set(encodeKey(key), value);
+    }
+
+    @Override
+    public abstract void set(byte[] key, byte[] value);
+
+    @Override
+    public void psetex(String key, long milliseconds, byte[] value) {
+        psetex(encodeKey(key), milliseconds, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このクラスの実装は、 {@link #set(byte[], byte[])} と {@link #pexpire(byte[], long)} を順に呼び出す。
+     * サブクラスでは、1回のコマンドでアトミックに行うようにオーバーライドすること。
+     * </p>
+     */
+    @Override
+    public void psetex(byte[] key, long milliseconds, byte[] value) {
+        set(key, value);
+        pexpire(key, milliseconds);
+    }
+
+    @Override
+    public void pexpire(String key, long milliseconds) {
+        pexpire(encodeKey(key), milliseconds);
+    }
+
+    @Override
+    public abstract void pexpire(byte[] key, long milliseconds);
+
+    @Override
+    public boolean pexpireIfExists(String key, long milliseconds) {
+        return pexpireIfExists(encodeKey(key), milliseconds);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このクラスの実装は、 {@link #exists(byte[])} と {@link #pexpire(byte[], long)} を順に呼び出す。
+     * サブクラスでは、1回のコマンドで行うようにオーバーライドすること。
+     * </p>
+     */
+    @Override
+    public boolean pexpireIfExists(byte[] key, long milliseconds) {
+        if (!exists(key)) {
+            return false;
+        }
+        pexpire(key, milliseconds);
+        return true;
+    }
+
+    @Override
+    public void pexpireat(String key, long milliseconds) {
+        pexpireat(encodeKey(key), milliseconds);
+    }
+
+    @Override
+    public abstract void pexpireat(byte[] key, long milliseconds);
+
+    @Override
+    public void setnxAndPexpireat(String key, byte[] value, long milliseconds) {
+        setnxAndPexpireat(encodeKey(key), value, milliseconds);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このクラスの実装は、 {@link #exists(byte[])}、 {@link #set(byte[], byte[])}、 {@link #pexpireat(byte[], long)} を順に呼び出す。
+     * サブクラスでは、1回のラウンドトリップでアトミックに行うようにオーバーライドすること。
+     * </p>
+     */
+    @Override
+    public void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        if (!exists(key)) {
+            set(key, value);
+        }
+        pexpireat(key, milliseconds);
+    }
+
+    @Override
+    public long pttl(String key) {
+        return pttl(encodeKey(key));
+    }
+
+    @Override
+    public abstract long pttl(byte[] key);
+
+    @Override
+    public byte[] get(String key) {
+        return get(encodeKey(key));
+    }
+
+    @Override
+    public abstract byte[] get(byte[] key);
+
+    @Override
+    public void del(String key) {
+        del(encodeKey(key));
+    }
+
+    @Override
+    public abstract void del(byte[] key);
+
+    @Override
+    public void unlink(String key) {
+        unlink(encodeKey(key));
+    }
+
+    @Override
+    public void unlink(byte[] key) {
+        del(key);
+    }
+
+    @Override
+    public Map<String, byte[]> hgetall(String key) {
+        return hgetall(encodeKey(key));
+    }
+
+    @Override
+    public Map<String, byte[]> hgetall(byte[] key) {
+        throw new UnsupportedOperationException("hgetall is not supported. type=" + getType());
+    }
+
+    @Override
+    public boolean hupdate(String key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        return hupdate(encodeKey(key), fields, deletedFields, milliseconds);
+    }
+
+    @Override
+    public boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        throw new UnsupportedOperationException("hupdate is not supported. type=" + getType());
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return exists(encodeKey(key));
+    }
+
+    @Override
+    public abstract boolean exists(byte[] key);
+
+    /**
+     * 他のクライアントと共有する {@link ClientResources} を設定する。
+     * <p>
+     * 設定しない場合は、 Lettuce のクライアントごとに {@link ClientResources} が生成される。
+     * </p>
+     * @param clientResources 共有する {@link ClientResources} を提供する {@link LettuceClientResources}
+     */
+    public void setClientResources(LettuceClientResources clientResources) {
+        this.clientResources = clientResources;
+    }
+
+    /**
+     * 他のクライアントと共有する {@link ClientResources} を取得する。
+     * <p>
+     * サブクラスは、 Lettuce のクライアントを生成するときに、このメソッドが返す {@link ClientResources} を使用すること。
+     * </p>
+     * @return 共有する {@link ClientResources}。設定されていない場合は {@code null}
+     */
+    protected ClientResources getClientResources() {
+        return clientResources == null ? null : clientResources.getClientResources();
+    }
+
+    /**
+     * Lettuce のクライアントに設定する {@link ClientOptions} の定義を設定する。
+     * <p>
+     * 設定しない場合は、 Lettuce のデフォルトの {@link ClientOptions} が使用される。
+     * </p>
+     * @param clientOptions {@link ClientOptions} の定義
+     */
+    public void setClientOptions(LettuceClientOptions clientOptions) {
+        this.clientOptions = clientOptions;
+    }
+
+    /**
+     * {@link #setClientOptions(LettuceClientOptions)} で設定された定義を、 {@link RedisClient} のオプションに反映する。
+     * <p>
+     * サブクラスは、 Lettuce のクライアントを生成した後に、このメソッドを呼び出すこと。
+     * 設定されていない場合は何もしない。
+     * </p>
+     * @param client {@link RedisClient}
+     */
+    protected void applyClientOptions(RedisClient client) {
+        if (clientOptions == null) {
+            return;
+        }
+        ClientOptions current = client.getOptions();
+        ClientOptions.Builder builder = current.mutate();
+        clientOptions.apply(current, builder);
+        client.setOptions(builder.build());
+    }
+
+    /**
+     * {@link #setClientOptions(LettuceClientOptions)} で設定された定義を、 {@link RedisClusterClient} のオプションに反映する。
+     * <p>
+     * サブクラスは、 Lettuce のクライアントを生成した後に、このメソッドを呼び出すこと。
+     * 設定されていない場合は何もしない。
+     * </p>
+     * @param client {@link RedisClusterClient}
+     */
+    protected void applyClientOptions(RedisClusterClient client) {
+        if (clientOptions == null) {
+            return;
+        }
+        ClientOptions options = client.getOptions();
+        ClusterClientOptions current = options instanceof ClusterClientOptions
+                ? (ClusterClientOptions) options
+                : ClusterClientOptions.builder(options).build();
+        ClusterClientOptions.Builder builder = current.mutate();
+        clientOptions.apply(current, builder);
+        client.setOptions(builder.build());
+    }
+
+    /**
+     * 完了していない書き込みのコマンドが保持するペイロードのバイト数の上限を設定する。
+     * <p>
+     * Redis の応答が遅い、または接続が切れている間に書き込みが溜まると、それぞれが保持する値の分だけヒープを消費する。
+     * 上限を設定すると、完了していない書き込みのキーと値のバイト数の合計が上限を超える場合に、
+     * 書き込みを Redis に送信せず、すぐに {@link RedisException} を送出する。<br>
+     * 上限は、最も大きなセッションのサイズよりも大きな値を設定すること。
+     * 設定しない場合は、上限を設けない。
+     * </p>
+     * @param maxPendingWriteBytes 完了していない書き込みのバイト数の上限
+     */
+    public void setMaxPendingWriteBytes(long maxPendingWriteBytes) {
+        if (maxPendingWriteBytes <= 0L) {
+            throw new IllegalArgumentException(
+                    "maxPendingWriteBytes must be greater than 0. maxPendingWriteBytes=" + maxPendingWriteBytes);
+        }
+        this.pendingWriteLimiter = new PendingWriteLimiter(maxPendingWriteBytes);
+    }
+
+    /**
+     * 完了していない書き込みのコマンドが保持するペイロードのバイト数を取得する。
+     * <p>
+     * {@link #setMaxPendingWriteBytes(long)} を設定していない場合は、常に {@code 0} を返す。
+     * </p>
+     * @return 完了していない書き込みのバイト数
+     */
+    public long getPendingWriteBytes() {
+        return pendingWriteLimiter.getPendingWriteBytes();
+    }
+
+    /**
+     * 完了していない書き込みのバイト数を制限しながら、書き込みのコマンドを実行する。
+     * <p>
+     * サブクラスは、値を書き込むコマンドをこのメソッドを通して実行すること。
+     * </p>
+     * @param bytes 書き込むキーと値のバイト数
+     * @param command 書き込みのコマンドを実行する処理
+     * @param <T> コマンドの戻り値の型
+     * @return コマンドの戻り値
+     * @throws RedisException 完了していない書き込みのバイト数が上限を超える場合
+     */
+    protected <T> T limitWrite(long bytes, Supplier<T> command) {
+        pendingWriteLimiter.acquire(bytes);
+        try {
+            return command.get();
+        } finally {
+            pendingWriteLimiter.release(bytes);
+        }
+    }
+
+    /**
+     * 完了していない書き込みのバイト数を制限する {@link PendingWriteLimiter} を取得する。
+     * @return {@link PendingWriteLimiter}
+     */
+    PendingWriteLimiter getPendingWriteLimiter() {
+        return pendingWriteLimiter;
+    }
+
     /**
      * 文字列のキーを {@code byte[]} にエンコードする。
      * @param key キー
@@ -34,4 +365,54 @@ public abstract class AbstractLettuceRedisClient implements LettuceRedisClient {
     protected byte[] encodeKey(String key) {
         return key.getBytes(StandardCharsets.UTF_8);
     }
+
+    /**
+     * 数値を Lua スクリプトの引数として渡せる {@code byte[]} にエンコードする。
+     * @param number 数値
+     * @return エンコード後の数値
+     */
+    protected byte[] encodeNumber(long number) {
+        return Long.toString(number).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * {@link #HUPDATE_SCRIPT} に渡す引数を作成する。
+     * <p>
+     * 引数は、有効期限、置き換えを示すフラグ、保存するフィールドの数、保存するフィールドと値の組、
+     * 削除するフィールドの順に並べる。
+     * </p>
+     * @param fields 保存するフィールドと値
+     * @param deletedFields 削除するフィールド。 {@code null} の場合はキーを置き換える
+     * @param milliseconds 有効期限（ミリ秒）
+     * @return Lua スクリプトの引数
+     */
+    protected byte[][] hupdateArguments(Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        List<byte[]> arguments = new ArrayList<>(3 + fields.size() * 2 + (deletedFields == null ? 0 : deletedFields.size()));
+        arguments.add(encodeNumber(milliseconds));
+        arguments.add(encodeNumber(deletedFields == null ? 1L : 0L));
+        arguments.add(encodeNumber(fields.size()));
+        for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+            arguments.add(encodeKey(field.getKey()));
+            arguments.add(field.getValue());
+        }
+        if (deletedFields != null) {
+            for (String deletedField : deletedFields) {
+                arguments.add(encodeKey(deletedField));
+            }
+        }
+        return arguments.toArray(new byte[0][]);
+    }
+
+    /**
+     * {@code HGETALL} で取得したフィールドを、文字列のフィールド名をキーとする {@link Map} に変換する。
+     * @param fields {@code HGETALL} で取得したフィールドと値
+     * @return 文字列のフィールド名をキーとする {@link Map}
+     */
+    protected Map<String, byte[]> decodeFields(Map<byte[], byte[]> fields) {
+        Map<String, byte[]> decoded = new LinkedHashMap<>(fields.size() * 2);
+        for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+            decoded.put(new String(field.getKey(), StandardCharsets.UTF_8), field.getValue());
+        }
+        return decoded;
+    }
 }
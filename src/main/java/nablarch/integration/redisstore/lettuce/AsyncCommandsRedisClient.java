@@ -0,0 +1,219 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Lettuce の非同期 API を使って、 {@link LettuceRedisAsyncClient} を実装したクラス。
+ * <p>
+ * 単一インスタンス、 Master/Replica、 Cluster のいずれの接続から取得した非同期コマンドでも使用できる。
+ * </p>
+ * <p>
+ * {@link InFlightCounter} を指定した場合は、コマンドを送信したときと完了したときに、そのキーを通知する。
+ * </p>
+ */
+class AsyncCommandsRedisClient implements LettuceRedisAsyncClient {
+
+    private final Function<byte[], RedisClusterAsyncCommands<byte[], byte[]>> commandsSelector;
+    private final Consumer<byte[]> writeListener;
+    private final PendingWriteLimiter pendingWriteLimiter;
+    private final InFlightCounter inFlightCounter;
+
+    /**
+     * コンストラクタ。
+     * @param commandsSelector キーから、コマンドを実行する Lettuce の非同期コマンドを選択する関数
+     * @param writeListener キーを更新するコマンドが完了したときに、そのキーを受け取る関数
+     * @param pendingWriteLimiter 完了していない書き込みのバイト数を制限する {@link PendingWriteLimiter}
+     * @param inFlightCounter 実行中のコマンドを数える {@link InFlightCounter}。数えない場合は {@code null}
+     */
+    AsyncCommandsRedisClient(Function<byte[], RedisClusterAsyncCommands<byte[], byte[]>> commandsSelector,
+            Consumer<byte[]> writeListener, PendingWriteLimiter pendingWriteLimiter, InFlightCounter inFlightCounter) {
+        this.commandsSelector = commandsSelector;
+        this.writeListener = writeListener;
+        this.pendingWriteLimiter = pendingWriteLimiter;
+        this.inFlightCounter = inFlightCounter;
+    }
+
+    @Override
+    public CompletionStage<Void> set(String key, byte[] value) {
+        return set(encodeKey(key), value);
+    }
+
+    @Override
+    public CompletionStage<Void> set(byte[] key, byte[] value) {
+        return limitWrite(PendingWriteLimiter.sizeOf(key, value),
+                () -> dispatch(key, commands -> commands.set(key, value)).thenAccept(result -> writeListener.accept(key)));
+    }
+
+    @Override
+    public CompletionStage<Void> psetex(String key, long milliseconds, byte[] value) {
+        return psetex(encodeKey(key), milliseconds, value);
+    }
+
+    @Override
+    public CompletionStage<Void> psetex(byte[] key, long milliseconds, byte[] value) {
+        return limitWrite(PendingWriteLimiter.sizeOf(key, value),
+                () -> dispatch(key, commands -> commands.psetex(key, milliseconds, value)).thenAccept(result -> writeListener.accept(key)));
+    }
+
+    @Override
+    public CompletionStage<Void> pexpire(String key, long milliseconds) {
+        return pexpire(encodeKey(key), milliseconds);
+    }
+
+    @Override
+    public CompletionStage<Void> pexpire(byte[] key, long milliseconds) {
+        return dispatch(key, commands -> commands.pexpire(key, milliseconds)).thenAccept(result -> writeListener.accept(key));
+    }
+
+    @Override
+    public CompletionStage<Void> pexpireat(String key, long milliseconds) {
+        return pexpireat(encodeKey(key), milliseconds);
+    }
+
+    @Override
+    public CompletionStage<Void> pexpireat(byte[] key, long milliseconds) {
+        return dispatch(key, commands -> commands.pexpireat(key, milliseconds)).thenAccept(result -> writeListener.accept(key));
+    }
+
+    @Override
+    public CompletionStage<Void> setnxAndPexpireat(String key, byte[] value, long milliseconds) {
+        return setnxAndPexpireat(encodeKey(key), value, milliseconds);
+    }
+
+    @Override
+    public CompletionStage<Void> setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        byte[][] keys = {key};
+        byte[] expireAt = Long.toString(milliseconds).getBytes(StandardCharsets.US_ASCII);
+        return limitWrite(PendingWriteLimiter.sizeOf(key, value),
+                () -> dispatch(key, commands -> commands.<Long>eval(
+                                AbstractLettuceRedisClient.SETNX_AND_PEXPIREAT_SCRIPT, ScriptOutputType.INTEGER, keys, value, expireAt))
+                        .thenAccept(result -> writeListener.accept(key)));
+    }
+
+    @Override
+    public CompletionStage<Long> pttl(String key) {
+        return pttl(encodeKey(key));
+    }
+
+    @Override
+    public CompletionStage<Long> pttl(byte[] key) {
+        return dispatch(key, commands -> commands.pttl(key));
+    }
+
+    @Override
+    public CompletionStage<byte[]> get(String key) {
+        return get(encodeKey(key));
+    }
+
+    @Override
+    public CompletionStage<byte[]> get(byte[] key) {
+        return dispatch(key, commands -> commands.get(key));
+    }
+
+    @Override
+    public CompletionStage<Void> del(String key) {
+        return del(encodeKey(key));
+    }
+
+    @Override
+    public CompletionStage<Void> del(byte[] key) {
+        return dispatch(key, commands -> commands.del(key)).thenAccept(result -> writeListener.accept(key));
+    }
+
+    @Override
+    public CompletionStage<Void> unlink(String key) {
+        return unlink(encodeKey(key));
+    }
+
+    @Override
+    public CompletionStage<Void> unlink(byte[] key) {
+        return dispatch(key, commands -> commands.unlink(key)).thenAccept(result -> writeListener.accept(key));
+    }
+
+    @Override
+    public CompletionStage<Boolean> exists(String key) {
+        return exists(encodeKey(key));
+    }
+
+    @Override
+    public CompletionStage<Boolean> exists(byte[] key) {
+        return dispatch(key, commands -> commands.exists(key)).thenApply(count -> count == 1L);
+    }
+
+    /**
+     * キーに対応する Lettuce の非同期コマンドで、コマンドを送信する。
+     * <p>
+     * {@link InFlightCounter} を指定している場合は、送信する前に数を増やし、完了したときに数を減らす。
+     * </p>
+     * @param key キー
+     * @param command コマンドを送信する処理
+     * @param <T> コマンドの結果の型
+     * @return コマンドの結果
+     */
+    private <T> CompletionStage<T> dispatch(byte[] key,
+            Function<RedisClusterAsyncCommands<byte[], byte[]>, CompletionStage<T>> command) {
+        RedisClusterAsyncCommands<byte[], byte[]> commands = commandsSelector.apply(key);
+        if (inFlightCounter == null) {
+            return command.apply(commands);
+        }
+        inFlightCounter.increment(key);
+        CompletionStage<T> stage;
+        try {
+            stage = command.apply(commands);
+        } catch (RuntimeException e) {
+            inFlightCounter.decrement(key);
+            throw e;
+        }
+        return stage.whenComplete((result, throwable) -> inFlightCounter.decrement(key));
+    }
+
+    /**
+     * 完了していない書き込みのバイト数を制限しながら、書き込みのコマンドを実行する。
+     * <p>
+     * 確保したバイト数は、コマンドが完了したときに解放する。
+     * </p>
+     * @param bytes 書き込むキーと値のバイト数
+     * @param command 書き込みのコマンドを実行する処理
+     * @return コマンドの結果
+     */
+    private CompletionStage<Void> limitWrite(long bytes, Supplier<CompletionStage<Void>> command) {
+        pendingWriteLimiter.acquire(bytes);
+        CompletionStage<Void> stage;
+        try {
+            stage = command.get();
+        } catch (RuntimeException e) {
+            pendingWriteLimiter.release(bytes);
+            throw e;
+        }
+        return stage.whenComplete((result, throwable) -> pendingWriteLimiter.release(bytes));
+    }
+
+    private static byte[] encodeKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 実行中のコマンドを、キーごとに数えるインタフェース。
+     */
+    interface InFlightCounter {
+
+        /**
+         * コマンドを送信するときに呼び出される。
+         * @param key コマンドのキー
+         */
+        void increment(byte[] key);
+
+        /**
+         * コマンドが完了したときに呼び出される。
+         * @param key コマンドのキー
+         */
+        void decrement(byte[] key);
+    }
+}
@@ -0,0 +1,142 @@
+package nablarch.integration.redisstore.lettuce;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * {@link LettuceRedisClient} の同期 API を呼び出して、 {@link LettuceRedisAsyncClient} を実装したクラス。
+ * <p>
+ * 非同期 API を持たない {@link LettuceRedisClient} の実装クラスのために使用する。
+ * コマンドは呼び出したスレッドで実行され、完了済みの {@link CompletionStage} を返す。
+ * </p>
+ */
+class BlockingRedisAsyncClient implements LettuceRedisAsyncClient {
+
+    private final LettuceRedisClient client;
+
+    /**
+     * コンストラクタ。
+     * @param client {@link LettuceRedisClient}
+     */
+    BlockingRedisAsyncClient(LettuceRedisClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public CompletionStage<Void> set(String key, byte[] value) {
+        return run(() -> client.set(key, value));
+    }
+
+    @Override
+    public CompletionStage<Void> set(byte[] key, byte[] value) {
+        return run(() -> client.set(key, value));
+    }
+
+    @Override
+    public CompletionStage<Void> psetex(String key, long milliseconds, byte[] value) {
+        return run(() -> client.psetex(key, milliseconds, value));
+    }
+
+    @Override
+    public CompletionStage<Void> psetex(byte[] key, long milliseconds, byte[] value) {
+        return run(() -> client.psetex(key, milliseconds, value));
+    }
+
+    @Override
+    public CompletionStage<Void> pexpire(String key, long milliseconds) {
+        return run(() -> client.pexpire(key, milliseconds));
+    }
+
+    @Override
+    public CompletionStage<Void> pexpire(byte[] key, long milliseconds) {
+        return run(() -> client.pexpire(key, milliseconds));
+    }
+
+    @Override
+    public CompletionStage<Void> pexpireat(String key, long milliseconds) {
+        return run(() -> client.pexpireat(key, milliseconds));
+    }
+
+    @Override
+    public CompletionStage<Void> pexpireat(byte[] key, long milliseconds) {
+        return run(() -> client.pexpireat(key, milliseconds));
+    }
+
+    @Override
+    public CompletionStage<Void> setnxAndPexpireat(String key, byte[] value, long milliseconds) {
+        return run(() -> client.setnxAndPexpireat(key, value, milliseconds));
+    }
+
+    @Override
+    public CompletionStage<Void> setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        return run(() -> client.setnxAndPexpireat(key, value, milliseconds));
+    }
+
+    @Override
+    public CompletionStage<Long> pttl(String key) {
+        return call(() -> client.pttl(key));
+    }
+
+    @Override
+    public CompletionStage<Long> pttl(byte[] key) {
+        return call(() -> client.pttl(key));
+    }
+
+    @Override
+    public CompletionStage<byte[]> get(String key) {
+        return call(() -> client.get(key));
+    }
+
+    @Override
+    public CompletionStage<byte[]> get(byte[] key) {
+        return call(() -> client.get(key));
+    }
+
+    @Override
+    public CompletionStage<Void> del(String key) {
+        return run(() -> client.del(key));
+    }
+
+    @Override
+    public CompletionStage<Void> del(byte[] key) {
+        return run(() -> client.del(key));
+    }
+
+    @Override
+    public CompletionStage<Void> unlink(String key) {
+        return run(() -> client.unlink(key));
+    }
+
+    @Override
+    public CompletionStage<Void> unlink(byte[] key) {
+        return run(() -> client.unlink(key));
+    }
+
+    @Override
+    public CompletionStage<Boolean> exists(String key) {
+        return call(() -> client.exists(key));
+    }
+
+    @Override
+    public CompletionStage<Boolean> exists(byte[] key) {
+        return call(() -> client.exists(key));
+    }
+
+    private static CompletionStage<Void> run(Runnable command) {
+        return call(() -> {
+            command.run();
+            return null;
+        });
+    }
+
+    private static <T> CompletionStage<T> call(Supplier<T> command) {
+        try {
+            return CompletableFuture.completedFuture(command.get());
+        } catch (RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+}
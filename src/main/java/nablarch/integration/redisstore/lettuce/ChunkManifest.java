@@ -0,0 +1,127 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 分割して保存したセッションの、分割したバイト列（チャンク）の情報を表すクラス。
+ * <p>
+ * マニフェストはセッションのキーに保存し、チャンクはそれぞれ {@link #chunkKey(byte[], int)} で作成したキーに保存する。<br>
+ * チャンクのキーには保存ごとに異なる世代を含める。
+ * このため、セッションを書き換えている間に別のリクエストが読み込んでも、古いマニフェストと新しいチャンクを組み合わせることはない。
+ * </p>
+ * <p>
+ * チャンクのキーは、セッションのキー全体を波括弧で囲んだハッシュタグから始まる。
+ * Redis Cluster では、ハッシュタグの中の文字列だけでスロットを決めるため、
+ * チャンクはすべて同じスロットに、さらにセッションのキーが波括弧を含まなければセッションのキーとも同じスロットに配置される。
+ * </p>
+ */
+final class ChunkManifest {
+
+    /**
+     * マニフェストであることを示すマジックナンバー。
+     * <p>
+     * {@link LettuceDeflatePayloadTransformer} と同じく、エンコードしたセッションの先頭がこの値になるのは
+     * キーの長さが 65024 バイト以上の場合に限られる。
+     * </p>
+     */
+    private static final byte[] MAGIC = {(byte) 0xFE, 'C'};
+
+    /**
+     * マニフェストのサイズ（マジックナンバー、世代、チャンクの数、分割前のサイズ）。
+     */
+    private static final int SIZE = MAGIC.length + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final long generation;
+    private final int chunkCount;
+    private final int length;
+
+    private ChunkManifest(long generation, int chunkCount, int length) {
+        this.generation = generation;
+        this.chunkCount = chunkCount;
+        this.length = length;
+    }
+
+    /**
+     * バイト列を分割するための、新しい世代のマニフェストを作成する。
+     * @param length 分割するバイト列のサイズ
+     * @param chunkSize チャンクのサイズ
+     * @return マニフェスト
+     */
+    static ChunkManifest create(int length, int chunkSize) {
+        return new ChunkManifest(ThreadLocalRandom.current().nextLong(), (length + chunkSize - 1) / chunkSize, length);
+    }
+
+    /**
+     * Redis から読み込んだバイト列が、マニフェストか判定する。
+     * @param stored Redis から読み込んだバイト列
+     * @return マニフェストの場合は {@code true}
+     */
+    static boolean isManifest(byte[] stored) {
+        return stored.length == SIZE && stored[0] == MAGIC[0] && stored[1] == MAGIC[1];
+    }
+
+    /**
+     * Redis から読み込んだバイト列から、マニフェストを復元する。
+     * @param stored Redis から読み込んだバイト列
+     * @return マニフェスト
+     */
+    static ChunkManifest parse(byte[] stored) {
+        ByteBuffer buffer = ByteBuffer.wrap(stored, MAGIC.length, SIZE - MAGIC.length);
+        long generation = buffer.getLong();
+        int chunkCount = buffer.getInt();
+        int length = buffer.getInt();
+        if (chunkCount <= 0 || length < chunkCount) {
+            throw new EncodeException(new IllegalStateException(
+                    "The chunk manifest is corrupted. chunkCount=" + chunkCount + ", length=" + length));
+        }
+        return new ChunkManifest(generation, chunkCount, length);
+    }
+
+    /**
+     * Redis に保存するバイト列に変換する。
+     * @return マニフェストのバイト列
+     */
+    byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE)
+                .put(MAGIC)
+                .putLong(generation)
+                .putInt(chunkCount)
+                .putInt(length)
+                .array();
+    }
+
+    /**
+     * チャンクを保存するキーを作成する。
+     * @param key エンコード済みのセッションのキー
+     * @param index チャンクの番号（{@code 0} から始まる）
+     * @return エンコード済みのチャンクのキー
+     */
+    byte[] chunkKey(byte[] key, int index) {
+        byte[] suffix = ("}.chunk." + Long.toHexString(generation) + "." + index).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + key.length + suffix.length)
+                .put((byte) '{')
+                .put(key)
+                .put(suffix)
+                .array();
+    }
+
+    /**
+     * チャンクの数を取得する。
+     * @return チャンクの数
+     */
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * 分割する前のバイト列のサイズを取得する。
+     * @return 分割する前のバイト列のサイズ
+     */
+    int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,239 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.integration.redisstore.lettuce.LettuceCircuitBreakerRedisClient.State;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * 直近のコマンドの結果から、コマンドの実行を許可するかどうかを判定するサーキットブレーカー。
+ * <p>
+ * 直近 {@code windowSize} 件のコマンドの結果を保持し、失敗したコマンドの割合、または遅いコマンドの割合が閾値以上になった場合に
+ * {@link State#OPEN} に遷移してコマンドを拒否する。
+ * {@code openDuration} が経過すると {@link State#HALF_OPEN} に遷移し、 {@code permittedCallsInHalfOpen} 件の試行を許可する。
+ * 試行がすべて成功した場合は {@link State#CLOSED} に、1件でも失敗した場合は {@link State#OPEN} に戻る。
+ * </p>
+ * <p>
+ * コマンドの結果は、コマンドを開始したときと同じ状態の間に完了した場合だけ記録する。
+ * 例えば、 {@link State#CLOSED} の間に開始したコマンドが {@link State#HALF_OPEN} になってから完了しても、試行の結果としては数えない。
+ * </p>
+ * <p>
+ * リスナーへの通知は、ロックを解放してから、状態が遷移した順に行う。
+ * </p>
+ */
+final class CircuitBreaker {
+
+    private static final byte FAILED = 0x01;
+    private static final byte SLOW = 0x02;
+
+    private final int minimumNumberOfCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long openDurationNanos;
+    private final int permittedCallsInHalfOpen;
+    private final LongSupplier nanoClock;
+    private final List<LettuceCircuitBreakerListener> listeners;
+
+    /**
+     * 直近のコマンドの結果を保持するリングバッファ。
+     */
+    private final byte[] outcomes;
+    private int nextIndex;
+    private int numberOfCalls;
+    private int numberOfFailedCalls;
+    private int numberOfSlowCalls;
+
+    private State state = State.CLOSED;
+
+    /**
+     * 状態が遷移するたびに増える世代。
+     * コマンドを開始したときの世代と比べて、同じ状態の間に完了したかどうかを判定する。
+     */
+    private long generation;
+    private long openedAt;
+    private int remainingHalfOpenCalls;
+    private int succeededHalfOpenCalls;
+
+    /**
+     * リスナーに通知していない状態の遷移。
+     */
+    private final Queue<State[]> pendingTransitions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean notifying = new AtomicBoolean();
+
+    /**
+     * コンストラクタ。
+     * @param windowSize 結果を保持するコマンドの数
+     * @param minimumNumberOfCalls 割合を判定するために必要なコマンドの数
+     * @param failureRateThreshold 失敗したコマンドの割合の閾値（%）
+     * @param slowCallRateThreshold 遅いコマンドの割合の閾値（%）
+     * @param slowCallDurationThreshold 遅いコマンドとみなす実行時間（ミリ秒）
+     * @param openDuration {@link State#OPEN} を維持する時間（ミリ秒）
+     * @param permittedCallsInHalfOpen {@link State#HALF_OPEN} で許可する試行の数
+     * @param listeners 状態の変化を通知するリスナー
+     * @param nanoClock 現在時刻（ナノ秒）を返す時計
+     */
+    CircuitBreaker(int windowSize, int minimumNumberOfCalls, int failureRateThreshold, int slowCallRateThreshold,
+                   long slowCallDurationThreshold, long openDuration, int permittedCallsInHalfOpen,
+                   List<LettuceCircuitBreakerListener> listeners, LongSupplier nanoClock) {
+        if (windowSize < minimumNumberOfCalls) {
+            throw new IllegalArgumentException("minimumNumberOfCalls must be less than or equal to windowSize."
+                    + " minimumNumberOfCalls=" + minimumNumberOfCalls + ", windowSize=" + windowSize);
+        }
+        this.outcomes = new byte[windowSize];
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationThreshold);
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.permittedCallsInHalfOpen = permittedCallsInHalfOpen;
+        this.listeners = listeners;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * コマンドの実行の許可を得る。
+     * @return コマンドを開始したときの世代。 {@link #onResult(long, long, boolean)} に渡すこと
+     * @throws LettuceCircuitBreakerOpenException コマンドの実行が許可されない場合
+     */
+    long acquirePermission() {
+        try {
+            synchronized (this) {
+                if (state == State.OPEN) {
+                    if (nanoClock.getAsLong() - openedAt < openDurationNanos) {
+                        throw new LettuceCircuitBreakerOpenException("Circuit breaker is open. Command was rejected.");
+                    }
+                    transitionTo(State.HALF_OPEN);
+                }
+                if (state == State.HALF_OPEN) {
+                    if (remainingHalfOpenCalls == 0) {
+                        throw new LettuceCircuitBreakerOpenException(
+                                "Circuit breaker is half-open and no trial call is permitted.");
+                    }
+                    remainingHalfOpenCalls--;
+                }
+                return generation;
+            }
+        } finally {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * コマンドの結果を記録する。
+     * <p>
+     * コマンドを開始してから状態が遷移していた場合は、結果を記録しない。
+     * </p>
+     * @param permission {@link #acquirePermission()} が返した世代
+     * @param durationNanos コマンドの実行にかかった時間（ナノ秒）
+     * @param failed コマンドが失敗した場合は {@code true}
+     */
+    void onResult(long permission, long durationNanos, boolean failed) {
+        synchronized (this) {
+            if (permission != generation) {
+                return;
+            }
+            boolean slow = durationNanos >= slowCallDurationNanos;
+            switch (state) {
+                case HALF_OPEN:
+                    if (failed || slow) {
+                        transitionTo(State.OPEN);
+                    } else if (++succeededHalfOpenCalls >= permittedCallsInHalfOpen) {
+                        transitionTo(State.CLOSED);
+                    }
+                    break;
+                case CLOSED:
+                    record((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                    if (numberOfCalls >= minimumNumberOfCalls
+                            && (numberOfFailedCalls * 100 >= failureRateThreshold * numberOfCalls
+                                || numberOfSlowCalls * 100 >= slowCallRateThreshold * numberOfCalls)) {
+                        transitionTo(State.OPEN);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        notifyListeners();
+    }
+
+    /**
+     * コマンドの結果をリングバッファに記録する。
+     * @param outcome コマンドの結果
+     */
+    private void record(byte outcome) {
+        if (numberOfCalls == outcomes.length) {
+            byte evicted = outcomes[nextIndex];
+            numberOfFailedCalls -= evicted & FAILED;
+            numberOfSlowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            numberOfCalls++;
+        }
+        outcomes[nextIndex] = outcome;
+        numberOfFailedCalls += outcome & FAILED;
+        numberOfSlowCalls += (outcome & SLOW) >> 1;
+        nextIndex = (nextIndex + 1) % outcomes.length;
+    }
+
+    /**
+     * 状態を遷移させる。
+     * <p>
+     * ロックを保持したまま呼び出すこと。リスナーへの通知は、ロックを解放してから {@link #notifyListeners()} で行う。
+     * </p>
+     * @param to 遷移後の状態
+     */
+    private void transitionTo(State to) {
+        State from = state;
+        state = to;
+        generation++;
+        switch (to) {
+            case OPEN:
+                openedAt = nanoClock.getAsLong();
+                break;
+            case HALF_OPEN:
+                remainingHalfOpenCalls = permittedCallsInHalfOpen;
+                succeededHalfOpenCalls = 0;
+                break;
+            default:
+                nextIndex = 0;
+                numberOfCalls = 0;
+                numberOfFailedCalls = 0;
+                numberOfSlowCalls = 0;
+                break;
+        }
+        pendingTransitions.add(new State[] {from, to});
+    }
+
+    /**
+     * 通知していない状態の遷移を、遷移した順にリスナーに通知する。
+     * <p>
+     * 他のスレッドが通知している場合は、そのスレッドに通知を任せる。
+     * </p>
+     */
+    private void notifyListeners() {
+        while (!pendingTransitions.isEmpty() && notifying.compareAndSet(false, true)) {
+            try {
+                State[] transition;
+                while ((transition = pendingTransitions.poll()) != null) {
+                    for (LettuceCircuitBreakerListener listener : listeners) {
+                        listener.onStateChanged(transition[0], transition[1]);
+                    }
+                }
+            } finally {
+                notifying.set(false);
+            }
+        }
+    }
+
+    /**
+     * 現在の状態を取得する。
+     * @return 現在の状態
+     */
+    synchronized State getState() {
+        return state;
+    }
+}
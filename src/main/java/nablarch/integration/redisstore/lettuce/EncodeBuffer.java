@@ -0,0 +1,80 @@
+package nablarch.integration.redisstore.lettuce;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+/**
+ * セッションのエンコードに、スレッドごとに再利用するバッファ。
+ * <p>
+ * 書き込んだバイト列は {@link #toByteArray()} でちょうどのサイズにコピーしてから Redis に渡す。
+ * Lettuce はコマンドを送信し終えるまで値のバイト配列を参照し、
+ * パイプラインやバッチでは送信がリクエストの終わりまで遅れるため、再利用するバッファそのものを渡すことはできない。
+ * </p>
+ */
+final class EncodeBuffer extends ByteArrayOutputStream {
+
+    /**
+     * バッファの初期サイズ。
+     */
+    private static final int INITIAL_SIZE = 2048;
+
+    private static final ThreadLocal<EncodeBuffer> BUFFERS = ThreadLocal.withInitial(EncodeBuffer::new);
+
+    private final DataOutputStream dataOutput = new DataOutputStream(this);
+
+    private boolean inUse;
+
+    private EncodeBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * 現在のスレッドのバッファを、空の状態で取得する。
+     * <p>
+     * 使い終わったら {@link #release(int)} を呼び出すこと。
+     * 同じスレッドで使用中の場合は、再利用しない新しいバッファを返す。
+     * </p>
+     * @return バッファ
+     */
+    static EncodeBuffer acquire() {
+        EncodeBuffer buffer = BUFFERS.get();
+        if (buffer.inUse) {
+            buffer = new EncodeBuffer();
+        }
+        buffer.inUse = true;
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * バッファの使用を終える。
+     * <p>
+     * バッファが指定したサイズを超えて拡張されていた場合は、ヒープに大きな配列を残さないように、スレッドから破棄する。
+     * </p>
+     * @param maxRetainedSize スレッドに保持し続けるバッファの最大のサイズ
+     */
+    void release(int maxRetainedSize) {
+        inUse = false;
+        if (buf.length > maxRetainedSize && BUFFERS.get() == this) {
+            BUFFERS.remove();
+        }
+    }
+
+    /**
+     * このバッファに書き込む {@link DataOutputStream} を取得する。
+     * @return {@link DataOutputStream}
+     */
+    DataOutputStream dataOutput() {
+        return dataOutput;
+    }
+
+    /**
+     * 書き込んだバイト列が、指定したバイト配列と一致するか判定する。
+     * @param other 比較するバイト配列
+     * @return 一致する場合は {@code true}
+     */
+    boolean contentEquals(byte[] other) {
+        return other != null && Arrays.equals(buf, 0, count, other, 0, other.length);
+    }
+}
@@ -0,0 +1,114 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.api.async.RedisServerAsyncCommands;
+import io.lettuce.core.cluster.api.push.RedisClusterPushListener;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.StringCodec;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * {@code CLIENT TRACKING} の BCAST モードを使ってキーの変更を追跡し、
+ * {@link LettuceKeyInvalidationListener} に通知するクラス。
+ * <p>
+ * Redis から RESP3 のプッシュメッセージとして届く {@code invalidate} メッセージを解釈してリスナーに通知する。<br>
+ * 追跡に使用している接続が切断された場合は追跡の中断を通知し、再接続された場合は追跡を再開する。
+ * </p>
+ */
+class KeyInvalidationTracker implements PushListener, RedisClusterPushListener, RedisConnectionStateListener {
+
+    private static final String INVALIDATE_MESSAGE_TYPE = "invalidate";
+
+    private final LettuceKeyInvalidationListener listener;
+    private final Supplier<CompletionStage<?>> trackingEnabler;
+
+    /**
+     * コンストラクタ。
+     * @param listener 変更を通知するリスナー
+     * @param trackingEnabler 追跡に使用する接続で {@code CLIENT TRACKING} を有効にする処理
+     */
+    KeyInvalidationTracker(LettuceKeyInvalidationListener listener, Supplier<CompletionStage<?>> trackingEnabler) {
+        this.listener = listener;
+        this.trackingEnabler = trackingEnabler;
+    }
+
+    /**
+     * 指定した接頭辞を持つキーを BCAST モードで追跡するための引数を構築する。
+     * @param prefix 追跡するキーの接頭辞
+     * @return {@code CLIENT TRACKING} の引数
+     */
+    static TrackingArgs trackingArgs(String prefix) {
+        return TrackingArgs.Builder.enabled().bcast().prefixes(StandardCharsets.UTF_8, prefix);
+    }
+
+    /**
+     * 指定した接続で、キーの追跡を有効にする。
+     * <p>
+     * 同じ接頭辞で追跡を重ねて有効にするとエラーになるため、一度追跡を無効にしてから有効にする。
+     * </p>
+     * @param commands 追跡に使用する接続のコマンド
+     * @param trackingArgs {@code CLIENT TRACKING} の引数
+     * @return 追跡の有効化が完了したときに完了する {@link CompletionStage}
+     */
+    static CompletionStage<String> enableTracking(RedisServerAsyncCommands<byte[], byte[]> commands, TrackingArgs trackingArgs) {
+        return commands.clientTracking(TrackingArgs.Builder.enabled(false))
+                .thenCompose(result -> commands.clientTracking(trackingArgs));
+    }
+
+    /**
+     * キーの追跡を開始する。
+     * <p>
+     * 追跡を有効にできた場合は {@link LettuceKeyInvalidationListener#onTrackingStarted()} を、
+     * 失敗した場合は {@link LettuceKeyInvalidationListener#onTrackingStopped()} を呼び出す。
+     * </p>
+     */
+    void start() {
+        trackingEnabler.get().whenComplete((result, error) -> {
+            if (error == null) {
+                listener.onTrackingStarted();
+            } else {
+                listener.onTrackingStopped();
+            }
+        });
+    }
+
+    @Override
+    public void onPushMessage(PushMessage message) {
+        if (!INVALIDATE_MESSAGE_TYPE.equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() < 2 ? null : content.get(1);
+        if (keys instanceof List) {
+            for (Object key : (List<?>) keys) {
+                listener.onInvalidated((String) key);
+            }
+        } else {
+            listener.onInvalidatedAll();
+        }
+    }
+
+    @Override
+    public void onPushMessage(RedisClusterNode node, PushMessage message) {
+        onPushMessage(message);
+    }
+
+    @Override
+    public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+        start();
+    }
+
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+        listener.onTrackingStopped();
+    }
+}
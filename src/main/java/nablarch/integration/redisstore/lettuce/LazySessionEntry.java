@@ -0,0 +1,126 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.SessionEntry;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 値を初めて参照したときにデコードする {@link SessionEntry}。
+ * <p>
+ * {@link LettuceRedisStore} が読み込んだセッションのバイト列のうち、値の範囲を保持する。
+ * 値を一度も参照しなかった場合、 {@link LettuceRedisStore} はセッションを保存するときに、保持しているバイト列をそのまま書き込む。
+ * </p>
+ */
+final class LazySessionEntry extends SessionEntry {
+
+    private final LettuceRedisStore store;
+    private final String typeName;
+    private final byte[] encoded;
+    private final int offset;
+    private final int length;
+
+    private boolean decoded;
+    private Object value;
+    private SessionEntry materialized;
+
+    /**
+     * コンストラクタ。
+     * @param key キー
+     * @param typeName 値のクラスの名前
+     * @param encoded 読み込んだセッションのバイト列
+     * @param offset {@code encoded} のうち、値が始まる位置
+     * @param length 値のバイト数
+     * @param store 値をデコードする {@link LettuceRedisStore}
+     */
+    LazySessionEntry(String key, String typeName, byte[] encoded, int offset, int length, LettuceRedisStore store) {
+        super(key, null, store);
+        this.store = store;
+        this.typeName = typeName;
+        this.encoded = encoded;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public Object getValue() {
+        if (!decoded) {
+            value = store.decodeValue(typeName, encoded, offset, length);
+            decoded = true;
+        }
+        return value;
+    }
+
+    /**
+     * 値がデコードされたかどうかを取得する。
+     * @return デコードされた場合は {@code true}
+     */
+    boolean isDecoded() {
+        return decoded;
+    }
+
+    /**
+     * 保持しているバイト列を、値の長さ、クラスの名前、値の順に出力する。
+     * @param out 出力先
+     * @throws IOException 出力に失敗した場合
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(length);
+        out.writeUTF(typeName);
+        out.write(encoded, offset, length);
+    }
+
+    /**
+     * {@link Map} としての操作に使用する、デコードした値を持つ {@link SessionEntry} を取得する。
+     * @return デコードした値を持つ {@link SessionEntry}
+     */
+    private SessionEntry materialize() {
+        if (materialized == null) {
+            materialized = new SessionEntry(getKey(), getValue(), store);
+        }
+        return materialized;
+    }
+
+    @Override
+    public int size() {
+        return materialize().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return materialize().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return materialize().containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return materialize().containsValue(value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return materialize().get(key);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return materialize().keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return materialize().values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return materialize().entrySet();
+    }
+}
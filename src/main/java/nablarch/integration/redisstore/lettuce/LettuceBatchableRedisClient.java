@@ -0,0 +1,29 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * コマンドをまとめて送信できる {@link LettuceRedisClient}。
+ * <p>
+ * {@link LettuceBatchingRedisClient} に設定するクライアントは、このインターフェースを実装している必要がある。
+ * このモジュールが提供する {@link LettuceSimpleRedisClient}、{@link LettuceMasterReplicaRedisClient}、
+ * {@link LettuceClusterRedisClient} は、このインターフェースを実装している。
+ * </p>
+ */
+@Published(tag = "architect")
+public interface LettuceBatchableRedisClient extends LettuceRedisClient {
+
+    /**
+     * コマンドを実行するたびに Redis へ送信するかどうかを設定する。
+     * <p>
+     * {@code false} を設定した場合、コマンドは {@link #flushCommands()} を呼び出すまで送信されない。
+     * </p>
+     * @param autoFlush コマンドを実行するたびに送信する場合は {@code true}
+     */
+    void setAutoFlushCommands(boolean autoFlush);
+
+    /**
+     * 送信されていないコマンドを Redis へ送信する。
+     */
+    void flushCommands();
+}
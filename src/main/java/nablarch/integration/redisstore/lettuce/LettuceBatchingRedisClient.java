@@ -0,0 +1,441 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.util.annotation.Published;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 複数のスレッドから実行されたコマンドをまとめて送信する {@link LettuceRedisClient} 実装クラス。
+ * <p>
+ * {@link #setClient(LettuceBatchableRedisClient)} で設定したクライアントのコマンドの自動送信を無効にし、
+ * 送信待ちのコマンドの数が {@link #setMaxBatchSize(int)} に達したとき、
+ * または最初のコマンドを送信待ちにしてから {@link #setFlushInterval(long)} が経過したときに、
+ * それまでに実行されたコマンドをまとめて送信する。<br>
+ * 送信待ちのコマンドがない間は、送信のためにスレッドを起こすことはない。<br>
+ * 多数のスレッドが小さなコマンドを実行する場合に、システムコールとパケットの数を減らすことができる。
+ * 一方で、各コマンドの応答時間は、最大で送信の間隔だけ長くなる。
+ * </p>
+ * <p>
+ * このクラスの {@link #getType()} は、識別子 {@code "batching"} を返す。
+ * </p>
+ * <p>
+ * 設定したクライアントの初期化と破棄は、このクラスの {@link #initialize()} と {@link #dispose()} で行う。
+ * このため、設定したクライアントを初期化対象のリストに登録しないこと。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceBatchingRedisClient extends AbstractLettuceRedisClient implements Initializable {
+
+    private LettuceBatchableRedisClient client;
+    private LettuceRedisAsyncClient clientAsync;
+    private LettuceRedisAsyncClient asyncClient;
+    private ScheduledExecutorService flusher;
+
+    private int maxBatchSize = 64;
+    private long flushInterval = 200L;
+    private long commandTimeout = 60000L;
+
+    /**
+     * 送信を予約しているかどうか。
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * 同期 API で実行中のコマンドの数。
+     */
+    private final AtomicInteger blockingCommands = new AtomicInteger();
+
+    /**
+     * 最後に送信してから実行されたコマンドの数。
+     */
+    private final AtomicInteger unflushedCommands = new AtomicInteger();
+
+    /**
+     * コンストラクタ。
+     */
+    public LettuceBatchingRedisClient() {
+        super("batching");
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        await(asyncClient.set(key, value));
+    }
+
+    @Override
+    public void psetex(byte[] key, long milliseconds, byte[] value) {
+        await(asyncClient.psetex(key, milliseconds, value));
+    }
+
+    @Override
+    public void pexpire(byte[] key, long milliseconds) {
+        await(asyncClient.pexpire(key, milliseconds));
+    }
+
+    @Override
+    public void pexpireat(byte[] key, long milliseconds) {
+        await(asyncClient.pexpireat(key, milliseconds));
+    }
+
+    @Override
+    public boolean pexpireIfExists(byte[] key, long milliseconds) {
+        return executeBlocking(() -> client.pexpireIfExists(key, milliseconds));
+    }
+
+    @Override
+    public void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        await(asyncClient.setnxAndPexpireat(key, value, milliseconds));
+    }
+
+    @Override
+    public long pttl(byte[] key) {
+        return await(asyncClient.pttl(key));
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return await(asyncClient.get(key));
+    }
+
+    @Override
+    public void del(byte[] key) {
+        await(asyncClient.del(key));
+    }
+
+    @Override
+    public void unlink(byte[] key) {
+        await(asyncClient.unlink(key));
+    }
+
+    @Override
+    public Map<String, byte[]> hgetall(byte[] key) {
+        return executeBlocking(() -> client.hgetall(key));
+    }
+
+    @Override
+    public boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        return executeBlocking(() -> client.hupdate(key, fields, deletedFields, milliseconds));
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        return await(asyncClient.exists(key));
+    }
+
+    @Override
+    public void trackInvalidation(String prefix, LettuceKeyInvalidationListener listener) {
+        client.trackInvalidation(prefix, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このクラスが返すクライアントで実行したコマンドも、まとめて送信する。
+     * </p>
+     */
+    @Override
+    public LettuceRedisAsyncClient async() {
+        return asyncClient;
+    }
+
+    /**
+     * コマンドを送信待ちにする。
+     * <p>
+     * 送信待ちのコマンドの数が {@link #maxBatchSize} に達した場合は、呼び出したスレッドで送信する。
+     * そうでない場合は、 {@link #flushInterval} 後の送信を予約する。
+     * </p>
+     * @param command 非同期 API でコマンドを実行する処理
+     * @param <T> コマンドの結果の型
+     * @return コマンドの結果
+     */
+    private <T> CompletionStage<T> dispatch(Supplier<CompletionStage<T>> command) {
+        CompletionStage<T> result = command.get();
+        if (unflushedCommands.incrementAndGet() >= maxBatchSize) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+        return result;
+    }
+
+    /**
+     * 非同期 API を持たないコマンドを、設定したクライアントの同期 API で実行する。
+     * <p>
+     * 同期 API はコマンドを送信待ちにした後に応答を待つため、実行する前に送信を予約する。
+     * コマンドが送信待ちになる前に予約した送信が行われることもあるため、
+     * 同期 API で実行中のコマンドがある間は {@link #flushInterval} ごとに送信を繰り返す。
+     * </p>
+     * @param command 同期 API でコマンドを実行する処理
+     * @param <T> コマンドの結果の型
+     * @return コマンドの結果
+     */
+    private <T> T executeBlocking(Supplier<T> command) {
+        blockingCommands.incrementAndGet();
+        try {
+            scheduleFlush();
+            return command.get();
+        } finally {
+            blockingCommands.decrementAndGet();
+        }
+    }
+
+    /**
+     * コマンドの完了を待機する。
+     * @param result コマンドの結果
+     * @param <T> コマンドの結果の型
+     * @return コマンドの結果
+     */
+    private <T> T await(CompletionStage<T> result) {
+        try {
+            return result.toCompletableFuture().get(commandTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RedisException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + commandTimeout + " millisecond(s)");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        }
+    }
+
+    /**
+     * 送信待ちのコマンドを送信する。
+     */
+    private void flush() {
+        unflushedCommands.set(0);
+        client.flushCommands();
+    }
+
+    /**
+     * {@link #flushInterval} 後の送信を予約する。
+     * <p>
+     * すでに予約している場合は何もしない。
+     * </p>
+     */
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::runScheduledFlush, flushInterval, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * 予約した送信を行う。
+     * <p>
+     * 予約を解除してから送信するため、送信している間に送信待ちになったコマンドは、新たに予約した送信で送信される。
+     * </p>
+     */
+    private void runScheduledFlush() {
+        flushScheduled.set(false);
+        flush();
+        if (blockingCommands.get() > 0) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 設定したクライアントを初期化し、コマンドの自動送信を無効にする。
+     * </p>
+     */
+    @Override
+    public void initialize() {
+        if (client instanceof Initializable) {
+            ((Initializable) client).initialize();
+        }
+        client.setAutoFlushCommands(false);
+        clientAsync = client.async();
+        asyncClient = new BatchingAsyncClient();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lettuce-batching-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose() {
+        flusher.shutdownNow();
+        client.flushCommands();
+        client.dispose();
+    }
+
+    /**
+     * コマンドをまとめて送信するクライアントを設定する。
+     * <p>
+     * このモジュールが提供する {@link LettuceSimpleRedisClient}、{@link LettuceMasterReplicaRedisClient}、
+     * {@link LettuceClusterRedisClient} を設定できる。
+     * </p>
+     * @param client コマンドをまとめて送信するクライアント
+     */
+    public void setClient(LettuceBatchableRedisClient client) {
+        this.client = client;
+    }
+
+    /**
+     * まとめて送信するコマンドの最大数を設定する。
+     * <p>
+     * 送信待ちのコマンドがこの数に達した場合は、 {@link #setFlushInterval(long)} を待たずに送信する。
+     * デフォルトは {@code 64}。
+     * </p>
+     * @param maxBatchSize まとめて送信するコマンドの最大数
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0. maxBatchSize=" + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 最初のコマンドを送信待ちにしてから送信するまでの時間を設定する。
+     * <p>
+     * デフォルトは {@code 200} マイクロ秒。
+     * </p>
+     * @param flushInterval 最初のコマンドを送信待ちにしてから送信するまでの時間（マイクロ秒）
+     */
+    public void setFlushInterval(long flushInterval) {
+        if (flushInterval <= 0L) {
+            throw new IllegalArgumentException("flushInterval must be greater than 0. flushInterval=" + flushInterval);
+        }
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * コマンドの完了を待機する時間を設定する。
+     * <p>
+     * デフォルトは {@code 60000} ミリ秒（ Lettuce のデフォルトのタイムアウトと同じ）。
+     * </p>
+     * @param commandTimeout コマンドの完了を待機する時間（ミリ秒）
+     */
+    public void setCommandTimeout(long commandTimeout) {
+        if (commandTimeout <= 0L) {
+            throw new IllegalArgumentException("commandTimeout must be greater than 0. commandTimeout=" + commandTimeout);
+        }
+        this.commandTimeout = commandTimeout;
+    }
+
+    /**
+     * 設定したクライアントの非同期 API でコマンドを実行し、送信待ちにする {@link LettuceRedisAsyncClient} 実装クラス。
+     */
+    private class BatchingAsyncClient implements LettuceRedisAsyncClient {
+
+        @Override
+        public CompletionStage<Void> set(String key, byte[] value) {
+            return dispatch(() -> clientAsync.set(key, value));
+        }
+
+        @Override
+        public CompletionStage<Void> set(byte[] key, byte[] value) {
+            return dispatch(() -> clientAsync.set(key, value));
+        }
+
+        @Override
+        public CompletionStage<Void> psetex(String key, long milliseconds, byte[] value) {
+            return dispatch(() -> clientAsync.psetex(key, milliseconds, value));
+        }
+
+        @Override
+        public CompletionStage<Void> psetex(byte[] key, long milliseconds, byte[] value) {
+            return dispatch(() -> clientAsync.psetex(key, milliseconds, value));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpire(String key, long milliseconds) {
+            return dispatch(() -> clientAsync.pexpire(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpire(byte[] key, long milliseconds) {
+            return dispatch(() -> clientAsync.pexpire(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpireat(String key, long milliseconds) {
+            return dispatch(() -> clientAsync.pexpireat(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpireat(byte[] key, long milliseconds) {
+            return dispatch(() -> clientAsync.pexpireat(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> setnxAndPexpireat(String key, byte[] value, long milliseconds) {
+            return dispatch(() -> clientAsync.setnxAndPexpireat(key, value, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+            return dispatch(() -> clientAsync.setnxAndPexpireat(key, value, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Long> pttl(String key) {
+            return dispatch(() -> clientAsync.pttl(key));
+        }
+
+        @Override
+        public CompletionStage<Long> pttl(byte[] key) {
+            return dispatch(() -> clientAsync.pttl(key));
+        }
+
+        @Override
+        public CompletionStage<byte[]> get(String key) {
+            return dispatch(() -> clientAsync.get(key));
+        }
+
+        @Override
+        public CompletionStage<byte[]> get(byte[] key) {
+            return dispatch(() -> clientAsync.get(key));
+        }
+
+        @Override
+        public CompletionStage<Void> del(String key) {
+            return dispatch(() -> clientAsync.del(key));
+        }
+
+        @Override
+        public CompletionStage<Void> del(byte[] key) {
+            return dispatch(() -> clientAsync.del(key));
+        }
+
+        @Override
+        public CompletionStage<Void> unlink(String key) {
+            return dispatch(() -> clientAsync.unlink(key));
+        }
+
+        @Override
+        public CompletionStage<Void> unlink(byte[] key) {
+            return dispatch(() -> clientAsync.unlink(key));
+        }
+
+        @Override
+        public CompletionStage<Boolean> exists(String key) {
+            return dispatch(() -> clientAsync.exists(key));
+        }
+
+        @Override
+        public CompletionStage<Boolean> exists(byte[] key) {
+            return dispatch(() -> clientAsync.exists(key));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link LettuceCircuitBreakerRedisClient} の状態の変化を受け取るリスナー。
+ * <p>
+ * メソッドはコマンドを実行したスレッドから、サーキットブレーカーのロックを解放した後に、状態が変化した順に呼び出される。
+ * 通知が終わるまで、そのスレッドはコマンドの結果を返さないため、時間のかかる処理を実装してはならない。
+ * </p>
+ */
+@Published(tag = "architect")
+public interface LettuceCircuitBreakerListener {
+
+    /**
+     * サーキットブレーカーの状態が変化したときに呼び出される。
+     * @param from 変化する前の状態
+     * @param to 変化した後の状態
+     */
+    void onStateChanged(LettuceCircuitBreakerRedisClient.State from, LettuceCircuitBreakerRedisClient.State to);
+}
@@ -0,0 +1,23 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisException;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link LettuceCircuitBreakerRedisClient} のサーキットブレーカーが開いているため、
+ * コマンドを実行せずに拒否したことを示す例外。
+ * <p>
+ * Redis に接続できない場合と同様に扱えるよう、 {@link RedisException} を継承している。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceCircuitBreakerOpenException extends RedisException {
+
+    /**
+     * コンストラクタ。
+     * @param message メッセージ
+     */
+    public LettuceCircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
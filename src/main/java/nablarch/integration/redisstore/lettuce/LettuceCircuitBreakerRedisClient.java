@@ -0,0 +1,513 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisBusyException;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisLoadingException;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.util.annotation.Published;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * サーキットブレーカーによって、 Redis の障害時にコマンドをすぐに失敗させる {@link LettuceRedisClient} 実装クラス。
+ * <p>
+ * Redis が応答しない場合、コマンドはタイムアウトするまでスレッドをブロックするため、
+ * リクエストを処理するスレッドがすぐに枯渇してしまう。
+ * このクラスは、設定したクライアントで実行したコマンドの結果を直近 {@link #setWindowSize(int)} 件だけ保持し、
+ * 失敗したコマンドの割合、または {@link #setSlowCallDurationThreshold(long)} 以上かかったコマンドの割合が閾値以上になった場合に、
+ * サーキットブレーカーを開く（{@link State#OPEN}）。<br>
+ * サーキットブレーカーが開いている間は、コマンドを実行せずに {@link LettuceCircuitBreakerOpenException} を送出する。
+ * {@link #setOpenDuration(long)} が経過すると半開きの状態（{@link State#HALF_OPEN}）になり、
+ * {@link #setPermittedCallsInHalfOpen(int)} 件のコマンドを試行として実行する。
+ * 試行がすべて成功した場合はサーキットブレーカーを閉じ（{@link State#CLOSED}）、1件でも失敗した場合は再び開く。
+ * </p>
+ * <p>
+ * 失敗として数えるのは、接続やタイムアウトなどの {@link RedisException} だけである。
+ * Redis がエラーを応答した場合（{@link RedisCommandExecutionException}）は、 Redis は利用できているため失敗として数えない。
+ * ただし、データの読み込み中（{@code LOADING}）やスクリプトの実行中（{@code BUSY}）のエラーは、
+ * Redis がコマンドを処理できない状態を表すため失敗として数える。
+ * </p>
+ * <p>
+ * 状態の変化は、 {@link #setListenerList(List)} で設定した {@link LettuceCircuitBreakerListener} に通知する。
+ * </p>
+ * <p>
+ * このクラスの {@link #getType()} は、識別子 {@code "circuitBreaker"} を返す。<br>
+ * 設定したクライアントの初期化と破棄は、このクラスの {@link #initialize()} と {@link #dispose()} で行う。
+ * このため、設定したクライアントを初期化対象のリストに登録しないこと。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceCircuitBreakerRedisClient extends AbstractLettuceRedisClient implements Initializable {
+
+    /**
+     * サーキットブレーカーの状態。
+     */
+    public enum State {
+        /** 閉じている。コマンドを実行する。 */
+        CLOSED,
+        /** 開いている。コマンドを拒否する。 */
+        OPEN,
+        /** 半開き。試行として限られた数のコマンドを実行する。 */
+        HALF_OPEN
+    }
+
+    private LettuceRedisClient client;
+    private CircuitBreaker circuitBreaker;
+    private LettuceRedisAsyncClient asyncClient;
+
+    private int windowSize = 100;
+    private int minimumNumberOfCalls = 20;
+    private int failureRateThreshold = 50;
+    private int slowCallRateThreshold = 100;
+    private long slowCallDurationThreshold = 1000L;
+    private long openDuration = 10000L;
+    private int permittedCallsInHalfOpen = 5;
+    private List<LettuceCircuitBreakerListener> listenerList = Collections.emptyList();
+
+    /**
+     * 現在時刻（ナノ秒）を返す時計。
+     */
+    LongSupplier nanoClock = System::nanoTime;
+
+    /**
+     * コンストラクタ。
+     */
+    public LettuceCircuitBreakerRedisClient() {
+        super("circuitBreaker");
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        execute(() -> {
+            client.set(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public void psetex(byte[] key, long milliseconds, byte[] value) {
+        execute(() -> {
+            client.psetex(key, milliseconds, value);
+            return null;
+        });
+    }
+
+    @Override
+    public void pexpire(byte[] key, long milliseconds) {
+        execute(() -> {
+            client.pexpire(key, milliseconds);
+            return null;
+        });
+    }
+
+    @Override
+    public void pexpireat(byte[] key, long milliseconds) {
+        execute(() -> {
+            client.pexpireat(key, milliseconds);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean pexpireIfExists(byte[] key, long milliseconds) {
+        return execute(() -> client.pexpireIfExists(key, milliseconds));
+    }
+
+    @Override
+    public void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        execute(() -> {
+            client.setnxAndPexpireat(key, value, milliseconds);
+            return null;
+        });
+    }
+
+    @Override
+    public long pttl(byte[] key) {
+        return execute(() -> client.pttl(key));
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return execute(() -> client.get(key));
+    }
+
+    @Override
+    public void del(byte[] key) {
+        execute(() -> {
+            client.del(key);
+            return null;
+        });
+    }
+
+    @Override
+    public void unlink(byte[] key) {
+        execute(() -> {
+            client.unlink(key);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, byte[]> hgetall(byte[] key) {
+        return execute(() -> client.hgetall(key));
+    }
+
+    @Override
+    public boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        return execute(() -> client.hupdate(key, fields, deletedFields, milliseconds));
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        return execute(() -> client.exists(key));
+    }
+
+    @Override
+    public void trackInvalidation(String prefix, LettuceKeyInvalidationListener listener) {
+        client.trackInvalidation(prefix, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 返した非同期 API で実行したコマンドにも、サーキットブレーカーを適用する。
+     * </p>
+     */
+    @Override
+    public LettuceRedisAsyncClient async() {
+        return asyncClient;
+    }
+
+    /**
+     * サーキットブレーカーの現在の状態を取得する。
+     * @return サーキットブレーカーの現在の状態
+     */
+    public State getState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * サーキットブレーカーの許可を得てから、コマンドを実行する。
+     * <p>
+     * 得た許可を返さないまま残さないように、 {@link Error} が発生した場合も結果を記録する。
+     * </p>
+     * @param command コマンドを実行する処理
+     * @param <T> コマンドの結果の型
+     * @return コマンドの結果
+     */
+    private <T> T execute(Supplier<T> command) {
+        long permission = circuitBreaker.acquirePermission();
+        long start = nanoClock.getAsLong();
+        Throwable failure = null;
+        try {
+            return command.get();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            circuitBreaker.onResult(permission, nanoClock.getAsLong() - start, failure != null && isFailure(failure));
+        }
+    }
+
+    /**
+     * サーキットブレーカーの許可を得てから、非同期 API でコマンドを実行する。
+     * <p>
+     * コマンドの送信で {@link Error} が発生した場合も結果を記録する。
+     * </p>
+     * @param command コマンドを実行する処理
+     * @param <T> コマンドの結果の型
+     * @return コマンドの結果
+     */
+    private <T> CompletionStage<T> executeAsync(Supplier<CompletionStage<T>> command) {
+        long permission = circuitBreaker.acquirePermission();
+        long start = nanoClock.getAsLong();
+        CompletionStage<T> stage;
+        try {
+            stage = command.get();
+        } catch (Throwable e) {
+            circuitBreaker.onResult(permission, nanoClock.getAsLong() - start, isFailure(e));
+            throw e;
+        }
+        return stage.whenComplete((result, throwable) ->
+                circuitBreaker.onResult(permission, nanoClock.getAsLong() - start, throwable != null && isFailure(throwable)));
+    }
+
+    /**
+     * 例外を、サーキットブレーカーの失敗として数えるかどうか判定する。
+     * <p>
+     * Redis がエラーを応答した場合（{@link RedisCommandExecutionException}）は、
+     * Redis がコマンドを処理できない状態を表す {@code LOADING} と {@code BUSY} だけを失敗として数える。<br>
+     * {@link RedisException} でない例外（アプリケーションの例外や {@link Error}）は、 Redis の状態を表さないため失敗として数えない。
+     * </p>
+     * @param throwable コマンドの実行で発生した例外
+     * @return 失敗として数える場合は {@code true}
+     */
+    private static boolean isFailure(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        if (cause instanceof RedisCommandExecutionException) {
+            return cause instanceof RedisLoadingException || cause instanceof RedisBusyException;
+        }
+        return cause instanceof RedisException;
+    }
+
+    @Override
+    public void initialize() {
+        circuitBreaker = new CircuitBreaker(windowSize, minimumNumberOfCalls, failureRateThreshold, slowCallRateThreshold,
+                slowCallDurationThreshold, openDuration, permittedCallsInHalfOpen, listenerList, nanoClock);
+        if (client instanceof Initializable) {
+            ((Initializable) client).initialize();
+        }
+        asyncClient = new CircuitBreakerAsyncClient(client.async());
+    }
+
+    @Override
+    public void dispose() {
+        client.dispose();
+    }
+
+    /**
+     * コマンドを実行するクライアントを設定する。
+     * @param client コマンドを実行するクライアント
+     */
+    public void setClient(LettuceRedisClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 結果を保持するコマンドの数を設定する。
+     * <p>
+     * 失敗したコマンドと遅いコマンドの割合は、直近のこの数のコマンドから求める。デフォルトは {@code 100}。
+     * </p>
+     * @param windowSize 結果を保持するコマンドの数
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be greater than 0. windowSize=" + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * 割合を判定するために必要なコマンドの数を設定する。
+     * <p>
+     * 結果を保持しているコマンドがこの数に満たない間は、サーキットブレーカーを開かない。デフォルトは {@code 20}。<br>
+     * {@link #setWindowSize(int)} 以下の値を設定すること。大きい値を設定した場合は、 {@link #initialize()} で例外を送出する。
+     * </p>
+     * @param minimumNumberOfCalls 割合を判定するために必要なコマンドの数
+     */
+    public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        if (minimumNumberOfCalls <= 0) {
+            throw new IllegalArgumentException(
+                    "minimumNumberOfCalls must be greater than 0. minimumNumberOfCalls=" + minimumNumberOfCalls);
+        }
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+    }
+
+    /**
+     * サーキットブレーカーを開く、失敗したコマンドの割合を設定する。
+     * <p>
+     * デフォルトは {@code 50}（%）。
+     * </p>
+     * @param failureRateThreshold 失敗したコマンドの割合の閾値（%）
+     */
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        if (failureRateThreshold <= 0 || 100 < failureRateThreshold) {
+            throw new IllegalArgumentException(
+                    "failureRateThreshold must be between 1 and 100. failureRateThreshold=" + failureRateThreshold);
+        }
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * サーキットブレーカーを開く、遅いコマンドの割合を設定する。
+     * <p>
+     * デフォルトは {@code 100}（%）で、この場合は直近のすべてのコマンドが遅い場合に開く。
+     * </p>
+     * @param slowCallRateThreshold 遅いコマンドの割合の閾値（%）
+     */
+    public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+        if (slowCallRateThreshold <= 0 || 100 < slowCallRateThreshold) {
+            throw new IllegalArgumentException(
+                    "slowCallRateThreshold must be between 1 and 100. slowCallRateThreshold=" + slowCallRateThreshold);
+        }
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * 遅いコマンドとみなす実行時間を設定する。
+     * <p>
+     * デフォルトは {@code 1000} ミリ秒。
+     * </p>
+     * @param slowCallDurationThreshold 遅いコマンドとみなす実行時間（ミリ秒）
+     */
+    public void setSlowCallDurationThreshold(long slowCallDurationThreshold) {
+        if (slowCallDurationThreshold <= 0L) {
+            throw new IllegalArgumentException(
+                    "slowCallDurationThreshold must be greater than 0. slowCallDurationThreshold=" + slowCallDurationThreshold);
+        }
+        this.slowCallDurationThreshold = slowCallDurationThreshold;
+    }
+
+    /**
+     * サーキットブレーカーを開いてから、試行を始めるまでの時間を設定する。
+     * <p>
+     * デフォルトは {@code 10000} ミリ秒。
+     * </p>
+     * @param openDuration サーキットブレーカーを開いておく時間（ミリ秒）
+     */
+    public void setOpenDuration(long openDuration) {
+        if (openDuration <= 0L) {
+            throw new IllegalArgumentException("openDuration must be greater than 0. openDuration=" + openDuration);
+        }
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * 半開きの状態で、試行として実行するコマンドの数を設定する。
+     * <p>
+     * デフォルトは {@code 5}。
+     * </p>
+     * @param permittedCallsInHalfOpen 試行として実行するコマンドの数
+     */
+    public void setPermittedCallsInHalfOpen(int permittedCallsInHalfOpen) {
+        if (permittedCallsInHalfOpen <= 0) {
+            throw new IllegalArgumentException(
+                    "permittedCallsInHalfOpen must be greater than 0. permittedCallsInHalfOpen=" + permittedCallsInHalfOpen);
+        }
+        this.permittedCallsInHalfOpen = permittedCallsInHalfOpen;
+    }
+
+    /**
+     * サーキットブレーカーの状態の変化を通知するリスナーのリストを設定する。
+     * @param listenerList {@link LettuceCircuitBreakerListener} のリスト
+     */
+    public void setListenerList(List<LettuceCircuitBreakerListener> listenerList) {
+        this.listenerList = listenerList;
+    }
+
+    /**
+     * 設定したクライアントの非同期 API に、サーキットブレーカーを適用する {@link LettuceRedisAsyncClient} 実装クラス。
+     */
+    private class CircuitBreakerAsyncClient implements LettuceRedisAsyncClient {
+
+        private final LettuceRedisAsyncClient delegate;
+
+        /**
+         * コンストラクタ。
+         * @param delegate 設定したクライアントの非同期 API
+         */
+        CircuitBreakerAsyncClient(LettuceRedisAsyncClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletionStage<Void> set(String key, byte[] value) {
+            return executeAsync(() -> delegate.set(key, value));
+        }
+
+        @Override
+        public CompletionStage<Void> set(byte[] key, byte[] value) {
+            return executeAsync(() -> delegate.set(key, value));
+        }
+
+        @Override
+        public CompletionStage<Void> psetex(String key, long milliseconds, byte[] value) {
+            return executeAsync(() -> delegate.psetex(key, milliseconds, value));
+        }
+
+        @Override
+        public CompletionStage<Void> psetex(byte[] key, long milliseconds, byte[] value) {
+            return executeAsync(() -> delegate.psetex(key, milliseconds, value));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpire(String key, long milliseconds) {
+            return executeAsync(() -> delegate.pexpire(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpire(byte[] key, long milliseconds) {
+            return executeAsync(() -> delegate.pexpire(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpireat(String key, long milliseconds) {
+            return executeAsync(() -> delegate.pexpireat(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> pexpireat(byte[] key, long milliseconds) {
+            return executeAsync(() -> delegate.pexpireat(key, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> setnxAndPexpireat(String key, byte[] value, long milliseconds) {
+            return executeAsync(() -> delegate.setnxAndPexpireat(key, value, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Void> setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+            return executeAsync(() -> delegate.setnxAndPexpireat(key, value, milliseconds));
+        }
+
+        @Override
+        public CompletionStage<Long> pttl(String key) {
+            return executeAsync(() -> delegate.pttl(key));
+        }
+
+        @Override
+        public CompletionStage<Long> pttl(byte[] key) {
+            return executeAsync(() -> delegate.pttl(key));
+        }
+
+        @Override
+        public CompletionStage<byte[]> get(String key) {
+            return executeAsync(() -> delegate.get(key));
+        }
+
+        @Override
+        public CompletionStage<byte[]> get(byte[] key) {
+            return executeAsync(() -> delegate.get(key));
+        }
+
+        @Override
+        public CompletionStage<Void> del(String key) {
+            return executeAsync(() -> delegate.del(key));
+        }
+
+        @Override
+        public CompletionStage<Void> del(byte[] key) {
+            return executeAsync(() -> delegate.del(key));
+        }
+
+        @Override
+        public CompletionStage<Void> unlink(String key) {
+            return executeAsync(() -> delegate.unlink(key));
+        }
+
+        @Override
+        public CompletionStage<Void> unlink(byte[] key) {
+            return executeAsync(() -> delegate.unlink(key));
+        }
+
+        @Override
+        public CompletionStage<Boolean> exists(String key) {
+            return executeAsync(() -> delegate.exists(key));
+        }
+
+        @Override
+        public CompletionStage<Boolean> exists(byte[] key) {
+            return executeAsync(() -> delegate.exists(key));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ClientOptions.DisconnectedBehavior;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import nablarch.core.util.annotation.Published;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Lettuce のクライアントに設定する {@link ClientOptions} を定義するクラス。
+ * <p>
+ * Lettuce は、デフォルトでは Redis との接続が切れている間のコマンドを上限なくキューに溜め、再接続後に送信する。
+ * マスターのフェイルオーバー中にサイズの大きなセッションの書き込みが溜まると、ヒープを圧迫する。
+ * このクラスで {@link #setRequestQueueSize(int)} や {@link #setDisconnectedBehavior(String)} を設定し、
+ * {@link AbstractLettuceRedisClient#setClientOptions(LettuceClientOptions)} で各クライアントに設定することで、
+ * 溜めるコマンドの数を制限したり、接続が切れている間のコマンドをすぐに失敗させたりできる。
+ * </p>
+ * <p>
+ * 設定しなかった項目は、 Lettuce のクライアントに設定されている値を引き継ぐ。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceClientOptions {
+
+    private Integer requestQueueSize;
+    private DisconnectedBehavior disconnectedBehavior;
+    private Boolean autoReconnect;
+    private Long commandTimeout;
+    private Long connectTimeout;
+
+    /**
+     * 設定された項目を {@link ClientOptions} のビルダーに反映する。
+     * @param current Lettuce のクライアントに設定されている {@link ClientOptions}
+     * @param builder {@code current} から生成した {@link ClientOptions} のビルダー
+     */
+    void apply(ClientOptions current, ClientOptions.Builder builder) {
+        if (requestQueueSize != null) {
+            builder.requestQueueSize(requestQueueSize);
+        }
+        if (disconnectedBehavior != null) {
+            builder.disconnectedBehavior(disconnectedBehavior);
+        }
+        if (autoReconnect != null) {
+            builder.autoReconnect(autoReconnect);
+        }
+        if (commandTimeout != null) {
+            builder.timeoutOptions(TimeoutOptions.enabled(Duration.ofMillis(commandTimeout)));
+        }
+        if (connectTimeout != null) {
+            SocketOptions socketOptions = current.getSocketOptions().mutate()
+                    .connectTimeout(Duration.ofMillis(connectTimeout))
+                    .build();
+            builder.socketOptions(socketOptions);
+        }
+    }
+
+    /**
+     * 送信を待つコマンドを溜めておくキューの大きさを設定する。
+     * <p>
+     * キューが一杯の場合、コマンドはすぐに失敗する。
+     * 設定しない場合は、 Lettuce のデフォルト（{@link Integer#MAX_VALUE}）に従う。
+     * </p>
+     * @param requestQueueSize キューの大きさ
+     */
+    public void setRequestQueueSize(int requestQueueSize) {
+        if (requestQueueSize <= 0) {
+            throw new IllegalArgumentException("requestQueueSize must be greater than 0. requestQueueSize=" + requestQueueSize);
+        }
+        this.requestQueueSize = requestQueueSize;
+    }
+
+    /**
+     * Redis との接続が切れている間に実行されたコマンドの扱いを設定する。
+     * <p>
+     * {@link DisconnectedBehavior} の名前（{@code DEFAULT}、{@code ACCEPT_COMMANDS}、{@code REJECT_COMMANDS}）を、大文字小文字を区別せずに指定する。
+     * {@code REJECT_COMMANDS} を指定すると、接続が切れている間のコマンドはキューに溜めずにすぐに失敗する。<br>
+     * 設定しない場合は、 Lettuce のデフォルト（{@code DEFAULT}、自動再接続が有効ならキューに溜める）に従う。
+     * </p>
+     * @param disconnectedBehavior 接続が切れている間のコマンドの扱い
+     */
+    public void setDisconnectedBehavior(String disconnectedBehavior) {
+        try {
+            this.disconnectedBehavior = DisconnectedBehavior.valueOf(disconnectedBehavior.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Unknown disconnected behavior. disconnectedBehavior=" + disconnectedBehavior, e);
+        }
+    }
+
+    /**
+     * Redis との接続が切れたときに、自動的に再接続するかどうかを設定する。
+     * <p>
+     * 設定しない場合は、 Lettuce のデフォルト（{@code true}）に従う。
+     * </p>
+     * @param autoReconnect 自動的に再接続する場合は {@code true}
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * コマンドのタイムアウトを設定する。
+     * <p>
+     * キューに溜まっている時間も含めて、コマンドが完了するまでの時間を制限する。
+     * 設定しない場合は、接続する URI のタイムアウト（デフォルトは 60 秒）に従う。
+     * </p>
+     * @param commandTimeout コマンドのタイムアウト（ミリ秒）
+     */
+    public void setCommandTimeout(long commandTimeout) {
+        if (commandTimeout <= 0L) {
+            throw new IllegalArgumentException("commandTimeout must be greater than 0. commandTimeout=" + commandTimeout);
+        }
+        this.commandTimeout = commandTimeout;
+    }
+
+    /**
+     * Redis に接続するときのタイムアウトを設定する。
+     * <p>
+     * 設定しない場合は、 Lettuce のデフォルト（10 秒）に従う。
+     * </p>
+     * @param connectTimeout 接続のタイムアウト（ミリ秒）
+     */
+    public void setConnectTimeout(long connectTimeout) {
+        if (connectTimeout <= 0L) {
+            throw new IllegalArgumentException("connectTimeout must be greater than 0. connectTimeout=" + connectTimeout);
+        }
+        this.connectTimeout = connectTimeout;
+    }
+}
@@ -0,0 +1,121 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.lettuce.core.resource.EpollProvider;
+import nablarch.core.repository.disposal.Disposable;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 複数の {@link LettuceRedisClient} で共有する Lettuce の {@link ClientResources} を提供するクラス。
+ * <p>
+ * {@link ClientResources} は、 Netty のイベントループや計算用のスレッドプールを保持している。
+ * Lettuce のクライアントごとに生成すると、それぞれが CPU の数に応じたスレッドを起動するため、
+ * このクラスで生成した {@link ClientResources} を
+ * {@link AbstractLettuceRedisClient#setClientResources(LettuceClientResources)} で各クライアントに設定して共有する。
+ * </p>
+ * <p>
+ * クラスパスに {@code netty-transport-native-epoll} が存在する場合、 Lettuce は自動的に epoll によるネイティブのトランスポートを使用する。
+ * 使用されるかどうかは {@link #isEpollAvailable()} で確認できる。
+ * </p>
+ * <p>
+ * 共有した {@link ClientResources} のイベントバスも、共有している全てのクライアントで共有される。
+ * このため、 {@link LettuceClusterRedisClient#getMovedRedirectionCount()} などのイベントバスから数える値は、
+ * クライアントごとではなく、 {@link ClientResources} ごとの値になる。
+ * </p>
+ * <p>
+ * 共有した {@link ClientResources} は、各クライアントの破棄では停止されず、このクラスの {@link #dispose()} で停止する。
+ * このため、破棄対象のリストには、このクラスを各クライアントよりも後に登録すること。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceClientResources implements Initializable, Disposable {
+
+    private Integer ioThreadPoolSize;
+    private Integer computationThreadPoolSize;
+    private ClientResources clientResources;
+
+    /**
+     * 共有する {@link ClientResources} を取得する。
+     * <p>
+     * 初めて呼び出されたときに、 {@link #createClientResources()} で生成する。
+     * </p>
+     * @return 共有する {@link ClientResources}
+     */
+    public synchronized ClientResources getClientResources() {
+        if (clientResources == null) {
+            clientResources = createClientResources();
+        }
+        return clientResources;
+    }
+
+    /**
+     * {@link ClientResources} のインスタンスを生成する。
+     * <p>
+     * 設定を任意にカスタマイズしたい場合は、このクラスを継承したサブクラスを作り、このメソッドをオーバーライドすること。
+     * </p>
+     * @return 生成された {@link ClientResources}
+     */
+    protected ClientResources createClientResources() {
+        DefaultClientResources.Builder builder = DefaultClientResources.builder();
+        if (ioThreadPoolSize != null) {
+            builder.ioThreadPoolSize(ioThreadPoolSize);
+        }
+        if (computationThreadPoolSize != null) {
+            builder.computationThreadPoolSize(computationThreadPoolSize);
+        }
+        return builder.build();
+    }
+
+    /**
+     * epoll によるネイティブのトランスポートが使用できるかどうかを取得する。
+     * @return 使用できる場合は {@code true}
+     */
+    public boolean isEpollAvailable() {
+        return EpollProvider.isAvailable();
+    }
+
+    @Override
+    public void initialize() {
+        getClientResources();
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (clientResources != null) {
+            clientResources.shutdown().awaitUninterruptibly();
+            clientResources = null;
+        }
+    }
+
+    /**
+     * I/O のスレッドの数を設定する。
+     * <p>
+     * 設定しない場合は、 Lettuce のデフォルト（CPU の数、ただし最小 2）に従う。
+     * </p>
+     * @param ioThreadPoolSize I/O のスレッドの数
+     */
+    public void setIoThreadPoolSize(int ioThreadPoolSize) {
+        if (ioThreadPoolSize <= 0) {
+            throw new IllegalArgumentException("ioThreadPoolSize must be greater than 0. ioThreadPoolSize=" + ioThreadPoolSize);
+        }
+        this.ioThreadPoolSize = ioThreadPoolSize;
+    }
+
+    /**
+     * 計算用のスレッドの数を設定する。
+     * <p>
+     * 計算用のスレッドは、イベントの発行やタイムアウトの処理などに使用される。
+     * 設定しない場合は、 Lettuce のデフォルト（CPU の数、ただし最小 2）に従う。
+     * </p>
+     * @param computationThreadPoolSize 計算用のスレッドの数
+     */
+    public void setComputationThreadPoolSize(int computationThreadPoolSize) {
+        if (computationThreadPoolSize <= 0) {
+            throw new IllegalArgumentException(
+                    "computationThreadPoolSize must be greater than 0. computationThreadPoolSize=" + computationThreadPoolSize);
+        }
+        this.computationThreadPoolSize = computationThreadPoolSize;
+    }
+}
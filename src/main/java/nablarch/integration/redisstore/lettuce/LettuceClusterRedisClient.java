@@ -1,29 +1,101 @@
 package nablarch.integration.redisstore.lettuce;
 
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisConnectionStateListener;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions.RefreshTrigger;
 import io.lettuce.core.cluster.RedisClusterClient;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.push.RedisClusterPushListener;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.cluster.event.AskRedirectionEvent;
+import io.lettuce.core.cluster.event.ClusterTopologyChangedEvent;
+import io.lettuce.core.cluster.event.MovedRedirectionEvent;
+import io.lettuce.core.cluster.models.partitions.Partitions;
 import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.event.Event;
+import io.lettuce.core.resource.ClientResources;
 import nablarch.core.repository.initialization.Initializable;
 import nablarch.core.util.annotation.Published;
+import reactor.core.Disposable;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Cluster 構成の Redis に接続するための {@link LettuceRedisClient} 実装クラス。
  * <p>
  * このクラスの {@link #getType()} は、識別子 {@code "cluster"} を返す。
  * </p>
+ * <p>
+ * フェイルオーバーやリシャーディングの後、 Lettuce が保持しているクラスタのトポロジーが古いままだと、
+ * {@code MOVED} や {@code ASK} のリダイレクトが多発する。
+ * {@link #setPeriodicRefreshInterval(long)} や {@link #setAdaptiveRefreshTriggers(List)} を設定すると、
+ * トポロジーを定期的に、またはリダイレクトなどを契機に更新できる。<br>
+ * リダイレクトの回数とトポロジーの更新にかかった時間は、このクラスの {@code get} メソッドで取得できる。
+ * </p>
+ * <p>
+ * {@link #setReadFrom(String)} を設定すると、読み込みのコマンド（{@code GET}、{@code EXISTS}、{@code PTTL}、{@code HGETALL}）を
+ * 各スロットのレプリカで実行できる。<br>
+ * レプリカへの複製は非同期に行われるため、 {@link #setReadYourWritesWindow(long)} を設定すると、
+ * 更新してから指定した期間は、そのキーのスロットの読み込みをマスターで実行する。
+ * </p>
+ * <p>
+ * {@link #setReadFrom(String)} を設定した状態で {@link #trackInvalidation(String, LettuceKeyInvalidationListener)} を呼び出した場合、
+ * 追跡するキーの読み込みは常にマスターで実行する。<br>
+ * キーの変更の追跡はマスターで行うため、複製が遅れているレプリカから読み込んだ古い値をニアキャッシュに保持すると、
+ * その後に変更の通知が届かず、古い値を返し続けるおそれがあるためである。
+ * </p>
  *
  * @author Tanaka Tomoyuki
  */
 @Published(tag = "architect")
-public class LettuceClusterRedisClient extends AbstractLettuceRedisClient implements Initializable {
+public class LettuceClusterRedisClient extends AbstractLettuceRedisClient
+        implements LettuceBatchableRedisClient, Initializable {
     private RedisClusterClient client;
     private StatefulRedisClusterConnection<byte[], byte[]> connection;
     private RedisAdvancedClusterCommands<byte[], byte[]> commands;
+    private volatile StatefulRedisClusterConnection<byte[], byte[]> masterConnection;
+    private volatile RedisAdvancedClusterCommands<byte[], byte[]> masterCommands;
+    private RecentWriteTracker recentWriteTracker;
+    private ReadFrom readFrom;
+    private long readYourWritesWindow;
+    private LettuceRedisAsyncClient asyncClient;
+    private final List<StatefulRedisClusterConnection<byte[], byte[]>> trackingConnections = new CopyOnWriteArrayList<>();
+    private final List<Disposable> trackingSubscriptions = new CopyOnWriteArrayList<>();
+    private Disposable redirectionSubscription;
+    private final List<byte[]> trackedPrefixes = new CopyOnWriteArrayList<>();
+    private boolean autoFlushCommands = true;
+
+    private Long periodicRefreshInterval;
+    private Set<RefreshTrigger> adaptiveRefreshTriggers;
+    private Long adaptiveRefreshTimeout;
+    private Boolean dynamicRefreshSources;
+
+    private final LongAdder movedRedirectionCount = new LongAdder();
+    private final LongAdder askRedirectionCount = new LongAdder();
+    private final LongAdder topologyRefreshCount = new LongAdder();
+    private final AtomicLong lastTopologyRefreshDuration = new AtomicLong();
+    private final AtomicLong maxTopologyRefreshDuration = new AtomicLong();
 
     /**
      * 接続するRedisクラスタの、各ノードURIのリスト。
@@ -38,38 +110,223 @@ public class LettuceClusterRedisClient extends AbstractLettuceRedisClient implem
     }
 
     @Override
-    public void set(String key, byte[] value) {
-        commands.set(encodeKey(key), value);
+    public void set(byte[] key, byte[] value) {
+        limitWrite(PendingWriteLimiter.sizeOf(key, value), () -> commands.set(key, value));
+        recordWrite(key);
+    }
+
+    @Override
+    public void psetex(byte[] key, long milliseconds, byte[] value) {
+        limitWrite(PendingWriteLimiter.sizeOf(key, value), () -> commands.psetex(key, milliseconds, value));
+        recordWrite(key);
     }
 
     @Override
-    public void pexpire(String key, long milliseconds) {
-        commands.pexpire(encodeKey(key), milliseconds);
+    public void pexpire(byte[] key, long milliseconds) {
+        commands.pexpire(key, milliseconds);
+        recordWrite(key);
     }
 
     @Override
-    public void pexpireat(String key, long milliseconds) {
-        commands.pexpireat(encodeKey(key), milliseconds);
+    public boolean pexpireIfExists(byte[] key, long milliseconds) {
+        boolean expired = commands.pexpire(key, milliseconds);
+        recordWrite(key);
+        return expired;
     }
 
     @Override
-    public long pttl(String key) {
-        return commands.pttl(encodeKey(key));
+    public void pexpireat(byte[] key, long milliseconds) {
+        commands.pexpireat(key, milliseconds);
+        recordWrite(key);
+    }
+
+    @Override
+    public void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        byte[][] keys = {key};
+        limitWrite(PendingWriteLimiter.sizeOf(key, value),
+                () -> commands.eval(SETNX_AND_PEXPIREAT_SCRIPT, ScriptOutputType.INTEGER, keys, value, encodeNumber(milliseconds)));
+        recordWrite(key);
+    }
+
+    @Override
+    public long pttl(byte[] key) {
+        return readCommands(key).pttl(key);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return readCommands(key).get(key);
+    }
+
+    @Override
+    public void del(byte[] key) {
+        commands.del(key);
+        recordWrite(key);
+    }
+
+    @Override
+    public void unlink(byte[] key) {
+        commands.unlink(key);
+        recordWrite(key);
+    }
+
+    @Override
+    public Map<String, byte[]> hgetall(byte[] key) {
+        return decodeFields(readCommands(key).hgetall(key));
+    }
+
+    @Override
+    public boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        byte[][] keys = {key};
+        byte[][] arguments = hupdateArguments(fields, deletedFields, milliseconds);
+        boolean updated = limitWrite(PendingWriteLimiter.sizeOf(key) + PendingWriteLimiter.sizeOf(arguments),
+                () -> commands.<Long>eval(HUPDATE_SCRIPT, ScriptOutputType.INTEGER, keys, arguments)) == 1L;
+        recordWrite(key);
+        return updated;
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        return readCommands(key).exists(key) == 1L;
+    }
+
+    /**
+     * キーの読み込みに使用するコマンドを取得する。
+     * @param key キー
+     * @return キーをマスターで読み込む場合はマスターで実行するコマンド、それ以外の場合は {@link #setReadFrom(String)} に従って実行するコマンド
+     */
+    private RedisAdvancedClusterCommands<byte[], byte[]> readCommands(byte[] key) {
+        return readsFromMaster(key) ? masterCommands : commands;
+    }
+
+    /**
+     * キーの読み込みをマスターで実行するかどうかを判定する。
+     * @param key キー
+     * @return キーのスロットが最近更新された場合、または変更を追跡しているキーの場合は {@code true}
+     */
+    private boolean readsFromMaster(byte[] key) {
+        if (masterConnection == null) {
+            return false;
+        }
+        if (recentWriteTracker != null && recentWriteTracker.isRecentlyWritten(key)) {
+            return true;
+        }
+        for (byte[] prefix : trackedPrefixes) {
+            if (key.length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * マスターで読み込むための接続を生成する。
+     * <p>
+     * 既に生成している場合は何もしない。
+     * </p>
+     */
+    private synchronized void createMasterConnectionIfAbsent() {
+        if (masterConnection != null) {
+            return;
+        }
+        StatefulRedisClusterConnection<byte[], byte[]> newConnection = createConnection(client);
+        newConnection.setReadFrom(ReadFrom.UPSTREAM);
+        newConnection.setAutoFlushCommands(autoFlushCommands);
+        masterCommands = newConnection.sync();
+        masterConnection = newConnection;
+    }
+
+    /**
+     * キーが更新されたことを記録する。
+     * @param key キー
+     */
+    private void recordWrite(byte[] key) {
+        if (recentWriteTracker != null) {
+            recentWriteTracker.recordWrite(key);
+        }
     }
 
     @Override
-    public byte[] get(String key) {
-        return commands.get(encodeKey(key));
+    public synchronized void setAutoFlushCommands(boolean autoFlush) {
+        autoFlushCommands = autoFlush;
+        connection.setAutoFlushCommands(autoFlush);
+        if (masterConnection != null) {
+            masterConnection.setAutoFlushCommands(autoFlush);
+        }
     }
 
     @Override
-    public void del(String key) {
-        commands.del(encodeKey(key));
+    public void flushCommands() {
+        connection.flushCommands();
+        if (masterConnection != null) {
+            masterConnection.flushCommands();
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * クラスタを構成する全てのマスターノードで追跡を有効にする。<br>
+     * クラスタのトポロジーが変化した場合は、その時点のマスターノードで追跡を有効にし直す。<br>
+     * {@link ClientResources} を共有している場合でも、他のクラスタのトポロジーの変化では有効にし直さない。
+     * </p>
+     * <p>
+     * {@link #setReadFrom(String)} を設定している場合は、追跡するキーの読み込みをマスターで実行するようにする。
+     * マスターで読み込むための接続がない場合は、 {@link #createConnection(RedisClusterClient)} で生成する。
+     * </p>
+     */
     @Override
-    public boolean exists(String key) {
-        return commands.exists(encodeKey(key)) == 1L;
+    public void trackInvalidation(String prefix, LettuceKeyInvalidationListener listener) {
+        if (readFrom != null) {
+            createMasterConnectionIfAbsent();
+            trackedPrefixes.add(encodeKey(prefix));
+        }
+
+        StatefulRedisClusterConnection<byte[], byte[]> trackingConnection = createTrackingConnection(client);
+        trackingConnections.add(trackingConnection);
+
+        TrackingArgs trackingArgs = KeyInvalidationTracker.trackingArgs(prefix);
+        KeyInvalidationTracker tracker = new KeyInvalidationTracker(listener,
+                () -> enableTrackingOnUpstreams(trackingConnection, trackingArgs));
+        trackingConnection.addListener((RedisClusterPushListener) tracker);
+        trackingConnection.addListener((RedisConnectionStateListener) tracker);
+        trackingSubscriptions.add(client.getResources().eventBus().get()
+                .filter(ClusterTopologyChangedEvent.class::isInstance)
+                .filter(event -> isTopologyOf((ClusterTopologyChangedEvent) event, trackingConnection))
+                .subscribe(event -> tracker.start()));
+        tracker.start();
+    }
+
+    /**
+     * トポロジーの変化が、接続しているクラスタのものかどうかを判定する。
+     * <p>
+     * {@link ClientResources} を共有している場合、イベントバスには他のクラスタのイベントも発行されるため、
+     * 変化の前後のノードに、接続しているクラスタのノードが含まれるかどうかで判定する。
+     * </p>
+     * @param event トポロジーの変化のイベント
+     * @param connection 接続
+     * @return 接続しているクラスタのトポロジーの変化の場合は {@code true}
+     */
+    private static boolean isTopologyOf(ClusterTopologyChangedEvent event, StatefulRedisClusterConnection<?, ?> connection) {
+        Partitions partitions = connection.getPartitions();
+        return Stream.concat(event.before().stream(), event.after().stream())
+                .anyMatch(node -> partitions.getPartitionByNodeId(node.getNodeId()) != null);
+    }
+
+    /**
+     * 全てのマスターノードで、キーの追跡を有効にする。
+     * @param trackingConnection 追跡に使用する接続
+     * @param trackingArgs {@code CLIENT TRACKING} の引数
+     * @return 全てのマスターノードで追跡の有効化が完了したときに完了する {@link CompletionStage}
+     */
+    private CompletionStage<Void> enableTrackingOnUpstreams(StatefulRedisClusterConnection<byte[], byte[]> trackingConnection,
+                                                           TrackingArgs trackingArgs) {
+        CompletableFuture<?>[] futures = trackingConnection.getPartitions().getPartitions().stream()
+                .filter(node -> node.getRole().isUpstream())
+                .map(node -> trackingConnection.getConnectionAsync(node.getNodeId())
+                        .thenCompose(nodeConnection -> KeyInvalidationTracker.enableTracking(nodeConnection.async(), trackingArgs)))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
     }
 
     /**
@@ -84,6 +341,161 @@ public class LettuceClusterRedisClient extends AbstractLettuceRedisClient implem
         this.uriList = uriList;
     }
 
+    /**
+     * 読み込みのコマンドを実行するノードを選択する方法を設定する。
+     * <p>
+     * {@code "master"}、{@code "masterPreferred"}、{@code "replica"}、{@code "replicaPreferred"}、
+     * {@code "nearest"}、{@code "any"} などの Lettuce の {@link ReadFrom} の名前を指定する。
+     * 指定できる名前については、 {@link ReadFrom#valueOf(String)} を参照。<br>
+     * ノードの選択は、キーのスロットを担当するマスターとそのレプリカの中から行われる。
+     * 設定しない場合、すべてのコマンドをマスターで実行する。
+     * </p>
+     * @param readFrom 読み込みのコマンドを実行するノードを選択する方法
+     */
+    public void setReadFrom(String readFrom) {
+        this.readFrom = ReadFrom.valueOf(readFrom);
+    }
+
+    /**
+     * キーを更新してから、そのキーのスロットの読み込みをマスターで実行する期間を設定する。
+     * <p>
+     * レプリカへの複製の遅延よりも長い期間を設定すること。
+     * デフォルトは {@code 0} で、この場合は更新直後でも {@link #setReadFrom(String)} の設定に従って読み込む。<br>
+     * 判定はハッシュスロット単位で行い、判定に使用するのは、このアプリケーションが行った更新のみとなる。
+     * </p>
+     * @param readYourWritesWindow キーを更新してからマスターで読み込む期間（ミリ秒）
+     */
+    public void setReadYourWritesWindow(long readYourWritesWindow) {
+        if (readYourWritesWindow < 0L) {
+            throw new IllegalArgumentException(
+                    "readYourWritesWindow must be greater than or equal to 0. readYourWritesWindow=" + readYourWritesWindow);
+        }
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    /**
+     * トポロジーを定期的に更新する間隔を設定する。
+     * <p>
+     * {@code 0} を設定した場合、定期的な更新は行わない。
+     * 設定しない場合は、 Lettuce のデフォルト（定期的な更新は行わない）に従う。
+     * </p>
+     * @param periodicRefreshInterval トポロジーを更新する間隔（ミリ秒）
+     */
+    public void setPeriodicRefreshInterval(long periodicRefreshInterval) {
+        if (periodicRefreshInterval < 0L) {
+            throw new IllegalArgumentException(
+                    "periodicRefreshInterval must be greater than or equal to 0. periodicRefreshInterval=" + periodicRefreshInterval);
+        }
+        this.periodicRefreshInterval = periodicRefreshInterval;
+    }
+
+    /**
+     * トポロジーを更新する契機とするイベントを設定する。
+     * <p>
+     * {@code MOVED_REDIRECT}、{@code ASK_REDIRECT}、{@code PERSISTENT_RECONNECTS}、{@code UNCOVERED_SLOT}、{@code UNKNOWN_NODE}
+     * のいずれか、またはすべてを表す {@code ALL} を指定する。
+     * 設定しない場合は、 Lettuce のデフォルト（イベントを契機とした更新は行わない）に従う。
+     * </p>
+     * @param adaptiveRefreshTriggers トポロジーを更新する契機とするイベントの名前のリスト
+     */
+    public void setAdaptiveRefreshTriggers(List<String> adaptiveRefreshTriggers) {
+        Set<RefreshTrigger> triggers = EnumSet.noneOf(RefreshTrigger.class);
+        for (String name : adaptiveRefreshTriggers) {
+            String normalized = name.trim().toUpperCase(Locale.ROOT);
+            if (normalized.equals("ALL")) {
+                triggers.addAll(EnumSet.allOf(RefreshTrigger.class));
+                continue;
+            }
+            try {
+                triggers.add(RefreshTrigger.valueOf(normalized));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown adaptive refresh trigger. adaptiveRefreshTrigger=" + name, e);
+            }
+        }
+        this.adaptiveRefreshTriggers = triggers;
+    }
+
+    /**
+     * イベントを契機としたトポロジーの更新を、再度行うまでの最小の間隔を設定する。
+     * <p>
+     * リダイレクトが多発したときに、トポロジーの更新が繰り返されることを防ぐ。
+     * 設定しない場合は、 Lettuce のデフォルト（30秒）に従う。
+     * </p>
+     * @param adaptiveRefreshTimeout イベントを契機としたトポロジーの更新の最小の間隔（ミリ秒）
+     */
+    public void setAdaptiveRefreshTimeout(long adaptiveRefreshTimeout) {
+        if (adaptiveRefreshTimeout < 0L) {
+            throw new IllegalArgumentException(
+                    "adaptiveRefreshTimeout must be greater than or equal to 0. adaptiveRefreshTimeout=" + adaptiveRefreshTimeout);
+        }
+        this.adaptiveRefreshTimeout = adaptiveRefreshTimeout;
+    }
+
+    /**
+     * トポロジーの取得元に、クラスタから発見したノードを含めるかどうかを設定する。
+     * <p>
+     * {@code false} を設定した場合、 {@link #setUriList(List)} で設定したノードだけからトポロジーを取得する。
+     * 設定しない場合は、 Lettuce のデフォルト（{@code true}）に従う。
+     * </p>
+     * @param dynamicRefreshSources 発見したノードをトポロジーの取得元に含める場合は {@code true}
+     */
+    public void setDynamicRefreshSources(boolean dynamicRefreshSources) {
+        this.dynamicRefreshSources = dynamicRefreshSources;
+    }
+
+    /**
+     * {@code MOVED} リダイレクトを受け取った回数を取得する。
+     * <p>
+     * リダイレクトは {@link ClientResources} のイベントバスから数えるが、イベントには送信元の接続の情報が含まれない。
+     * このため、 {@link #setClientResources(LettuceClientResources)} で {@link ClientResources} を共有している場合は、
+     * 共有している全てのクライアントが受け取った回数になる。
+     * </p>
+     * @return {@code MOVED} リダイレクトを受け取った回数
+     */
+    public long getMovedRedirectionCount() {
+        return movedRedirectionCount.sum();
+    }
+
+    /**
+     * {@code ASK} リダイレクトを受け取った回数を取得する。
+     * <p>
+     * {@link #getMovedRedirectionCount()} と同じく、 {@link ClientResources} を共有している場合は、
+     * 共有している全てのクライアントが受け取った回数になる。
+     * </p>
+     * @return {@code ASK} リダイレクトを受け取った回数
+     */
+    public long getAskRedirectionCount() {
+        return askRedirectionCount.sum();
+    }
+
+    /**
+     * トポロジーを更新した回数を取得する。
+     * <p>
+     * 更新に失敗した場合も回数に含める。<br>
+     * {@link #createClient()} をオーバーライドした場合、トポロジーの更新は記録されない。
+     * </p>
+     * @return トポロジーを更新した回数
+     */
+    public long getTopologyRefreshCount() {
+        return topologyRefreshCount.sum();
+    }
+
+    /**
+     * 最後にトポロジーを更新したときに、更新にかかった時間を取得する。
+     * @return トポロジーの更新にかかった時間（ミリ秒）
+     */
+    public long getLastTopologyRefreshDuration() {
+        return lastTopologyRefreshDuration.get();
+    }
+
+    /**
+     * トポロジーの更新にかかった時間の最大値を取得する。
+     * @return トポロジーの更新にかかった時間の最大値（ミリ秒）
+     */
+    public long getMaxTopologyRefreshDuration() {
+        return maxTopologyRefreshDuration.get();
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -92,21 +504,121 @@ public class LettuceClusterRedisClient extends AbstractLettuceRedisClient implem
      * これらのインスタンスの設定を任意にカスタマイズしたい場合は、このクラスを継承したサブクラスを作り、
      * それぞれの {@code create} メソッドをオーバーライドすること。
      * </p>
+     * <p>
+     * {@link #setReadFrom(String)} と {@link #setReadYourWritesWindow(long)} の両方を設定した場合は、
+     * 更新直後のキーを読み込むためのマスター専用の接続も {@link #createConnection(RedisClusterClient)} で生成する。
+     * この接続は、変更を追跡するキーの読み込みにも使用する。
+     * </p>
      */
     @Override
     public void initialize() {
         client = createClient();
+        applyClientOptions(client);
+        applyTopologyRefreshOptions(client);
+        redirectionSubscription = client.getResources().eventBus().get().subscribe(this::countRedirection);
         connection = createConnection(client);
+        if (readFrom != null) {
+            connection.setReadFrom(readFrom);
+        }
         commands = connection.sync();
+
+        if (readFrom != null && readYourWritesWindow > 0L) {
+            recentWriteTracker = new RecentWriteTracker(readYourWritesWindow);
+            createMasterConnectionIfAbsent();
+        }
+        asyncClient = new AsyncCommandsRedisClient(
+                key -> readsFromMaster(key) ? masterConnection.async() : connection.async(),
+                this::recordWrite, getPendingWriteLimiter(), null);
+    }
+
+    /**
+     * 設定されたトポロジーの更新方法を、 {@link RedisClusterClient} のオプションに反映する。
+     * <p>
+     * 設定されていない項目は、 {@link RedisClusterClient} に設定されている値を引き継ぐ。
+     * </p>
+     * @param client {@link RedisClusterClient}
+     */
+    private void applyTopologyRefreshOptions(RedisClusterClient client) {
+        if (periodicRefreshInterval == null && adaptiveRefreshTriggers == null
+                && adaptiveRefreshTimeout == null && dynamicRefreshSources == null) {
+            return;
+        }
+
+        ClientOptions options = client.getOptions();
+        ClusterClientOptions clusterOptions = options instanceof ClusterClientOptions
+                ? (ClusterClientOptions) options
+                : ClusterClientOptions.builder(options).build();
+        ClusterTopologyRefreshOptions current = clusterOptions.getTopologyRefreshOptions();
+
+        ClusterTopologyRefreshOptions.Builder builder = ClusterTopologyRefreshOptions.builder()
+                .enablePeriodicRefresh(current.isPeriodicRefreshEnabled())
+                .refreshPeriod(current.getRefreshPeriod())
+                .adaptiveRefreshTriggersTimeout(current.getAdaptiveRefreshTimeout())
+                .closeStaleConnections(current.isCloseStaleConnections())
+                .dynamicRefreshSources(current.useDynamicRefreshSources())
+                .refreshTriggersReconnectAttempts(current.getRefreshTriggersReconnectAttempts());
+
+        Set<RefreshTrigger> triggers = adaptiveRefreshTriggers != null ? adaptiveRefreshTriggers : current.getAdaptiveRefreshTriggers();
+        if (!triggers.isEmpty()) {
+            builder.enableAdaptiveRefreshTrigger(triggers.toArray(new RefreshTrigger[0]));
+        }
+        if (periodicRefreshInterval != null) {
+            if (periodicRefreshInterval > 0L) {
+                builder.enablePeriodicRefresh(Duration.ofMillis(periodicRefreshInterval));
+            } else {
+                builder.enablePeriodicRefresh(false);
+            }
+        }
+        if (adaptiveRefreshTimeout != null) {
+            builder.adaptiveRefreshTriggersTimeout(Duration.ofMillis(adaptiveRefreshTimeout));
+        }
+        if (dynamicRefreshSources != null) {
+            builder.dynamicRefreshSources(dynamicRefreshSources);
+        }
+
+        client.setOptions(clusterOptions.mutate().topologyRefreshOptions(builder.build()).build());
+    }
+
+    /**
+     * リダイレクトのイベントであれば、その回数を数える。
+     * @param event Lettuce のイベント
+     */
+    private void countRedirection(Event event) {
+        if (event instanceof MovedRedirectionEvent) {
+            movedRedirectionCount.increment();
+        } else if (event instanceof AskRedirectionEvent) {
+            askRedirectionCount.increment();
+        }
+    }
+
+    /**
+     * トポロジーの更新にかかった時間を記録する。
+     * @param durationNanos トポロジーの更新にかかった時間（ナノ秒）
+     */
+    private void recordTopologyRefresh(long durationNanos) {
+        long duration = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        topologyRefreshCount.increment();
+        lastTopologyRefreshDuration.set(duration);
+        maxTopologyRefreshDuration.accumulateAndGet(duration, Math::max);
     }
 
     /**
      * {@link RedisClusterClient} のインスタンスを生成する。
+     * <p>
+     * {@link #setClientResources(LettuceClientResources)} が設定されている場合は、共有する {@link ClientResources} を使用する。
+     * </p>
      * @return 生成された {@link RedisClusterClient}
      */
     protected RedisClusterClient createClient() {
         List<RedisURI> redisUriList = uriList.stream().map(RedisURI::create).collect(Collectors.toList());
-        return RedisClusterClient.create(redisUriList);
+        return new RedisClusterClient(getClientResources(), redisUriList) {
+            @Override
+            public CompletionStage<Void> refreshPartitionsAsync() {
+                long start = System.nanoTime();
+                return super.refreshPartitionsAsync()
+                        .whenComplete((result, throwable) -> recordTopologyRefresh(System.nanoTime() - start));
+            }
+        };
     }
 
     /**
@@ -118,8 +630,34 @@ public class LettuceClusterRedisClient extends AbstractLettuceRedisClient implem
         return client.connect(new ByteArrayCodec());
     }
 
+    /**
+     * キーの変更の追跡に使用する {@link StatefulRedisClusterConnection} のインスタンスを生成する。
+     * @param client {@link #createClient()} で生成された {@link RedisClusterClient} インスタンス
+     * @return 生成された {@link StatefulRedisClusterConnection}
+     */
+    protected StatefulRedisClusterConnection<byte[], byte[]> createTrackingConnection(RedisClusterClient client) {
+        return client.connect(new ByteArrayCodec());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このクラスは、 Lettuce の非同期 API を使ってコマンドを実行する。
+     * </p>
+     */
+    @Override
+    public LettuceRedisAsyncClient async() {
+        return asyncClient;
+    }
+
     @Override
     public void dispose() {
+        trackingSubscriptions.forEach(Disposable::dispose);
+        redirectionSubscription.dispose();
+        trackingConnections.forEach(StatefulRedisClusterConnection::close);
+        if (masterConnection != null) {
+            masterConnection.close();
+        }
         connection.close();
         client.shutdown();
     }
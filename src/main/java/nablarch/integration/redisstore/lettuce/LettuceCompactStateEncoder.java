@@ -0,0 +1,641 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+import nablarch.common.web.session.StateEncoder;
+import nablarch.core.util.annotation.Published;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * セッションの値を、型を示すタグを付けたコンパクトなバイナリ形式でエンコードする {@link StateEncoder} の実装クラス。
+ * <p>
+ * Java のシリアライズは、クラスの記述子を値ごとに出力するため、セッションの大半を占める文字列や数値、
+ * 小さな Bean でもサイズが大きくなり、エンコードとデコードにも時間がかかる。
+ * このクラスは、次の型をタグと値だけで出力する。
+ * </p>
+ * <ul>
+ *     <li>{@link String}、ラッパー型（{@link Boolean}、{@link Byte}、{@link Short}、{@link Integer}、{@link Long}、
+ *     {@link Float}、{@link Double}、{@link Character}）、{@code byte[]}</li>
+ *     <li>{@link BigDecimal}、{@link BigInteger}</li>
+ *     <li>{@link Date}、{@link LocalDate}、{@link LocalDateTime}、{@link Instant}</li>
+ *     <li>列挙型</li>
+ *     <li>{@link ArrayList}、{@link HashMap}、{@link LinkedHashMap}、{@link HashSet}、{@link LinkedHashSet}（要素もこのクラスでエンコードする）</li>
+ *     <li>Bean（public で引数のないコンストラクタを持ち、すべてのインスタンスフィールドに対応する getter と setter を持つクラス）</li>
+ * </ul>
+ * <p>
+ * サブクラスを含め、これ以外の型は Java のシリアライズでエンコードする。
+ * デコードしたときに元と同じクラスのインスタンスになるよう、型は完全に一致する場合だけ対象とする。
+ * </p>
+ * <p>
+ * 出力の先頭には形式のバージョンを付与する。
+ * また、 Java のシリアライズで出力されたバイト列（{@code JavaSerializeStateEncoder} でエンコードしたセッション）もデコードできるため、
+ * このクラスに切り替える前に保存されたセッションも読み込むことができる。
+ * </p>
+ * <p>
+ * {@link LettuceRedisStore#setStateEncoder(StateEncoder)} に設定して使用する。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceCompactStateEncoder implements StateEncoder, LettuceStreamStateDecoder {
+
+    /**
+     * このクラスの形式であることを示すマジックナンバー。
+     * <p>
+     * Java のシリアライズの出力は {@code 0xAC} から始まるため、区別できる。
+     * </p>
+     */
+    private static final int MAGIC = 0xC5;
+
+    /**
+     * 形式のバージョン。
+     */
+    private static final int VERSION = 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_FALSE = 3;
+    private static final int TAG_BYTE = 4;
+    private static final int TAG_SHORT = 5;
+    private static final int TAG_INTEGER = 6;
+    private static final int TAG_LONG = 7;
+    private static final int TAG_FLOAT = 8;
+    private static final int TAG_DOUBLE = 9;
+    private static final int TAG_CHARACTER = 10;
+    private static final int TAG_BYTE_ARRAY = 11;
+    private static final int TAG_BIG_DECIMAL = 12;
+    private static final int TAG_BIG_INTEGER = 13;
+    private static final int TAG_DATE = 14;
+    private static final int TAG_LOCAL_DATE = 15;
+    private static final int TAG_LOCAL_DATE_TIME = 16;
+    private static final int TAG_INSTANT = 17;
+    private static final int TAG_ENUM = 18;
+    private static final int TAG_ARRAY_LIST = 19;
+    private static final int TAG_HASH_MAP = 20;
+    private static final int TAG_LINKED_HASH_MAP = 21;
+    private static final int TAG_HASH_SET = 22;
+    private static final int TAG_LINKED_HASH_SET = 23;
+    private static final int TAG_BEAN = 24;
+    private static final int TAG_SERIALIZED = 25;
+
+    /**
+     * Bean としてエンコードするプロパティのキャッシュ。
+     * <p>
+     * Bean としてエンコードできないクラスは、空の {@link Optional} を保持する。
+     * </p>
+     */
+    private final ConcurrentMap<Class<?>, Optional<BeanProperties>> beanPropertiesCache = new ConcurrentHashMap<>();
+
+    @Override
+    public <T> byte[] encode(T value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.write(VERSION);
+            writeValue(out, value);
+            out.flush();
+        } catch (IOException e) {
+            throw new EncodeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] encoded, Class<T> type) {
+        return decode(new ByteArrayInputStream(encoded), type);
+    }
+
+    @Override
+    public <T> T decode(InputStream input, Class<T> type) {
+        InputStream markable = input.markSupported() ? input : new BufferedInputStream(input);
+        try {
+            markable.mark(1);
+            if (markable.read() != MAGIC) {
+                markable.reset();
+                return type.cast(deserialize(markable));
+            }
+            DataInputStream in = new DataInputStream(markable);
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("Unsupported format version. version=" + version);
+            }
+            return type.cast(readValue(in));
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new EncodeException(e);
+        }
+    }
+
+    /**
+     * 値をエンコードして出力する。
+     * @param out 出力先
+     * @param value 値
+     * @throws IOException 出力に失敗した場合
+     */
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.write(TAG_NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.write(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (type == Boolean.class) {
+            out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (type == Byte.class) {
+            out.write(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Short.class) {
+            out.write(TAG_SHORT);
+            out.writeShort((Short) value);
+        } else if (type == Integer.class) {
+            out.write(TAG_INTEGER);
+            writeVarLong(out, (Integer) value);
+        } else if (type == Long.class) {
+            out.write(TAG_LONG);
+            writeVarLong(out, (Long) value);
+        } else if (type == Float.class) {
+            out.write(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Double.class) {
+            out.write(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Character.class) {
+            out.write(TAG_CHARACTER);
+            out.writeChar((Character) value);
+        } else if (type == byte[].class) {
+            out.write(TAG_BYTE_ARRAY);
+            writeBytes(out, (byte[]) value);
+        } else if (type == BigDecimal.class) {
+            out.write(TAG_BIG_DECIMAL);
+            writeVarLong(out, ((BigDecimal) value).scale());
+            writeBytes(out, ((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (type == BigInteger.class) {
+            out.write(TAG_BIG_INTEGER);
+            writeBytes(out, ((BigInteger) value).toByteArray());
+        } else if (type == Date.class) {
+            out.write(TAG_DATE);
+            writeVarLong(out, ((Date) value).getTime());
+        } else if (type == LocalDate.class) {
+            out.write(TAG_LOCAL_DATE);
+            writeVarLong(out, ((LocalDate) value).toEpochDay());
+        } else if (type == LocalDateTime.class) {
+            out.write(TAG_LOCAL_DATE_TIME);
+            writeVarLong(out, ((LocalDateTime) value).toLocalDate().toEpochDay());
+            writeVarLong(out, ((LocalDateTime) value).toLocalTime().toNanoOfDay());
+        } else if (type == Instant.class) {
+            out.write(TAG_INSTANT);
+            writeVarLong(out, ((Instant) value).getEpochSecond());
+            writeVarLong(out, ((Instant) value).getNano());
+        } else if (type.isEnum()) {
+            out.write(TAG_ENUM);
+            writeString(out, type.getName());
+            writeString(out, ((Enum<?>) value).name());
+        } else if (type == ArrayList.class) {
+            out.write(TAG_ARRAY_LIST);
+            writeElements(out, (Collection<?>) value);
+        } else if (type == HashSet.class) {
+            out.write(TAG_HASH_SET);
+            writeElements(out, (Collection<?>) value);
+        } else if (type == LinkedHashSet.class) {
+            out.write(TAG_LINKED_HASH_SET);
+            writeElements(out, (Collection<?>) value);
+        } else if (type == HashMap.class) {
+            out.write(TAG_HASH_MAP);
+            writeEntries(out, (Map<?, ?>) value);
+        } else if (type == LinkedHashMap.class) {
+            out.write(TAG_LINKED_HASH_MAP);
+            writeEntries(out, (Map<?, ?>) value);
+        } else {
+            Optional<BeanProperties> beanProperties = getBeanProperties(type);
+            if (beanProperties.isPresent()) {
+                out.write(TAG_BEAN);
+                writeString(out, type.getName());
+                beanProperties.get().write(this, out, value);
+            } else {
+                out.write(TAG_SERIALIZED);
+                writeBytes(out, serialize(value));
+            }
+        }
+    }
+
+    /**
+     * エンコードされた値を読み込む。
+     * @param in 入力元
+     * @return 値
+     * @throws IOException 読み込みに失敗した場合
+     * @throws ReflectiveOperationException Bean または列挙型を復元できなかった場合
+     */
+    private Object readValue(DataInputStream in) throws IOException, ReflectiveOperationException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_SHORT:
+                return in.readShort();
+            case TAG_INTEGER:
+                return (int) readVarLong(in);
+            case TAG_LONG:
+                return readVarLong(in);
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_CHARACTER:
+                return in.readChar();
+            case TAG_BYTE_ARRAY:
+                return readBytes(in);
+            case TAG_BIG_DECIMAL:
+                int scale = (int) readVarLong(in);
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case TAG_BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case TAG_DATE:
+                return new Date(readVarLong(in));
+            case TAG_LOCAL_DATE:
+                return LocalDate.ofEpochDay(readVarLong(in));
+            case TAG_LOCAL_DATE_TIME:
+                LocalDate date = LocalDate.ofEpochDay(readVarLong(in));
+                return LocalDateTime.of(date, LocalTime.ofNanoOfDay(readVarLong(in)));
+            case TAG_INSTANT:
+                long epochSecond = readVarLong(in);
+                return Instant.ofEpochSecond(epochSecond, readVarLong(in));
+            case TAG_ENUM:
+                return readEnum(in);
+            case TAG_ARRAY_LIST:
+                return readElements(in, new ArrayList<>());
+            case TAG_HASH_SET:
+                return readElements(in, new HashSet<>());
+            case TAG_LINKED_HASH_SET:
+                return readElements(in, new LinkedHashSet<>());
+            case TAG_HASH_MAP:
+                return readEntries(in, new HashMap<>());
+            case TAG_LINKED_HASH_MAP:
+                return readEntries(in, new LinkedHashMap<>());
+            case TAG_BEAN:
+                Class<?> type = Class.forName(readString(in));
+                return getBeanProperties(type)
+                        .orElseThrow(() -> new StreamCorruptedException("Class can not be decoded as bean. class=" + type.getName()))
+                        .read(this, in);
+            case TAG_SERIALIZED:
+                return deserialize(new ByteArrayInputStream(readBytes(in)));
+            default:
+                throw new StreamCorruptedException("Unknown tag. tag=" + tag);
+        }
+    }
+
+    /**
+     * 列挙型の値を読み込む。
+     * @param in 入力元
+     * @return 列挙型の値
+     * @throws IOException 読み込みに失敗した場合
+     * @throws ClassNotFoundException 列挙型のクラスが見つからない場合
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object readEnum(DataInputStream in) throws IOException, ClassNotFoundException {
+        Class<? extends Enum> type = (Class<? extends Enum>) Class.forName(readString(in));
+        return Enum.valueOf(type, readString(in));
+    }
+
+    /**
+     * コレクションの要素を出力する。
+     * @param out 出力先
+     * @param elements コレクション
+     * @throws IOException 出力に失敗した場合
+     */
+    private void writeElements(DataOutputStream out, Collection<?> elements) throws IOException {
+        writeVarLong(out, elements.size());
+        for (Object element : elements) {
+            writeValue(out, element);
+        }
+    }
+
+    /**
+     * コレクションの要素を読み込む。
+     * @param in 入力元
+     * @param elements 読み込んだ要素を追加するコレクション
+     * @return 要素を追加したコレクション
+     * @throws IOException 読み込みに失敗した場合
+     * @throws ReflectiveOperationException 要素を復元できなかった場合
+     */
+    private Collection<Object> readElements(DataInputStream in, Collection<Object> elements)
+            throws IOException, ReflectiveOperationException {
+        long size = readVarLong(in);
+        for (long i = 0; i < size; i++) {
+            elements.add(readValue(in));
+        }
+        return elements;
+    }
+
+    /**
+     * マップのエントリを出力する。
+     * @param out 出力先
+     * @param entries マップ
+     * @throws IOException 出力に失敗した場合
+     */
+    private void writeEntries(DataOutputStream out, Map<?, ?> entries) throws IOException {
+        writeVarLong(out, entries.size());
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * マップのエントリを読み込む。
+     * @param in 入力元
+     * @param entries 読み込んだエントリを追加するマップ
+     * @return エントリを追加したマップ
+     * @throws IOException 読み込みに失敗した場合
+     * @throws ReflectiveOperationException エントリを復元できなかった場合
+     */
+    private Map<Object, Object> readEntries(DataInputStream in, Map<Object, Object> entries)
+            throws IOException, ReflectiveOperationException {
+        long size = readVarLong(in);
+        for (long i = 0; i < size; i++) {
+            Object key = readValue(in);
+            entries.put(key, readValue(in));
+        }
+        return entries;
+    }
+
+    /**
+     * クラスを Bean としてエンコードするためのプロパティを取得する。
+     * @param type クラス
+     * @return Bean としてエンコードできる場合はプロパティ、できない場合は空の {@link Optional}
+     */
+    private Optional<BeanProperties> getBeanProperties(Class<?> type) {
+        return beanPropertiesCache.computeIfAbsent(type, BeanProperties::of);
+    }
+
+    /**
+     * Java のシリアライズで値をエンコードする。
+     * @param value 値
+     * @return エンコードしたバイト列
+     * @throws IOException エンコードに失敗した場合
+     */
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Java のシリアライズでエンコードされた値をデコードする。
+     * @param input 入力元
+     * @return 値
+     * @throws IOException デコードに失敗した場合
+     * @throws ClassNotFoundException 値のクラスが見つからない場合
+     */
+    private static Object deserialize(InputStream input) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(input).readObject();
+    }
+
+    /**
+     * 文字列を UTF-8 で出力する。
+     * @param out 出力先
+     * @param value 文字列
+     * @throws IOException 出力に失敗した場合
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * UTF-8 で出力された文字列を読み込む。
+     * @param in 入力元
+     * @return 文字列
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * バイト列を長さとともに出力する。
+     * @param out 出力先
+     * @param value バイト列
+     * @throws IOException 出力に失敗した場合
+     */
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        writeVarLong(out, value.length);
+        out.write(value);
+    }
+
+    /**
+     * 長さとともに出力されたバイト列を読み込む。
+     * @param in 入力元
+     * @return バイト列
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0L || Integer.MAX_VALUE < length) {
+            throw new StreamCorruptedException("Invalid length. length=" + length);
+        }
+        byte[] value = new byte[(int) length];
+        in.readFully(value);
+        return value;
+    }
+
+    /**
+     * 整数を、絶対値が小さいほど短くなる可変長の形式（ZigZag エンコードした値の 7 ビットずつ）で出力する。
+     * @param out 出力先
+     * @param value 整数
+     * @throws IOException 出力に失敗した場合
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0L) {
+            out.write((int) ((zigzag & 0x7FL) | 0x80L));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    /**
+     * 可変長の形式で出力された整数を読み込む。
+     * @param in 入力元
+     * @return 整数
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1L);
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable-length integer.");
+    }
+
+    /**
+     * Bean としてエンコードするクラスのプロパティ。
+     */
+    private static final class BeanProperties {
+
+        private final Constructor<?> constructor;
+        private final String[] names;
+        private final Method[] readMethods;
+        private final Map<String, Method> writeMethods;
+
+        /**
+         * コンストラクタ。
+         * @param constructor 引数のないコンストラクタ
+         * @param properties プロパティ
+         */
+        private BeanProperties(Constructor<?> constructor, List<PropertyDescriptor> properties) {
+            this.constructor = constructor;
+            this.names = new String[properties.size()];
+            this.readMethods = new Method[properties.size()];
+            this.writeMethods = new HashMap<>();
+            for (int i = 0; i < properties.size(); i++) {
+                PropertyDescriptor property = properties.get(i);
+                names[i] = property.getName();
+                readMethods[i] = property.getReadMethod();
+                writeMethods.put(property.getName(), property.getWriteMethod());
+            }
+        }
+
+        /**
+         * クラスを Bean としてエンコードできるか判定し、プロパティを取得する。
+         * <p>
+         * public で引数のないコンストラクタを持ち、 static でも transient でもないすべてのフィールドに、
+         * 同じ名前の getter と setter を持つクラスを Bean としてエンコードする。
+         * フィールドに対応しないプロパティがあるクラスは、状態を正しく復元できるか判断できないため対象外とする。
+         * </p>
+         * @param type クラス
+         * @return Bean としてエンコードできる場合はプロパティ、できない場合は空の {@link Optional}
+         */
+        static Optional<BeanProperties> of(Class<?> type) {
+            if (!Modifier.isPublic(type.getModifiers()) || type.isArray() || type.isInterface()
+                    || Modifier.isAbstract(type.getModifiers()) || type.getName().startsWith("java.")) {
+                return Optional.empty();
+            }
+            try {
+                Constructor<?> constructor = type.getConstructor();
+                Map<String, PropertyDescriptor> descriptors = new HashMap<>();
+                for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type, Object.class).getPropertyDescriptors()) {
+                    if (descriptor.getReadMethod() != null && descriptor.getWriteMethod() != null) {
+                        descriptors.put(descriptor.getName(), descriptor);
+                    }
+                }
+                List<PropertyDescriptor> properties = new ArrayList<>();
+                int fieldCount = 0;
+                for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+                                || field.isSynthetic()) {
+                            continue;
+                        }
+                        PropertyDescriptor descriptor = descriptors.get(field.getName());
+                        if (descriptor == null) {
+                            return Optional.empty();
+                        }
+                        properties.add(descriptor);
+                        fieldCount++;
+                    }
+                }
+                if (fieldCount != descriptors.size()) {
+                    return Optional.empty();
+                }
+                return Optional.of(new BeanProperties(constructor, properties));
+            } catch (NoSuchMethodException | IntrospectionException e) {
+                return Optional.empty();
+            }
+        }
+
+        /**
+         * Bean のプロパティを出力する。
+         * @param encoder プロパティの値をエンコードする {@link LettuceCompactStateEncoder}
+         * @param out 出力先
+         * @param bean Bean
+         * @throws IOException 出力に失敗した場合
+         */
+        void write(LettuceCompactStateEncoder encoder, DataOutputStream out, Object bean) throws IOException {
+            writeVarLong(out, names.length);
+            for (int i = 0; i < names.length; i++) {
+                writeString(out, names[i]);
+                try {
+                    encoder.writeValue(out, readMethods[i].invoke(bean));
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IOException("Failed to read property. property=" + names[i], e);
+                }
+            }
+        }
+
+        /**
+         * Bean を復元する。
+         * <p>
+         * エンコードしたときに存在し、現在のクラスに存在しないプロパティは無視する。
+         * </p>
+         * @param encoder プロパティの値をデコードする {@link LettuceCompactStateEncoder}
+         * @param in 入力元
+         * @return Bean
+         * @throws IOException 読み込みに失敗した場合
+         * @throws ReflectiveOperationException Bean を復元できなかった場合
+         */
+        Object read(LettuceCompactStateEncoder encoder, DataInputStream in) throws IOException, ReflectiveOperationException {
+            Object bean = constructor.newInstance();
+            long count = readVarLong(in);
+            for (long i = 0; i < count; i++) {
+                String name = readString(in);
+                Object value = encoder.readValue(in);
+                Method writeMethod = writeMethods.get(name);
+                if (writeMethod != null) {
+                    writeMethod.invoke(bean, value);
+                }
+            }
+            return bean;
+        }
+    }
+}
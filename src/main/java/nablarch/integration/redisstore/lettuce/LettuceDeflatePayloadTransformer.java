@@ -0,0 +1,233 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * セッションのバイト列を Deflate で圧縮する {@link LettucePayloadTransformer} の実装クラス。
+ * <p>
+ * {@link #setThreshold(int)} で指定したサイズを超えるバイト列だけを圧縮し、
+ * 圧縮しても小さくならなかった場合は圧縮せずに保存する。<br>
+ * 圧縮したバイト列の先頭には、圧縮されていることを示すヘッダを付与する。
+ * このため、圧縮したセッションと圧縮していないセッションが混在していても読み込むことができる。
+ * </p>
+ * <p>
+ * {@link #setDictionaryPath(String)} でプリセット辞書を設定すると、典型的なセッションの内容を辞書として利用できるため、
+ * 小さなセッションでも圧縮の効果を得やすくなる。
+ * このため、辞書を設定した場合の閾値のデフォルトは {@code 64} バイトとなる。
+ * 辞書を変更すると、変更前の辞書で圧縮したセッションは読み込めなくなる点に注意すること。
+ * </p>
+ */
+public class LettuceDeflatePayloadTransformer implements LettucePayloadTransformer {
+
+    /**
+     * 圧縮したバイト列であることを示すマジックナンバー。
+     * <p>
+     * 圧縮していないセッションは、先頭のエントリのキーの長さ（2バイト）から始まる。
+     * 先頭が {@code 0xFE} になるのはキーの長さが 65024 バイト以上の場合に限られるため、
+     * 圧縮していないセッションと区別できる。
+     * </p>
+     */
+    private static final byte[] MAGIC = {(byte) 0xFE, 'Z'};
+
+    /**
+     * 圧縮に辞書を使用したことを示すフラグ。
+     */
+    private static final byte FLAG_DICTIONARY = 0x01;
+
+    /**
+     * ヘッダのサイズ（マジックナンバー、フラグ、圧縮前のサイズ）。
+     */
+    private static final int HEADER_SIZE = MAGIC.length + 1 + Integer.BYTES;
+
+    /**
+     * Deflate で圧縮したバイト列の、圧縮前のサイズに対する最大の比率。
+     * <p>
+     * 1つの符号で表せる長さは最大 258 バイトで、符号は最短で 2 ビットとなるため、 1 バイトから最大 1032 バイトに展開される。
+     * </p>
+     */
+    private static final long MAX_COMPRESSION_RATIO = 1032L;
+
+    /**
+     * 辞書を設定しない場合の、閾値のデフォルト。
+     */
+    private static final int DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * 辞書を設定した場合の、閾値のデフォルト。
+     */
+    private static final int DEFAULT_DICTIONARY_THRESHOLD = 64;
+
+    private Integer threshold;
+    private int maxPayloadSize = 64 * 1024 * 1024;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private byte[] dictionary;
+
+    @Override
+    public byte[] transform(byte[] payload) {
+        if (payload.length <= effectiveThreshold()) {
+            return payload;
+        }
+
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(payload);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + HEADER_SIZE);
+            out.write(MAGIC, 0, MAGIC.length);
+            out.write(dictionary != null ? FLAG_DICTIONARY : 0);
+            out.write(ByteBuffer.allocate(Integer.BYTES).putInt(payload.length).array(), 0, Integer.BYTES);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+                if (out.size() >= payload.length) {
+                    return payload;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] restore(byte[] stored) {
+        if (!isCompressed(stored)) {
+            return stored;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(stored, MAGIC.length, HEADER_SIZE - MAGIC.length);
+        boolean useDictionary = (header.get() & FLAG_DICTIONARY) != 0;
+        int length = header.getInt();
+        if (length < 0 || length > maxPayloadSize || length > (stored.length - HEADER_SIZE) * MAX_COMPRESSION_RATIO) {
+            throw new EncodeException(new DataFormatException(
+                    "The size in the header of the compressed payload is invalid. size=" + length));
+        }
+        byte[] payload = new byte[length];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, HEADER_SIZE, stored.length - HEADER_SIZE);
+            int offset = inflater.inflate(payload);
+            if (inflater.needsDictionary()) {
+                if (!useDictionary || dictionary == null || inflater.getAdler() != adler32(dictionary)) {
+                    throw new EncodeException(new IllegalStateException(
+                            "The payload was compressed with a dictionary that does not match the configured one."));
+                }
+                inflater.setDictionary(dictionary);
+                offset += inflater.inflate(payload, offset, payload.length - offset);
+            }
+            if (offset != payload.length || !inflater.finished()) {
+                throw new EncodeException(new DataFormatException(
+                        "The compressed payload is truncated. expected=" + payload.length + ", actual=" + offset));
+            }
+            return payload;
+        } catch (DataFormatException e) {
+            throw new EncodeException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 圧縮を行うバイト列のサイズの閾値を取得する。
+     * @return {@link #setThreshold(int)} で設定した閾値。設定していない場合は、辞書の有無に応じたデフォルト
+     */
+    private int effectiveThreshold() {
+        if (threshold != null) {
+            return threshold;
+        }
+        return dictionary != null ? DEFAULT_DICTIONARY_THRESHOLD : DEFAULT_THRESHOLD;
+    }
+
+    /**
+     * バイト列が、このクラスで圧縮されたものか判定する。
+     * @param stored Redis から読み込んだバイト列
+     * @return 圧縮されている場合は {@code true}
+     */
+    private static boolean isCompressed(byte[] stored) {
+        return stored.length > HEADER_SIZE && stored[0] == MAGIC[0] && stored[1] == MAGIC[1];
+    }
+
+    private static long adler32(byte[] bytes) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(bytes);
+        return adler32.getValue();
+    }
+
+    /**
+     * 圧縮を行うバイト列のサイズの閾値を設定する。
+     * <p>
+     * このサイズ以下のバイト列は圧縮しない。
+     * デフォルトは {@code 1024} バイト、プリセット辞書を設定した場合は {@code 64} バイト。
+     * </p>
+     * @param threshold 圧縮を行うバイト列のサイズの閾値（バイト）
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * 復元するバイト列の最大のサイズを設定する。
+     * <p>
+     * ヘッダに記録された圧縮前のサイズがこの値を超える場合は、破損したバイト列とみなして例外を送出する。
+     * 不正なヘッダによって、巨大な配列を確保しないために使用する。デフォルトは {@code 64} MB。
+     * </p>
+     * @param maxPayloadSize 復元するバイト列の最大のサイズ（バイト）
+     */
+    public void setMaxPayloadSize(int maxPayloadSize) {
+        if (maxPayloadSize <= 0) {
+            throw new IllegalArgumentException("maxPayloadSize must be greater than 0. maxPayloadSize=" + maxPayloadSize);
+        }
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    /**
+     * 圧縮レベルを設定する。
+     * <p>
+     * {@code 0}（圧縮なし）から {@code 9}（最大圧縮）、または {@code -1}（デフォルト）を指定する。
+     * </p>
+     * @param level 圧縮レベル
+     */
+    public void setLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || Deflater.BEST_COMPRESSION < level) {
+            throw new IllegalArgumentException("level must be between -1 and 9. level=" + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * 圧縮に使用するプリセット辞書を設定する。
+     * @param dictionary プリセット辞書
+     */
+    public void setDictionary(byte[] dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * 圧縮に使用するプリセット辞書を、ファイルから読み込んで設定する。
+     * @param dictionaryPath プリセット辞書のファイルのパス
+     */
+    public void setDictionaryPath(String dictionaryPath) {
+        try {
+            setDictionary(Files.readAllBytes(Paths.get(dictionaryPath)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the dictionary. path=" + dictionaryPath, e);
+        }
+    }
+}
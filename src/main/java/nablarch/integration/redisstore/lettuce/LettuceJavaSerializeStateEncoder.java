@@ -0,0 +1,29 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+import nablarch.common.web.session.encoder.JavaSerializeStateEncoder;
+import nablarch.core.util.annotation.Published;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * {@link LettuceStreamStateDecoder} を実装した {@link JavaSerializeStateEncoder}。
+ * <p>
+ * エンコードの形式は {@link JavaSerializeStateEncoder} と同じため、置き換えても保存済みのセッションを読み込むことができる。<br>
+ * {@link LettuceRedisStore} に設定すると、セッションの値を値ごとのバイト配列にコピーせずに復元する。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceJavaSerializeStateEncoder extends JavaSerializeStateEncoder implements LettuceStreamStateDecoder {
+
+    @Override
+    public <T> T decode(InputStream input, Class<T> type) {
+        try (ObjectInputStream in = new ObjectInputStream(input)) {
+            return type.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException e) {
+            throw new EncodeException(e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link LettuceRedisClient#trackInvalidation(String, LettuceKeyInvalidationListener)} で追跡しているキーの
+ * 変更通知を受け取るリスナー。
+ * <p>
+ * 各メソッドは Lettuce の I/O スレッドから呼び出されるため、ブロックする処理を実装してはならない。
+ * </p>
+ */
+@Published(tag = "architect")
+public interface LettuceKeyInvalidationListener {
+
+    /**
+     * キーの追跡が開始されたときに呼び出される。
+     * <p>
+     * 接続が切断された後に再接続して追跡を再開したときにも呼び出される。
+     * </p>
+     */
+    void onTrackingStarted();
+
+    /**
+     * キーの追跡が中断されたときに呼び出される。
+     * <p>
+     * このメソッドが呼び出されてから {@link #onTrackingStarted()} が呼び出されるまでの間に行われた
+     * キーの変更は通知されない。
+     * </p>
+     */
+    void onTrackingStopped();
+
+    /**
+     * 追跡しているキーが変更されたときに呼び出される。
+     * @param key 変更されたキー
+     */
+    void onInvalidated(String key);
+
+    /**
+     * 追跡している全てのキーが無効になったときに呼び出される。
+     * <p>
+     * {@code FLUSHALL} や {@code FLUSHDB} が実行された場合に呼び出される。
+     * </p>
+     */
+    void onInvalidatedAll();
+}
@@ -1,27 +1,62 @@
 package nablarch.integration.redisstore.lettuce;
 
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.codec.ByteArrayCodec;
 import io.lettuce.core.masterreplica.MasterReplica;
 import io.lettuce.core.masterreplica.StatefulRedisMasterReplicaConnection;
+import io.lettuce.core.resource.ClientResources;
 import nablarch.core.repository.initialization.Initializable;
 import nablarch.core.util.annotation.Published;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Master/Replica 構成の Redis に接続するための {@link LettuceRedisClient} 実装。
  * <p>
  * このクラスの {@link #getType()} は、識別子 {@code "masterReplica"} を返す。
  * </p>
+ * <p>
+ * {@link #setReadFrom(String)} を設定すると、読み込みのコマンド（{@code GET}、{@code EXISTS}、{@code PTTL}、{@code HGETALL}）を
+ * レプリカで実行できる。<br>
+ * レプリカへの複製は非同期に行われるため、セッションを更新した直後にレプリカから読み込むと、更新前のセッションを取得するおそれがある。
+ * {@link #setReadYourWritesWindow(long)} を設定すると、更新してから指定した期間は、そのキーの読み込みをマスターで実行する。
+ * </p>
+ * <p>
+ * {@link #setReadFrom(String)} を設定した状態で {@link #trackInvalidation(String, LettuceKeyInvalidationListener)} を呼び出した場合、
+ * 追跡するキーの読み込みは常にマスターで実行する。<br>
+ * キーの変更の追跡はマスターで行うため、複製が遅れているレプリカから読み込んだ古い値をニアキャッシュに保持すると、
+ * その後に変更の通知が届かず、古い値を返し続けるおそれがあるためである。
+ * </p>
  *
  * @author Tanaka Tomoyuki
  */
 @Published(tag = "architect")
-public class LettuceMasterReplicaRedisClient extends AbstractLettuceRedisClient implements Initializable {
+public class LettuceMasterReplicaRedisClient extends AbstractLettuceRedisClient
+        implements LettuceBatchableRedisClient, Initializable {
     private RedisClient client;
     private StatefulRedisMasterReplicaConnection<byte[], byte[]> connection;
     private RedisCommands<byte[], byte[]> commands;
+    private volatile StatefulRedisMasterReplicaConnection<byte[], byte[]> masterConnection;
+    private volatile RedisCommands<byte[], byte[]> masterCommands;
+    private RecentWriteTracker recentWriteTracker;
+    private ReadFrom readFrom;
+    private long readYourWritesWindow;
+    private LettuceRedisAsyncClient asyncClient;
+    private final List<StatefulRedisConnection<byte[], byte[]>> trackingConnections = new CopyOnWriteArrayList<>();
+    private final List<byte[]> trackedPrefixes = new CopyOnWriteArrayList<>();
+    private boolean autoFlushCommands = true;
 
     /**
      * 接続するRedisサーバーのURI。
@@ -47,39 +82,214 @@ public class LettuceMasterReplicaRedisClient extends AbstractLettuceRedisClient
         this.uri = uri;
     }
 
+    /**
+     * 読み込みのコマンドを実行するノードを選択する方法を設定する。
+     * <p>
+     * {@code "master"}、{@code "masterPreferred"}、{@code "replica"}、{@code "replicaPreferred"}、
+     * {@code "nearest"}、{@code "any"} などの Lettuce の {@link ReadFrom} の名前を指定する。
+     * 指定できる名前については、 {@link ReadFrom#valueOf(String)} を参照。<br>
+     * 設定しない場合、すべてのコマンドをマスターで実行する。
+     * </p>
+     * @param readFrom 読み込みのコマンドを実行するノードを選択する方法
+     */
+    public void setReadFrom(String readFrom) {
+        this.readFrom = ReadFrom.valueOf(readFrom);
+    }
+
+    /**
+     * キーを更新してから、そのキーの読み込みをマスターで実行する期間を設定する。
+     * <p>
+     * レプリカへの複製の遅延よりも長い期間を設定すること。
+     * デフォルトは {@code 0} で、この場合は更新直後でも {@link #setReadFrom(String)} の設定に従って読み込む。<br>
+     * 判定に使用するのは、このアプリケーションが行った更新のみとなる。
+     * </p>
+     * @param readYourWritesWindow キーを更新してからマスターで読み込む期間（ミリ秒）
+     */
+    public void setReadYourWritesWindow(long readYourWritesWindow) {
+        if (readYourWritesWindow < 0L) {
+            throw new IllegalArgumentException(
+                    "readYourWritesWindow must be greater than or equal to 0. readYourWritesWindow=" + readYourWritesWindow);
+        }
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        limitWrite(PendingWriteLimiter.sizeOf(key, value), () -> commands.set(key, value));
+        recordWrite(key);
+    }
+
+    @Override
+    public void psetex(byte[] key, long milliseconds, byte[] value) {
+        limitWrite(PendingWriteLimiter.sizeOf(key, value), () -> commands.psetex(key, milliseconds, value));
+        recordWrite(key);
+    }
+
     @Override
-    public void set(String key, byte[] value) {
-        commands.set(encodeKey(key), value);
+    public void pexpire(byte[] key, long milliseconds) {
+        commands.pexpire(key, milliseconds);
+        recordWrite(key);
     }
 
     @Override
-    public void pexpire(String key, long milliseconds) {
-        commands.pexpire(encodeKey(key), milliseconds);
+    public boolean pexpireIfExists(byte[] key, long milliseconds) {
+        boolean expired = commands.pexpire(key, milliseconds);
+        recordWrite(key);
+        return expired;
     }
 
     @Override
-    public void pexpireat(String key, long milliseconds) {
-        commands.pexpireat(encodeKey(key), milliseconds);
+    public void pexpireat(byte[] key, long milliseconds) {
+        commands.pexpireat(key, milliseconds);
+        recordWrite(key);
     }
 
     @Override
-    public long pttl(String key) {
-        return commands.pttl(encodeKey(key));
+    public void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        byte[][] keys = {key};
+        limitWrite(PendingWriteLimiter.sizeOf(key, value),
+                () -> commands.eval(SETNX_AND_PEXPIREAT_SCRIPT, ScriptOutputType.INTEGER, keys, value, encodeNumber(milliseconds)));
+        recordWrite(key);
     }
 
     @Override
-    public byte[] get(String key) {
-        return commands.get(encodeKey(key));
+    public long pttl(byte[] key) {
+        return readCommands(key).pttl(key);
     }
 
     @Override
-    public void del(String key) {
-        commands.del(encodeKey(key));
+    public byte[] get(byte[] key) {
+        return readCommands(key).get(key);
     }
 
     @Override
-    public boolean exists(String key) {
-        return commands.exists(encodeKey(key)) == 1L;
+    public void del(byte[] key) {
+        commands.del(key);
+        recordWrite(key);
+    }
+
+    @Override
+    public void unlink(byte[] key) {
+        commands.unlink(key);
+        recordWrite(key);
+    }
+
+    @Override
+    public Map<String, byte[]> hgetall(byte[] key) {
+        return decodeFields(readCommands(key).hgetall(key));
+    }
+
+    @Override
+    public boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        byte[][] keys = {key};
+        byte[][] arguments = hupdateArguments(fields, deletedFields, milliseconds);
+        boolean updated = limitWrite(PendingWriteLimiter.sizeOf(key) + PendingWriteLimiter.sizeOf(arguments),
+                () -> commands.<Long>eval(HUPDATE_SCRIPT, ScriptOutputType.INTEGER, keys, arguments)) == 1L;
+        recordWrite(key);
+        return updated;
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        return readCommands(key).exists(key) == 1L;
+    }
+
+    /**
+     * キーの読み込みに使用するコマンドを取得する。
+     * @param key キー
+     * @return キーをマスターで読み込む場合はマスターで実行するコマンド、それ以外の場合は {@link #setReadFrom(String)} に従って実行するコマンド
+     */
+    private RedisCommands<byte[], byte[]> readCommands(byte[] key) {
+        return readsFromMaster(key) ? masterCommands : commands;
+    }
+
+    /**
+     * キーの読み込みをマスターで実行するかどうかを判定する。
+     * @param key キー
+     * @return キーが最近更新された場合、または変更を追跡しているキーの場合は {@code true}
+     */
+    private boolean readsFromMaster(byte[] key) {
+        if (masterConnection == null) {
+            return false;
+        }
+        if (recentWriteTracker != null && recentWriteTracker.isRecentlyWritten(key)) {
+            return true;
+        }
+        for (byte[] prefix : trackedPrefixes) {
+            if (key.length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * マスターで読み込むための接続を生成する。
+     * <p>
+     * 既に生成している場合は何もしない。
+     * </p>
+     */
+    private synchronized void createMasterConnectionIfAbsent() {
+        if (masterConnection != null) {
+            return;
+        }
+        StatefulRedisMasterReplicaConnection<byte[], byte[]> newConnection = createConnection(client);
+        newConnection.setReadFrom(ReadFrom.UPSTREAM);
+        newConnection.setAutoFlushCommands(autoFlushCommands);
+        masterCommands = newConnection.sync();
+        masterConnection = newConnection;
+    }
+
+    /**
+     * キーが更新されたことを記録する。
+     * @param key キー
+     */
+    private void recordWrite(byte[] key) {
+        if (recentWriteTracker != null) {
+            recentWriteTracker.recordWrite(key);
+        }
+    }
+
+    @Override
+    public synchronized void setAutoFlushCommands(boolean autoFlush) {
+        autoFlushCommands = autoFlush;
+        connection.setAutoFlushCommands(autoFlush);
+        if (masterConnection != null) {
+            masterConnection.setAutoFlushCommands(autoFlush);
+        }
+    }
+
+    @Override
+    public void flushCommands() {
+        connection.flushCommands();
+        if (masterConnection != null) {
+            masterConnection.flushCommands();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@link #setReadFrom(String)} を設定している場合は、追跡するキーの読み込みをマスターで実行するようにする。
+     * マスターで読み込むための接続がない場合は、 {@link #createConnection(RedisClient)} で生成する。
+     * </p>
+     */
+    @Override
+    public void trackInvalidation(String prefix, LettuceKeyInvalidationListener listener) {
+        if (readFrom != null) {
+            createMasterConnectionIfAbsent();
+            trackedPrefixes.add(encodeKey(prefix));
+        }
+
+        StatefulRedisConnection<byte[], byte[]> trackingConnection = createTrackingConnection(client);
+        trackingConnections.add(trackingConnection);
+
+        TrackingArgs trackingArgs = KeyInvalidationTracker.trackingArgs(prefix);
+        KeyInvalidationTracker tracker = new KeyInvalidationTracker(listener,
+                () -> KeyInvalidationTracker.enableTracking(trackingConnection.async(), trackingArgs));
+        trackingConnection.addListener((PushListener) tracker);
+        trackingConnection.addListener((RedisConnectionStateListener) tracker);
+        tracker.start();
     }
 
     /**
@@ -90,20 +300,41 @@ public class LettuceMasterReplicaRedisClient extends AbstractLettuceRedisClient
      * これらのインスタンスの設定を任意にカスタマイズしたい場合は、このクラスを継承したサブクラスを作り、
      * それぞれの {@code create} メソッドをオーバーライドすること。
      * </p>
+     * <p>
+     * {@link #setReadFrom(String)} と {@link #setReadYourWritesWindow(long)} の両方を設定した場合は、
+     * 更新直後のキーを読み込むためのマスター専用の接続も {@link #createConnection(RedisClient)} で生成する。
+     * この接続は、変更を追跡するキーの読み込みにも使用する。
+     * </p>
      */
     @Override
     public void initialize() {
         client = createClient();
+        applyClientOptions(client);
         connection = createConnection(client);
+        if (readFrom != null) {
+            connection.setReadFrom(readFrom);
+        }
         commands = connection.sync();
+
+        if (readFrom != null && readYourWritesWindow > 0L) {
+            recentWriteTracker = new RecentWriteTracker(readYourWritesWindow);
+            createMasterConnectionIfAbsent();
+        }
+        asyncClient = new AsyncCommandsRedisClient(
+                key -> readsFromMaster(key) ? masterConnection.async() : connection.async(),
+                this::recordWrite, getPendingWriteLimiter(), null);
     }
 
     /**
      * {@link RedisClient} のインスタンスを生成する。
+     * <p>
+     * {@link #setClientResources(LettuceClientResources)} が設定されている場合は、共有する {@link ClientResources} を使用する。
+     * </p>
      * @return 生成された {@link RedisClient}
      */
     protected RedisClient createClient() {
-        return RedisClient.create();
+        ClientResources clientResources = getClientResources();
+        return clientResources == null ? RedisClient.create() : RedisClient.create(clientResources);
     }
 
     /**
@@ -115,8 +346,36 @@ public class LettuceMasterReplicaRedisClient extends AbstractLettuceRedisClient
         return MasterReplica.connect(client, new ByteArrayCodec(), RedisURI.create(uri));
     }
 
+    /**
+     * キーの変更の追跡に使用する {@link StatefulRedisConnection} のインスタンスを生成する。
+     * <p>
+     * Master/Replica 構成の接続はプッシュメッセージを受信できないため、 {@link #uri} で指定されたサーバーに直接接続する。<br>
+     * Sentinel を使用する URI の場合は、 Sentinel から取得したマスターに接続する。
+     * </p>
+     * @param client {@link #createClient()} で生成された {@link RedisClient} インスタンス
+     * @return 生成された {@link StatefulRedisConnection}
+     */
+    protected StatefulRedisConnection<byte[], byte[]> createTrackingConnection(RedisClient client) {
+        return client.connect(new ByteArrayCodec(), RedisURI.create(uri));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このクラスは、 Lettuce の非同期 API を使ってコマンドを実行する。
+     * </p>
+     */
+    @Override
+    public LettuceRedisAsyncClient async() {
+        return asyncClient;
+    }
+
     @Override
     public void dispose() {
+        trackingConnections.forEach(StatefulRedisConnection::close);
+        if (masterConnection != null) {
+            masterConnection.close();
+        }
         connection.close();
         client.shutdown();
     }
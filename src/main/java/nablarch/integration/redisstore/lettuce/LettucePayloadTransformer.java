@@ -0,0 +1,29 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link LettuceRedisStore} が Redis に保存するセッションのバイト列を変換するインターフェース。
+ * <p>
+ * 圧縮などの変換を行う実装を {@link LettuceRedisStore#setPayloadTransformer(LettucePayloadTransformer)} に設定して使用する。<br>
+ * 変換を導入する前に保存されたセッションも読み込めるように、
+ * {@link #restore(byte[])} は変換されていないバイト列をそのまま返さなければならない。
+ * </p>
+ */
+@Published(tag = "architect")
+public interface LettucePayloadTransformer {
+
+    /**
+     * Redis に保存する前のバイト列を変換する。
+     * @param payload エンコードされたセッションのバイト列
+     * @return Redis に保存するバイト列
+     */
+    byte[] transform(byte[] payload);
+
+    /**
+     * Redis から読み込んだバイト列を、変換前のバイト列に戻す。
+     * @param stored Redis から読み込んだバイト列
+     * @return エンコードされたセッションのバイト列
+     */
+    byte[] restore(byte[] stored);
+}
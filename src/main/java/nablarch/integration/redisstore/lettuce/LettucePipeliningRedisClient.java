@@ -0,0 +1,252 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandTimeoutException;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.util.annotation.Published;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * 1つのリクエストで実行された書き込みのコマンドを、まとめて送信する {@link LettuceRedisClient} 実装クラス。
+ * <p>
+ * {@link #beginPipeline()} を呼び出してから {@link #syncPipeline()} を呼び出すまでの間、
+ * 同じスレッドで実行された書き込みのコマンド（{@code SET}、{@code PSETEX}、{@code PEXPIRE}、{@code PEXPIREAT}、{@code DEL}、
+ * {@code UNLINK}、{@link #setnxAndPexpireat(byte[], byte[], long)}）は、
+ * Redis に送信せずに保持する。
+ * 保持したコマンドは、 {@link #syncPipeline()} で応答を待たずに続けて送信し、最後にすべての応答を待機する。
+ * このため、1つのリクエストで発生する書き込みの往復は1回になる。<br>
+ * 通常は {@link LettuceRedisPipelineHandler} を使って、リクエストごとにパイプラインを開始、送信する。
+ * </p>
+ * <p>
+ * 書き込みのコマンドを保持している間に、読み込みのコマンドや、非同期 API を持たないコマンド
+ * （{@link #pexpireIfExists(byte[], long)}、{@link #hupdate(byte[], Map, Collection, long)}）が実行された場合は、
+ * 実行の順序を保つため、保持しているコマンドを送信してから実行する。<br>
+ * 保持したコマンドの失敗は、 {@link #syncPipeline()} で送出される。
+ * </p>
+ * <p>
+ * このクラスの {@link #getType()} は、識別子 {@code "pipelining"} を返す。
+ * </p>
+ * <p>
+ * 設定したクライアントの初期化と破棄は、このクラスの {@link #initialize()} と {@link #dispose()} で行う。
+ * このため、設定したクライアントを初期化対象のリストに登録しないこと。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettucePipeliningRedisClient extends AbstractLettuceRedisClient implements Initializable {
+
+    /**
+     * スレッドごとに保持している書き込みのコマンド。
+     * パイプラインを開始していないスレッドでは {@code null} となる。
+     */
+    private final ThreadLocal<List<Function<LettuceRedisAsyncClient, CompletionStage<?>>>> pipeline = new ThreadLocal<>();
+
+    private LettuceRedisClient client;
+    private long commandTimeout = 60000L;
+
+    /**
+     * コンストラクタ。
+     */
+    public LettucePipeliningRedisClient() {
+        super("pipelining");
+    }
+
+    /**
+     * このスレッドでパイプラインを開始する。
+     * <p>
+     * 既に開始している場合は何もしない。
+     * </p>
+     */
+    public void beginPipeline() {
+        if (pipeline.get() == null) {
+            pipeline.set(new ArrayList<>());
+        }
+    }
+
+    /**
+     * このスレッドで保持している書き込みのコマンドを送信し、パイプラインを終了する。
+     * <p>
+     * すべてのコマンドの応答を待機し、失敗したコマンドがあれば例外を送出する。
+     * パイプラインを開始していない場合は何もしない。
+     * </p>
+     */
+    public void syncPipeline() {
+        try {
+            flush();
+        } finally {
+            pipeline.remove();
+        }
+    }
+
+    /**
+     * このスレッドで保持している書き込みのコマンドを送信し、すべての応答を待機する。
+     * <p>
+     * パイプラインは終了しない。
+     * </p>
+     */
+    private void flush() {
+        List<Function<LettuceRedisAsyncClient, CompletionStage<?>>> commands = pipeline.get();
+        if (commands == null || commands.isEmpty()) {
+            return;
+        }
+
+        LettuceRedisAsyncClient asyncClient = client.async();
+        Future<?>[] futures = new Future<?>[commands.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = commands.get(i).apply(asyncClient).toCompletableFuture();
+        }
+        commands.clear();
+
+        if (!LettuceFutures.awaitAll(Duration.ofMillis(commandTimeout), futures)) {
+            throw new RedisCommandTimeoutException("Pipeline timed out after " + commandTimeout + " millisecond(s)");
+        }
+    }
+
+    /**
+     * 書き込みのコマンドを実行する。
+     * <p>
+     * パイプラインを開始している場合はコマンドを保持し、開始していない場合は設定したクライアントですぐに実行する。
+     * </p>
+     * @param command 非同期 API でコマンドを実行する処理
+     * @param blocking 同期 API でコマンドを実行する処理
+     */
+    private void write(Function<LettuceRedisAsyncClient, CompletionStage<?>> command, Runnable blocking) {
+        List<Function<LettuceRedisAsyncClient, CompletionStage<?>>> commands = pipeline.get();
+        if (commands == null) {
+            blocking.run();
+        } else {
+            commands.add(command);
+        }
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        write(async -> async.set(key, value), () -> client.set(key, value));
+    }
+
+    @Override
+    public void psetex(byte[] key, long milliseconds, byte[] value) {
+        write(async -> async.psetex(key, milliseconds, value), () -> client.psetex(key, milliseconds, value));
+    }
+
+    @Override
+    public void pexpire(byte[] key, long milliseconds) {
+        write(async -> async.pexpire(key, milliseconds), () -> client.pexpire(key, milliseconds));
+    }
+
+    @Override
+    public void pexpireat(byte[] key, long milliseconds) {
+        write(async -> async.pexpireat(key, milliseconds), () -> client.pexpireat(key, milliseconds));
+    }
+
+    @Override
+    public void del(byte[] key) {
+        write(async -> async.del(key), () -> client.del(key));
+    }
+
+    @Override
+    public void unlink(byte[] key) {
+        write(async -> async.unlink(key), () -> client.unlink(key));
+    }
+
+    @Override
+    public boolean pexpireIfExists(byte[] key, long milliseconds) {
+        flush();
+        return client.pexpireIfExists(key, milliseconds);
+    }
+
+    @Override
+    public void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        write(async -> async.setnxAndPexpireat(key, value, milliseconds),
+                () -> client.setnxAndPexpireat(key, value, milliseconds));
+    }
+
+    @Override
+    public long pttl(byte[] key) {
+        flush();
+        return client.pttl(key);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        flush();
+        return client.get(key);
+    }
+
+    @Override
+    public Map<String, byte[]> hgetall(byte[] key) {
+        flush();
+        return client.hgetall(key);
+    }
+
+    @Override
+    public boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        flush();
+        return client.hupdate(key, fields, deletedFields, milliseconds);
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        flush();
+        return client.exists(key);
+    }
+
+    @Override
+    public void trackInvalidation(String prefix, LettuceKeyInvalidationListener listener) {
+        client.trackInvalidation(prefix, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このスレッドで保持している書き込みのコマンドを送信してから、設定したクライアントの非同期 API を返す。
+     * 返した非同期 API で実行したコマンドは、パイプラインに保持されない。
+     * </p>
+     */
+    @Override
+    public LettuceRedisAsyncClient async() {
+        flush();
+        return client.async();
+    }
+
+    @Override
+    public void initialize() {
+        if (client instanceof Initializable) {
+            ((Initializable) client).initialize();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        client.dispose();
+    }
+
+    /**
+     * コマンドを実行するクライアントを設定する。
+     * @param client コマンドを実行するクライアント
+     */
+    public void setClient(LettuceRedisClient client) {
+        this.client = client;
+    }
+
+    /**
+     * パイプラインで送信したコマンドの応答を待機する時間を設定する。
+     * <p>
+     * デフォルトは {@code 60000} ミリ秒（ Lettuce のデフォルトのタイムアウトと同じ）。
+     * </p>
+     * @param commandTimeout コマンドの応答を待機する時間（ミリ秒）
+     */
+    public void setCommandTimeout(long commandTimeout) {
+        if (commandTimeout <= 0L) {
+            throw new IllegalArgumentException("commandTimeout must be greater than 0. commandTimeout=" + commandTimeout);
+        }
+        this.commandTimeout = commandTimeout;
+    }
+}
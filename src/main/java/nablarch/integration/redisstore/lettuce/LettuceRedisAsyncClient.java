@@ -0,0 +1,230 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.util.annotation.Published;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * {@link LettuceRedisClient} のコマンドを、非同期に実行するためのインターフェース。
+ * <p>
+ * 各メソッドはコマンドを送信するとすぐに戻り、コマンドの結果は戻り値の {@link CompletionStage} で受け取る。<br>
+ * 例えば、セッションの読み込みを早い段階で開始しておき、他の I/O と並行して待ち合わせることができる。
+ * </p>
+ * <p>
+ * キーを受け取るメソッドには、 {@link LettuceRedisClient} と同じく UTF-8 でエンコード済みのキーを受け取るオーバーロードを用意している。
+ * これらのデフォルト実装は、キーを文字列に戻して文字列版のメソッドを呼び出す。
+ * </p>
+ * <p>
+ * {@link CompletionStage} の後続処理は、 Lettuce の I/O スレッドで実行される場合がある。
+ * ブロックする処理を後続処理に記述しないこと。
+ * </p>
+ */
+@Published(tag = "architect")
+public interface LettuceRedisAsyncClient {
+
+    /**
+     * 値を保存する。
+     * @param key キー
+     * @param value 値
+     * @return コマンドが完了したときに完了する {@link CompletionStage}
+     */
+    CompletionStage<Void> set(String key, byte[] value);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #set(String, byte[])} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param value 値
+     * @return コマンドの結果
+     */
+    default CompletionStage<Void> set(byte[] key, byte[] value) {
+        return set(decodeKey(key), value);
+    }
+
+    /**
+     * 有効期限を指定して値を保存する。
+     * @param key キー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @param value 値
+     * @return コマンドが完了したときに完了する {@link CompletionStage}
+     */
+    CompletionStage<Void> psetex(String key, long milliseconds, byte[] value);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #psetex(String, long, byte[])} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @param value 値
+     * @return コマンドの結果
+     */
+    default CompletionStage<Void> psetex(byte[] key, long milliseconds, byte[] value) {
+        return psetex(decodeKey(key), milliseconds, value);
+    }
+
+    /**
+     * キーの有効期限を設定する。
+     * @param key キー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @return コマンドが完了したときに完了する {@link CompletionStage}
+     */
+    CompletionStage<Void> pexpire(String key, long milliseconds);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #pexpire(String, long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @return コマンドの結果
+     */
+    default CompletionStage<Void> pexpire(byte[] key, long milliseconds) {
+        return pexpire(decodeKey(key), milliseconds);
+    }
+
+    /**
+     * キーの有効期限をUTC時間で設定する。
+     * @param key キー
+     * @param milliseconds UTC時間で指定された有効期限（ミリ秒）
+     * @return コマンドが完了したときに完了する {@link CompletionStage}
+     */
+    CompletionStage<Void> pexpireat(String key, long milliseconds);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #pexpireat(String, long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param milliseconds UTC時間で指定された有効期限（ミリ秒）
+     * @return コマンドの結果
+     */
+    default CompletionStage<Void> pexpireat(byte[] key, long milliseconds) {
+        return pexpireat(decodeKey(key), milliseconds);
+    }
+
+    /**
+     * キーが存在しない場合は値を保存し、キーの有効期限をUTC時間で設定する。
+     * <p>
+     * キーが既に存在する場合、値は更新せずに有効期限のみを設定する。<br>
+     * デフォルトの実装は、既存の実装クラスとの互換性のために {@link #exists(String)}、 {@link #set(String, byte[])}、
+     * {@link #pexpireat(String, long)} を順に実行するため、アトミックには行われない。
+     * </p>
+     * @param key キー
+     * @param value キーが存在しない場合に保存する値
+     * @param milliseconds UTC時間で指定された有効期限（ミリ秒）
+     * @return コマンドが完了したときに完了する {@link CompletionStage}
+     */
+    default CompletionStage<Void> setnxAndPexpireat(String key, byte[] value, long milliseconds) {
+        return exists(key)
+                .thenCompose(exists -> exists ? CompletableFuture.<Void>completedFuture(null) : set(key, value))
+                .thenCompose(result -> pexpireat(key, milliseconds));
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #setnxAndPexpireat(String, byte[], long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param value キーが存在しない場合に保存する値
+     * @param milliseconds UTC時間で指定された有効期限（ミリ秒）
+     * @return コマンドの結果
+     */
+    default CompletionStage<Void> setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        return setnxAndPexpireat(decodeKey(key), value, milliseconds);
+    }
+
+    /**
+     * キーの残りの生存期間を取得する。
+     * <p>
+     * キーに有効期限が設定されていない場合は {@code -1} を、
+     * キーが存在しない場合は {@code -2} を結果とする。
+     * </p>
+     * @param key キー
+     * @return 残りの生存期間（ミリ秒）を結果とする {@link CompletionStage}
+     */
+    CompletionStage<Long> pttl(String key);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #pttl(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return コマンドの結果
+     */
+    default CompletionStage<Long> pttl(byte[] key) {
+        return pttl(decodeKey(key));
+    }
+
+    /**
+     * 値を取得する。
+     * <p>
+     * 該当するキーが存在しない場合は {@code null} を結果とする。
+     * </p>
+     * @param key キー
+     * @return 値を結果とする {@link CompletionStage}
+     */
+    CompletionStage<byte[]> get(String key);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #get(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return コマンドの結果
+     */
+    default CompletionStage<byte[]> get(byte[] key) {
+        return get(decodeKey(key));
+    }
+
+    /**
+     * 値を削除する。
+     * @param key キー
+     * @return コマンドが完了したときに完了する {@link CompletionStage}
+     */
+    CompletionStage<Void> del(String key);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #del(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return コマンドの結果
+     */
+    default CompletionStage<Void> del(byte[] key) {
+        return del(decodeKey(key));
+    }
+
+    /**
+     * 値を削除し、メモリの解放を Redis のバックグラウンドで行う（{@code UNLINK}）。
+     * <p>
+     * デフォルトの実装は {@link #del(String)} を呼び出す。
+     * </p>
+     * @param key キー
+     * @return コマンドが完了したときに完了する {@link CompletionStage}
+     */
+    default CompletionStage<Void> unlink(String key) {
+        return del(key);
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #unlink(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return コマンドの結果
+     */
+    default CompletionStage<Void> unlink(byte[] key) {
+        return unlink(decodeKey(key));
+    }
+
+    /**
+     * 指定したキーが存在するか確認する。
+     * @param key キー
+     * @return キーが存在する場合に {@code true} を結果とする {@link CompletionStage}
+     */
+    CompletionStage<Boolean> exists(String key);
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #exists(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return コマンドの結果
+     */
+    default CompletionStage<Boolean> exists(byte[] key) {
+        return exists(decodeKey(key));
+    }
+
+    /**
+     * エンコード済みのキーを文字列に戻す。
+     * @param key エンコード済みのキー
+     * @return キー
+     */
+    private static String decodeKey(byte[] key) {
+        return new String(key, StandardCharsets.UTF_8);
+    }
+}
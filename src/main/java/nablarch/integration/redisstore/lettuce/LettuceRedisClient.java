@@ -3,8 +3,18 @@ package nablarch.integration.redisstore.lettuce;
 import nablarch.core.repository.disposal.Disposable;
 import nablarch.core.util.annotation.Published;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * セッションストアの実装に必要となる Redis コマンドを定義したインターフェース。
+ * <p>
+ * キーを受け取るメソッドには、 UTF-8 でエンコード済みのキーを受け取るオーバーロードを用意している。
+ * これらのデフォルト実装は、キーを文字列に戻して文字列版のメソッドを呼び出す。<br>
+ * {@link AbstractLettuceRedisClient} を継承した実装クラスでは逆に、文字列版のメソッドがキーをエンコードして
+ * バイト列版のメソッドを呼び出すため、エンコード済みのキーを使うことでキーの変換を省略できる。
+ * </p>
  *
  * @author Tanaka Tomoyuki
  */
@@ -24,6 +34,41 @@ public interface LettuceRedisClient extends Disposable {
      */
     void set(String key, byte[] value);
 
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #set(String, byte[])} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param value 値
+     */
+    default void set(byte[] key, byte[] value) {
+        set(decodeKey(key), value);
+    }
+
+    /**
+     * 有効期限を指定して値を保存する。
+     * <p>
+     * 値の保存と有効期限の設定は、1回のコマンドでアトミックに行われる。<br>
+     * デフォルトの実装は、既存の実装クラスとの互換性のために {@link #set(String, byte[])} と {@link #pexpire(String, long)} を
+     * 順に呼び出すため、アトミックには行われない。
+     * </p>
+     * @param key キー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @param value 値
+     */
+    default void psetex(String key, long milliseconds, byte[] value) {
+        set(key, value);
+        pexpire(key, milliseconds);
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #psetex(String, long, byte[])} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @param value 値
+     */
+    default void psetex(byte[] key, long milliseconds, byte[] value) {
+        psetex(decodeKey(key), milliseconds, value);
+    }
+
     /**
      * キーの有効期限を設定する。
      * @param key キー
@@ -31,6 +76,45 @@ public interface LettuceRedisClient extends Disposable {
      */
     void pexpire(String key, long milliseconds);
 
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #pexpire(String, long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param milliseconds 有効期限（ミリ秒）
+     */
+    default void pexpire(byte[] key, long milliseconds) {
+        pexpire(decodeKey(key), milliseconds);
+    }
+
+    /**
+     * キーが存在する場合に、キーの有効期限を設定する。
+     * <p>
+     * {@link #pexpire(String, long)} と異なり、キーが存在して有効期限を設定できたかどうかを返す。
+     * 読み込んだ後に有効期限が切れたキーを検出するために使用する。<br>
+     * デフォルトの実装は、既存の実装クラスとの互換性のために {@link #exists(String)} と {@link #pexpire(String, long)} を
+     * 順に呼び出すため、アトミックには行われない。
+     * </p>
+     * @param key キー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @return キーが存在して有効期限を設定した場合は {@code true}
+     */
+    default boolean pexpireIfExists(String key, long milliseconds) {
+        if (!exists(key)) {
+            return false;
+        }
+        pexpire(key, milliseconds);
+        return true;
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #pexpireIfExists(String, long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param milliseconds 有効期限（ミリ秒）
+     * @return キーが存在して有効期限を設定した場合は {@code true}
+     */
+    default boolean pexpireIfExists(byte[] key, long milliseconds) {
+        return pexpireIfExists(decodeKey(key), milliseconds);
+    }
+
     /**
      * キーの有効期限をUTC時間で設定する
      * @param key キー
@@ -38,6 +122,44 @@ public interface LettuceRedisClient extends Disposable {
      */
     void pexpireat(String key, long milliseconds);
 
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #pexpireat(String, long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param milliseconds UTC時間で指定された有効期限（ミリ秒）
+     */
+    default void pexpireat(byte[] key, long milliseconds) {
+        pexpireat(decodeKey(key), milliseconds);
+    }
+
+    /**
+     * キーが存在しない場合は値を保存したうえで、キーの有効期限をUTC時間で設定する。
+     * <p>
+     * キーが既に存在する場合、値は更新せずに有効期限のみを設定する。<br>
+     * これらの処理は、1回のラウンドトリップでアトミックに行われる。<br>
+     * デフォルトの実装は、既存の実装クラスとの互換性のために {@link #exists(String)}、 {@link #set(String, byte[])}、
+     * {@link #pexpireat(String, long)} を順に呼び出すため、アトミックには行われない。
+     * </p>
+     * @param key キー
+     * @param value キーが存在しない場合に保存する値
+     * @param milliseconds UTC時間で指定された有効期限（ミリ秒）
+     */
+    default void setnxAndPexpireat(String key, byte[] value, long milliseconds) {
+        if (!exists(key)) {
+            set(key, value);
+        }
+        pexpireat(key, milliseconds);
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #setnxAndPexpireat(String, byte[], long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param value キーが存在しない場合に保存する値
+     * @param milliseconds UTC時間で指定された有効期限（ミリ秒）
+     */
+    default void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        setnxAndPexpireat(decodeKey(key), value, milliseconds);
+    }
+
     /**
      * キーの残りの生存期間を取得する。
      * <p>
@@ -49,6 +171,15 @@ public interface LettuceRedisClient extends Disposable {
      */
     long pttl(String key);
 
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #pttl(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return 残りの生存期間（ミリ秒）
+     */
+    default long pttl(byte[] key) {
+        return pttl(decodeKey(key));
+    }
+
     /**
      * 値を取得する。
      * <p>
@@ -60,12 +191,106 @@ public interface LettuceRedisClient extends Disposable {
      */
     byte[] get(String key);
 
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #get(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return 値
+     */
+    default byte[] get(byte[] key) {
+        return get(decodeKey(key));
+    }
+
     /**
      * 値を削除する。
      * @param key キー
      */
     void del(String key);
 
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #del(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     */
+    default void del(byte[] key) {
+        del(decodeKey(key));
+    }
+
+    /**
+     * 値を削除し、メモリの解放を Redis のバックグラウンドで行う（{@code UNLINK}）。
+     * <p>
+     * サイズの大きな値を削除するときに、 Redis がほかのコマンドを処理できなくなることを避けるために使用する。<br>
+     * デフォルトの実装は {@link #del(String)} を呼び出す。
+     * </p>
+     * @param key キー
+     */
+    default void unlink(String key) {
+        del(key);
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #unlink(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     */
+    default void unlink(byte[] key) {
+        unlink(decodeKey(key));
+    }
+
+    /**
+     * ハッシュのすべてのフィールドと値を取得する。
+     * <p>
+     * 該当するキーが存在しない場合は空の {@link Map} を返す。<br>
+     * ハッシュのコマンドは {@link LettuceRedisHashStore} だけが使用する。
+     * デフォルトの実装は、既存の実装クラスとの互換性のために {@link UnsupportedOperationException} を送出する。
+     * </p>
+     * @param key キー
+     * @return フィールドと値
+     * @throws io.lettuce.core.RedisCommandExecutionException キーがハッシュ以外の型で存在する場合
+     * @throws UnsupportedOperationException 実装クラスがハッシュのコマンドをサポートしない場合
+     */
+    default Map<String, byte[]> hgetall(String key) {
+        throw new UnsupportedOperationException("hgetall is not supported. type=" + getType());
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #hgetall(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return フィールドと値
+     */
+    default Map<String, byte[]> hgetall(byte[] key) {
+        return hgetall(decodeKey(key));
+    }
+
+    /**
+     * ハッシュのフィールドを保存・削除したうえで、キーの有効期限を設定する。
+     * <p>
+     * {@code deletedFields} に {@code null} を指定した場合は、既存のキーを削除したうえで {@code fields} を保存する（置き換え）。<br>
+     * それ以外の場合は、既存のハッシュに対してフィールドの保存と削除を行う（部分更新）。
+     * 部分更新でキーがハッシュとして存在しない場合は、何もせずに {@code false} を返す。<br>
+     * これらの処理は、1回のラウンドトリップでアトミックに行われる。<br>
+     * デフォルトの実装は、既存の実装クラスとの互換性のために {@link UnsupportedOperationException} を送出する。
+     * </p>
+     * @param key キー
+     * @param fields 保存するフィールドと値
+     * @param deletedFields 削除するフィールド。置き換える場合は {@code null}
+     * @param milliseconds 有効期限（ミリ秒）
+     * @return 更新した場合は {@code true}
+     * @throws UnsupportedOperationException 実装クラスがハッシュのコマンドをサポートしない場合
+     */
+    default boolean hupdate(String key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        throw new UnsupportedOperationException("hupdate is not supported. type=" + getType());
+    }
+
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #hupdate(String, Map, Collection, long)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @param fields 保存するフィールドと値
+     * @param deletedFields 削除するフィールド。置き換える場合は {@code null}
+     * @param milliseconds 有効期限（ミリ秒）
+     * @return 更新した場合は {@code true}
+     */
+    default boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        return hupdate(decodeKey(key), fields, deletedFields, milliseconds);
+    }
+
     /**
      * 指定したキーが存在するか確認する。
      * @param key キー
@@ -73,6 +298,56 @@ public interface LettuceRedisClient extends Disposable {
      */
     boolean exists(String key);
 
+    /**
+     * キーにエンコード済みのバイト列を指定する、 {@link #exists(String)} のオーバーロード。
+     * @param key エンコード済みのキー
+     * @return キーが存在する場合は {@code true}
+     */
+    default boolean exists(byte[] key) {
+        return exists(decodeKey(key));
+    }
+
+    /**
+     * 指定した接頭辞を持つキーの変更の追跡を開始する。
+     * <p>
+     * Redis のクライアントサイドキャッシュの仕組み（{@code CLIENT TRACKING} の BCAST モード）を使い、
+     * 接頭辞に一致するキーが変更されたことを、専用の接続で受け取った RESP3 のプッシュメッセージを通じて
+     * リスナーに通知する。<br>
+     * このため、 RESP3 をサポートする Redis 6 以降が必要となる。
+     * </p>
+     * <p>
+     * デフォルトの実装は、追跡をサポートしないものとして何もしない。
+     * この場合 {@link LettuceKeyInvalidationListener#onTrackingStarted()} が呼び出されないため、
+     * {@link LettuceRedisNearCache} はキャッシュを使用せずに常に Redis から読み込む。
+     * </p>
+     * @param prefix 追跡するキーの接頭辞
+     * @param listener 変更を通知するリスナー
+     */
+    default void trackInvalidation(String prefix, LettuceKeyInvalidationListener listener) {
+        // 追跡をサポートしないため、何もしない。
+    }
+
+    /**
+     * このクライアントのコマンドを非同期に実行する {@link LettuceRedisAsyncClient} を取得する。
+     * <p>
+     * デフォルト実装は、このインターフェースの同期メソッドを呼び出したスレッドで実行し、
+     * 完了済みの {@link java.util.concurrent.CompletionStage} を返す。
+     * </p>
+     * @return {@link LettuceRedisAsyncClient}
+     */
+    default LettuceRedisAsyncClient async() {
+        return new BlockingRedisAsyncClient(this);
+    }
+
+    /**
+     * エンコード済みのキーを文字列に戻す。
+     * @param key エンコード済みのキー
+     * @return キー
+     */
+    private static String decodeKey(byte[] key) {
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
     /**
      * Redisサーバーとの接続を閉じる。
      */
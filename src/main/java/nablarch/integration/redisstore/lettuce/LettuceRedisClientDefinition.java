@@ -0,0 +1,119 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.util.ObjectUtil;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@link LettuceRedisClientProvider} の候補となる {@link LettuceRedisClient} の定義。
+ * <p>
+ * インスタンスを生成せずに候補を定義するために使用する。
+ * {@link LettuceRedisClientProvider} は、選択した定義のインスタンスだけを {@link #createClient()} で生成する。
+ * </p>
+ */
+public class LettuceRedisClientDefinition {
+
+    /** 文字列で設定されたリストの要素を区切るパターン。 */
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("\\s*,\\s*");
+
+    private String type;
+    private String className;
+    private Map<String, Object> properties = Collections.emptyMap();
+
+    /**
+     * 定義に従って {@link LettuceRedisClient} のインスタンスを生成する。
+     * <p>
+     * {@link #setClassName(String)} で設定されたクラスのインスタンスを生成し、
+     * {@link #setProperties(Map)} で設定されたプロパティを設定する。
+     * 文字列で設定された値は、プロパティの型に変換して設定する。
+     * 変換できる型は、数値（{@code int}、{@code long}、{@code double}）、真偽値、{@link List} である。
+     * {@link List} のプロパティには、カンマ区切りの文字列を要素ごとに分割したリストを設定する。
+     * 文字列以外の値（コンポーネントの参照やリストなど）は、そのまま設定する。
+     * </p>
+     * @return 生成された {@link LettuceRedisClient}
+     */
+    public LettuceRedisClient createClient() {
+        LettuceRedisClient client = ObjectUtil.createInstance(className);
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            Class<?> propertyType = ObjectUtil.getPropertyType(client.getClass(), property.getKey());
+            ObjectUtil.setProperty(client, property.getKey(), convert(property.getValue(), propertyType, property.getKey()));
+        }
+        if (!client.getType().equals(type)) {
+            throw new IllegalStateException(String.format(
+                    "type does not match the type of the created client. type=%s, className=%s, clientType=%s",
+                    type, className, client.getType()));
+        }
+        return client;
+    }
+
+    /**
+     * 文字列で設定された値を、プロパティの型に変換する。
+     * @param value 設定された値
+     * @param propertyType プロパティの型
+     * @param name プロパティの名前
+     * @return 変換した値。変換の対象でない場合は設定された値
+     * @throws IllegalArgumentException 文字列から変換できない型のプロパティに、文字列が設定されている場合
+     */
+    private static Object convert(Object value, Class<?> propertyType, String name) {
+        if (!(value instanceof String) || propertyType.isAssignableFrom(String.class)) {
+            return value;
+        }
+        String text = ((String) value).trim();
+        if (propertyType == int.class || propertyType == Integer.class) {
+            return Integer.valueOf(text);
+        }
+        if (propertyType == long.class || propertyType == Long.class) {
+            return Long.valueOf(text);
+        }
+        if (propertyType == double.class || propertyType == Double.class) {
+            return Double.valueOf(text);
+        }
+        if (propertyType == boolean.class || propertyType == Boolean.class) {
+            return Boolean.valueOf(text);
+        }
+        if (propertyType == List.class) {
+            return text.isEmpty() ? Collections.emptyList() : Arrays.asList(LIST_SEPARATOR.split(text));
+        }
+        throw new IllegalArgumentException(String.format(
+                "property type is not convertible from String. name=%s, type=%s", name, propertyType.getName()));
+    }
+
+    /**
+     * 定義する {@link LettuceRedisClient} の実装を識別する値を取得する。
+     * @return {@link LettuceRedisClient} の実装を識別する値
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * 定義する {@link LettuceRedisClient} の実装を識別する値を設定する。
+     * <p>
+     * 生成するインスタンスの {@link LettuceRedisClient#getType()} が返す値と同じ値を設定すること。
+     * </p>
+     * @param type {@link LettuceRedisClient} の実装を識別する値
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * 生成する {@link LettuceRedisClient} の実装クラスの名前を設定する。
+     * @param className 実装クラスの完全修飾名
+     */
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    /**
+     * 生成した {@link LettuceRedisClient} に設定するプロパティを設定する。
+     * @param properties プロパティの名前と値
+     */
+    public void setProperties(Map<String, Object> properties) {
+        this.properties = properties;
+    }
+}
@@ -5,7 +5,9 @@ import nablarch.core.repository.di.ComponentFactory;
 import nablarch.core.repository.di.ContainerProcessException;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * {@link LettuceRedisClient} のインスタンスを提供するクラス。
@@ -14,26 +16,46 @@ import java.util.stream.Collectors;
  * {@link LettuceRedisClient#getType()} が返した値と {@link #setClientType(String)} で設定された値が
  * 一致するインスタンスを検索し、最初に該当したインスタンスを {@link #createObject()} の結果として返す。
  * </p>
+ * <p>
+ * {@link #setClientList(List)} に設定したインスタンスは、使用されないものも含めてすべて生成される。
+ * 使用するインスタンスだけを生成したい場合は、代わりに {@link #setClientDefinitionList(List)} で候補の定義を設定する。
+ * この場合、 {@link #setClientType(String)} と一致する定義のインスタンスだけが生成される。<br>
+ * 生成されたインスタンスの初期化は、このクラスが提供するコンポーネントを初期化対象のリストに登録して行うこと。
+ * </p>
  * @author Tanaka Tomoyuki
  */
 public class LettuceRedisClientProvider implements ComponentFactory<LettuceRedisClient> {
 
     private String clientType;
     private List<LettuceRedisClient> clientList;
+    private List<LettuceRedisClientDefinition> clientDefinitionList;
 
     @Override
     public LettuceRedisClient createObject() {
         if (clientType == null) {
             throw new ContainerProcessException("clientType must not be null.");
         }
-        if (clientList == null) {
-            throw new ContainerProcessException("clientList must not be null.");
+        if (clientList == null && clientDefinitionList == null) {
+            throw new ContainerProcessException("clientList or clientDefinitionList must not be null.");
         }
 
-        return clientList.stream()
-                .filter(client -> client.getType().equals(clientType))
-                .findFirst()
-                .orElseThrow(this::createNoClientMatchesException);
+        if (clientList != null) {
+            Optional<LettuceRedisClient> client = clientList.stream()
+                    .filter(candidate -> candidate.getType().equals(clientType))
+                    .findFirst();
+            if (client.isPresent()) {
+                return client.get();
+            }
+        }
+        if (clientDefinitionList != null) {
+            Optional<LettuceRedisClientDefinition> definition = clientDefinitionList.stream()
+                    .filter(candidate -> clientType.equals(candidate.getType()))
+                    .findFirst();
+            if (definition.isPresent()) {
+                return definition.get().createClient();
+            }
+        }
+        throw createNoClientMatchesException();
     }
 
     /**
@@ -41,8 +63,11 @@ public class LettuceRedisClientProvider implements ComponentFactory<LettuceRedis
      * @return 構築した例外
      */
     private ContainerProcessException createNoClientMatchesException() {
-        String clientTypes = clientList.stream()
-                .map(LettuceRedisClient::getType)
+        Stream<String> types = clientList == null ? Stream.empty() : clientList.stream().map(LettuceRedisClient::getType);
+        Stream<String> definitionTypes = clientDefinitionList == null
+                ? Stream.empty()
+                : clientDefinitionList.stream().map(LettuceRedisClientDefinition::getType);
+        String clientTypes = Stream.concat(types, definitionTypes)
                 .collect(Collectors.joining(", ", "[", "]"));
         String message = String.format("No client matches. clientType=%s, clientList=%s", clientType, clientTypes);
 
@@ -65,4 +90,15 @@ public class LettuceRedisClientProvider implements ComponentFactory<LettuceRedis
         this.clientList = clientList;
     }
 
+    /**
+     * 候補となる {@link LettuceRedisClient} の定義のリストを設定する。
+     * <p>
+     * {@link #setClientList(List)} と両方を設定した場合は、 {@link #setClientList(List)} のインスタンスを先に検索する。
+     * </p>
+     * @param clientDefinitionList {@link LettuceRedisClientDefinition} のリスト
+     */
+    public void setClientDefinitionList(List<LettuceRedisClientDefinition> clientDefinitionList) {
+        this.clientDefinitionList = clientDefinitionList;
+    }
+
 }
@@ -0,0 +1,183 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import nablarch.common.web.session.SessionEntry;
+import nablarch.common.web.session.SessionStore;
+import nablarch.fw.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lettuce を使って、セッションを Redis のハッシュに保存するセッションストアの実装クラス。
+ * <p>
+ * {@link LettuceRedisStore} がセッション全体を1つの値として保存するのに対し、
+ * このクラスは {@link SessionEntry} ごとにハッシュのフィールドとして保存する。<br>
+ * 保存時には、読み込んだときから変更されたフィールドのみを書き込み、削除されたフィールドを削除する。
+ * このため、サイズが大きく、一部の値だけが変更されるセッションに適している。<br>
+ * 有効期限はハッシュのキーに対して設定する。
+ * </p>
+ * <p>
+ * 読み込んだ各フィールドのバイト列はリクエストスコープに保持され、変更の判定に使用される。<br>
+ * 読み込みの後にセッションが Redis から削除されていた場合は、部分更新は行わずにセッション全体を書き込む。
+ * </p>
+ * <p>
+ * 読み込むセッションの {@link SessionEntry} の順序は、保存したときの順序と一致するとは限らない。
+ * </p>
+ */
+public class LettuceRedisHashStore extends SessionStore {
+
+    /**
+     * 読み込んだフィールドをリクエストスコープに保持するときに使用するキーの接頭辞。
+     */
+    private static final String LOADED_FIELDS_KEY_PREFIX = LettuceRedisHashStore.class.getName() + ".loaded.";
+
+    /**
+     * キーの型が不正な場合に Redis が返すエラーの接頭辞。
+     */
+    private static final String WRONG_TYPE_ERROR_PREFIX = "WRONGTYPE";
+
+    private LettuceRedisClient client;
+
+    private SessionKeyEncoder keyEncoder = new SessionKeyEncoder(SessionKeyEncoder.DEFAULT_PREFIX);
+
+    /**
+     * コンストラクタ。
+     */
+    public LettuceRedisHashStore() {
+        super("redis");
+    }
+
+    @Override
+    public List<SessionEntry> load(String sessionId, ExecutionContext executionContext) {
+        Map<String, byte[]> fields = hgetall(keyEncoder.encode(sessionId));
+        rememberLoadedFields(sessionId, fields, executionContext);
+
+        List<SessionEntry> entryList = new ArrayList<>(fields.size());
+        for (byte[] value : fields.values()) {
+            entryList.addAll(decode(value));
+        }
+        return entryList;
+    }
+
+    @Override
+    public void save(String sessionId, List<SessionEntry> entryList, ExecutionContext executionContext) {
+        if (entryList == null || entryList.isEmpty()) {
+            delete(sessionId, executionContext);
+            return;
+        }
+
+        byte[] key = keyEncoder.encode(sessionId);
+        Map<String, byte[]> fields = new LinkedHashMap<>(entryList.size() * 2);
+        for (SessionEntry entry : entryList) {
+            fields.put(entry.getKey(), encode(Collections.singletonList(entry)));
+        }
+
+        Map<String, byte[]> loaded = getLoadedFields(sessionId, executionContext);
+        if (loaded == null || loaded.isEmpty()) {
+            client.hupdate(key, fields, null, getExpiresMilliSeconds());
+        } else {
+            Map<String, byte[]> changedFields = new LinkedHashMap<>();
+            for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+                if (!Arrays.equals(loaded.get(field.getKey()), field.getValue())) {
+                    changedFields.put(field.getKey(), field.getValue());
+                }
+            }
+            List<String> deletedFields = new ArrayList<>();
+            for (String loadedField : loaded.keySet()) {
+                if (!fields.containsKey(loadedField)) {
+                    deletedFields.add(loadedField);
+                }
+            }
+
+            if (changedFields.isEmpty() && deletedFields.isEmpty()) {
+                client.pexpire(key, getExpiresMilliSeconds());
+            } else if (!client.hupdate(key, changedFields, deletedFields, getExpiresMilliSeconds())) {
+                client.hupdate(key, fields, null, getExpiresMilliSeconds());
+            }
+        }
+        rememberLoadedFields(sessionId, fields, executionContext);
+        LettuceRedisManagedExpiration.cacheWrittenPttl(sessionId, getExpiresMilliSeconds(), executionContext);
+    }
+
+    @Override
+    public void delete(String sessionId, ExecutionContext executionContext) {
+        client.del(keyEncoder.encode(sessionId));
+        rememberLoadedFields(sessionId, null, executionContext);
+        LettuceRedisManagedExpiration.cacheWrittenPttl(sessionId, LettuceRedisManagedExpiration.PTTL_KEY_NOT_EXISTS, executionContext);
+    }
+
+    @Override
+    public void invalidate(String sessionId, ExecutionContext executionContext) {
+        delete(sessionId, executionContext);
+    }
+
+    /**
+     * ハッシュのすべてのフィールドを取得する。
+     * <p>
+     * {@link LettuceRedisManagedExpiration} は、セッションが存在しない場合に空の文字列をキーに保存する。
+     * キーがハッシュ以外の型で存在する場合は、セッションが存在しないものとして扱う。
+     * </p>
+     * @param key Redis のキー
+     * @return フィールドと値
+     */
+    private Map<String, byte[]> hgetall(byte[] key) {
+        try {
+            return client.hgetall(key);
+        } catch (RedisCommandExecutionException e) {
+            if (e.getMessage() != null && e.getMessage().startsWith(WRONG_TYPE_ERROR_PREFIX)) {
+                return Collections.emptyMap();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Redis に保存されているフィールドをリクエストスコープに保持する。
+     * @param sessionId セッションID
+     * @param fields フィールドと値。セッションが存在しない場合は {@code null}
+     * @param executionContext コンテキスト
+     */
+    private void rememberLoadedFields(String sessionId, Map<String, byte[]> fields, ExecutionContext executionContext) {
+        if (executionContext != null) {
+            executionContext.setRequestScopedVar(LOADED_FIELDS_KEY_PREFIX + sessionId, fields);
+        }
+    }
+
+    /**
+     * リクエストスコープに保持されているフィールドを取得する。
+     * @param sessionId セッションID
+     * @param executionContext コンテキスト
+     * @return フィールドと値。保持されていない場合は {@code null}
+     */
+    private Map<String, byte[]> getLoadedFields(String sessionId, ExecutionContext executionContext) {
+        if (executionContext == null) {
+            return null;
+        }
+        return executionContext.getRequestScopedVar(LOADED_FIELDS_KEY_PREFIX + sessionId);
+    }
+
+    /**
+     * {@link LettuceRedisClient} を設定する。
+     * @param client {@link LettuceRedisClient}
+     */
+    public void setClient(LettuceRedisClient client) {
+        this.client = client;
+    }
+
+    /**
+     * セッションの保存に使用するキーの接頭辞を設定する。
+     * <p>
+     * デフォルトは {@code "nablarch.session."}。<br>
+     * 変更する場合は、 {@link LettuceRedisManagedExpiration#setKeyPrefix(String)} にも同じ接頭辞を設定すること。
+     * </p>
+     * @param keyPrefix キーの接頭辞
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyEncoder = new SessionKeyEncoder(keyPrefix);
+    }
+}
@@ -5,33 +5,139 @@ import nablarch.fw.ExecutionContext;
 
 /**
  * Redis にセッションの有効期限を保存するためのクラス。
+ * <p>
+ * セッションの存在確認のために Redis から取得した残りの生存期間は、リクエストスコープに保持して再利用する。<br>
+ * このため、1回のリクエストの中で同じセッションの存在確認のために Redis へ問い合わせるのは、最大で1回となる。
+ * </p>
+ * <p>
+ * {@link #setRefreshThresholdRatio(double)} を設定した場合、有効期限の更新は、
+ * セッションの残りの生存期間が設定された有効期限に対して指定した割合を下回ったときにだけ行う。<br>
+ * 判定には Redis から読み込んだ残りの生存期間だけを使用する。
+ * 同じリクエストの中でセッションストアなどが書き込んだ有効期限は、保存しようとしている有効期限より短い場合があるため、
+ * その場合は常に有効期限を更新する。
+ * </p>
  * @author Tanaka Tomoyuki
  */
 public class LettuceRedisManagedExpiration implements Expiration {
 
+    /**
+     * セッションの残りの生存期間をリクエストスコープに保持するときに使用するキーの接頭辞。
+     */
+    private static final String PTTL_CACHE_KEY_PREFIX = LettuceRedisManagedExpiration.class.getName() + ".pttl.";
+
+    /**
+     * リクエストスコープに保持した残りの生存期間が、このリクエストでの書き込みによるものであることを示すフラグを
+     * 保持するときに使用するキーの接頭辞。
+     */
+    private static final String PTTL_WRITTEN_KEY_PREFIX = LettuceRedisManagedExpiration.class.getName() + ".pttlWritten.";
+
+    /**
+     * キーが存在しない場合に {@code PTTL} コマンドが返す値。
+     */
+    static final long PTTL_KEY_NOT_EXISTS = -2L;
+
     private LettuceRedisClient client;
 
+    private SessionKeyEncoder keyEncoder = new SessionKeyEncoder(SessionKeyEncoder.DEFAULT_PREFIX);
+
+    private double refreshThresholdRatio = 1.0;
+
     @Override
     public boolean isExpired(String sessionId, long currentDateTime, ExecutionContext context) {
-        return !existsSession(sessionId);
+        return !existsSession(sessionId, context);
     }
 
     @Override
     public void saveExpirationDateTime(String sessionId, long expirationDateTime, ExecutionContext context) {
-        String key = LettuceRedisStore.toSessionStoreKey(sessionId);
-        if (!existsSession(sessionId)) {
-            client.set(key, new byte[0]);
+        long remaining = expirationDateTime - System.currentTimeMillis();
+        if (refreshThresholdRatio < 1.0 && !isWrittenPttl(sessionId, context)) {
+            long pttl = pttl(sessionId, context);
+            if (pttl >= 0L && pttl >= remaining * refreshThresholdRatio) {
+                return;
+            }
         }
-        client.pexpireat(key, expirationDateTime);
+        client.setnxAndPexpireat(keyEncoder.encode(sessionId), new byte[0], expirationDateTime);
+        cacheWrittenPttl(sessionId, remaining > 0L ? remaining : PTTL_KEY_NOT_EXISTS, context);
     }
 
     @Override
     public boolean isDeterminable(String sessionId, ExecutionContext context) {
-        return existsSession(sessionId);
+        return existsSession(sessionId, context);
+    }
+
+    private boolean existsSession(String sessionId, ExecutionContext context) {
+        return pttl(sessionId, context) != PTTL_KEY_NOT_EXISTS;
+    }
+
+    /**
+     * セッションの残りの生存期間を取得する。
+     * <p>
+     * リクエストスコープに保持されている値があればその値を返し、
+     * なければ Redis から取得した値をリクエストスコープに保持してから返す。
+     * </p>
+     * @param sessionId セッションID
+     * @param context コンテキスト
+     * @return 残りの生存期間（ミリ秒）
+     */
+    private long pttl(String sessionId, ExecutionContext context) {
+        if (context == null) {
+            return client.pttl(keyEncoder.encode(sessionId));
+        }
+        Long pttl = getCachedPttl(sessionId, context);
+        if (pttl == null) {
+            pttl = client.pttl(keyEncoder.encode(sessionId));
+            cachePttl(sessionId, pttl, context);
+        }
+        return pttl;
+    }
+
+    /**
+     * リクエストスコープに保持されている、セッションの残りの生存期間を取得する。
+     * @param sessionId セッションID
+     * @param context コンテキスト
+     * @return 残りの生存期間（ミリ秒）。保持されていない場合は {@code null}
+     */
+    static Long getCachedPttl(String sessionId, ExecutionContext context) {
+        return context == null ? null : context.<Long>getRequestScopedVar(PTTL_CACHE_KEY_PREFIX + sessionId);
+    }
+
+    /**
+     * Redis から読み込んだセッションの残りの生存期間を、リクエストスコープに保持する。
+     * @param sessionId セッションID
+     * @param pttl 残りの生存期間（ミリ秒）。セッションが存在しない場合は {@code -2}
+     * @param context コンテキスト
+     */
+    static void cachePttl(String sessionId, long pttl, ExecutionContext context) {
+        if (context != null) {
+            context.setRequestScopedVar(PTTL_CACHE_KEY_PREFIX + sessionId, pttl);
+            context.setRequestScopedVar(PTTL_WRITTEN_KEY_PREFIX + sessionId, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * このリクエストで書き込んだセッションの残りの生存期間を、リクエストスコープに保持する。
+     * <p>
+     * {@link LettuceRedisStore} がセッションを更新したときにも、このメソッドを使って保持している値を更新する。
+     * </p>
+     * @param sessionId セッションID
+     * @param pttl 残りの生存期間（ミリ秒）。セッションが存在しない場合は {@code -2}
+     * @param context コンテキスト
+     */
+    static void cacheWrittenPttl(String sessionId, long pttl, ExecutionContext context) {
+        if (context != null) {
+            context.setRequestScopedVar(PTTL_CACHE_KEY_PREFIX + sessionId, pttl);
+            context.setRequestScopedVar(PTTL_WRITTEN_KEY_PREFIX + sessionId, Boolean.TRUE);
+        }
     }
 
-    private boolean existsSession(String sessionId) {
-        return client.exists(LettuceRedisStore.toSessionStoreKey(sessionId));
+    /**
+     * リクエストスコープに保持されている残りの生存期間が、このリクエストで書き込んだものかどうかを判定する。
+     * @param sessionId セッションID
+     * @param context コンテキスト
+     * @return このリクエストで書き込んだものの場合は {@code true}
+     */
+    private static boolean isWrittenPttl(String sessionId, ExecutionContext context) {
+        return context != null && Boolean.TRUE.equals(context.getRequestScopedVar(PTTL_WRITTEN_KEY_PREFIX + sessionId));
     }
 
     /**
@@ -41,4 +147,34 @@ public class LettuceRedisManagedExpiration implements Expiration {
     public void setClient(LettuceRedisClient client) {
         this.client = client;
     }
+
+    /**
+     * セッションの保存に使用するキーの接頭辞を設定する。
+     * <p>
+     * デフォルトは {@code "nablarch.session."}。
+     * セッションストアに設定した接頭辞と同じ値を設定すること。
+     * </p>
+     * @param keyPrefix キーの接頭辞
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyEncoder = new SessionKeyEncoder(keyPrefix);
+    }
+
+    /**
+     * 有効期限を更新する閾値を、設定された有効期限に対する割合で設定する。
+     * <p>
+     * セッションの残りの生存期間が、保存しようとしている有効期限までの期間にこの割合を掛けた値以上の場合、
+     * 有効期限の更新を省略する。<br>
+     * 例えば {@code 0.5} を設定すると、有効期限の半分以上の期間が残っている間は Redis への書き込みを行わない。<br>
+     * デフォルトは {@code 1.0} で、この場合は常に有効期限を更新する。
+     * </p>
+     * @param refreshThresholdRatio 有効期限を更新する閾値（{@code 0} より大きく {@code 1.0} 以下）
+     */
+    public void setRefreshThresholdRatio(double refreshThresholdRatio) {
+        if (refreshThresholdRatio <= 0.0 || 1.0 < refreshThresholdRatio) {
+            throw new IllegalArgumentException(
+                    "refreshThresholdRatio must be greater than 0 and less than or equal to 1. refreshThresholdRatio=" + refreshThresholdRatio);
+        }
+        this.refreshThresholdRatio = refreshThresholdRatio;
+    }
 }
@@ -0,0 +1,217 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.repository.initialization.Initializable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * {@link LettuceRedisStore} が Redis から読み込んだセッションを、アプリケーションのメモリ上に保持するニアキャッシュ。
+ * <p>
+ * セッションはエンコードされたバイト列のまま、 {@link #setMaxEntries(int)} で指定した件数を上限として
+ * LRU 方式で保持する。<br>
+ * キャッシュの無効化には {@link LettuceRedisClient#trackInvalidation(String, LettuceKeyInvalidationListener)} を使用する。
+ * このため、他のアプリケーションサーバーがセッションを更新した場合も、 Redis からの通知を受けてキャッシュが無効化される。<br>
+ * 通知が届くまでのわずかな間は、更新前のセッションがキャッシュから返される可能性がある点に注意すること。
+ * </p>
+ * <p>
+ * 有効期限の更新（{@code PEXPIRE}）もキーの変更として通知されるため、リクエストごとに有効期限を更新すると
+ * キャッシュはほとんど効かない。
+ * このクラスを使用する場合は、 {@link LettuceRedisStore#setRefreshThresholdRatio(double)} を併せて設定すること。
+ * </p>
+ * <p>
+ * Redis との接続が切断されて追跡が中断している間は、キャッシュを使用せずに常に Redis から読み込む。
+ * </p>
+ * <p>
+ * 変更の追跡は、初期化したクライアントでなければ開始できないため、 {@link #initialize()} ではなく、
+ * 初めて {@link #get(String, Function)} を呼び出したときに開始する。
+ * このため、初期化対象のリストには、 {@link #setClient(LettuceRedisClient)} に設定したクライアントとの順序を気にせずに登録できる。
+ * 追跡が開始されるまでの間は、キャッシュを使用せずに Redis から読み込む。
+ * </p>
+ */
+public class LettuceRedisNearCache implements LettuceKeyInvalidationListener, Initializable {
+
+    private LettuceRedisClient client;
+    private String keyPrefix = LettuceRedisStore.toSessionStoreKey("");
+    private int maxEntries = 10000;
+
+    private final Object lock = new Object();
+    private Map<String, Object> entries;
+    private volatile boolean tracking;
+    private final AtomicBoolean trackingRequested = new AtomicBoolean();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    @Override
+    public void initialize() {
+        entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 変更の追跡を開始していない場合は、開始する。
+     * <p>
+     * 開始できなかった場合は、次の呼び出しで再び開始を試みる。
+     * </p>
+     */
+    private void startTrackingIfNotRequested() {
+        if (trackingRequested.get() || !trackingRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            client.trackInvalidation(keyPrefix, this);
+        } catch (RuntimeException e) {
+            trackingRequested.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * キーに対応する値を取得する。
+     * <p>
+     * キャッシュに値が存在する場合はその値を返す。
+     * 存在しない場合は {@code loader} で読み込んだ値をキャッシュに格納してから返す。<br>
+     * 読み込み中に同じキーの変更が通知された場合、読み込んだ値はキャッシュに格納しない。<br>
+     * 変更の追跡を開始していない場合は、開始してから読み込む。
+     * </p>
+     * @param key キー
+     * @param loader キャッシュに値が存在しない場合に、値を読み込む関数
+     * @return 値。値が存在しない場合は {@code null}
+     */
+    public byte[] get(String key, Function<String, byte[]> loader) {
+        startTrackingIfNotRequested();
+        if (!tracking) {
+            missCount.increment();
+            return loader.apply(key);
+        }
+
+        Object loading = new Object();
+        synchronized (lock) {
+            Object cached = entries.get(key);
+            if (cached instanceof byte[]) {
+                hitCount.increment();
+                return (byte[]) cached;
+            }
+            entries.put(key, loading);
+        }
+
+        missCount.increment();
+        byte[] value = loader.apply(key);
+        synchronized (lock) {
+            if (entries.get(key) == loading) {
+                if (value == null) {
+                    entries.remove(key);
+                } else {
+                    entries.put(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * キーに対応する値をキャッシュから削除する。
+     * <p>
+     * このアプリケーションがキーを更新したときに、 Redis からの通知を待たずにキャッシュを無効化するために使用する。
+     * </p>
+     * @param key キー
+     */
+    public void invalidate(String key) {
+        synchronized (lock) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public void onTrackingStarted() {
+        clear();
+        tracking = true;
+    }
+
+    @Override
+    public void onTrackingStopped() {
+        tracking = false;
+        clear();
+    }
+
+    @Override
+    public void onInvalidated(String key) {
+        invalidationCount.increment();
+        invalidate(key);
+    }
+
+    @Override
+    public void onInvalidatedAll() {
+        invalidationCount.increment();
+        clear();
+    }
+
+    private void clear() {
+        synchronized (lock) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * キャッシュから値を返した回数を取得する。
+     * @return キャッシュから値を返した回数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * キャッシュに値が存在せず、 Redis から値を読み込んだ回数を取得する。
+     * @return Redis から値を読み込んだ回数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Redis からキャッシュの無効化を通知された回数を取得する。
+     * @return キャッシュの無効化を通知された回数
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    /**
+     * キーの変更の追跡に使用する {@link LettuceRedisClient} を設定する。
+     * @param client {@link LettuceRedisClient}
+     */
+    public void setClient(LettuceRedisClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 変更を追跡するキーの接頭辞を設定する。
+     * <p>
+     * デフォルトは、 {@link LettuceRedisStore} がセッションの保存に使用するキーの接頭辞。
+     * </p>
+     * @param keyPrefix 変更を追跡するキーの接頭辞
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * キャッシュに保持するセッションの最大件数を設定する。
+     * <p>
+     * デフォルトは {@code 10000} 件。
+     * </p>
+     * @param maxEntries キャッシュに保持するセッションの最大件数
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
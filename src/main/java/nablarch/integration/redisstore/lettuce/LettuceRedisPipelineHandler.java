@@ -0,0 +1,50 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.Handler;
+
+/**
+ * リクエストの処理中に実行された Redis への書き込みを、まとめて送信するハンドラ。
+ * <p>
+ * 後続のハンドラを呼び出す前に {@link LettucePipeliningRedisClient#beginPipeline()} でパイプラインを開始し、
+ * 後続のハンドラから戻ったときに {@link LettucePipeliningRedisClient#syncPipeline()} で保持したコマンドを送信する。<br>
+ * セッションストアへの保存を含めるため、このハンドラはセッション変数保存ハンドラよりも前（外側）に配置すること。
+ * また、保存が完了してからレスポンスを返すため、 HTTP レスポンスハンドラよりも後（内側）に配置すること。
+ * </p>
+ * <p>
+ * 後続のハンドラが例外を送出した場合も、保持したコマンドを送信する。
+ * このとき送信に失敗した場合は、送信の例外を後続のハンドラが送出した例外の抑制された例外に追加する。
+ * </p>
+ */
+@Published(tag = "architect")
+public class LettuceRedisPipelineHandler implements Handler<Object, Object> {
+
+    private LettucePipeliningRedisClient client;
+
+    @Override
+    public Object handle(Object data, ExecutionContext context) {
+        client.beginPipeline();
+        Object result;
+        try {
+            result = context.handleNext(data);
+        } catch (RuntimeException | Error e) {
+            try {
+                client.syncPipeline();
+            } catch (RuntimeException syncFailure) {
+                e.addSuppressed(syncFailure);
+            }
+            throw e;
+        }
+        client.syncPipeline();
+        return result;
+    }
+
+    /**
+     * 書き込みをまとめて送信するクライアントを設定する。
+     * @param client 書き込みをまとめて送信するクライアント
+     */
+    public void setClient(LettucePipeliningRedisClient client) {
+        this.client = client;
+    }
+}
@@ -1,14 +1,65 @@
 package nablarch.integration.redisstore.lettuce;
 
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisException;
+import nablarch.common.web.session.EncodeException;
 import nablarch.common.web.session.SessionEntry;
 import nablarch.common.web.session.SessionStore;
+import nablarch.common.web.session.StateEncoder;
 import nablarch.fw.ExecutionContext;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Lettuce を使って Redis のセッションストアを実装したクラス。
+ * <p>
+ * {@link #load(String, ExecutionContext)} で取得したセッションのバイト列は、リクエストスコープに保持される。<br>
+ * {@link #save(String, List, ExecutionContext)} でエンコードしたセッションがこのバイト列と一致する場合は、
+ * セッションの値は書き込まずに、有効期限の更新のみを行う。
+ * 読み込んだ後にセッションの有効期限が切れていた場合は、有効期限を更新できないため、セッションを保存し直す。
+ * 分割していないセッションでは、有効期限の更新と保存し直しを {@link LettuceRedisClient#setnxAndPexpireat(byte[], byte[], long)} の
+ * 1回のコマンドで行う。
+ * このため、 {@link LettucePipeliningRedisClient} を使用する場合も、コマンドは応答を待たずにパイプラインに保持される。
+ * </p>
+ * <p>
+ * さらに {@link #setRefreshThresholdRatio(double)} を設定した場合、変更されていないセッションの有効期限の更新は、
+ * 残りの生存期間が設定された有効期限に対して指定した割合を下回ったときにだけ行う。
+ * </p>
+ * <p>
+ * {@link #setNearCache(LettuceRedisNearCache)} を設定した場合、セッションの読み込みにはニアキャッシュを使用する。
+ * </p>
+ * <p>
+ * {@link #setPayloadTransformer(LettucePayloadTransformer)} を設定した場合、セッションのバイト列は
+ * 変換（圧縮など）してから Redis に保存する。
+ * </p>
+ * <p>
+ * {@link #setStateEncoder(StateEncoder)} に {@link LettuceStreamStateDecoder} を実装したエンコーダ
+ * （{@link LettuceJavaSerializeStateEncoder} など）を設定した場合、セッションの値は読み込んだバイト列から直接復元する。
+ * </p>
+ * <p>
+ * {@link #setLazyDecode(boolean)} を設定した場合、セッションの値は初めて参照したときにデコードする。
+ * </p>
+ * <p>
+ * {@link #setChunkThreshold(int)} を設定した場合、閾値を超えるサイズのセッションは {@link #setChunkSize(int)} のサイズごとに分割し、
+ * 同じスロットに配置される別々のキーに保存する。
+ * セッションのキーには分割したキーを特定するためのマニフェストを保存し、分割したキーの読み書きはパイプラインで行う。
+ * 分割したキーは、セッションと一緒に有効期限を更新し、 {@code UNLINK} で削除する。<br>
+ * 数 MB のセッションを1つの値として読み書きすると、その間 Redis がほかのクライアントのコマンドを処理できなくなるため、
+ * サイズの大きなセッションを扱う場合に設定する。
+ * </p>
+ * <p>
+ * {@link #setReuseEncodeBuffer(boolean)} を設定した場合、セッションのエンコードにはスレッドごとに再利用するバッファを使用する。
+ * </p>
  *
  * @author Tanaka Tomoyuki
  */
@@ -20,11 +71,49 @@ public class LettuceRedisStore extends SessionStore {
      * @return Redis への格納に使用するキー
      */
     public static String toSessionStoreKey(String sessionId) {
-        return "nablarch.session." + sessionId;
+        return SessionKeyEncoder.DEFAULT_PREFIX + sessionId;
     }
 
+    /**
+     * 読み込んだセッションのバイト列をリクエストスコープに保持するときに使用するキーの接頭辞。
+     */
+    private static final String LOADED_SESSION_KEY_PREFIX = LettuceRedisStore.class.getName() + ".loaded.";
+
+    /**
+     * 読み込んだセッションのマニフェストをリクエストスコープに保持するときに使用するキーの接頭辞。
+     */
+    private static final String LOADED_MANIFEST_KEY_PREFIX = LettuceRedisStore.class.getName() + ".manifest.";
+
+    /**
+     * 読み込んだセッションを変換したバイト列をリクエストスコープに保持するときに使用するキーの接頭辞。
+     */
+    private static final String LOADED_PAYLOAD_KEY_PREFIX = LettuceRedisStore.class.getName() + ".payload.";
+
+    /**
+     * 分割したキーが見つからなかった場合に、セッションを読み込む最大の回数。
+     */
+    private static final int MAX_CHUNKED_LOAD_ATTEMPTS = 3;
+
     private LettuceRedisClient client;
 
+    private SessionKeyEncoder keyEncoder = new SessionKeyEncoder(SessionKeyEncoder.DEFAULT_PREFIX);
+
+    private double refreshThresholdRatio = 1.0;
+
+    private LettuceRedisNearCache nearCache;
+
+    private LettucePayloadTransformer payloadTransformer;
+
+    private boolean lazyDecode;
+
+    private int chunkThreshold;
+
+    private int chunkSize = 256 * 1024;
+
+    private boolean reuseEncodeBuffer;
+
+    private int maxReusedEncodeBufferSize = 1024 * 1024;
+
     /**
      * コンストラクタ。
      */
@@ -34,7 +123,13 @@ public class LettuceRedisStore extends SessionStore {
 
     @Override
     public List<SessionEntry> load(String sessionId, ExecutionContext executionContext) {
-        byte[] encoded = client.get(toSessionStoreKey(sessionId));
+        byte[] stored = nearCache == null
+                ? client.get(keyEncoder.encode(sessionId))
+                : nearCache.get(keyEncoder.toKey(sessionId), client::get);
+        stored = restoreChunks(sessionId, stored, executionContext);
+        byte[] encoded = stored == null || payloadTransformer == null ? stored : payloadTransformer.restore(stored);
+        rememberLoadedSession(sessionId, encoded, executionContext);
+        rememberLoadedPayload(sessionId, stored, executionContext);
         return encoded == null ? Collections.emptyList() : decode(encoded);
     }
 
@@ -43,14 +138,82 @@ public class LettuceRedisStore extends SessionStore {
         if (entryList == null || entryList.isEmpty()) {
             delete(sessionId, executionContext);
         } else {
-            client.set(toSessionStoreKey(sessionId), encode(entryList));
-            client.pexpire(toSessionStoreKey(sessionId), getExpiresMilliSeconds());
+            byte[] key = keyEncoder.encode(sessionId);
+            byte[] encoded = encodeIfChanged(sessionId, entryList, executionContext);
+            if (encoded != null) {
+                write(sessionId, key, encoded, executionContext);
+            } else if (needsRefresh(sessionId, key, executionContext)) {
+                refresh(sessionId, key, executionContext);
+            } else {
+                return;
+            }
+            LettuceRedisManagedExpiration.cacheWrittenPttl(sessionId, getExpiresMilliSeconds(), executionContext);
+        }
+    }
+
+    /**
+     * 変更されていないセッションの有効期限を更新する。
+     * <p>
+     * 分割していないセッションは、読み込んだ後に有効期限が切れていた場合に保存し直す値と一緒に、
+     * {@link LettuceRedisClient#setnxAndPexpireat(byte[], byte[], long)} で有効期限を更新する。
+     * 結果を待たずに済むため、パイプラインに保持できる。<br>
+     * 分割したセッションは、分割したキーも保存し直す必要があるため、有効期限を更新できたかどうかを確認してから保存し直す。
+     * </p>
+     * @param sessionId セッションID
+     * @param key Redis のキー
+     * @param executionContext コンテキスト
+     */
+    private void refresh(String sessionId, byte[] key, ExecutionContext executionContext) {
+        ChunkManifest manifest = getLoadedManifest(sessionId, executionContext);
+        if (manifest == null) {
+            client.setnxAndPexpireat(key, getLoadedPayload(sessionId, executionContext),
+                    System.currentTimeMillis() + getExpiresMilliSeconds());
+            return;
+        }
+        expireChunks(sessionId, manifest);
+        if (!client.pexpireIfExists(key, getExpiresMilliSeconds())) {
+            // 読み込んだ後に有効期限が切れたため、セッションを保存し直す
+            write(sessionId, key, getLoadedSession(sessionId, executionContext), executionContext);
+        }
+    }
+
+    /**
+     * エンコードしたセッションを Redis に書き込む。
+     * @param sessionId セッションID
+     * @param key Redis のキー
+     * @param encoded エンコードしたセッション
+     * @param executionContext コンテキスト
+     */
+    private void write(String sessionId, byte[] key, byte[] encoded, ExecutionContext executionContext) {
+        byte[] stored = payloadTransformer == null ? encoded : payloadTransformer.transform(encoded);
+        ChunkManifest previous = getLoadedManifest(sessionId, executionContext);
+        if (chunkThreshold > 0 && stored.length > chunkThreshold) {
+            ChunkManifest manifest = writeChunks(sessionId, stored);
+            client.psetex(key, getExpiresMilliSeconds(), manifest.toBytes());
+            rememberLoadedManifest(sessionId, manifest, executionContext);
+        } else {
+            client.psetex(key, getExpiresMilliSeconds(), stored);
+            rememberLoadedManifest(sessionId, null, executionContext);
         }
+        unlinkChunks(sessionId, previous);
+        invalidateNearCache(sessionId);
+        rememberLoadedSession(sessionId, encoded, executionContext);
+        rememberLoadedPayload(sessionId, stored, executionContext);
     }
 
     @Override
     public void delete(String sessionId, ExecutionContext executionContext) {
-        client.del(toSessionStoreKey(sessionId));
+        if (chunkThreshold > 0) {
+            client.unlink(keyEncoder.encode(sessionId));
+        } else {
+            client.del(keyEncoder.encode(sessionId));
+        }
+        unlinkChunks(sessionId, getLoadedManifest(sessionId, executionContext));
+        invalidateNearCache(sessionId);
+        rememberLoadedSession(sessionId, null, executionContext);
+        rememberLoadedPayload(sessionId, null, executionContext);
+        rememberLoadedManifest(sessionId, null, executionContext);
+        LettuceRedisManagedExpiration.cacheWrittenPttl(sessionId, LettuceRedisManagedExpiration.PTTL_KEY_NOT_EXISTS, executionContext);
     }
 
     @Override
@@ -58,6 +221,409 @@ public class LettuceRedisStore extends SessionStore {
         delete(sessionId, executionContext);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@link #getStateEncoder()} が {@link LettuceStreamStateDecoder} を実装している場合は、
+     * 値ごとのバイト配列を作らず、読み込んだバイト列のうち値の範囲を読み込むストリームから復元する。<br>
+     * Redis から受信したバッファ（Netty の {@code ByteBuf}）を直接参照しないのは、バッファがコマンドの完了後に解放・再利用されるうえ、
+     * 読み込んだバイト列は変更の判定やニアキャッシュのために保持し続ける必要があるためである。
+     * このため、受信したバッファからのコピーは1回だけ行い、それ以降のコピーを省略する。
+     * </p>
+     * <p>
+     * {@link #setLazyDecode(boolean)} に {@code true} を設定した場合は、値をデコードせずに、値を初めて参照したときにデコードする。
+     * </p>
+     */
+    @Override
+    protected List<SessionEntry> decode(byte[] encoded) {
+        if (!lazyDecode && !(getStateEncoder() instanceof LettuceStreamStateDecoder)) {
+            return super.decode(encoded);
+        }
+
+        List<SessionEntry> entryList = new ArrayList<>();
+        ByteArrayInputStream bytes = new ByteArrayInputStream(encoded);
+        DataInputStream in = new DataInputStream(bytes);
+        try {
+            while (bytes.available() > 0) {
+                String key = in.readUTF();
+                int length = in.readInt();
+                if (length == 0) {
+                    entryList.add(new SessionEntry(key, null, this));
+                    continue;
+                }
+                String typeName = in.readUTF();
+                int offset = encoded.length - bytes.available();
+                entryList.add(lazyDecode
+                        ? new LazySessionEntry(key, typeName, encoded, offset, length, this)
+                        : new SessionEntry(key, decodeValue(typeName, encoded, offset, length), this));
+                in.skipBytes(length);
+            }
+        } catch (IOException e) {
+            throw new EncodeException(e);
+        }
+        return entryList;
+    }
+
+    /**
+     * 読み込んだセッションのバイト列のうち、1つの値の範囲をデコードする。
+     * @param typeName 値のクラスの名前
+     * @param encoded 読み込んだセッションのバイト列
+     * @param offset {@code encoded} のうち、値が始まる位置
+     * @param length 値のバイト数
+     * @return デコードした値
+     */
+    Object decodeValue(String typeName, byte[] encoded, int offset, int length) {
+        Class<?> type;
+        try {
+            type = Class.forName(typeName);
+        } catch (ClassNotFoundException e) {
+            throw new EncodeException(e);
+        }
+        StateEncoder stateEncoder = getStateEncoder();
+        if (stateEncoder instanceof LettuceStreamStateDecoder) {
+            return ((LettuceStreamStateDecoder) stateEncoder).decode(new ByteArrayInputStream(encoded, offset, length), type);
+        }
+        return stateEncoder.decode(Arrays.copyOfRange(encoded, offset, offset + length), type);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * {@link #setLazyDecode(boolean)} に {@code true} を設定した場合、値を一度も参照していないエントリは、
+     * 読み込んだときのバイト列をそのまま書き込む。
+     * </p>
+     * <p>
+     * {@link #setReuseEncodeBuffer(boolean)} に {@code true} を設定した場合、スレッドごとに再利用するバッファに書き込んでから、
+     * ちょうどのサイズのバイト配列にコピーする。
+     * </p>
+     */
+    @Override
+    protected byte[] encode(List<SessionEntry> entryList) {
+        if (reuseEncodeBuffer) {
+            EncodeBuffer buffer = EncodeBuffer.acquire();
+            try {
+                writeEntries(entryList, buffer.dataOutput());
+                return buffer.toByteArray();
+            } finally {
+                buffer.release(maxReusedEncodeBufferSize);
+            }
+        }
+        if (!lazyDecode) {
+            return super.encode(entryList);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+        writeEntries(entryList, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * セッションをエンコードし、読み込んだときから変更されている場合だけバイト列を返す。
+     * <p>
+     * {@link #setReuseEncodeBuffer(boolean)} に {@code true} を設定した場合は、再利用するバッファの内容を読み込んだバイト列と比較し、
+     * 変更されていない場合はバイト配列へのコピーも行わない。
+     * </p>
+     * @param sessionId セッションID
+     * @param entryList セッションエントリのリスト
+     * @param executionContext コンテキスト
+     * @return エンコードしたセッション。変更されていない場合は {@code null}
+     */
+    private byte[] encodeIfChanged(String sessionId, List<SessionEntry> entryList, ExecutionContext executionContext) {
+        byte[] loaded = getLoadedSession(sessionId, executionContext);
+        if (!reuseEncodeBuffer) {
+            byte[] encoded = encode(entryList);
+            return Arrays.equals(loaded, encoded) ? null : encoded;
+        }
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        try {
+            writeEntries(entryList, buffer.dataOutput());
+            return buffer.contentEquals(loaded) ? null : buffer.toByteArray();
+        } finally {
+            buffer.release(maxReusedEncodeBufferSize);
+        }
+    }
+
+    /**
+     * セッションエントリを、 {@link SessionStore#encode(List)} と同じ形式で書き込む。
+     * <p>
+     * 値を一度も参照していない {@link LazySessionEntry} は、読み込んだときのバイト列をそのまま書き込む。
+     * </p>
+     * @param entryList セッションエントリのリスト
+     * @param out 出力先
+     */
+    private void writeEntries(List<SessionEntry> entryList, DataOutputStream out) {
+        try {
+            for (SessionEntry entry : entryList) {
+                out.writeUTF(entry.getKey());
+                if (entry instanceof LazySessionEntry && !((LazySessionEntry) entry).isDecoded()) {
+                    ((LazySessionEntry) entry).writeTo(out);
+                    continue;
+                }
+                Object value = entry.getValue();
+                if (value == null) {
+                    out.writeInt(0);
+                    continue;
+                }
+                byte[] encodedValue = getStateEncoder().encode(value);
+                out.writeInt(encodedValue.length);
+                out.writeUTF(value.getClass().getName());
+                out.write(encodedValue);
+            }
+        } catch (IOException e) {
+            throw new EncodeException(e);
+        }
+    }
+
+    /**
+     * Redis から読み込んだバイト列がマニフェストの場合、分割したキーを読み込んで結合する。
+     * <p>
+     * 分割したキーが見つからない場合は、読み込んでいる間にセッションが書き換えられたとみなし、マニフェストを読み込み直す。
+     * 読み込み直しても見つからない場合は、分割したキーの有効期限が切れたとみなし、セッションが存在しないものとして扱う。<br>
+     * マニフェストでない場合は、読み込んだバイト列をそのまま返す。
+     * 分割の設定に関わらず変換を行うため、分割をやめた後も分割して保存したセッションを読み込むことができる。
+     * </p>
+     * @param sessionId セッションID
+     * @param stored Redis から読み込んだバイト列
+     * @param executionContext コンテキスト
+     * @return 結合したバイト列
+     */
+    private byte[] restoreChunks(String sessionId, byte[] stored, ExecutionContext executionContext) {
+        for (int attempt = 1; stored != null && ChunkManifest.isManifest(stored); attempt++) {
+            ChunkManifest manifest = ChunkManifest.parse(stored);
+            byte[] payload = readChunks(sessionId, manifest);
+            if (payload != null) {
+                rememberLoadedManifest(sessionId, manifest, executionContext);
+                return payload;
+            }
+            stored = attempt < MAX_CHUNKED_LOAD_ATTEMPTS ? client.get(keyEncoder.encode(sessionId)) : null;
+        }
+        rememberLoadedManifest(sessionId, null, executionContext);
+        return stored;
+    }
+
+    /**
+     * マニフェストに記録された分割したキーを、パイプラインで読み込んで結合する。
+     * @param sessionId セッションID
+     * @param manifest マニフェスト
+     * @return 結合したバイト列。分割したキーが見つからない場合は {@code null}
+     */
+    private byte[] readChunks(String sessionId, ChunkManifest manifest) {
+        byte[] key = keyEncoder.encode(sessionId);
+        LettuceRedisAsyncClient asyncClient = client.async();
+        List<CompletionStage<byte[]>> results = new ArrayList<>(manifest.getChunkCount());
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            results.add(asyncClient.get(manifest.chunkKey(key, i)));
+        }
+        byte[] payload = new byte[manifest.getLength()];
+        int offset = 0;
+        for (CompletionStage<byte[]> result : results) {
+            byte[] chunk = await(result);
+            if (chunk == null || offset + chunk.length > payload.length) {
+                return null;
+            }
+            System.arraycopy(chunk, 0, payload, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return offset == payload.length ? payload : null;
+    }
+
+    /**
+     * バイト列を分割して、パイプラインで書き込む。
+     * <p>
+     * 分割したキーの書き込みがすべて完了してから戻る。
+     * マニフェストは、このメソッドが戻った後に書き込むこと。
+     * </p>
+     * @param sessionId セッションID
+     * @param stored Redis に保存するバイト列
+     * @return 分割したキーを記録したマニフェスト
+     */
+    private ChunkManifest writeChunks(String sessionId, byte[] stored) {
+        byte[] key = keyEncoder.encode(sessionId);
+        ChunkManifest manifest = ChunkManifest.create(stored.length, chunkSize);
+        LettuceRedisAsyncClient asyncClient = client.async();
+        List<CompletionStage<Void>> results = new ArrayList<>(manifest.getChunkCount());
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            int from = i * chunkSize;
+            byte[] chunk = Arrays.copyOfRange(stored, from, Math.min(from + chunkSize, stored.length));
+            results.add(asyncClient.psetex(manifest.chunkKey(key, i), getExpiresMilliSeconds(), chunk));
+        }
+        results.forEach(LettuceRedisStore::await);
+        return manifest;
+    }
+
+    /**
+     * マニフェストに記録された分割したキーの有効期限を、パイプラインで更新する。
+     * @param sessionId セッションID
+     * @param manifest マニフェスト。 {@code null} の場合は何もしない
+     */
+    private void expireChunks(String sessionId, ChunkManifest manifest) {
+        if (manifest == null) {
+            return;
+        }
+        byte[] key = keyEncoder.encode(sessionId);
+        LettuceRedisAsyncClient asyncClient = client.async();
+        List<CompletionStage<Void>> results = new ArrayList<>(manifest.getChunkCount());
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            results.add(asyncClient.pexpire(manifest.chunkKey(key, i), getExpiresMilliSeconds()));
+        }
+        results.forEach(LettuceRedisStore::await);
+    }
+
+    /**
+     * マニフェストに記録された分割したキーを、パイプラインで削除する。
+     * @param sessionId セッションID
+     * @param manifest マニフェスト。 {@code null} の場合は何もしない
+     */
+    private void unlinkChunks(String sessionId, ChunkManifest manifest) {
+        if (manifest == null) {
+            return;
+        }
+        byte[] key = keyEncoder.encode(sessionId);
+        LettuceRedisAsyncClient asyncClient = client.async();
+        List<CompletionStage<Void>> results = new ArrayList<>(manifest.getChunkCount());
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            results.add(asyncClient.unlink(manifest.chunkKey(key, i)));
+        }
+        results.forEach(LettuceRedisStore::await);
+    }
+
+    /**
+     * 非同期に実行したコマンドの完了を待つ。
+     * @param result コマンドの結果
+     * @param <T> 結果の型
+     * @return コマンドの結果
+     */
+    private static <T> T await(CompletionStage<T> result) {
+        try {
+            return result.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RedisException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        }
+    }
+
+    /**
+     * 読み込んだセッションのマニフェストをリクエストスコープに保持する。
+     * @param sessionId セッションID
+     * @param manifest マニフェスト。セッションを分割していない場合は {@code null}
+     * @param executionContext コンテキスト
+     */
+    private void rememberLoadedManifest(String sessionId, ChunkManifest manifest, ExecutionContext executionContext) {
+        if (executionContext != null) {
+            executionContext.setRequestScopedVar(LOADED_MANIFEST_KEY_PREFIX + sessionId, manifest);
+        }
+    }
+
+    /**
+     * リクエストスコープに保持した、読み込んだセッションのマニフェストを取得する。
+     * <p>
+     * 同じリクエストの中でセッションを読み込んでいない場合は、分割したキーを特定できないため {@code null} を返す。
+     * この場合、古い分割したキーは削除せず、有効期限が切れるまで残る。
+     * </p>
+     * @param sessionId セッションID
+     * @param executionContext コンテキスト
+     * @return マニフェスト。セッションを分割していない場合は {@code null}
+     */
+    private ChunkManifest getLoadedManifest(String sessionId, ExecutionContext executionContext) {
+        if (executionContext == null) {
+            return null;
+        }
+        return executionContext.getRequestScopedVar(LOADED_MANIFEST_KEY_PREFIX + sessionId);
+    }
+
+    /**
+     * ニアキャッシュが設定されている場合、セッションをニアキャッシュから削除する。
+     * @param sessionId セッションID
+     */
+    private void invalidateNearCache(String sessionId) {
+        if (nearCache != null) {
+            nearCache.invalidate(keyEncoder.toKey(sessionId));
+        }
+    }
+
+    /**
+     * Redis に保存されているセッションのバイト列をリクエストスコープに保持する。
+     * @param sessionId セッションID
+     * @param encoded セッションのバイト列。セッションが存在しない場合は {@code null}
+     * @param executionContext コンテキスト
+     */
+    private void rememberLoadedSession(String sessionId, byte[] encoded, ExecutionContext executionContext) {
+        if (executionContext != null) {
+            executionContext.setRequestScopedVar(LOADED_SESSION_KEY_PREFIX + sessionId, encoded);
+        }
+    }
+
+    /**
+     * リクエストスコープに保持した、 Redis に保存されているセッションのバイト列を取得する。
+     * @param sessionId セッションID
+     * @param executionContext コンテキスト
+     * @return セッションのバイト列。保持していない場合は {@code null}
+     */
+    private byte[] getLoadedSession(String sessionId, ExecutionContext executionContext) {
+        if (executionContext == null) {
+            return null;
+        }
+        return executionContext.getRequestScopedVar(LOADED_SESSION_KEY_PREFIX + sessionId);
+    }
+
+    /**
+     * Redis に保存されている、セッションを変換したバイト列をリクエストスコープに保持する。
+     * <p>
+     * {@link #setPayloadTransformer(LettucePayloadTransformer)} を設定していない場合は、
+     * セッションのバイト列と同じため保持しない。
+     * </p>
+     * @param sessionId セッションID
+     * @param stored セッションを変換したバイト列。セッションが存在しない場合は {@code null}
+     * @param executionContext コンテキスト
+     */
+    private void rememberLoadedPayload(String sessionId, byte[] stored, ExecutionContext executionContext) {
+        if (executionContext != null && payloadTransformer != null) {
+            executionContext.setRequestScopedVar(LOADED_PAYLOAD_KEY_PREFIX + sessionId, stored);
+        }
+    }
+
+    /**
+     * リクエストスコープに保持した、 Redis に保存されているセッションを変換したバイト列を取得する。
+     * @param sessionId セッションID
+     * @param executionContext コンテキスト
+     * @return セッションを変換したバイト列。保持していない場合は {@code null}
+     */
+    private byte[] getLoadedPayload(String sessionId, ExecutionContext executionContext) {
+        if (payloadTransformer == null) {
+            return getLoadedSession(sessionId, executionContext);
+        }
+        if (executionContext == null) {
+            return null;
+        }
+        return executionContext.getRequestScopedVar(LOADED_PAYLOAD_KEY_PREFIX + sessionId);
+    }
+
+    /**
+     * 変更されていないセッションの有効期限を更新する必要があるか判定する。
+     * <p>
+     * 残りの生存期間は、リクエストスコープに保持されている値があればその値を使い、なければ Redis から取得する。
+     * </p>
+     * @param sessionId セッションID
+     * @param key Redis のキー
+     * @param executionContext コンテキスト
+     * @return 更新する必要がある場合は {@code true}
+     */
+    private boolean needsRefresh(String sessionId, byte[] key, ExecutionContext executionContext) {
+        if (refreshThresholdRatio >= 1.0) {
+            return true;
+        }
+        Long pttl = LettuceRedisManagedExpiration.getCachedPttl(sessionId, executionContext);
+        if (pttl == null) {
+            pttl = client.pttl(key);
+            LettuceRedisManagedExpiration.cachePttl(sessionId, pttl, executionContext);
+        }
+        return pttl < 0L || pttl < getExpiresMilliSeconds() * refreshThresholdRatio;
+    }
+
     /**
      * {@link LettuceRedisClient} を設定する。
      * @param client {@link LettuceRedisClient}
@@ -65,4 +631,135 @@ public class LettuceRedisStore extends SessionStore {
     public void setClient(LettuceRedisClient client) {
         this.client = client;
     }
+
+    /**
+     * セッションの保存に使用するキーの接頭辞を設定する。
+     * <p>
+     * デフォルトは {@code "nablarch.session."}。<br>
+     * 変更する場合は、 {@link LettuceRedisManagedExpiration#setKeyPrefix(String)} と
+     * {@link LettuceRedisNearCache#setKeyPrefix(String)} にも同じ接頭辞を設定すること。
+     * </p>
+     * @param keyPrefix キーの接頭辞
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyEncoder = new SessionKeyEncoder(keyPrefix);
+    }
+
+    /**
+     * セッションの読み込みに使用する {@link LettuceRedisNearCache} を設定する。
+     * <p>
+     * 設定しない場合、セッションは常に Redis から読み込む。
+     * </p>
+     * @param nearCache {@link LettuceRedisNearCache}
+     */
+    public void setNearCache(LettuceRedisNearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * Redis に保存するセッションのバイト列を変換する {@link LettucePayloadTransformer} を設定する。
+     * <p>
+     * 設定しない場合、エンコードしたセッションをそのまま保存する。
+     * </p>
+     * @param payloadTransformer {@link LettucePayloadTransformer}
+     */
+    public void setPayloadTransformer(LettucePayloadTransformer payloadTransformer) {
+        this.payloadTransformer = payloadTransformer;
+    }
+
+    /**
+     * セッションの値を、初めて参照したときにデコードするかどうかを設定する。
+     * <p>
+     * {@code true} を設定すると、セッションを読み込んだときは値をデコードせず、
+     * リクエストの中で参照された値だけをデコードする。
+     * 参照されなかった値は、セッションを保存するときに読み込んだときのバイト列をそのまま書き込むため、
+     * エンコードも行わない。<br>
+     * サイズの大きな値を多く持つセッションで、リクエストごとに参照する値が一部に限られる場合に、 CPU の使用量とガベージを削減できる。
+     * デフォルトは {@code false}。
+     * </p>
+     * @param lazyDecode 値を初めて参照したときにデコードする場合は {@code true}
+     */
+    public void setLazyDecode(boolean lazyDecode) {
+        this.lazyDecode = lazyDecode;
+    }
+
+    /**
+     * セッションを分割して保存するサイズの閾値を設定する。
+     * <p>
+     * Redis に保存するバイト列（{@link #setPayloadTransformer(LettucePayloadTransformer)} で変換した後のバイト列）が
+     * このサイズを超える場合、 {@link #setChunkSize(int)} のサイズごとに分割して保存する。<br>
+     * 設定しない場合は分割しない。
+     * 設定した場合、セッションの削除には {@code UNLINK} を使用する。
+     * </p>
+     * @param chunkThreshold 分割して保存するサイズの閾値（バイト）
+     */
+    public void setChunkThreshold(int chunkThreshold) {
+        if (chunkThreshold <= 0) {
+            throw new IllegalArgumentException("chunkThreshold must be greater than 0. chunkThreshold=" + chunkThreshold);
+        }
+        this.chunkThreshold = chunkThreshold;
+    }
+
+    /**
+     * セッションを分割して保存するときの、1つのキーに保存するサイズを設定する。
+     * <p>
+     * デフォルトは {@code 262144}（256 KB）。
+     * </p>
+     * @param chunkSize 1つのキーに保存するサイズ（バイト）
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be greater than 0. chunkSize=" + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * セッションのエンコードに、スレッドごとに再利用するバッファを使用するかどうかを設定する。
+     * <p>
+     * {@code true} を設定すると、セッションを保存するたびにエンコード用のバッファを確保せず、スレッドごとに保持したバッファを再利用する。
+     * セッションが変更されていない場合は、エンコードしたバイト列のコピーも行わない。<br>
+     * Redis に渡すバイト列は、再利用するバッファからちょうどのサイズにコピーする。
+     * Lettuce はコマンドを送信し終えるまで値のバイト配列を参照するため、再利用するバッファをそのまま渡すことはできない。<br>
+     * デフォルトは {@code false}。
+     * </p>
+     * @param reuseEncodeBuffer 再利用するバッファを使用する場合は {@code true}
+     */
+    public void setReuseEncodeBuffer(boolean reuseEncodeBuffer) {
+        this.reuseEncodeBuffer = reuseEncodeBuffer;
+    }
+
+    /**
+     * スレッドごとに保持し続ける、エンコード用のバッファの最大のサイズを設定する。
+     * <p>
+     * このサイズを超えて拡張されたバッファは、使い終わったときに破棄する。
+     * 大きなセッションを書き込んだスレッドが、大きなバッファを保持し続けることを防ぐために使用する。<br>
+     * デフォルトは {@code 1048576}（1 MB）。
+     * </p>
+     * @param maxReusedEncodeBufferSize 保持し続けるバッファの最大のサイズ（バイト）
+     */
+    public void setMaxReusedEncodeBufferSize(int maxReusedEncodeBufferSize) {
+        if (maxReusedEncodeBufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "maxReusedEncodeBufferSize must be greater than 0. maxReusedEncodeBufferSize=" + maxReusedEncodeBufferSize);
+        }
+        this.maxReusedEncodeBufferSize = maxReusedEncodeBufferSize;
+    }
+
+    /**
+     * 変更されていないセッションの有効期限を更新する閾値を、有効期限に対する割合で設定する。
+     * <p>
+     * セッションの残りの生存期間が、有効期限にこの割合を掛けた値以上の場合、有効期限の更新を省略する。<br>
+     * 例えば {@code 0.5} を設定すると、有効期限の半分以上の期間が残っている間は Redis への書き込みを行わない。<br>
+     * デフォルトは {@code 1.0} で、この場合は常に有効期限を更新する。
+     * </p>
+     * @param refreshThresholdRatio 有効期限を更新する閾値（{@code 0} より大きく {@code 1.0} 以下）
+     */
+    public void setRefreshThresholdRatio(double refreshThresholdRatio) {
+        if (refreshThresholdRatio <= 0.0 || 1.0 < refreshThresholdRatio) {
+            throw new IllegalArgumentException(
+                    "refreshThresholdRatio must be greater than 0 and less than or equal to 1. refreshThresholdRatio=" + refreshThresholdRatio);
+        }
+        this.refreshThresholdRatio = refreshThresholdRatio;
+    }
 }
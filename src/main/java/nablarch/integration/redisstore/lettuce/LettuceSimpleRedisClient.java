@@ -1,25 +1,50 @@
 package nablarch.integration.redisstore.lettuce;
 
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.TrackingArgs;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.resource.ClientResources;
 import nablarch.core.repository.initialization.Initializable;
 import nablarch.core.util.annotation.Published;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
 /**
  * 単一の Redis インスタンスに直接接続するためのシンプルな {@link LettuceRedisClient} 実装クラス。
  * <p>
  * このクラスの {@link #getType()} は、識別子 {@code "simple"} を返す。
  * </p>
+ * <p>
+ * {@link #setConnectionCount(int)} で複数の接続を使うように設定できる。
+ * この場合、コマンドはキーのハッシュ値で選んだ接続で実行されるため、
+ * サイズの大きなセッションの読み書きが、他のキーに対するコマンドを待たせることを抑えられる。<br>
+ * 同じキーに対するコマンドは、常に同じ接続で実行される。
+ * </p>
  *
  * @author Tanaka Tomoyuki
  */
 @Published(tag = "architect")
-public class LettuceSimpleRedisClient extends AbstractLettuceRedisClient implements Initializable {
+public class LettuceSimpleRedisClient extends AbstractLettuceRedisClient
+        implements LettuceBatchableRedisClient, Initializable {
     private RedisClient client;
-    private StatefulRedisConnection<byte[], byte[]> connection;
-    private RedisCommands<byte[], byte[]> commands;
+    private List<StatefulRedisConnection<byte[], byte[]>> connections;
+    private List<RedisCommands<byte[], byte[]>> commandsList;
+    private AtomicIntegerArray inFlightCommandCounts;
+    private int connectionCount = 1;
+    private LettuceRedisAsyncClient asyncClient;
+    private final List<StatefulRedisConnection<byte[], byte[]>> trackingConnections = new CopyOnWriteArrayList<>();
 
     /**
      * 接続するRedisサーバーのURI。
@@ -34,38 +59,139 @@ public class LettuceSimpleRedisClient extends AbstractLettuceRedisClient impleme
     }
 
     @Override
-    public void set(String key, byte[] value) {
-        commands.set(encodeKey(key), value);
+    public void set(byte[] key, byte[] value) {
+        limitWrite(PendingWriteLimiter.sizeOf(key, value), () -> execute(key, commands -> commands.set(key, value)));
+    }
+
+    @Override
+    public void psetex(byte[] key, long milliseconds, byte[] value) {
+        limitWrite(PendingWriteLimiter.sizeOf(key, value), () -> execute(key, commands -> commands.psetex(key, milliseconds, value)));
+    }
+
+    @Override
+    public void pexpire(byte[] key, long milliseconds) {
+        execute(key, commands -> commands.pexpire(key, milliseconds));
+    }
+
+    @Override
+    public boolean pexpireIfExists(byte[] key, long milliseconds) {
+        return execute(key, commands -> commands.pexpire(key, milliseconds));
+    }
+
+    @Override
+    public void pexpireat(byte[] key, long milliseconds) {
+        execute(key, commands -> commands.pexpireat(key, milliseconds));
+    }
+
+    @Override
+    public void setnxAndPexpireat(byte[] key, byte[] value, long milliseconds) {
+        byte[][] keys = {key};
+        limitWrite(PendingWriteLimiter.sizeOf(key, value), () -> execute(key,
+                commands -> commands.eval(SETNX_AND_PEXPIREAT_SCRIPT, ScriptOutputType.INTEGER, keys, value, encodeNumber(milliseconds))));
     }
 
     @Override
-    public void pexpire(String key, long milliseconds) {
-        commands.pexpire(encodeKey(key), milliseconds);
+    public long pttl(byte[] key) {
+        return execute(key, commands -> commands.pttl(key));
     }
 
     @Override
-    public void pexpireat(String key, long milliseconds) {
-        commands.pexpireat(encodeKey(key), milliseconds);
+    public byte[] get(byte[] key) {
+        return execute(key, commands -> commands.get(key));
     }
 
     @Override
-    public long pttl(String key) {
-        return commands.pttl(encodeKey(key));
+    public void del(byte[] key) {
+        execute(key, commands -> commands.del(key));
     }
 
     @Override
-    public byte[] get(String key) {
-        return commands.get(encodeKey(key));
+    public void unlink(byte[] key) {
+        execute(key, commands -> commands.unlink(key));
     }
 
     @Override
-    public void del(String key) {
-        commands.del(encodeKey(key));
+    public Map<String, byte[]> hgetall(byte[] key) {
+        return decodeFields(execute(key, commands -> commands.hgetall(key)));
     }
 
     @Override
-    public boolean exists(String key) {
-        return commands.exists(encodeKey(key)) == 1L;
+    public boolean hupdate(byte[] key, Map<String, byte[]> fields, Collection<String> deletedFields, long milliseconds) {
+        byte[][] keys = {key};
+        byte[][] arguments = hupdateArguments(fields, deletedFields, milliseconds);
+        return limitWrite(PendingWriteLimiter.sizeOf(key) + PendingWriteLimiter.sizeOf(arguments), () -> execute(key,
+                commands -> commands.<Long>eval(HUPDATE_SCRIPT, ScriptOutputType.INTEGER, keys, arguments))) == 1L;
+    }
+
+    @Override
+    public boolean exists(byte[] key) {
+        return execute(key, commands -> commands.exists(key)) == 1L;
+    }
+
+    /**
+     * キーに対応する接続でコマンドを実行する。
+     * @param key キー
+     * @param command 実行するコマンド
+     * @param <T> コマンドの戻り値の型
+     * @return コマンドの戻り値
+     */
+    private <T> T execute(byte[] key, Function<RedisCommands<byte[], byte[]>, T> command) {
+        int index = connectionIndex(key);
+        inFlightCommandCounts.incrementAndGet(index);
+        try {
+            return command.apply(commandsList.get(index));
+        } finally {
+            inFlightCommandCounts.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * キーに対応する接続のインデックスを取得する。
+     * @param key キー
+     * @return 接続のインデックス
+     */
+    private int connectionIndex(byte[] key) {
+        return connectionCount == 1 ? 0 : (Arrays.hashCode(key) & Integer.MAX_VALUE) % connectionCount;
+    }
+
+    /**
+     * 接続ごとに、実行中のコマンドの数を取得する。
+     * <p>
+     * 同期 API のコマンドに加えて、 {@link #async()} で実行したコマンドも、送信してから完了するまでの間を数える。<br>
+     * 特定の接続の値が大きい状態が続く場合、その接続でサイズの大きなコマンドが
+     * 後続のコマンドを待たせている可能性がある。
+     * </p>
+     * @return 接続ごとの実行中のコマンドの数
+     */
+    public int[] getInFlightCommandCounts() {
+        int[] counts = new int[inFlightCommandCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = inFlightCommandCounts.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public void setAutoFlushCommands(boolean autoFlush) {
+        connections.forEach(connection -> connection.setAutoFlushCommands(autoFlush));
+    }
+
+    @Override
+    public void flushCommands() {
+        connections.forEach(StatefulRedisConnection::flushCommands);
+    }
+
+    @Override
+    public void trackInvalidation(String prefix, LettuceKeyInvalidationListener listener) {
+        StatefulRedisConnection<byte[], byte[]> trackingConnection = createTrackingConnection(client);
+        trackingConnections.add(trackingConnection);
+
+        TrackingArgs trackingArgs = KeyInvalidationTracker.trackingArgs(prefix);
+        KeyInvalidationTracker tracker = new KeyInvalidationTracker(listener,
+                () -> KeyInvalidationTracker.enableTracking(trackingConnection.async(), trackingArgs));
+        trackingConnection.addListener((PushListener) tracker);
+        trackingConnection.addListener((RedisConnectionStateListener) tracker);
+        tracker.start();
     }
 
     /**
@@ -80,6 +206,20 @@ public class LettuceSimpleRedisClient extends AbstractLettuceRedisClient impleme
         this.uri = uri;
     }
 
+    /**
+     * Redis サーバーとの接続の数を設定する。
+     * <p>
+     * デフォルトは {@code 1}。
+     * </p>
+     * @param connectionCount 接続の数
+     */
+    public void setConnectionCount(int connectionCount) {
+        if (connectionCount < 1) {
+            throw new IllegalArgumentException("connectionCount must be greater than 0. connectionCount=" + connectionCount);
+        }
+        this.connectionCount = connectionCount;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -92,16 +232,39 @@ public class LettuceSimpleRedisClient extends AbstractLettuceRedisClient impleme
     @Override
     public void initialize() {
         client = createClient();
-        connection = createConnection(client);
-        commands = connection.sync();
+        applyClientOptions(client);
+        connections = new ArrayList<>(connectionCount);
+        commandsList = new ArrayList<>(connectionCount);
+        for (int i = 0; i < connectionCount; i++) {
+            StatefulRedisConnection<byte[], byte[]> connection = createConnection(client);
+            connections.add(connection);
+            commandsList.add(connection.sync());
+        }
+        inFlightCommandCounts = new AtomicIntegerArray(connectionCount);
+        asyncClient = new AsyncCommandsRedisClient(key -> connections.get(connectionIndex(key)).async(), key -> {},
+                getPendingWriteLimiter(), new AsyncCommandsRedisClient.InFlightCounter() {
+                    @Override
+                    public void increment(byte[] key) {
+                        inFlightCommandCounts.incrementAndGet(connectionIndex(key));
+                    }
+
+                    @Override
+                    public void decrement(byte[] key) {
+                        inFlightCommandCounts.decrementAndGet(connectionIndex(key));
+                    }
+                });
     }
 
     /**
      * {@link RedisClient} のインスタンスを生成する。
+     * <p>
+     * {@link #setClientResources(LettuceClientResources)} が設定されている場合は、共有する {@link ClientResources} を使用する。
+     * </p>
      * @return 生成された {@link RedisClient}
      */
     protected RedisClient createClient() {
-        return RedisClient.create(uri);
+        ClientResources clientResources = getClientResources();
+        return clientResources == null ? RedisClient.create(uri) : RedisClient.create(clientResources, uri);
     }
 
     /**
@@ -113,9 +276,30 @@ public class LettuceSimpleRedisClient extends AbstractLettuceRedisClient impleme
         return client.connect(new ByteArrayCodec());
     }
 
+    /**
+     * キーの変更の追跡に使用する {@link StatefulRedisConnection} のインスタンスを生成する。
+     * @param client {@link #createClient()} で生成された {@link RedisClient} インスタンス
+     * @return 生成された {@link StatefulRedisConnection}
+     */
+    protected StatefulRedisConnection<byte[], byte[]> createTrackingConnection(RedisClient client) {
+        return client.connect(new ByteArrayCodec());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * このクラスは、 Lettuce の非同期 API を使ってコマンドを実行する。
+     * </p>
+     */
+    @Override
+    public LettuceRedisAsyncClient async() {
+        return asyncClient;
+    }
+
     @Override
     public void dispose() {
-        connection.close();
+        trackingConnections.forEach(StatefulRedisConnection::close);
+        connections.forEach(StatefulRedisConnection::close);
         client.shutdown();
     }
 }
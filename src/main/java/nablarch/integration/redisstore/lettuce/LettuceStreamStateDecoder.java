@@ -0,0 +1,33 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.StateEncoder;
+import nablarch.core.util.annotation.Published;
+
+import java.io.InputStream;
+
+/**
+ * セッションの値を、バイト配列にコピーせずにストリームから復元する {@link StateEncoder} のためのインターフェース。
+ * <p>
+ * {@link StateEncoder#decode(byte[], Class)} は値ごとのバイト配列を受け取るため、
+ * Redis から読み込んだセッションを復元するときに、値ごとにバイト列をコピーする必要がある。
+ * {@link LettuceRedisStore} に設定した {@link StateEncoder} がこのインターフェースを実装している場合は、
+ * 読み込んだバイト列のうち値の範囲だけを読み込む {@link InputStream} を渡して復元するため、このコピーを省略できる。
+ * </p>
+ */
+@Published(tag = "architect")
+public interface LettuceStreamStateDecoder {
+
+    /**
+     * ストリームから値を復元する。
+     * <p>
+     * ストリームは、エンコードされた1つの値の範囲だけを読み込む。
+     * ストリームが読み込むバイト配列は、このメソッドから戻った後も {@link LettuceRedisStore} が参照するため、
+     * 実装クラスはストリームを保持してはならない。
+     * </p>
+     * @param input エンコードされた値を読み込むストリーム
+     * @param type 値の型
+     * @param <T> 値の型
+     * @return 復元した値
+     */
+    <T> T decode(InputStream input, Class<T> type);
+}
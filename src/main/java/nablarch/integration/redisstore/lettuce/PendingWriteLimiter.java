@@ -0,0 +1,87 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 完了していない書き込みのコマンドが保持しているペイロードのバイト数を制限するクラス。
+ * <p>
+ * Redis の応答が遅い、または接続が切れている間は、書き込みのコマンドが完了せずに溜まっていき、
+ * それぞれが保持する値の分だけヒープを消費する。
+ * このクラスは、完了していないコマンドのキーと値のバイト数の合計を数え、上限を超える書き込みをすぐに失敗させる。
+ * </p>
+ */
+final class PendingWriteLimiter {
+
+    /**
+     * 書き込みを制限しないインスタンス。
+     */
+    static final PendingWriteLimiter UNLIMITED = new PendingWriteLimiter(Long.MAX_VALUE);
+
+    private final long maxPendingWriteBytes;
+    private final AtomicLong pendingWriteBytes = new AtomicLong();
+
+    /**
+     * コンストラクタ。
+     * @param maxPendingWriteBytes 完了していない書き込みのバイト数の上限
+     */
+    PendingWriteLimiter(long maxPendingWriteBytes) {
+        this.maxPendingWriteBytes = maxPendingWriteBytes;
+    }
+
+    /**
+     * 書き込みを開始するために、バイト数を確保する。
+     * <p>
+     * 確保したバイト数は、書き込みが完了したときに {@link #release(long)} で解放すること。
+     * </p>
+     * @param bytes 書き込むバイト数
+     * @throws RedisException 上限を超える場合
+     */
+    void acquire(long bytes) {
+        if (this == UNLIMITED) {
+            return;
+        }
+        long current;
+        do {
+            current = pendingWriteBytes.get();
+            if (current + bytes > maxPendingWriteBytes) {
+                throw new RedisException(String.format(
+                        "Pending write bytes exceeded the limit. pendingWriteBytes=%d, bytes=%d, maxPendingWriteBytes=%d",
+                        current, bytes, maxPendingWriteBytes));
+            }
+        } while (!pendingWriteBytes.compareAndSet(current, current + bytes));
+    }
+
+    /**
+     * 書き込みが完了したので、確保したバイト数を解放する。
+     * @param bytes {@link #acquire(long)} で確保したバイト数
+     */
+    void release(long bytes) {
+        if (this == UNLIMITED) {
+            return;
+        }
+        pendingWriteBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * 完了していない書き込みのバイト数を取得する。
+     * @return 完了していない書き込みのバイト数
+     */
+    long getPendingWriteBytes() {
+        return pendingWriteBytes.get();
+    }
+
+    /**
+     * バイト配列の長さの合計を求める。
+     * @param arrays バイト配列
+     * @return 長さの合計
+     */
+    static long sizeOf(byte[]... arrays) {
+        long size = 0L;
+        for (byte[] array : arrays) {
+            size += array.length;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,50 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.cluster.SlotHash;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 最近更新されたキーを記録し、レプリカから読み込むと古い値を取得するおそれがあるか判定するクラス。
+ * <p>
+ * キーごとに更新時刻を記録するとメモリ使用量がキーの数に比例して増えるため、
+ * キーを Redis Cluster のハッシュスロット（{@value SlotHash#SLOT_COUNT} 個）に割り当て、スロット単位で最後の更新時刻を記録する。<br>
+ * 同じスロットに割り当てられた別のキーが更新された場合も最近更新されたと判定するが、
+ * その場合はマスターから読み込むだけなので、古い値を読み込むことはない。
+ * </p>
+ * <p>
+ * 記録されるのは、このアプリケーションが行った更新のみとなる。
+ * </p>
+ */
+final class RecentWriteTracker {
+
+    private final AtomicLongArray lastWrittenNanoTimes = new AtomicLongArray(SlotHash.SLOT_COUNT);
+    private final long windowNanos;
+
+    /**
+     * コンストラクタ。
+     * @param windowMilliseconds 更新後にマスターから読み込む期間（ミリ秒）
+     */
+    RecentWriteTracker(long windowMilliseconds) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMilliseconds);
+    }
+
+    /**
+     * キーが更新されたことを記録する。
+     * @param key エンコード済みのキー
+     */
+    void recordWrite(byte[] key) {
+        lastWrittenNanoTimes.set(SlotHash.getSlot(key), System.nanoTime());
+    }
+
+    /**
+     * キーが最近更新されたか判定する。
+     * @param key エンコード済みのキー
+     * @return 最近更新された場合は {@code true}
+     */
+    boolean isRecentlyWritten(byte[] key) {
+        long lastWrittenNanoTime = lastWrittenNanoTimes.get(SlotHash.getSlot(key));
+        return lastWrittenNanoTime != 0L && System.nanoTime() - lastWrittenNanoTime < windowNanos;
+    }
+}
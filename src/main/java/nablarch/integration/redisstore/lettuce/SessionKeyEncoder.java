@@ -0,0 +1,69 @@
+package nablarch.integration.redisstore.lettuce;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * セッションIDから、セッションの保存に使用する Redis のキーを作成するクラス。
+ * <p>
+ * キーの接頭辞は、インスタンスの生成時に1度だけ UTF-8 にエンコードしておく。<br>
+ * セッションIDが ASCII 文字だけで構成されている場合は、文字列の連結やエンコードのための中間的なオブジェクトを作らずに、
+ * エンコード済みの接頭辞の後ろにセッションIDを直接書き込む。
+ * </p>
+ * <p>
+ * 作成したキーは Lettuce がコマンドを送信し終えるまで参照するため、キーのバイト列は呼び出しごとに新しく生成する。
+ * </p>
+ */
+final class SessionKeyEncoder {
+
+    /**
+     * デフォルトのキーの接頭辞。
+     */
+    static final String DEFAULT_PREFIX = "nablarch.session.";
+
+    private final String prefix;
+    private final byte[] encodedPrefix;
+
+    /**
+     * コンストラクタ。
+     * @param prefix キーの接頭辞
+     */
+    SessionKeyEncoder(String prefix) {
+        this.prefix = prefix;
+        this.encodedPrefix = prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * セッションIDから、文字列のキーを作成する。
+     * @param sessionId セッションID
+     * @return キー
+     */
+    String toKey(String sessionId) {
+        return prefix + sessionId;
+    }
+
+    /**
+     * セッションIDから、 UTF-8 でエンコードしたキーを作成する。
+     * @param sessionId セッションID
+     * @return エンコード済みのキー
+     */
+    byte[] encode(String sessionId) {
+        int length = sessionId.length();
+        byte[] key = Arrays.copyOf(encodedPrefix, encodedPrefix.length + length);
+        for (int i = 0; i < length; i++) {
+            char c = sessionId.charAt(i);
+            if (c >= 0x80) {
+                return encodeNonAscii(sessionId);
+            }
+            key[encodedPrefix.length + i] = (byte) c;
+        }
+        return key;
+    }
+
+    private byte[] encodeNonAscii(String sessionId) {
+        byte[] encodedSessionId = sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] key = Arrays.copyOf(encodedPrefix, encodedPrefix.length + encodedSessionId.length);
+        System.arraycopy(encodedSessionId, 0, key, encodedPrefix.length, encodedSessionId.length);
+        return key;
+    }
+}
@@ -2,6 +2,8 @@ package nablarch.integration.redisstore.lettuce;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -13,20 +15,32 @@ public class AbstractLettuceRedisClientTest {
 
     @Test
     public void testTypeObtainedByGetterEqualsToConstructorArgument() {
-        AbstractLettuceRedisClient sut = new AbstractLettuceRedisClient("foo") {
-            @Override public void set(String key, byte[] value) {}
-
-            @Override public void pexpire(String key, long milliseconds) {}
-            @Override public void pexpireat(String key, long milliseconds) {}
-            @Override public long pttl(String key) { return 0; }
-            @Override public byte[] get(String key) { return new byte[0]; }
-            @Override public void del(String key) {}
-            @Override public boolean exists(String key) { return false; }
-            @Override public void dispose() {}
-        };
+        AbstractLettuceRedisClient sut = new MockClient("foo");
 
         String actual = sut.getType();
 
         assertThat(actual, is("foo"));
     }
+
+    @Test
+    public void testStringKeyIsEncodedWithUtf8() {
+        MockClient sut = new MockClient("foo");
+
+        assertThat(sut.get("nablarch.session.あいう"), is("nablarch.session.あいう".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static class MockClient extends AbstractLettuceRedisClient {
+        private MockClient(String type) {
+            super(type);
+        }
+
+        @Override public void set(byte[] key, byte[] value) {}
+        @Override public void pexpire(byte[] key, long milliseconds) {}
+        @Override public void pexpireat(byte[] key, long milliseconds) {}
+        @Override public long pttl(byte[] key) { return 0; }
+        @Override public byte[] get(byte[] key) { return key; }
+        @Override public void del(byte[] key) {}
+        @Override public boolean exists(byte[] key) { return false; }
+        @Override public void dispose() {}
+    }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link BlockingRedisAsyncClient} のテストクラス。
+ */
+public class BlockingRedisAsyncClientTest {
+
+    private final LettuceRedisClient client = mock(LettuceRedisClient.class);
+    private final BlockingRedisAsyncClient sut = new BlockingRedisAsyncClient(client);
+
+    @Test
+    public void testCommandIsExecutedWithSyncClient() throws Exception {
+        byte[] value = {1, 2, 3};
+        when(client.get("foo")).thenReturn(value);
+        when(client.pttl("foo")).thenReturn(12345L);
+        when(client.exists("foo")).thenReturn(true);
+
+        CompletableFuture<Void> psetex = sut.psetex("foo", 1000L, value).toCompletableFuture();
+
+        verify(client).psetex("foo", 1000L, value);
+        assertThat("completed stage is returned.", psetex.isDone(), is(true));
+        assertThat(sut.get("foo").toCompletableFuture().get(), is(value));
+        assertThat(sut.pttl("foo").toCompletableFuture().get(), is(12345L));
+        assertThat(sut.exists("foo").toCompletableFuture().get(), is(true));
+    }
+
+    @Test
+    public void testEncodedKeyIsPassedToSyncClient() throws Exception {
+        byte[] key = "foo".getBytes(StandardCharsets.UTF_8);
+        byte[] value = {1, 2, 3};
+        when(client.get(key)).thenReturn(value);
+
+        sut.psetex(key, 1000L, value);
+        sut.unlink(key);
+
+        verify(client).psetex(key, 1000L, value);
+        verify(client).unlink(key);
+        assertThat(sut.get(key).toCompletableFuture().get(), is(value));
+    }
+
+    @Test
+    public void testExceptionIsReturnedAsFailedStage() throws Exception {
+        RedisException exception = new RedisException("test");
+        when(client.get("foo")).thenThrow(exception);
+
+        CompletableFuture<byte[]> future = sut.get("foo").toCompletableFuture();
+
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(sameInstance(exception)));
+        }
+    }
+
+    @Test
+    public void testDefaultAsyncUsesSyncClient() {
+        when(client.async()).thenCallRealMethod();
+
+        assertThat(client.async(), is(instanceOf(BlockingRedisAsyncClient.class)));
+    }
+}
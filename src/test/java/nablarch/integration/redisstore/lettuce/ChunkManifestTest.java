@@ -0,0 +1,82 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link ChunkManifest} のテストクラス。
+ */
+public class ChunkManifestTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void testCreate() {
+        assertThat(ChunkManifest.create(100, 10).getChunkCount(), is(10));
+        assertThat(ChunkManifest.create(101, 10).getChunkCount(), is(11));
+        assertThat(ChunkManifest.create(101, 10).getLength(), is(101));
+    }
+
+    @Test
+    public void testParse() {
+        ChunkManifest manifest = ChunkManifest.create(1000, 300);
+        byte[] bytes = manifest.toBytes();
+
+        assertThat(ChunkManifest.isManifest(bytes), is(true));
+        ChunkManifest parsed = ChunkManifest.parse(bytes);
+        assertThat(parsed.getChunkCount(), is(4));
+        assertThat(parsed.getLength(), is(1000));
+        assertThat(parsed.chunkKey(bytes("key"), 3), is(manifest.chunkKey(bytes("key"), 3)));
+    }
+
+    @Test
+    public void testChunkKeyHasHashTag() {
+        ChunkManifest manifest = ChunkManifest.create(1000, 300);
+
+        byte[] key = bytes("nablarch.session.id");
+
+        assertThat(string(manifest.chunkKey(key, 0)), startsWith("{nablarch.session.id}.chunk."));
+        assertThat(string(manifest.chunkKey(key, 0)), not(string(manifest.chunkKey(key, 1))));
+        assertThat("世代ごとに異なるキーになる",
+                string(manifest.chunkKey(key, 0)), not(string(ChunkManifest.create(1000, 300).chunkKey(key, 0))));
+    }
+
+    @Test
+    public void testIsManifest() {
+        byte[] bytes = ChunkManifest.create(1000, 300).toBytes();
+        byte[] compressed = bytes.clone();
+        compressed[1] = 'Z';
+
+        assertThat(ChunkManifest.isManifest(compressed), is(false));
+        assertThat(ChunkManifest.isManifest(new byte[] {0, 3, 'k', 'e', 'y'}), is(false));
+        assertThat(ChunkManifest.isManifest(new byte[bytes.length + 1]), is(false));
+    }
+
+    @Test
+    public void testThrowsExceptionIfManifestIsCorrupted() {
+        byte[] bytes = ByteBuffer.allocate(18).put((byte) 0xFE).put((byte) 'C').putLong(1L).putInt(0).putInt(10).array();
+
+        exception.expect(EncodeException.class);
+        exception.expectMessage("The chunk manifest is corrupted. chunkCount=0, length=10");
+        ChunkManifest.parse(bytes);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+package nablarch.integration.redisstore.lettuce;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link EncodeBuffer} のテストクラス。
+ */
+public class EncodeBufferTest {
+
+    @Test
+    public void testBufferIsReusedInSameThread() throws IOException {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        buffer.dataOutput().writeInt(1);
+        buffer.release(4096);
+
+        EncodeBuffer reused = EncodeBuffer.acquire();
+        try {
+            assertThat(reused, is(sameInstance(buffer)));
+            assertThat("acquire は空のバッファを返す", reused.size(), is(0));
+        } finally {
+            reused.release(4096);
+        }
+    }
+
+    @Test
+    public void testBufferInUseIsNotShared() {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        try {
+            EncodeBuffer nested = EncodeBuffer.acquire();
+            nested.release(4096);
+            assertThat(nested, is(not(sameInstance(buffer))));
+        } finally {
+            buffer.release(4096);
+        }
+        EncodeBuffer reused = EncodeBuffer.acquire();
+        reused.release(4096);
+        assertThat(reused, is(sameInstance(buffer)));
+    }
+
+    @Test
+    public void testLargeBufferIsDiscarded() throws IOException {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        buffer.write(new byte[8192]);
+        buffer.release(4096);
+
+        EncodeBuffer next = EncodeBuffer.acquire();
+        next.release(4096);
+        assertThat(next, is(not(sameInstance(buffer))));
+    }
+
+    @Test
+    public void testContentEquals() throws IOException {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        try {
+            buffer.write(new byte[] {1, 2, 3});
+
+            assertThat(buffer.contentEquals(new byte[] {1, 2, 3}), is(true));
+            assertThat(buffer.contentEquals(new byte[] {1, 2}), is(false));
+            assertThat(buffer.contentEquals(new byte[] {1, 2, 3, 4}), is(false));
+            assertThat(buffer.contentEquals(new byte[] {1, 2, 4}), is(false));
+            assertThat(buffer.contentEquals(null), is(false));
+            assertThat(buffer.toByteArray(), is(new byte[] {1, 2, 3}));
+        } finally {
+            buffer.release(4096);
+        }
+    }
+}
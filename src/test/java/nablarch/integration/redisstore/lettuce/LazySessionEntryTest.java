@@ -0,0 +1,111 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.SessionEntry;
+import nablarch.common.web.session.encoder.JavaSerializeStateEncoder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link LazySessionEntry} と、 {@link LettuceRedisStore#setLazyDecode(boolean)} を設定したときのエンコード・デコードのテストクラス。
+ */
+public class LazySessionEntryTest {
+
+    private final JavaSerializeStateEncoder stateEncoder = spy(new JavaSerializeStateEncoder());
+    private final LettuceRedisStore sut = new LettuceRedisStore();
+
+    {
+        sut.setStateEncoder(stateEncoder);
+        sut.setLazyDecode(true);
+    }
+
+    @Test
+    public void testValueIsDecodedWhenFirstRead() {
+        byte[] encoded = sut.encode(Arrays.asList(entry("one", "ONE"), entry("null", null), entry("list", list(1, 2))));
+
+        List<SessionEntry> loaded = sut.decode(encoded);
+
+        verify(stateEncoder, never()).decode(any(byte[].class), any());
+        assertThat(loaded.get(0), instanceOf(LazySessionEntry.class));
+        assertThat(loaded.get(1).getValue(), is(nullValue()));
+        assertThat(loaded.get(0).getValue(), is("ONE"));
+        assertThat(loaded.get(0).getValue(), is("ONE"));
+        verify(stateEncoder, times(1)).decode(any(byte[].class), eq(String.class));
+        verify(stateEncoder, never()).decode(any(byte[].class), eq(ArrayList.class));
+    }
+
+    @Test
+    public void testUntouchedEntriesAreWrittenAsOriginalBytes() {
+        byte[] encoded = sut.encode(Arrays.asList(entry("one", "ONE"), entry("null", null), entry("list", list(1, 2))));
+        List<SessionEntry> loaded = sut.decode(encoded);
+        clearInvocations(stateEncoder);
+
+        assertThat(sut.encode(loaded), is(encoded));
+        verify(stateEncoder, never()).encode(any());
+        verify(stateEncoder, never()).decode(any(byte[].class), any());
+    }
+
+    @Test
+    public void testReadAndNewEntriesAreEncoded() {
+        byte[] encoded = sut.encode(Arrays.asList(entry("one", "ONE"), entry("list", list(1, 2))));
+        List<SessionEntry> loaded = new ArrayList<>(sut.decode(encoded));
+        @SuppressWarnings("unchecked")
+        List<Integer> list = (List<Integer>) loaded.get(1).getValue();
+        list.add(3);
+        loaded.add(entry("two", "TWO"));
+
+        List<SessionEntry> reloaded = sut.decode(sut.encode(loaded));
+
+        assertThat(reloaded.get(0).getValue(), is("ONE"));
+        assertThat(reloaded.get(1).getValue(), is(list(1, 2, 3)));
+        assertThat(reloaded.get(2).getValue(), is("TWO"));
+    }
+
+    @Test
+    public void testDecodeWithoutLazyDecode() {
+        byte[] encoded = sut.encode(Arrays.asList(entry("one", "ONE"), entry("null", null)));
+        sut.setLazyDecode(false);
+
+        List<SessionEntry> loaded = sut.decode(encoded);
+
+        assertThat(loaded.get(0), not(instanceOf(LazySessionEntry.class)));
+        assertThat(loaded.get(0).getValue(), is("ONE"));
+        assertThat(loaded.get(1).getValue(), is(nullValue()));
+    }
+
+    @Test
+    public void testEncodeWithReusedBuffer() {
+        List<SessionEntry> entries = Arrays.asList(entry("one", "ONE"), entry("null", null), entry("list", list(1, 2)));
+        sut.setLazyDecode(false);
+        byte[] expected = sut.encode(entries);
+        sut.setReuseEncodeBuffer(true);
+
+        assertThat(sut.encode(entries), is(expected));
+        assertThat("バッファを再利用しても前回の内容は残らない", sut.encode(entries.subList(0, 1)), is(sut.encode(entries.subList(0, 1))));
+        sut.setLazyDecode(true);
+        assertThat(sut.encode(sut.decode(expected)), is(expected));
+    }
+
+    private SessionEntry entry(String key, Object value) {
+        return new SessionEntry(key, value, sut);
+    }
+
+    private static ArrayList<Integer> list(Integer... values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+}
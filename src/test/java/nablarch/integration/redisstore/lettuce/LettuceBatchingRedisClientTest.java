@@ -0,0 +1,215 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link LettuceBatchingRedisClient} のテストクラス。
+ */
+public class LettuceBatchingRedisClientTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final LettuceBatchableRedisClient client = mock(LettuceBatchableRedisClient.class);
+    private final LettuceRedisAsyncClient clientAsync = mock(LettuceRedisAsyncClient.class);
+
+    private LettuceBatchingRedisClient sut;
+
+    private LettuceBatchingRedisClient createClient(int maxBatchSize, long flushInterval) {
+        when(client.async()).thenReturn(clientAsync);
+        LettuceBatchingRedisClient sut = new LettuceBatchingRedisClient();
+        sut.setClient(client);
+        sut.setMaxBatchSize(maxBatchSize);
+        sut.setFlushInterval(flushInterval);
+        sut.initialize();
+        return sut;
+    }
+
+    @Test
+    public void testType() {
+        assertThat(new LettuceBatchingRedisClient().getType(), is("batching"));
+    }
+
+    @Test
+    public void testInitializeDisablesAutoFlush() {
+        sut = createClient(64, 1000000L);
+
+        verify(client).setAutoFlushCommands(false);
+    }
+
+    @Test
+    public void testCommandsAreFlushedWhenBatchSizeIsReached() {
+        sut = createClient(2, 60000000L);
+        when(clientAsync.get("foo")).thenReturn(new CompletableFuture<>());
+        when(clientAsync.get("bar")).thenReturn(new CompletableFuture<>());
+
+        sut.async().get("foo");
+        verify(client, never()).flushCommands();
+
+        sut.async().get("bar");
+        verify(client).flushCommands();
+    }
+
+    @Test
+    public void testPendingCommandsAreFlushedAfterFlushInterval() {
+        sut = createClient(64, 100000L);
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        when(clientAsync.get("foo")).thenReturn(future);
+
+        sut.async().get("foo");
+        sut.async().get("foo");
+
+        verify(client, timeout(1000L)).flushCommands();
+        verify(client, Mockito.after(200L).times(1)).flushCommands();
+        future.complete(null);
+    }
+
+    @Test
+    public void testCommandsAreNotFlushedWhileIdle() {
+        sut = createClient(64, 100L);
+
+        verify(client, Mockito.after(200L).never()).flushCommands();
+    }
+
+    @Test
+    public void testBlockingCommandIsFlushedAfterFlushInterval() {
+        sut = createClient(64, 100L);
+        byte[] key = key("foo");
+        when(client.pexpireIfExists(key, 1000L)).thenAnswer(invocation -> {
+            verify(client, timeout(1000L).atLeastOnce()).flushCommands();
+            return true;
+        });
+
+        assertThat(sut.pexpireIfExists(key, 1000L), is(true));
+    }
+
+    @Test
+    public void testSyncCommandWaitsForResult() {
+        sut = createClient(1, 1000000L);
+        byte[] value = "FOO".getBytes(StandardCharsets.UTF_8);
+        when(clientAsync.get(key("foo"))).thenReturn(CompletableFuture.completedFuture(value));
+        when(clientAsync.pttl(key("foo"))).thenReturn(CompletableFuture.completedFuture(1000L));
+        when(clientAsync.exists(key("foo"))).thenReturn(CompletableFuture.completedFuture(true));
+        when(clientAsync.set(key("foo"), value)).thenReturn(CompletableFuture.completedFuture(null));
+        when(clientAsync.setnxAndPexpireat(key("foo"), value, 2000L)).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThat(sut.get(key("foo")), is(sameInstance(value)));
+        assertThat(sut.pttl("foo"), is(1000L));
+        assertThat(sut.exists("foo"), is(true));
+        sut.set("foo", value);
+        sut.setnxAndPexpireat("foo", value, 2000L);
+
+        verify(clientAsync).set(key("foo"), value);
+        verify(clientAsync).setnxAndPexpireat(key("foo"), value, 2000L);
+        verify(client, never()).setnxAndPexpireat(key("foo"), value, 2000L);
+    }
+
+    @Test
+    public void testCommandWithoutAsyncApiIsDelegated() {
+        sut = createClient(64, 1000000L);
+        byte[] key = "foo".getBytes(StandardCharsets.UTF_8);
+        Map<String, byte[]> fields = Collections.singletonMap("a", new byte[]{1});
+        when(client.hgetall(key)).thenReturn(fields);
+        when(client.hupdate(key, fields, null, 1000L)).thenReturn(true);
+
+        assertThat(sut.hgetall(key), is(sameInstance(fields)));
+        assertThat(sut.hupdate(key, fields, null, 1000L), is(true));
+    }
+
+    @Test
+    public void testExceptionOfCommandIsRethrown() {
+        sut = createClient(1, 1000000L);
+        RedisCommandExecutionException error = new RedisCommandExecutionException("ERR test");
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        when(clientAsync.get(key("foo"))).thenReturn(future);
+
+        try {
+            sut.get("foo");
+            fail();
+        } catch (RedisCommandExecutionException e) {
+            assertThat(e, is(sameInstance(error)));
+        }
+    }
+
+    @Test
+    public void testThrowsExceptionIfCommandTimesOut() {
+        sut = createClient(1, 1000000L);
+        sut.setCommandTimeout(10L);
+        when(clientAsync.get(key("foo"))).thenReturn(new CompletableFuture<>());
+
+        exception.expect(RedisCommandTimeoutException.class);
+        exception.expectMessage("Command timed out after 10 millisecond(s)");
+
+        sut.get("foo");
+    }
+
+    @Test
+    public void testDisposeFlushesAndDisposesClient() {
+        LettuceBatchingRedisClient sut = createClient(64, 1000000L);
+
+        sut.dispose();
+
+        InOrder inOrder = inOrder(client);
+        inOrder.verify(client).flushCommands();
+        inOrder.verify(client).dispose();
+    }
+
+    @Test
+    public void testThrowsExceptionIfMaxBatchSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("maxBatchSize must be greater than 0. maxBatchSize=0");
+
+        new LettuceBatchingRedisClient().setMaxBatchSize(0);
+    }
+
+    @Test
+    public void testThrowsExceptionIfFlushIntervalIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("flushInterval must be greater than 0. flushInterval=0");
+
+        new LettuceBatchingRedisClient().setFlushInterval(0L);
+    }
+
+    @Test
+    public void testThrowsExceptionIfCommandTimeoutIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("commandTimeout must be greater than 0. commandTimeout=0");
+
+        new LettuceBatchingRedisClient().setCommandTimeout(0L);
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void after() {
+        if (sut != null) {
+            sut.dispose();
+        }
+    }
+}
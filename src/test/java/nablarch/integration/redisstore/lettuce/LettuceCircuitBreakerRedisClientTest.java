@@ -0,0 +1,393 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisBusyException;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisLoadingException;
+import nablarch.integration.redisstore.lettuce.LettuceCircuitBreakerRedisClient.State;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link LettuceCircuitBreakerRedisClient} のテストクラス。
+ */
+public class LettuceCircuitBreakerRedisClientTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final LettuceRedisClient client = mock(LettuceRedisClient.class);
+    private final LettuceRedisAsyncClient asyncClient = mock(LettuceRedisAsyncClient.class);
+    private final LettuceCircuitBreakerListener listener = mock(LettuceCircuitBreakerListener.class);
+    private final LettuceCircuitBreakerRedisClient sut = new LettuceCircuitBreakerRedisClient();
+
+    private final byte[] key = "foo".getBytes(StandardCharsets.UTF_8);
+    private final byte[] value = "VALUE".getBytes(StandardCharsets.UTF_8);
+
+    private long now = 0L;
+
+    {
+        when(client.async()).thenReturn(asyncClient);
+        sut.setClient(client);
+        sut.setWindowSize(4);
+        sut.setMinimumNumberOfCalls(4);
+        sut.setFailureRateThreshold(50);
+        sut.setSlowCallRateThreshold(100);
+        sut.setSlowCallDurationThreshold(100L);
+        sut.setOpenDuration(1000L);
+        sut.setPermittedCallsInHalfOpen(2);
+        sut.setListenerList(Arrays.asList(listener));
+        sut.nanoClock = () -> now;
+    }
+
+    @Test
+    public void testType() {
+        assertThat(sut.getType(), is("circuitBreaker"));
+    }
+
+    @Test
+    public void testCommandsAreDelegated() {
+        sut.initialize();
+        when(client.get(key)).thenReturn(value);
+
+        assertThat(sut.get("foo"), is(value));
+        sut.psetex("foo", 1000L, value);
+
+        verify(client).psetex(key, 1000L, value);
+        assertThat(sut.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testOpensWhenFailureRateExceedsThreshold() {
+        sut.initialize();
+        doThrow(new RedisConnectionException("test")).when(client).get(key);
+
+        get();
+        get();
+        sut.exists(key);
+        assertThat("最小のコマンド数に達するまでは開かない", sut.getState(), is(State.CLOSED));
+
+        sut.exists(key);
+        assertThat(sut.getState(), is(State.OPEN));
+        verify(listener).onStateChanged(State.CLOSED, State.OPEN);
+    }
+
+    @Test
+    public void testRejectsCommandsWhileOpen() {
+        sut.initialize();
+        open();
+
+        try {
+            sut.exists(key);
+            fail("LettuceCircuitBreakerOpenException must be thrown.");
+        } catch (LettuceCircuitBreakerOpenException e) {
+            assertThat(e.getMessage(), is("Circuit breaker is open. Command was rejected."));
+        }
+        verify(client, times(4)).get(key);
+        verify(client, times(0)).exists(key);
+    }
+
+    @Test
+    public void testOldResultsAreEvictedFromWindow() {
+        sut.initialize();
+        doThrow(new RedisConnectionException("test")).when(client).get(key);
+
+        get();
+        sut.exists(key);
+        sut.exists(key);
+        sut.exists(key);
+        sut.exists(key);
+        get();
+
+        assertThat("最初の失敗は保持する数を超えたため数えない", sut.getState(), is(State.CLOSED));
+        get();
+        assertThat(sut.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testOpensWhenAllCallsAreSlow() {
+        sut.initialize();
+        doAnswer(invocation -> {
+            now += TimeUnit.MILLISECONDS.toNanos(100L);
+            return true;
+        }).when(client).exists(key);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(sut.exists(key), is(true));
+        }
+
+        assertThat(sut.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testErrorRepliesAreNotCountedAsFailure() {
+        sut.initialize();
+        doThrow(new RedisCommandExecutionException("ERR test")).when(client).get(key);
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                sut.get(key);
+                fail("RedisCommandExecutionException must be thrown.");
+            } catch (RedisCommandExecutionException e) {
+                // OK
+            }
+        }
+
+        assertThat(sut.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testLoadingAndBusyRepliesAreCountedAsFailure() {
+        sut.initialize();
+        doThrow(new RedisLoadingException("LOADING Redis is loading the dataset in memory")).when(client).get(key);
+        doThrow(new RedisBusyException("BUSY Redis is busy running a script")).when(client).pttl(key);
+
+        get();
+        get();
+        for (int i = 0; i < 2; i++) {
+            try {
+                sut.pttl(key);
+                fail("RedisBusyException must be thrown.");
+            } catch (RedisBusyException e) {
+                // OK
+            }
+        }
+
+        assertThat(sut.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testClosesWhenTrialCallsSucceed() {
+        sut.initialize();
+        open();
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000L);
+        sut.exists(key);
+        assertThat(sut.getState(), is(State.HALF_OPEN));
+        sut.exists(key);
+        assertThat(sut.getState(), is(State.CLOSED));
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onStateChanged(State.CLOSED, State.OPEN);
+        inOrder.verify(listener).onStateChanged(State.OPEN, State.HALF_OPEN);
+        inOrder.verify(listener).onStateChanged(State.HALF_OPEN, State.CLOSED);
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void testTrialPermissionIsReturnedWhenErrorIsThrown() {
+        sut.initialize();
+        open();
+        doThrow(new AssertionError("test")).when(client).exists(key);
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000L);
+        for (int i = 0; i < 2; i++) {
+            try {
+                sut.exists(key);
+                fail("AssertionError must be thrown.");
+            } catch (AssertionError e) {
+                assertThat(e.getMessage(), is("test"));
+            }
+        }
+
+        assertThat("試行の許可が返されている", sut.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testTrialPermissionIsReturnedWhenErrorIsThrownOnAsyncCall() {
+        sut.initialize();
+        open();
+        doThrow(new AssertionError("test")).when(asyncClient).exists(key);
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000L);
+        for (int i = 0; i < 2; i++) {
+            try {
+                sut.async().exists(key);
+                fail("AssertionError must be thrown.");
+            } catch (AssertionError e) {
+                assertThat(e.getMessage(), is("test"));
+            }
+        }
+
+        assertThat("試行の許可が返されている", sut.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testReopensWhenTrialCallFails() {
+        sut.initialize();
+        open();
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000L);
+        get();
+
+        assertThat(sut.getState(), is(State.OPEN));
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onStateChanged(State.CLOSED, State.OPEN);
+        inOrder.verify(listener).onStateChanged(State.OPEN, State.HALF_OPEN);
+        inOrder.verify(listener).onStateChanged(State.HALF_OPEN, State.OPEN);
+    }
+
+    @Test
+    public void testResultOfCallStartedBeforeHalfOpenIsNotCountedAsTrial() {
+        sut.initialize();
+        CompletableFuture<byte[]> startedWhileClosed = new CompletableFuture<>();
+        when(asyncClient.get("bar")).thenReturn(startedWhileClosed);
+        sut.async().get("bar");
+        open();
+        now += TimeUnit.MILLISECONDS.toNanos(1000L);
+        sut.exists(key);
+        assertThat(sut.getState(), is(State.HALF_OPEN));
+
+        startedWhileClosed.completeExceptionally(new RedisConnectionException("test"));
+
+        assertThat("CLOSED の間に開始したコマンドの失敗では開かない", sut.getState(), is(State.HALF_OPEN));
+        sut.exists(key);
+        assertThat(sut.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testListenerIsNotifiedAfterLockIsReleased() throws Exception {
+        sut.initialize();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            doAnswer(invocation -> {
+                Future<State> state = executor.submit(sut::getState);
+                assertThat("他のスレッドが状態を取得できる", state.get(1L, TimeUnit.SECONDS), is(State.OPEN));
+                return null;
+            }).when(listener).onStateChanged(State.CLOSED, State.OPEN);
+
+            open();
+
+            verify(listener).onStateChanged(State.CLOSED, State.OPEN);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectsCommandsExceedingPermittedTrialCalls() {
+        sut.initialize();
+        open();
+        now += TimeUnit.MILLISECONDS.toNanos(1000L);
+        doAnswer(invocation -> {
+            try {
+                sut.pttl("bar");
+                fail("LettuceCircuitBreakerOpenException must be thrown.");
+            } catch (LettuceCircuitBreakerOpenException e) {
+                assertThat(e.getMessage(), is("Circuit breaker is half-open and no trial call is permitted."));
+            }
+            return true;
+        }).when(client).exists(key);
+
+        sut.pexpire(key, 1000L);
+        sut.exists(key);
+
+        assertThat(sut.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testAsyncCommandsAreRecorded() {
+        sut.initialize();
+        CompletableFuture<byte[]> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RedisConnectionException("test"));
+        when(asyncClient.get("foo")).thenReturn(failed);
+
+        for (int i = 0; i < 4; i++) {
+            sut.async().get("foo");
+        }
+
+        assertThat(sut.getState(), is(State.OPEN));
+        exception.expect(LettuceCircuitBreakerOpenException.class);
+        sut.async().get("foo");
+    }
+
+    @Test
+    public void testInitializeAndDisposeAreDelegated() {
+        LettuceSimpleRedisClient simpleClient = mock(LettuceSimpleRedisClient.class);
+        sut.setClient(simpleClient);
+
+        sut.initialize();
+        sut.dispose();
+
+        verify(simpleClient).initialize();
+        verify(simpleClient).dispose();
+    }
+
+    @Test
+    public void testThrowsExceptionIfWindowSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("windowSize must be greater than 0. windowSize=0");
+        sut.setWindowSize(0);
+    }
+
+    @Test
+    public void testThrowsExceptionIfFailureRateThresholdIsOutOfRange() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("failureRateThreshold must be between 1 and 100. failureRateThreshold=101");
+        sut.setFailureRateThreshold(101);
+    }
+
+    @Test
+    public void testThrowsExceptionIfOpenDurationIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("openDuration must be greater than 0. openDuration=-1");
+        sut.setOpenDuration(-1L);
+    }
+
+    @Test
+    public void testThrowsExceptionIfMinimumNumberOfCallsExceedsWindowSize() {
+        sut.setMinimumNumberOfCalls(5);
+
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("minimumNumberOfCalls must be less than or equal to windowSize. minimumNumberOfCalls=5, windowSize=4");
+        sut.initialize();
+    }
+
+    /**
+     * 失敗する get を実行する。
+     */
+    private void get() {
+        try {
+            sut.get(key);
+            fail("RedisException must be thrown.");
+        } catch (LettuceCircuitBreakerOpenException e) {
+            throw e;
+        } catch (RedisException e) {
+            // OK
+        }
+    }
+
+    /**
+     * サーキットブレーカーを開く。
+     */
+    private void open() {
+        doThrow(new RedisConnectionException("test")).when(client).get(key);
+        for (int i = 0; i < 4; i++) {
+            get();
+        }
+        assertThat(sut.getState(), is(State.OPEN));
+    }
+}
@@ -0,0 +1,98 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ClientOptions.DisconnectedBehavior;
+import io.lettuce.core.SocketOptions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.time.Duration;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link LettuceClientOptions} のテストクラス。
+ */
+public class LettuceClientOptionsTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final LettuceClientOptions sut = new LettuceClientOptions();
+
+    @Test
+    public void testConfiguredOptionsAreApplied() {
+        sut.setRequestQueueSize(1000);
+        sut.setDisconnectedBehavior("reject_commands");
+        sut.setAutoReconnect(false);
+        sut.setCommandTimeout(3000L);
+        sut.setConnectTimeout(2000L);
+
+        ClientOptions options = apply(ClientOptions.create());
+
+        assertThat(options.getRequestQueueSize(), is(1000));
+        assertThat(options.getDisconnectedBehavior(), is(DisconnectedBehavior.REJECT_COMMANDS));
+        assertThat(options.isAutoReconnect(), is(false));
+        assertThat(options.getTimeoutOptions().isTimeoutCommands(), is(true));
+        assertThat(options.getSocketOptions().getConnectTimeout(), is(Duration.ofMillis(2000L)));
+    }
+
+    @Test
+    public void testNotConfiguredOptionsAreInherited() {
+        ClientOptions current = ClientOptions.builder()
+                .requestQueueSize(10)
+                .disconnectedBehavior(DisconnectedBehavior.ACCEPT_COMMANDS)
+                .socketOptions(SocketOptions.builder().connectTimeout(Duration.ofMillis(500L)).keepAlive(true).build())
+                .build();
+        sut.setConnectTimeout(2000L);
+
+        ClientOptions options = apply(current);
+
+        assertThat(options.getRequestQueueSize(), is(10));
+        assertThat(options.getDisconnectedBehavior(), is(DisconnectedBehavior.ACCEPT_COMMANDS));
+        assertThat(options.isAutoReconnect(), is(true));
+        assertThat(options.getTimeoutOptions().isTimeoutCommands(), is(false));
+        assertThat(options.getSocketOptions().getConnectTimeout(), is(Duration.ofMillis(2000L)));
+        assertThat(options.getSocketOptions().isKeepAlive(), is(true));
+    }
+
+    @Test
+    public void testThrowsExceptionIfDisconnectedBehaviorIsUnknown() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Unknown disconnected behavior. disconnectedBehavior=drop");
+
+        sut.setDisconnectedBehavior("drop");
+    }
+
+    @Test
+    public void testThrowsExceptionIfRequestQueueSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("requestQueueSize must be greater than 0. requestQueueSize=0");
+
+        sut.setRequestQueueSize(0);
+    }
+
+    @Test
+    public void testThrowsExceptionIfCommandTimeoutIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("commandTimeout must be greater than 0. commandTimeout=0");
+
+        sut.setCommandTimeout(0L);
+    }
+
+    @Test
+    public void testThrowsExceptionIfConnectTimeoutIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("connectTimeout must be greater than 0. connectTimeout=-1");
+
+        sut.setConnectTimeout(-1L);
+    }
+
+    private ClientOptions apply(ClientOptions current) {
+        ClientOptions.Builder builder = current.mutate();
+        sut.apply(current, builder);
+        return builder.build();
+    }
+}
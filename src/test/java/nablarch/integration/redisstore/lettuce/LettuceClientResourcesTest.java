@@ -0,0 +1,122 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.resource.ClientResources;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link LettuceClientResources} のテストクラス。
+ */
+public class LettuceClientResourcesTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final LettuceClientResources sut = new LettuceClientResources();
+
+    @Test
+    public void testClientResourcesAreCreatedOnce() {
+        sut.initialize();
+
+        ClientResources first = sut.getClientResources();
+        ClientResources second = sut.getClientResources();
+
+        assertThat(second, is(sameInstance(first)));
+    }
+
+    @Test
+    public void testThreadPoolSizesAreApplied() {
+        sut.setIoThreadPoolSize(3);
+        sut.setComputationThreadPoolSize(5);
+
+        ClientResources clientResources = sut.getClientResources();
+
+        assertThat(clientResources.ioThreadPoolSize(), is(3));
+        assertThat(clientResources.computationThreadPoolSize(), is(5));
+    }
+
+    @Test
+    public void testDisposeShutsDownClientResources() {
+        ClientResources clientResources = sut.getClientResources();
+
+        sut.dispose();
+
+        assertThat(clientResources.eventExecutorGroup().isShutdown(), is(true));
+        assertThat("new resources are created after dispose.", sut.getClientResources(), is(not(sameInstance(clientResources))));
+    }
+
+    @Test
+    public void testSimpleClientUsesSharedClientResources() {
+        LettuceSimpleRedisClient client = new LettuceSimpleRedisClient();
+        client.setUri("redis://localhost:6379");
+        client.setClientResources(sut);
+
+        RedisClient redisClient = client.createClient();
+        try {
+            assertThat(redisClient.getResources(), is(sameInstance(sut.getClientResources())));
+        } finally {
+            redisClient.shutdown();
+        }
+        assertThat("shared resources are not shut down by the client.",
+                sut.getClientResources().eventExecutorGroup().isShutdown(), is(false));
+    }
+
+    @Test
+    public void testMasterReplicaClientUsesSharedClientResources() {
+        LettuceMasterReplicaRedisClient client = new LettuceMasterReplicaRedisClient();
+        client.setClientResources(sut);
+
+        RedisClient redisClient = client.createClient();
+        try {
+            assertThat(redisClient.getResources(), is(sameInstance(sut.getClientResources())));
+        } finally {
+            redisClient.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusterClientUsesSharedClientResources() {
+        LettuceClusterRedisClient client = new LettuceClusterRedisClient();
+        client.setUriList(Collections.singletonList("redis://localhost:7000"));
+        client.setClientResources(sut);
+
+        RedisClusterClient redisClient = client.createClient();
+        try {
+            assertThat(redisClient.getResources(), is(sameInstance(sut.getClientResources())));
+        } finally {
+            redisClient.shutdown();
+        }
+    }
+
+    @Test
+    public void testThrowsExceptionIfIoThreadPoolSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("ioThreadPoolSize must be greater than 0. ioThreadPoolSize=0");
+
+        sut.setIoThreadPoolSize(0);
+    }
+
+    @Test
+    public void testThrowsExceptionIfComputationThreadPoolSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("computationThreadPoolSize must be greater than 0. computationThreadPoolSize=0");
+
+        sut.setComputationThreadPoolSize(0);
+    }
+
+    @After
+    public void after() {
+        sut.dispose();
+    }
+}
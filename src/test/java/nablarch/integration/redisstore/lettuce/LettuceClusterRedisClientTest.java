@@ -1,33 +1,62 @@
 package nablarch.integration.redisstore.lettuce;
 
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisConnectionStateListener;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions.RefreshTrigger;
 import io.lettuce.core.cluster.RedisClusterClient;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.cluster.event.AskRedirectionEvent;
+import io.lettuce.core.cluster.event.ClusterTopologyChangedEvent;
+import io.lettuce.core.cluster.event.MovedRedirectionEvent;
+import io.lettuce.core.cluster.models.partitions.Partitions;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.event.DefaultEventBus;
+import io.lettuce.core.event.EventBus;
+import io.lettuce.core.resource.ClientResources;
 import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import reactor.core.scheduler.Schedulers;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
+import static org.mockito.ArgumentMatchers.any;
 
 /**
  * {@link LettuceClusterRedisClient} のテストクラス。
@@ -37,6 +66,9 @@ public class LettuceClusterRedisClientTest {
     @ClassRule
     public static TemporaryFolder tmpDir = new TemporaryFolder();
 
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
     private static List<String> URI_LIST;
 
     private static RedisClusterClient LETTUCE_CLIENT;
@@ -77,6 +109,25 @@ public class LettuceClusterRedisClientTest {
         assertThat("foo was set after set", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
     }
 
+    @Test
+    public void testPsetex() {
+        assertThat("null value before psetex", LETTUCE_COMMANDS.get("foo"), is(nullValue()));
+
+        long expiration = 12345L;
+        long start = System.currentTimeMillis();
+        sut.psetex("foo", expiration, "testてすと".getBytes(StandardCharsets.UTF_8));
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+        long time = System.currentTimeMillis() - start;
+
+        assertThat("foo was set after psetex", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
+        assertThat("pttl is greater than 0 after psetex", ttl,
+            allOf(
+                greaterThanOrEqualTo(expiration - time),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
     @Test
     public void testPexpire() {
         LETTUCE_COMMANDS.set("foo", "FOO");
@@ -124,6 +175,111 @@ public class LettuceClusterRedisClientTest {
         );
     }
 
+    @Test
+    public void testSetnxAndPexpireatSavesValueIfKeyDoesNotExist() {
+        assertThat("null value before setnxAndPexpireat", LETTUCE_COMMANDS.get("foo"), is(nullValue()));
+
+        long expiration = 12345L;
+        sut.setnxAndPexpireat("foo", "testてすと".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis() + expiration);
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+
+        assertThat("foo was set after setnxAndPexpireat", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
+        assertThat("pttl is greater than 0 after setnxAndPexpireat", ttl,
+            allOf(
+                greaterThan(0L),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
+    @Test
+    public void testSetnxAndPexpireatDoesNotOverwriteValueIfKeyExists() {
+        LETTUCE_COMMANDS.set("foo", "FOO");
+
+        long expiration = 12345L;
+        sut.setnxAndPexpireat("foo", "BAR".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis() + expiration);
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+
+        assertThat("value is not overwritten", LETTUCE_COMMANDS.get("foo"), is("FOO"));
+        assertThat("pttl is greater than 0 after setnxAndPexpireat", ttl,
+            allOf(
+                greaterThan(0L),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
+    @Test
+    public void testHgetall() {
+        assertThat("empty map if key does not exist.", sut.hgetall("foo").isEmpty(), is(true));
+
+        LETTUCE_COMMANDS.hset("foo", "one", "ONE");
+        LETTUCE_COMMANDS.hset("foo", "two", "TWO");
+
+        Map<String, byte[]> fields = sut.hgetall("foo");
+        assertThat(fields.keySet(), containsInAnyOrder("one", "two"));
+        assertThat(new String(fields.get("one"), StandardCharsets.UTF_8), is("ONE"));
+        assertThat(new String(fields.get("two"), StandardCharsets.UTF_8), is("TWO"));
+    }
+
+    @Test
+    public void testHupdateReplacesKey() {
+        LETTUCE_COMMANDS.set("foo", "");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "ONE".getBytes(StandardCharsets.UTF_8)), null, 12345L);
+
+        assertThat(updated, is(true));
+        assertThat(LETTUCE_COMMANDS.hgetall("foo"), is(Collections.singletonMap("one", "ONE")));
+        assertThat(LETTUCE_COMMANDS.pttl("foo"), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+    }
+
+    @Test
+    public void testHupdateUpdatesOnlySpecifiedFields() {
+        LETTUCE_COMMANDS.hset("foo", "one", "ONE");
+        LETTUCE_COMMANDS.hset("foo", "two", "TWO");
+        LETTUCE_COMMANDS.hset("foo", "three", "THREE");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "1".getBytes(StandardCharsets.UTF_8)),
+            Collections.singletonList("two"), 12345L);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("one", "1");
+        expected.put("three", "THREE");
+        assertThat(updated, is(true));
+        assertThat(LETTUCE_COMMANDS.hgetall("foo"), is(expected));
+        assertThat(LETTUCE_COMMANDS.pttl("foo"), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+    }
+
+    @Test
+    public void testHupdateDoesNothingIfHashDoesNotExist() {
+        LETTUCE_COMMANDS.set("foo", "");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "ONE".getBytes(StandardCharsets.UTF_8)),
+            Collections.emptyList(), 12345L);
+
+        assertThat(updated, is(false));
+        assertThat(LETTUCE_COMMANDS.get("foo"), is(""));
+        assertThat(sut.hupdate("bar", Collections.emptyMap(), Collections.emptyList(), 12345L), is(false));
+        assertThat(LETTUCE_COMMANDS.exists("bar"), is(0L));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        LettuceRedisAsyncClient async = sut.async();
+
+        async.psetex("foo", 12345L, "FOO".getBytes(StandardCharsets.UTF_8)).toCompletableFuture().get();
+
+        assertThat(LETTUCE_COMMANDS.get("foo"), is("FOO"));
+        assertThat(new String(async.get("foo").toCompletableFuture().get(), StandardCharsets.UTF_8), is("FOO"));
+        assertThat(async.exists("foo").toCompletableFuture().get(), is(true));
+        assertThat(async.pttl("foo").toCompletableFuture().get(), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+
+        async.del("foo").toCompletableFuture().get();
+
+        assertThat(async.exists("foo").toCompletableFuture().get(), is(false));
+        assertThat(async.get("foo").toCompletableFuture().get(), is(nullValue()));
+    }
+
     @Test
     public void testPttl() {
         assertThat("pttl -2 if key does not exist.", sut.pttl("foo"), is(-2L));
@@ -181,9 +337,95 @@ public class LettuceClusterRedisClientTest {
         assertThat("true if key exists.", sut.exists("foo"), is(true));
     }
 
+    @Test
+    public void testTrackInvalidation() throws Exception {
+        RecordingKeyInvalidationListener listener = new RecordingKeyInvalidationListener();
+        sut.trackInvalidation("tracked:", listener);
+
+        assertThat("tracking is started.", listener.awaitTrackingStarted(), is(true));
+
+        LETTUCE_COMMANDS.set("untracked:foo", "FOO");
+        LETTUCE_COMMANDS.set("tracked:foo", "FOO");
+
+        assertThat("only tracked key is notified.", listener.pollInvalidatedKey(), is("tracked:foo"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTrackingListenerIsRegisteredOnTrackingConnection() {
+        RedisClusterClient client = mockClusterClient(new DefaultEventBus(Schedulers.immediate()));
+        StatefulRedisClusterConnection<byte[], byte[]> trackingConnection = mock(StatefulRedisClusterConnection.class);
+        when(trackingConnection.getPartitions()).thenReturn(new Partitions());
+        LettuceKeyInvalidationListener listener = mock(LettuceKeyInvalidationListener.class);
+
+        LettuceClusterRedisClient sut = new LettuceClusterRedisClient() {
+            @Override
+            protected RedisClusterClient createClient() {
+                return client;
+            }
+
+            @Override
+            protected StatefulRedisClusterConnection<byte[], byte[]> createConnection(RedisClusterClient client) {
+                return mock(StatefulRedisClusterConnection.class);
+            }
+
+            @Override
+            protected StatefulRedisClusterConnection<byte[], byte[]> createTrackingConnection(RedisClusterClient client) {
+                return trackingConnection;
+            }
+        };
+
+        sut.initialize();
+        sut.trackInvalidation("tracked:", listener);
+
+        verify(trackingConnection).addListener(any(RedisConnectionStateListener.class));
+        verify(client, never()).addListener(any(RedisConnectionStateListener.class));
+        verify(listener).onTrackingStarted();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTrackingIsRestartedOnlyByOwnTopologyChange() {
+        EventBus eventBus = new DefaultEventBus(Schedulers.immediate());
+        RedisClusterClient client = mockClusterClient(eventBus);
+        StatefulRedisClusterConnection<byte[], byte[]> trackingConnection = mock(StatefulRedisClusterConnection.class);
+        Partitions partitions = new Partitions();
+        partitions.reload(Collections.singletonList(clusterNode("own")));
+        when(trackingConnection.getPartitions()).thenReturn(partitions);
+        LettuceKeyInvalidationListener listener = mock(LettuceKeyInvalidationListener.class);
+
+        LettuceClusterRedisClient sut = new LettuceClusterRedisClient() {
+            @Override
+            protected RedisClusterClient createClient() {
+                return client;
+            }
+
+            @Override
+            protected StatefulRedisClusterConnection<byte[], byte[]> createConnection(RedisClusterClient client) {
+                return mock(StatefulRedisClusterConnection.class);
+            }
+
+            @Override
+            protected StatefulRedisClusterConnection<byte[], byte[]> createTrackingConnection(RedisClusterClient client) {
+                return trackingConnection;
+            }
+        };
+        sut.initialize();
+        sut.trackInvalidation("tracked:", listener);
+        verify(listener, times(1)).onTrackingStarted();
+
+        eventBus.publish(new ClusterTopologyChangedEvent(
+                Collections.singletonList(clusterNode("other")), Collections.emptyList()));
+        verify(listener, times(1)).onTrackingStarted();
+
+        eventBus.publish(new ClusterTopologyChangedEvent(
+                Collections.singletonList(clusterNode("own")), Collections.emptyList()));
+        verify(listener, times(2)).onTrackingStarted();
+    }
+
     @Test
     public void testDispose() {
-        RedisClusterClient client = mock(RedisClusterClient.class);
+        RedisClusterClient client = mockClusterClient(new DefaultEventBus(Schedulers.immediate()));
         @SuppressWarnings("unchecked")
         StatefulRedisClusterConnection<byte[], byte[]> connection = mock(StatefulRedisClusterConnection.class);
         
@@ -206,6 +448,295 @@ public class LettuceClusterRedisClientTest {
         verify(client).shutdown();
     }
 
+    @Test
+    public void testTopologyRefreshOptionsAreApplied() {
+        RedisClusterClient client = mockClusterClient(new DefaultEventBus(Schedulers.immediate()));
+        when(client.getOptions()).thenReturn(ClusterClientOptions.builder()
+                .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder().closeStaleConnections(false).build())
+                .build());
+        LettuceClusterRedisClient sut = createMockedClient(client);
+        sut.setPeriodicRefreshInterval(60000L);
+        sut.setAdaptiveRefreshTriggers(Arrays.asList("moved_redirect", " PERSISTENT_RECONNECTS "));
+        sut.setAdaptiveRefreshTimeout(5000L);
+        sut.setDynamicRefreshSources(false);
+
+        sut.initialize();
+
+        ArgumentCaptor<ClusterClientOptions> captor = ArgumentCaptor.forClass(ClusterClientOptions.class);
+        verify(client).setOptions(captor.capture());
+        ClusterTopologyRefreshOptions options = captor.getValue().getTopologyRefreshOptions();
+        assertThat(options.isPeriodicRefreshEnabled(), is(true));
+        assertThat(options.getRefreshPeriod(), is(Duration.ofMinutes(1)));
+        assertThat(options.getAdaptiveRefreshTriggers(),
+                containsInAnyOrder(RefreshTrigger.MOVED_REDIRECT, RefreshTrigger.PERSISTENT_RECONNECTS));
+        assertThat(options.getAdaptiveRefreshTimeout(), is(Duration.ofSeconds(5)));
+        assertThat(options.useDynamicRefreshSources(), is(false));
+        assertThat("unspecified option is inherited.", options.isCloseStaleConnections(), is(false));
+    }
+
+    @Test
+    public void testPeriodicRefreshIsDisabledByZero() {
+        RedisClusterClient client = mockClusterClient(new DefaultEventBus(Schedulers.immediate()));
+        when(client.getOptions()).thenReturn(ClusterClientOptions.builder()
+                .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                        .enablePeriodicRefresh(Duration.ofSeconds(10))
+                        .enableAllAdaptiveRefreshTriggers()
+                        .build())
+                .build());
+        LettuceClusterRedisClient sut = createMockedClient(client);
+        sut.setPeriodicRefreshInterval(0L);
+        sut.setAdaptiveRefreshTriggers(Collections.emptyList());
+
+        sut.initialize();
+
+        ArgumentCaptor<ClusterClientOptions> captor = ArgumentCaptor.forClass(ClusterClientOptions.class);
+        verify(client).setOptions(captor.capture());
+        ClusterTopologyRefreshOptions options = captor.getValue().getTopologyRefreshOptions();
+        assertThat(options.isPeriodicRefreshEnabled(), is(false));
+        assertThat(options.getAdaptiveRefreshTriggers(), is(empty()));
+    }
+
+    @Test
+    public void testAllAdaptiveRefreshTriggers() {
+        RedisClusterClient client = mockClusterClient(new DefaultEventBus(Schedulers.immediate()));
+        when(client.getOptions()).thenReturn(ClusterClientOptions.create());
+        LettuceClusterRedisClient sut = createMockedClient(client);
+        sut.setAdaptiveRefreshTriggers(Collections.singletonList("all"));
+
+        sut.initialize();
+
+        ArgumentCaptor<ClusterClientOptions> captor = ArgumentCaptor.forClass(ClusterClientOptions.class);
+        verify(client).setOptions(captor.capture());
+        assertThat(captor.getValue().getTopologyRefreshOptions().getAdaptiveRefreshTriggers(),
+                containsInAnyOrder(RefreshTrigger.values()));
+    }
+
+    @Test
+    public void testTopologyRefreshOptionsAreNotChangedIfNotConfigured() {
+        RedisClusterClient client = mockClusterClient(new DefaultEventBus(Schedulers.immediate()));
+        LettuceClusterRedisClient sut = createMockedClient(client);
+
+        sut.initialize();
+
+        verify(client, never()).setOptions(any());
+    }
+
+    @Test
+    public void testClientOptionsAreApplied() {
+        RedisClusterClient client = mockClusterClient(new DefaultEventBus(Schedulers.immediate()));
+        when(client.getOptions()).thenReturn(ClusterClientOptions.builder().maxRedirects(3).build());
+        LettuceClientOptions clientOptions = new LettuceClientOptions();
+        clientOptions.setRequestQueueSize(100);
+        clientOptions.setAutoReconnect(false);
+        LettuceClusterRedisClient sut = createMockedClient(client);
+        sut.setClientOptions(clientOptions);
+
+        sut.initialize();
+
+        ArgumentCaptor<ClusterClientOptions> captor = ArgumentCaptor.forClass(ClusterClientOptions.class);
+        verify(client).setOptions(captor.capture());
+        assertThat(captor.getValue().getRequestQueueSize(), is(100));
+        assertThat(captor.getValue().isAutoReconnect(), is(false));
+        assertThat("unspecified option is inherited.", captor.getValue().getMaxRedirects(), is(3));
+    }
+
+    @Test
+    public void testUnknownAdaptiveRefreshTrigger() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Unknown adaptive refresh trigger. adaptiveRefreshTrigger=FOO");
+
+        new LettuceClusterRedisClient().setAdaptiveRefreshTriggers(Arrays.asList("MOVED_REDIRECT", "FOO"));
+    }
+
+    @Test
+    public void testNegativePeriodicRefreshInterval() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("periodicRefreshInterval must be greater than or equal to 0. periodicRefreshInterval=-1");
+
+        new LettuceClusterRedisClient().setPeriodicRefreshInterval(-1L);
+    }
+
+    @Test
+    public void testNegativeAdaptiveRefreshTimeout() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("adaptiveRefreshTimeout must be greater than or equal to 0. adaptiveRefreshTimeout=-1");
+
+        new LettuceClusterRedisClient().setAdaptiveRefreshTimeout(-1L);
+    }
+
+    @Test
+    public void testRedirectionsAreCounted() {
+        EventBus eventBus = new DefaultEventBus(Schedulers.immediate());
+        LettuceClusterRedisClient sut = createMockedClient(mockClusterClient(eventBus));
+        sut.initialize();
+
+        eventBus.publish(new MovedRedirectionEvent("SET", "foo", 12182, "MOVED 12182 127.0.0.1:7221"));
+        eventBus.publish(new MovedRedirectionEvent("GET", "foo", 12182, "MOVED 12182 127.0.0.1:7221"));
+        eventBus.publish(new AskRedirectionEvent("GET", "bar", 5061, "ASK 5061 127.0.0.1:7211"));
+
+        assertThat(sut.getMovedRedirectionCount(), is(2L));
+        assertThat(sut.getAskRedirectionCount(), is(1L));
+
+        sut.dispose();
+        eventBus.publish(new MovedRedirectionEvent("SET", "foo", 12182, "MOVED 12182 127.0.0.1:7221"));
+        assertThat("events are not counted after dispose.", sut.getMovedRedirectionCount(), is(2L));
+    }
+
+    @Test
+    public void testTopologyRefreshIsRecorded() {
+        assertThat(sut.getTopologyRefreshCount(), is(0L));
+
+        sut.createClient().refreshPartitionsAsync().toCompletableFuture().join();
+
+        assertThat(sut.getTopologyRefreshCount(), is(1L));
+        assertThat(sut.getMaxTopologyRefreshDuration(), is(greaterThanOrEqualTo(sut.getLastTopologyRefreshDuration())));
+    }
+
+    @Test
+    public void testReadFromReplicaWithReadYourWritesWindow() {
+        LettuceClusterRedisClient sut = new LettuceClusterRedisClient();
+        sut.setUriList(URI_LIST);
+        sut.setReadFrom("replicaPreferred");
+        sut.setReadYourWritesWindow(1000L);
+        sut.initialize();
+        try {
+            sut.set("foo", "FOO".getBytes(StandardCharsets.UTF_8));
+
+            assertThat("written value is read immediately.", new String(sut.get("foo"), StandardCharsets.UTF_8), is("FOO"));
+            assertThat(sut.exists("foo"), is(true));
+        } finally {
+            sut.dispose();
+        }
+    }
+
+    @Test
+    public void testReadFromIsApplied() {
+        List<StatefulRedisClusterConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceClusterRedisClient sut = createMockedClient(mockClusterClient(new DefaultEventBus(Schedulers.immediate())), connections);
+        sut.setReadFrom("replicaPreferred");
+
+        sut.initialize();
+
+        assertThat("master connection is not created without window.", connections.size(), is(1));
+        verify(connections.get(0)).setReadFrom(ReadFrom.REPLICA_PREFERRED);
+    }
+
+    @Test
+    public void testRecentlyWrittenSlotIsReadFromMaster() {
+        List<StatefulRedisClusterConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceClusterRedisClient sut = createMockedClient(mockClusterClient(new DefaultEventBus(Schedulers.immediate())), connections);
+        sut.setReadFrom("replica");
+        sut.setReadYourWritesWindow(60000L);
+        sut.initialize();
+
+        RedisAdvancedClusterCommands<byte[], byte[]> replicaCommands = connections.get(0).sync();
+        RedisAdvancedClusterCommands<byte[], byte[]> masterCommands = connections.get(1).sync();
+        verify(connections.get(1)).setReadFrom(ReadFrom.UPSTREAM);
+
+        sut.get("foo");
+        verify(replicaCommands).get(any());
+
+        sut.psetex("{user1}.foo", 1000L, new byte[0]);
+        sut.get("{user1}.bar");
+        sut.pttl("{user1}.foo");
+        sut.exists("bar");
+
+        verify(masterCommands).get(any());
+        verify(masterCommands).pttl(any());
+        verify(replicaCommands).exists(any());
+        sut.dispose();
+        verify(connections.get(1)).close();
+    }
+
+    @Test
+    public void testTrackedKeyIsReadFromMaster() {
+        List<StatefulRedisClusterConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceClusterRedisClient sut = createMockedClient(mockClusterClient(new DefaultEventBus(Schedulers.immediate())), connections);
+        sut.setReadFrom("replica");
+        sut.initialize();
+        sut.setAutoFlushCommands(false);
+
+        sut.trackInvalidation("tracked:", mock(LettuceKeyInvalidationListener.class));
+
+        assertThat("master connection is created for tracked keys.", connections.size(), is(2));
+        verify(connections.get(1)).setReadFrom(ReadFrom.UPSTREAM);
+        verify(connections.get(1)).setAutoFlushCommands(false);
+
+        RedisAdvancedClusterCommands<byte[], byte[]> replicaCommands = connections.get(0).sync();
+        RedisAdvancedClusterCommands<byte[], byte[]> masterCommands = connections.get(1).sync();
+        sut.get("tracked:foo");
+        sut.get("untracked:foo");
+
+        verify(masterCommands).get("tracked:foo".getBytes(StandardCharsets.UTF_8));
+        verify(replicaCommands).get("untracked:foo".getBytes(StandardCharsets.UTF_8));
+        sut.dispose();
+        verify(connections.get(1)).close();
+    }
+
+    @Test
+    public void testMasterConnectionIsNotCreatedForTrackingWithoutReadFrom() {
+        List<StatefulRedisClusterConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceClusterRedisClient sut = createMockedClient(mockClusterClient(new DefaultEventBus(Schedulers.immediate())), connections);
+        sut.initialize();
+
+        sut.trackInvalidation("tracked:", mock(LettuceKeyInvalidationListener.class));
+
+        assertThat(connections.size(), is(1));
+    }
+
+    @Test
+    public void testThrowsExceptionIfReadYourWritesWindowIsNegative() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("readYourWritesWindow must be greater than or equal to 0. readYourWritesWindow=-1");
+
+        new LettuceClusterRedisClient().setReadYourWritesWindow(-1L);
+    }
+
+    private static RedisClusterNode clusterNode(String nodeId) {
+        RedisClusterNode node = new RedisClusterNode();
+        node.setNodeId(nodeId);
+        node.setFlags(EnumSet.of(RedisClusterNode.NodeFlag.REPLICA));
+        return node;
+    }
+
+    private static RedisClusterClient mockClusterClient(EventBus eventBus) {
+        ClientResources resources = mock(ClientResources.class);
+        when(resources.eventBus()).thenReturn(eventBus);
+        RedisClusterClient client = mock(RedisClusterClient.class);
+        when(client.getResources()).thenReturn(resources);
+        return client;
+    }
+
+    private static LettuceClusterRedisClient createMockedClient(RedisClusterClient client) {
+        return createMockedClient(client, new ArrayList<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LettuceClusterRedisClient createMockedClient(RedisClusterClient client,
+            List<StatefulRedisClusterConnection<byte[], byte[]>> connections) {
+        return new LettuceClusterRedisClient() {
+            @Override
+            protected RedisClusterClient createClient() {
+                return client;
+            }
+
+            @Override
+            protected StatefulRedisClusterConnection<byte[], byte[]> createConnection(RedisClusterClient client) {
+                StatefulRedisClusterConnection<byte[], byte[]> connection = mock(StatefulRedisClusterConnection.class);
+                when(connection.sync()).thenReturn(mock(RedisAdvancedClusterCommands.class));
+                connections.add(connection);
+                return connection;
+            }
+
+            @Override
+            protected StatefulRedisClusterConnection<byte[], byte[]> createTrackingConnection(RedisClusterClient client) {
+                StatefulRedisClusterConnection<byte[], byte[]> connection = mock(StatefulRedisClusterConnection.class);
+                when(connection.getPartitions()).thenReturn(new Partitions());
+                return connection;
+            }
+        };
+    }
+
     @After
     public void after() {
         sut.dispose();
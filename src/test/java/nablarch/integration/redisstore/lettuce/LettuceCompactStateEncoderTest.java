@@ -0,0 +1,228 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+import nablarch.common.web.session.encoder.JavaSerializeStateEncoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link LettuceCompactStateEncoder} のテストクラス。
+ */
+public class LettuceCompactStateEncoderTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final LettuceCompactStateEncoder sut = new LettuceCompactStateEncoder();
+
+    @Test
+    public void testScalarValues() {
+        for (Object value : Arrays.asList("文字列", "", true, false, (byte) -1, (short) 300, 0, -1, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 1.5f, -2.25d, 'あ',
+                new BigDecimal("-1234.5600"), new BigInteger("123456789012345678901234567890"),
+                new Date(1700000000123L), LocalDate.of(2024, 2, 29), LocalDateTime.of(2024, 2, 29, 23, 59, 59, 999999999),
+                Instant.ofEpochSecond(1700000000L, 123456789L), TimeUnit.SECONDS)) {
+            Object decoded = roundTrip(value);
+            assertThat(String.valueOf(value), decoded, is(value));
+            assertThat(String.valueOf(value), decoded.getClass(), is((Object) value.getClass()));
+        }
+        assertThat(roundTrip(null), is(nullValue()));
+        assertThat(roundTrip(new byte[] {1, 2, 3}), is(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    public void testCollections() {
+        Map<String, Object> linkedHashMap = new LinkedHashMap<>();
+        linkedHashMap.put("b", Arrays.asList(1, 2));
+        linkedHashMap.put("a", null);
+        List<Object> arrayList = new ArrayList<>(Arrays.asList("x", 1L, null, new HashMap<>(linkedHashMap)));
+
+        assertThat(roundTrip(arrayList), is(arrayList));
+        assertThat(roundTrip(linkedHashMap), is(linkedHashMap));
+        assertThat(roundTrip(linkedHashMap), instanceOf(LinkedHashMap.class));
+        assertThat(roundTrip(new HashSet<>(Arrays.asList(1, 2))), is(new HashSet<>(Arrays.asList(1, 2))));
+        assertThat(roundTrip(new LinkedHashSet<>(Arrays.asList(3, 1))), instanceOf(LinkedHashSet.class));
+    }
+
+    @Test
+    public void testBean() {
+        TestBean bean = new TestBean();
+        bean.setName("name");
+        bean.setAge(20);
+        bean.setTags(new ArrayList<>(Arrays.asList("a", "b")));
+        bean.setChild(new TestBean());
+
+        assertThat(roundTrip(bean), is(bean));
+    }
+
+    @Test
+    public void testOtherTypesAreSerialized() {
+        LinkedList<String> linkedList = new LinkedList<>(Arrays.asList("a", "b"));
+        TreeMap<String, Integer> treeMap = new TreeMap<>();
+        treeMap.put("a", 1);
+        NotBean notBean = new NotBean("value");
+
+        assertThat(roundTrip(linkedList), instanceOf(LinkedList.class));
+        assertThat(roundTrip(linkedList), is(linkedList));
+        assertThat(roundTrip(treeMap), is(treeMap));
+        assertThat(roundTrip(notBean), is(notBean));
+        assertThat(roundTrip(Arrays.asList(1, 2)), is(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void testDecodeJavaSerializedValue() {
+        byte[] serialized = new JavaSerializeStateEncoder().encode(new ArrayList<>(Arrays.asList("a", 1)));
+
+        assertThat(sut.decode(serialized, List.class), is(Arrays.asList("a", 1)));
+    }
+
+    @Test
+    public void testDecodeFromStream() {
+        byte[] encoded = sut.encode("value");
+        byte[] buffer = new byte[encoded.length + 10];
+        System.arraycopy(encoded, 0, buffer, 5, encoded.length);
+
+        assertThat(sut.decode(new ByteArrayInputStream(buffer, 5, encoded.length), String.class), is("value"));
+    }
+
+    @Test
+    public void testEncodedValueIsSmallerThanJavaSerialization() {
+        JavaSerializeStateEncoder javaSerialize = new JavaSerializeStateEncoder();
+        TestBean bean = new TestBean();
+        bean.setName("user name");
+        bean.setAge(42);
+        bean.setTags(new ArrayList<>(Arrays.asList("admin", "user")));
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+        for (Object value : Arrays.asList("user-id-0001", 12345L, now, bean)) {
+            assertThat(String.valueOf(value), sut.encode(value).length, lessThan(javaSerialize.encode(value).length));
+        }
+    }
+
+    @Test
+    public void testThrowsExceptionIfVersionIsUnsupported() {
+        exception.expect(EncodeException.class);
+        exception.expectMessage("Unsupported format version. version=2");
+
+        sut.decode(new byte[] {(byte) 0xC5, 2, 0}, Object.class);
+    }
+
+    @Test
+    public void testThrowsExceptionIfTagIsUnknown() {
+        exception.expect(EncodeException.class);
+        exception.expectMessage("Unknown tag. tag=99");
+
+        sut.decode(new byte[] {(byte) 0xC5, 1, 99}, Object.class);
+    }
+
+    private Object roundTrip(Object value) {
+        return sut.decode(sut.encode(value), Object.class);
+    }
+
+    /**
+     * Bean としてエンコードされるクラス。
+     */
+    public static class TestBean implements Serializable {
+        private String name;
+        private int age;
+        private List<String> tags;
+        private TestBean child;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public TestBean getChild() {
+            return child;
+        }
+
+        public void setChild(TestBean child) {
+            this.child = child;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TestBean)) {
+                return false;
+            }
+            TestBean other = (TestBean) o;
+            return Objects.equals(name, other.name) && age == other.age
+                    && Objects.equals(tags, other.tags) && Objects.equals(child, other.child);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, age, tags, child);
+        }
+    }
+
+    /**
+     * setter を持たないため、 Java のシリアライズでエンコードされるクラス。
+     */
+    public static class NotBean implements Serializable {
+        private final String value;
+
+        public NotBean(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NotBean && value.equals(((NotBean) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link LettuceDeflatePayloadTransformer} のテストクラス。
+ */
+public class LettuceDeflatePayloadTransformerTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final LettuceDeflatePayloadTransformer sut = new LettuceDeflatePayloadTransformer();
+
+    @Test
+    public void testCompressedPayloadIsRestored() {
+        byte[] payload = repeat("nablarch.common.web.session.SessionEntry", 100);
+
+        byte[] stored = sut.transform(payload);
+
+        assertThat("payload is compressed.", stored.length, is(lessThan(payload.length)));
+        assertThat(sut.restore(stored), is(payload));
+    }
+
+    @Test
+    public void testPayloadNotExceedingThresholdIsNotCompressed() {
+        byte[] payload = repeat("a", 1024);
+
+        assertThat(sut.transform(payload), is(sameInstance(payload)));
+    }
+
+    @Test
+    public void testIncompressiblePayloadIsNotCompressed() {
+        byte[] payload = new byte[4096];
+        new Random(0).nextBytes(payload);
+
+        assertThat(sut.transform(payload), is(sameInstance(payload)));
+    }
+
+    @Test
+    public void testUncompressedPayloadIsRestoredAsIs() {
+        byte[] payload = repeat("a", 10);
+
+        assertThat(sut.restore(payload), is(sameInstance(payload)));
+    }
+
+    @Test
+    public void testCompressedPayloadIsRestoredWithDictionary() throws Exception {
+        File dictionary = temporaryFolder.newFile();
+        Files.write(dictionary.toPath(), "nablarch.common.web.session.SessionEntry".getBytes(StandardCharsets.UTF_8));
+        sut.setDictionaryPath(dictionary.getPath());
+        sut.setThreshold(0);
+        byte[] payload = "nablarch.common.web.session.SessionEntry".getBytes(StandardCharsets.UTF_8);
+
+        LettuceDeflatePayloadTransformer withoutDictionary = new LettuceDeflatePayloadTransformer();
+        withoutDictionary.setThreshold(0);
+        byte[] stored = sut.transform(payload);
+
+        assertThat("dictionary makes small payload compressible.", withoutDictionary.transform(payload), is(sameInstance(payload)));
+        assertThat(stored, is(not(payload)));
+        assertThat(sut.restore(stored), is(payload));
+    }
+
+    @Test
+    public void testSmallPayloadIsCompressedWithDictionaryByDefault() {
+        byte[] payload = repeat("nablarch.common.web.session.SessionEntry", 3);
+        sut.setDictionary(repeat("nablarch.common.web.session.SessionEntry", 1));
+
+        byte[] stored = sut.transform(payload);
+
+        assertThat("small payload shrinks with dictionary.", stored.length, is(lessThan(payload.length)));
+        assertThat(sut.restore(stored), is(payload));
+    }
+
+    @Test
+    public void testSmallPayloadIsNotCompressedWithoutDictionaryByDefault() {
+        byte[] payload = repeat("nablarch.common.web.session.SessionEntry", 3);
+
+        assertThat(sut.transform(payload), is(sameInstance(payload)));
+    }
+
+    @Test
+    public void testThrowsExceptionIfDictionaryDoesNotMatch() {
+        sut.setDictionary(repeat("abc", 10));
+        byte[] stored = sut.transform(repeat("abc", 1000));
+
+        LettuceDeflatePayloadTransformer other = new LettuceDeflatePayloadTransformer();
+        other.setDictionary(repeat("xyz", 10));
+
+        exception.expect(EncodeException.class);
+        other.restore(stored);
+    }
+
+    @Test
+    public void testThrowsExceptionIfCompressedPayloadIsTruncated() {
+        byte[] stored = sut.transform(repeat("abc", 1000));
+
+        exception.expect(EncodeException.class);
+        sut.restore(Arrays.copyOf(stored, stored.length - 4));
+    }
+
+    @Test
+    public void testThrowsExceptionIfSizeInHeaderIsNegative() {
+        byte[] stored = sut.transform(repeat("abc", 1000));
+        ByteBuffer.wrap(stored).putInt(3, -1);
+
+        exception.expect(EncodeException.class);
+        exception.expectMessage("The size in the header of the compressed payload is invalid. size=-1");
+        sut.restore(stored);
+    }
+
+    @Test
+    public void testThrowsExceptionIfSizeInHeaderExceedsMaxPayloadSize() {
+        byte[] stored = sut.transform(repeat("abc", 1000));
+        sut.setMaxPayloadSize(2999);
+
+        exception.expect(EncodeException.class);
+        exception.expectMessage("The size in the header of the compressed payload is invalid. size=3000");
+        sut.restore(stored);
+    }
+
+    @Test
+    public void testThrowsExceptionIfSizeInHeaderExceedsMaxCompressionRatio() {
+        byte[] stored = sut.transform(repeat("abc", 1000));
+        ByteBuffer.wrap(stored).putInt(3, 60 * 1024 * 1024);
+
+        exception.expect(EncodeException.class);
+        exception.expectMessage("The size in the header of the compressed payload is invalid. size=" + (60 * 1024 * 1024));
+        sut.restore(stored);
+    }
+
+    @Test
+    public void testThrowsExceptionIfMaxPayloadSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("maxPayloadSize must be greater than 0. maxPayloadSize=0");
+
+        sut.setMaxPayloadSize(0);
+    }
+
+    @Test
+    public void testThrowsExceptionIfLevelIsOutOfRange() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("level must be between -1 and 9. level=10");
+
+        sut.setLevel(10);
+    }
+
+    private static byte[] repeat(String value, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(value);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package nablarch.integration.redisstore.lettuce;
+
+import nablarch.common.web.session.EncodeException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link LettuceJavaSerializeStateEncoder} のテストクラス。
+ */
+public class LettuceJavaSerializeStateEncoderTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final LettuceJavaSerializeStateEncoder sut = new LettuceJavaSerializeStateEncoder();
+
+    @Test
+    public void testDecodeFromRangeOfBuffer() {
+        byte[] encoded = sut.encode(Arrays.asList("foo", "bar"));
+        byte[] buffer = new byte[encoded.length + 20];
+        System.arraycopy(encoded, 0, buffer, 10, encoded.length);
+
+        List<?> decoded = sut.decode(new ByteArrayInputStream(buffer, 10, encoded.length), List.class);
+
+        assertThat(decoded, is(Arrays.asList("foo", "bar")));
+    }
+
+    @Test
+    public void testDecodeIsCompatibleWithByteArray() {
+        byte[] encoded = sut.encode("value");
+
+        assertThat(sut.decode(new ByteArrayInputStream(encoded), String.class), is(sut.decode(encoded, String.class)));
+    }
+
+    @Test
+    public void testThrowsExceptionIfStreamIsBroken() {
+        exception.expect(EncodeException.class);
+
+        sut.decode(new ByteArrayInputStream(new byte[] {1, 2, 3}), String.class);
+    }
+}
@@ -1,7 +1,9 @@
 package nablarch.integration.redisstore.lettuce;
 
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.codec.StringCodec;
 import io.lettuce.core.masterreplica.MasterReplica;
@@ -12,20 +14,31 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * {@link LettuceMasterReplicaRedisClient} のテストクラス。
@@ -42,6 +55,9 @@ public class LettuceMasterReplicaRedisClientTest {
 
     private static String URI;
 
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
     @BeforeClass
     public static void beforeClass() {
         // 検証用のLettuceクライアントを生成
@@ -77,6 +93,25 @@ public class LettuceMasterReplicaRedisClientTest {
         assertThat("foo was set after set", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
     }
 
+    @Test
+    public void testPsetex() {
+        assertThat("null value before psetex", LETTUCE_COMMANDS.get("foo"), is(nullValue()));
+
+        long expiration = 12345L;
+        long start = System.currentTimeMillis();
+        sut.psetex("foo", expiration, "testてすと".getBytes(StandardCharsets.UTF_8));
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+        long time = System.currentTimeMillis() - start;
+
+        assertThat("foo was set after psetex", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
+        assertThat("pttl is greater than 0 after psetex", ttl,
+            allOf(
+                greaterThanOrEqualTo(expiration - time),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
     @Test
     public void testPexpire() {
         LETTUCE_COMMANDS.set("foo", "FOO");
@@ -115,6 +150,111 @@ public class LettuceMasterReplicaRedisClientTest {
         );
     }
 
+    @Test
+    public void testSetnxAndPexpireatSavesValueIfKeyDoesNotExist() {
+        assertThat("null value before setnxAndPexpireat", LETTUCE_COMMANDS.get("foo"), is(nullValue()));
+
+        long expiration = 12345L;
+        sut.setnxAndPexpireat("foo", "testてすと".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis() + expiration);
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+
+        assertThat("foo was set after setnxAndPexpireat", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
+        assertThat("pttl is greater than 0 after setnxAndPexpireat", ttl,
+            allOf(
+                greaterThan(0L),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
+    @Test
+    public void testSetnxAndPexpireatDoesNotOverwriteValueIfKeyExists() {
+        LETTUCE_COMMANDS.set("foo", "FOO");
+
+        long expiration = 12345L;
+        sut.setnxAndPexpireat("foo", "BAR".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis() + expiration);
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+
+        assertThat("value is not overwritten", LETTUCE_COMMANDS.get("foo"), is("FOO"));
+        assertThat("pttl is greater than 0 after setnxAndPexpireat", ttl,
+            allOf(
+                greaterThan(0L),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
+    @Test
+    public void testHgetall() {
+        assertThat("empty map if key does not exist.", sut.hgetall("foo").isEmpty(), is(true));
+
+        LETTUCE_COMMANDS.hset("foo", "one", "ONE");
+        LETTUCE_COMMANDS.hset("foo", "two", "TWO");
+
+        Map<String, byte[]> fields = sut.hgetall("foo");
+        assertThat(fields.keySet(), containsInAnyOrder("one", "two"));
+        assertThat(new String(fields.get("one"), StandardCharsets.UTF_8), is("ONE"));
+        assertThat(new String(fields.get("two"), StandardCharsets.UTF_8), is("TWO"));
+    }
+
+    @Test
+    public void testHupdateReplacesKey() {
+        LETTUCE_COMMANDS.set("foo", "");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "ONE".getBytes(StandardCharsets.UTF_8)), null, 12345L);
+
+        assertThat(updated, is(true));
+        assertThat(LETTUCE_COMMANDS.hgetall("foo"), is(Collections.singletonMap("one", "ONE")));
+        assertThat(LETTUCE_COMMANDS.pttl("foo"), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+    }
+
+    @Test
+    public void testHupdateUpdatesOnlySpecifiedFields() {
+        LETTUCE_COMMANDS.hset("foo", "one", "ONE");
+        LETTUCE_COMMANDS.hset("foo", "two", "TWO");
+        LETTUCE_COMMANDS.hset("foo", "three", "THREE");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "1".getBytes(StandardCharsets.UTF_8)),
+            Collections.singletonList("two"), 12345L);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("one", "1");
+        expected.put("three", "THREE");
+        assertThat(updated, is(true));
+        assertThat(LETTUCE_COMMANDS.hgetall("foo"), is(expected));
+        assertThat(LETTUCE_COMMANDS.pttl("foo"), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+    }
+
+    @Test
+    public void testHupdateDoesNothingIfHashDoesNotExist() {
+        LETTUCE_COMMANDS.set("foo", "");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "ONE".getBytes(StandardCharsets.UTF_8)),
+            Collections.emptyList(), 12345L);
+
+        assertThat(updated, is(false));
+        assertThat(LETTUCE_COMMANDS.get("foo"), is(""));
+        assertThat(sut.hupdate("bar", Collections.emptyMap(), Collections.emptyList(), 12345L), is(false));
+        assertThat(LETTUCE_COMMANDS.exists("bar"), is(0L));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        LettuceRedisAsyncClient async = sut.async();
+
+        async.psetex("foo", 12345L, "FOO".getBytes(StandardCharsets.UTF_8)).toCompletableFuture().get();
+
+        assertThat(LETTUCE_COMMANDS.get("foo"), is("FOO"));
+        assertThat(new String(async.get("foo").toCompletableFuture().get(), StandardCharsets.UTF_8), is("FOO"));
+        assertThat(async.exists("foo").toCompletableFuture().get(), is(true));
+        assertThat(async.pttl("foo").toCompletableFuture().get(), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+
+        async.del("foo").toCompletableFuture().get();
+
+        assertThat(async.exists("foo").toCompletableFuture().get(), is(false));
+        assertThat(async.get("foo").toCompletableFuture().get(), is(nullValue()));
+    }
+
     @Test
     public void testPttl() {
         assertThat("pttl -2 if key does not exist.", sut.pttl("foo"), is(-2L));
@@ -172,6 +312,19 @@ public class LettuceMasterReplicaRedisClientTest {
         assertThat(actual, is("masterReplica"));
     }
 
+    @Test
+    public void testTrackInvalidation() throws Exception {
+        RecordingKeyInvalidationListener listener = new RecordingKeyInvalidationListener();
+        sut.trackInvalidation("tracked:", listener);
+
+        assertThat("tracking is started.", listener.awaitTrackingStarted(), is(true));
+
+        LETTUCE_COMMANDS.set("untracked:foo", "FOO");
+        LETTUCE_COMMANDS.set("tracked:foo", "FOO");
+
+        assertThat("only tracked key is notified.", listener.pollInvalidatedKey(), is("tracked:foo"));
+    }
+
     @Test
     public void testDispose() {
         RedisClient client = mock(RedisClient.class);
@@ -197,6 +350,132 @@ public class LettuceMasterReplicaRedisClientTest {
         verify(client).shutdown();
     }
 
+    @Test
+    public void testReadFromReplicaWithReadYourWritesWindow() {
+        LettuceMasterReplicaRedisClient sut = new LettuceMasterReplicaRedisClient();
+        sut.setUri(URI);
+        sut.setReadFrom("replicaPreferred");
+        sut.setReadYourWritesWindow(1000L);
+        sut.initialize();
+        try {
+            sut.set("foo", "FOO".getBytes(StandardCharsets.UTF_8));
+
+            assertThat("written value is read immediately.", new String(sut.get("foo"), StandardCharsets.UTF_8), is("FOO"));
+            assertThat(sut.exists("foo"), is(true));
+        } finally {
+            sut.dispose();
+        }
+    }
+
+    @Test
+    public void testReadFromIsApplied() {
+        List<StatefulRedisMasterReplicaConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceMasterReplicaRedisClient sut = createMockedClient(connections);
+        sut.setReadFrom("replicaPreferred");
+
+        sut.initialize();
+
+        assertThat("master connection is not created without window.", connections.size(), is(1));
+        verify(connections.get(0)).setReadFrom(ReadFrom.REPLICA_PREFERRED);
+    }
+
+    @Test
+    public void testRecentlyWrittenKeyIsReadFromMaster() {
+        List<StatefulRedisMasterReplicaConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceMasterReplicaRedisClient sut = createMockedClient(connections);
+        sut.setReadFrom("replica");
+        sut.setReadYourWritesWindow(60000L);
+        sut.initialize();
+
+        RedisCommands<byte[], byte[]> replicaCommands = connections.get(0).sync();
+        RedisCommands<byte[], byte[]> masterCommands = connections.get(1).sync();
+        verify(connections.get(1)).setReadFrom(ReadFrom.UPSTREAM);
+
+        sut.get("foo");
+        verify(replicaCommands).get(any());
+
+        sut.psetex("foo", 1000L, new byte[0]);
+        sut.get("foo");
+        sut.pttl("foo");
+        sut.exists("bar");
+
+        verify(masterCommands).get(any());
+        verify(masterCommands).pttl(any());
+        verify(replicaCommands).exists(any());
+        sut.dispose();
+        verify(connections.get(1)).close();
+    }
+
+    @Test
+    public void testTrackedKeyIsReadFromMaster() {
+        List<StatefulRedisMasterReplicaConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceMasterReplicaRedisClient sut = createMockedClient(connections);
+        sut.setReadFrom("replica");
+        sut.initialize();
+        sut.setAutoFlushCommands(false);
+
+        sut.trackInvalidation("tracked:", mock(LettuceKeyInvalidationListener.class));
+
+        assertThat("master connection is created for tracked keys.", connections.size(), is(2));
+        verify(connections.get(1)).setReadFrom(ReadFrom.UPSTREAM);
+        verify(connections.get(1)).setAutoFlushCommands(false);
+
+        RedisCommands<byte[], byte[]> replicaCommands = connections.get(0).sync();
+        RedisCommands<byte[], byte[]> masterCommands = connections.get(1).sync();
+        sut.get("tracked:foo");
+        sut.get("untracked:foo");
+
+        verify(masterCommands).get("tracked:foo".getBytes(StandardCharsets.UTF_8));
+        verify(replicaCommands).get("untracked:foo".getBytes(StandardCharsets.UTF_8));
+        sut.dispose();
+        verify(connections.get(1)).close();
+    }
+
+    @Test
+    public void testMasterConnectionIsNotCreatedForTrackingWithoutReadFrom() {
+        List<StatefulRedisMasterReplicaConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceMasterReplicaRedisClient sut = createMockedClient(connections);
+        sut.initialize();
+
+        sut.trackInvalidation("tracked:", mock(LettuceKeyInvalidationListener.class));
+
+        assertThat(connections.size(), is(1));
+    }
+
+    @Test
+    public void testThrowsExceptionIfReadYourWritesWindowIsNegative() {
+        LettuceMasterReplicaRedisClient sut = new LettuceMasterReplicaRedisClient();
+
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("readYourWritesWindow must be greater than or equal to 0. readYourWritesWindow=-1");
+
+        sut.setReadYourWritesWindow(-1L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LettuceMasterReplicaRedisClient createMockedClient(
+            List<StatefulRedisMasterReplicaConnection<byte[], byte[]>> connections) {
+        return new LettuceMasterReplicaRedisClient() {
+            @Override
+            protected RedisClient createClient() {
+                return mock(RedisClient.class);
+            }
+
+            @Override
+            protected StatefulRedisMasterReplicaConnection<byte[], byte[]> createConnection(RedisClient client) {
+                StatefulRedisMasterReplicaConnection<byte[], byte[]> connection = mock(StatefulRedisMasterReplicaConnection.class);
+                when(connection.sync()).thenReturn(mock(RedisCommands.class));
+                connections.add(connection);
+                return connection;
+            }
+
+            @Override
+            protected StatefulRedisConnection<byte[], byte[]> createTrackingConnection(RedisClient client) {
+                return mock(StatefulRedisConnection.class, RETURNS_DEEP_STUBS);
+            }
+        };
+    }
+
     @After
     public void after() {
         sut.dispose();
@@ -0,0 +1,198 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import nablarch.common.web.session.SessionEntry;
+import nablarch.fw.ExecutionContext;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link LettucePipeliningRedisClient} のテストクラス。
+ */
+public class LettucePipeliningRedisClientTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final LettuceRedisClient client = mock(LettuceRedisClient.class);
+    private final LettuceRedisAsyncClient asyncClient = mock(LettuceRedisAsyncClient.class);
+    private final LettucePipeliningRedisClient sut = new LettucePipeliningRedisClient();
+
+    private final byte[] value = "VALUE".getBytes(StandardCharsets.UTF_8);
+
+    {
+        sut.setClient(client);
+        when(client.async()).thenReturn(asyncClient);
+        CompletableFuture<Void> completed = CompletableFuture.completedFuture(null);
+        when(asyncClient.psetex(any(byte[].class), anyLong(), any())).thenReturn(completed);
+        when(asyncClient.pexpireat(any(byte[].class), anyLong())).thenReturn(completed);
+        when(asyncClient.del(any(byte[].class))).thenReturn(completed);
+        when(asyncClient.unlink(any(byte[].class))).thenReturn(completed);
+        when(asyncClient.setnxAndPexpireat(any(byte[].class), any(), anyLong())).thenReturn(completed);
+    }
+
+    @Test
+    public void testType() {
+        assertThat(sut.getType(), is("pipelining"));
+    }
+
+    @Test
+    public void testWritesAreExecutedImmediatelyWithoutPipeline() {
+        sut.psetex("foo", 1000L, value);
+
+        verify(client).psetex(key("foo"), 1000L, value);
+        verifyNoInteractions(asyncClient);
+    }
+
+    @Test
+    public void testWritesAreSentWhenPipelineIsSynced() {
+        sut.beginPipeline();
+        sut.psetex("foo", 1000L, value);
+        sut.pexpireat("bar", 2000L);
+        sut.del("buzz");
+
+        verifyNoInteractions(asyncClient);
+        verify(client, never()).psetex(any(byte[].class), anyLong(), any());
+
+        sut.syncPipeline();
+
+        InOrder inOrder = inOrder(asyncClient);
+        inOrder.verify(asyncClient).psetex(key("foo"), 1000L, value);
+        inOrder.verify(asyncClient).pexpireat(key("bar"), 2000L);
+        inOrder.verify(asyncClient).del(key("buzz"));
+    }
+
+    @Test
+    public void testWritesOfRequestAreSentInOneRoundTrip() {
+        sut.beginPipeline();
+        sut.psetex("foo", 1000L, value);
+        sut.setnxAndPexpireat("bar", new byte[0], 2000L);
+        sut.unlink("buzz");
+        sut.syncPipeline();
+
+        verify(client, times(1)).async();
+        verify(client, never()).setnxAndPexpireat(any(byte[].class), any(), anyLong());
+        InOrder inOrder = inOrder(asyncClient);
+        inOrder.verify(asyncClient).psetex(key("foo"), 1000L, value);
+        inOrder.verify(asyncClient).setnxAndPexpireat(key("bar"), new byte[0], 2000L);
+        inOrder.verify(asyncClient).unlink(key("buzz"));
+    }
+
+    @Test
+    public void testRefreshOfUnchangedSessionIsSentInOneRoundTrip() {
+        LettuceRedisStore store = new LettuceRedisStore();
+        store.setClient(sut);
+        store.setStateEncoder(new LettuceJavaSerializeStateEncoder());
+        store.setExpires(1000L);
+        byte[] stored = store.encode(Collections.singletonList(new SessionEntry("foo", "FOO", store)));
+        byte[] sessionKey = key(LettuceRedisStore.toSessionStoreKey("sid"));
+        when(client.get(sessionKey)).thenReturn(stored);
+        ExecutionContext context = new ExecutionContext();
+
+        sut.beginPipeline();
+        store.save("sid", store.load("sid", context), context);
+        verifyNoInteractions(asyncClient);
+        sut.syncPipeline();
+
+        verify(client, times(1)).async();
+        verify(client, never()).pexpireIfExists(any(byte[].class), anyLong());
+        verify(client, never()).psetex(any(byte[].class), anyLong(), any());
+        verify(asyncClient).setnxAndPexpireat(aryEq(sessionKey), aryEq(stored), anyLong());
+    }
+
+    @Test
+    public void testPipelineIsFinishedAfterSync() {
+        sut.beginPipeline();
+        sut.syncPipeline();
+
+        sut.del("foo");
+
+        verify(client).del(key("foo"));
+    }
+
+    @Test
+    public void testQueuedWritesAreSentBeforeRead() {
+        sut.beginPipeline();
+        sut.psetex("foo", 1000L, value);
+
+        sut.get("foo");
+
+        InOrder inOrder = inOrder(asyncClient, client);
+        inOrder.verify(asyncClient).psetex(key("foo"), 1000L, value);
+        inOrder.verify(client).get(key("foo"));
+
+        sut.syncPipeline();
+        verify(asyncClient).psetex(key("foo"), 1000L, value);
+    }
+
+    @Test
+    public void testFailureIsThrownOnSync() {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RedisException("test"));
+        when(asyncClient.del(key("foo"))).thenReturn(failed);
+
+        sut.beginPipeline();
+        sut.del("foo");
+        try {
+            sut.syncPipeline();
+            fail();
+        } catch (RedisException e) {
+            assertThat(e.getCause().getMessage(), is("test"));
+        }
+
+        sut.del("foo");
+        verify(client).del(key("foo"));
+    }
+
+    @Test
+    public void testThrowsExceptionIfPipelineTimesOut() {
+        when(asyncClient.del(key("foo"))).thenReturn(new CompletableFuture<>());
+        sut.setCommandTimeout(10L);
+        sut.beginPipeline();
+        sut.del("foo");
+
+        exception.expect(RedisCommandTimeoutException.class);
+        exception.expectMessage("Pipeline timed out after 10 millisecond(s)");
+
+        sut.syncPipeline();
+    }
+
+    @Test
+    public void testThrowsExceptionIfCommandTimeoutIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("commandTimeout must be greater than 0. commandTimeout=0");
+
+        sut.setCommandTimeout(0L);
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void after() {
+        sut.syncPipeline();
+    }
+}
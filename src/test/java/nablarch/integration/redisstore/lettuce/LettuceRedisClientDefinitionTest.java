@@ -0,0 +1,157 @@
+package nablarch.integration.redisstore.lettuce;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link LettuceRedisClientDefinition} のテストクラス。
+ */
+public class LettuceRedisClientDefinitionTest {
+    private LettuceRedisClientDefinition sut = new LettuceRedisClientDefinition();
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void testStringValuesAreConvertedToPropertyTypes() {
+        sut.setType("mock");
+        sut.setClassName(MockClient.class.getName());
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", "foo");
+        properties.put("intValue", "1");
+        properties.put("longValue", " 2 ");
+        properties.put("doubleValue", "0.5");
+        properties.put("booleanValue", "true");
+        properties.put("listValue", "a, b ,c");
+        sut.setProperties(properties);
+
+        MockClient actual = (MockClient) sut.createClient();
+
+        assertThat(actual.name, is("foo"));
+        assertThat(actual.intValue, is(1));
+        assertThat(actual.longValue, is(2L));
+        assertThat(actual.doubleValue, is(0.5));
+        assertThat(actual.booleanValue, is(true));
+        assertThat(actual.listValue, is(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void testEmptyStringIsConvertedToEmptyList() {
+        sut.setType("mock");
+        sut.setClassName(MockClient.class.getName());
+        sut.setProperties(Collections.singletonMap("listValue", ""));
+
+        MockClient actual = (MockClient) sut.createClient();
+
+        assertThat(actual.listValue, is(Collections.emptyList()));
+    }
+
+    @Test
+    public void testNonStringValuesAreSetAsIs() {
+        List<String> list = Arrays.asList("x", "y");
+        Object component = new Object();
+        sut.setType("mock");
+        sut.setClassName(MockClient.class.getName());
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("listValue", list);
+        properties.put("component", component);
+        sut.setProperties(properties);
+
+        MockClient actual = (MockClient) sut.createClient();
+
+        assertThat(actual.listValue, is(sameInstance(list)));
+        assertThat(actual.component, is(sameInstance(component)));
+    }
+
+    @Test
+    public void testUriListOfClusterClientCanBeSetByString() {
+        sut.setType("cluster");
+        sut.setClassName(LettuceClusterRedisClient.class.getName());
+        sut.setProperties(Collections.singletonMap("uriList", "redis://localhost:7000,redis://localhost:7001"));
+
+        LettuceRedisClient actual = sut.createClient();
+
+        assertThat(actual, is(instanceOf(LettuceClusterRedisClient.class)));
+        assertThat(((LettuceClusterRedisClient) actual).uriList,
+                is(Arrays.asList("redis://localhost:7000", "redis://localhost:7001")));
+    }
+
+    @Test
+    public void testThrowsExceptionIfPropertyTypeIsNotConvertibleFromString() {
+        sut.setType("mock");
+        sut.setClassName(MockClient.class.getName());
+        sut.setProperties(Collections.singletonMap("options", "foo"));
+
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("property type is not convertible from String. name=options, type="
+                + LettuceClientOptions.class.getName());
+
+        sut.createClient();
+    }
+
+    public static class MockClient implements LettuceRedisClient {
+        private String name;
+        private int intValue;
+        private long longValue;
+        private double doubleValue;
+        private boolean booleanValue;
+        private List<String> listValue;
+        private Object component;
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setIntValue(int intValue) {
+            this.intValue = intValue;
+        }
+
+        public void setLongValue(long longValue) {
+            this.longValue = longValue;
+        }
+
+        public void setDoubleValue(double doubleValue) {
+            this.doubleValue = doubleValue;
+        }
+
+        public void setBooleanValue(boolean booleanValue) {
+            this.booleanValue = booleanValue;
+        }
+
+        public void setListValue(List<String> listValue) {
+            this.listValue = listValue;
+        }
+
+        public void setComponent(Object component) {
+            this.component = component;
+        }
+
+        public void setOptions(LettuceClientOptions options) {
+        }
+
+        @Override
+        public String getType() {
+            return "mock";
+        }
+        @Override public void set(String key, byte[] value) {}
+        @Override public void pexpire(String key, long milliseconds) {}
+        @Override public void pexpireat(String key, long milliseconds) {}
+        @Override public long pttl(String key) { return 0; }
+        @Override public byte[] get(String key) { return new byte[0]; }
+        @Override public void del(String key) {}
+        @Override public boolean exists(String key) { return false; }
+        @Override public void dispose() {}
+    }
+}
@@ -7,7 +7,10 @@ import org.junit.rules.ExpectedException;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
@@ -52,7 +55,7 @@ public class LettuceRedisClientProviderTest {
         sut.setClientList(null);
 
         exception.expect(ContainerProcessException.class);
-        exception.expectMessage("clientList must not be null.");
+        exception.expectMessage("clientList or clientDefinitionList must not be null.");
 
         sut.createObject();
     }
@@ -71,6 +74,73 @@ public class LettuceRedisClientProviderTest {
         sut.createObject();
     }
 
+    @Test
+    public void testCreateObjectCreatesOnlyMatchingDefinition() {
+        LettuceRedisClientDefinition simple = new LettuceRedisClientDefinition();
+        simple.setType("simple");
+        simple.setClassName(LettuceSimpleRedisClient.class.getName());
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("uri", "redis://localhost:6379");
+        properties.put("connectionCount", "2");
+        simple.setProperties(properties);
+        LettuceRedisClientDefinition broken = new LettuceRedisClientDefinition();
+        broken.setType("cluster");
+        broken.setClassName("not.exists.Client");
+        sut.setClientDefinitionList(Arrays.asList(broken, simple));
+
+        sut.setClientType("simple");
+
+        LettuceRedisClient actual = sut.createObject();
+
+        assertThat(actual, is(instanceOf(LettuceSimpleRedisClient.class)));
+        assertThat(((LettuceSimpleRedisClient) actual).uri, is("redis://localhost:6379"));
+    }
+
+    @Test
+    public void testClientListIsSearchedBeforeDefinitions() {
+        MockClient fooClient = new MockClient("foo");
+        LettuceRedisClientDefinition definition = new LettuceRedisClientDefinition();
+        definition.setType("foo");
+        definition.setClassName("not.exists.Client");
+        sut.setClientList(Collections.singletonList(fooClient));
+        sut.setClientDefinitionList(Collections.singletonList(definition));
+
+        sut.setClientType("foo");
+
+        assertThat(sut.createObject(), is(sameInstance(fooClient)));
+    }
+
+    @Test
+    public void testThrowsExceptionIfNoClientOrDefinitionMatches() {
+        LettuceRedisClientDefinition definition = new LettuceRedisClientDefinition();
+        definition.setType("buzz");
+        sut.setClientList(Collections.singletonList(new MockClient("fizz")));
+        sut.setClientDefinitionList(Collections.singletonList(definition));
+
+        sut.setClientType("foo");
+
+        exception.expect(ContainerProcessException.class);
+        exception.expectMessage("No client matches. clientType=foo, clientList=[fizz, buzz]");
+
+        sut.createObject();
+    }
+
+    @Test
+    public void testThrowsExceptionIfDefinitionTypeDoesNotMatchCreatedClient() {
+        LettuceRedisClientDefinition definition = new LettuceRedisClientDefinition();
+        definition.setType("foo");
+        definition.setClassName(LettuceSimpleRedisClient.class.getName());
+        sut.setClientDefinitionList(Collections.singletonList(definition));
+
+        sut.setClientType("foo");
+
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("type does not match the type of the created client. "
+                + "type=foo, className=nablarch.integration.redisstore.lettuce.LettuceSimpleRedisClient, clientType=simple");
+
+        sut.createObject();
+    }
+
     private static class MockClient implements LettuceRedisClient {
         private final String type;
 
@@ -0,0 +1,87 @@
+package nablarch.integration.redisstore.lettuce;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link LettuceRedisClient} のデフォルト実装のテストクラス。
+ */
+public class LettuceRedisClientTest {
+
+    private final LettuceRedisClient sut = mock(LettuceRedisClient.class, CALLS_REAL_METHODS);
+
+    private final byte[] value = {1, 2, 3};
+
+    @Test
+    public void testPsetexCallsSetAndPexpire() {
+        doNothingOnBasicCommands();
+
+        sut.psetex("foo", 1000L, value);
+
+        InOrder inOrder = inOrder(sut);
+        inOrder.verify(sut).set("foo", value);
+        inOrder.verify(sut).pexpire("foo", 1000L);
+    }
+
+    @Test
+    public void testSetnxAndPexpireatSetsValueIfKeyDoesNotExist() {
+        doNothingOnBasicCommands();
+        when(sut.exists("foo")).thenReturn(false);
+
+        sut.setnxAndPexpireat("foo", value, 2000L);
+
+        InOrder inOrder = inOrder(sut);
+        inOrder.verify(sut).set("foo", value);
+        inOrder.verify(sut).pexpireat("foo", 2000L);
+    }
+
+    @Test
+    public void testSetnxAndPexpireatOnlyExpiresIfKeyExists() {
+        doNothingOnBasicCommands();
+        when(sut.exists("foo")).thenReturn(true);
+
+        sut.setnxAndPexpireat("foo", value, 2000L);
+
+        verify(sut, never()).set(anyString(), any(byte[].class));
+        verify(sut).pexpireat("foo", 2000L);
+    }
+
+    @Test
+    public void testTrackInvalidationDoesNothing() {
+        LettuceKeyInvalidationListener listener = mock(LettuceKeyInvalidationListener.class);
+
+        sut.trackInvalidation("prefix.", listener);
+
+        verifyNoInteractions(listener);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHgetallIsNotSupported() {
+        sut.hgetall("foo");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHupdateIsNotSupported() {
+        sut.hupdate("foo", Collections.emptyMap(), null, 1000L);
+    }
+
+    private void doNothingOnBasicCommands() {
+        doNothing().when(sut).set(anyString(), any(byte[].class));
+        doNothing().when(sut).pexpire(anyString(), anyLong());
+        doNothing().when(sut).pexpireat(anyString(), anyLong());
+    }
+}
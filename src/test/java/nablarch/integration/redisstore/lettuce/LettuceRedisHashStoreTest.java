@@ -0,0 +1,200 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.StringCodec;
+import nablarch.common.web.session.SessionEntry;
+import nablarch.common.web.session.encoder.JavaSerializeStateEncoder;
+import nablarch.fw.ExecutionContext;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.hamcrest.MockitoHamcrest.argThat;
+
+/**
+ * {@link LettuceRedisHashStore} のテストクラス。
+ */
+public class LettuceRedisHashStoreTest {
+
+    private static final ExecutionContext NO_USED = null;
+    private static final String SESSION_ID = "test-session";
+    private static final String SESSION_STORE_KEY = LettuceRedisStore.toSessionStoreKey(SESSION_ID);
+    private static final long EXPIRES = 5000L;
+
+    private static RedisClient LETTUCE_CLIENT;
+    private static StatefulRedisConnection<String, String> LETTUCE_CONNECTION;
+    private static RedisCommands<String, String> LETTUCE_COMMANDS;
+
+    private static String URI;
+
+    private LettuceRedisHashStore sut;
+    private LettuceSimpleRedisClient client;
+
+    @BeforeClass
+    public static void beforeClass() {
+        URI = String.format("redis://%s:%d", RedisTestUtil.getRedisHostAddress(), 7000);
+
+        LETTUCE_CLIENT = RedisClient.create(RedisURI.create(URI));
+        LETTUCE_CONNECTION = LETTUCE_CLIENT.connect(StringCodec.UTF8);
+        LETTUCE_COMMANDS = LETTUCE_CONNECTION.sync();
+    }
+
+    @Before
+    public void before() {
+        sut = new LettuceRedisHashStore();
+
+        sut.setStateEncoder(new JavaSerializeStateEncoder());
+        sut.setExpires(EXPIRES);
+
+        client = spy(new LettuceSimpleRedisClient());
+        client.setUri(URI);
+        client.initialize();
+        sut.setClient(client);
+    }
+
+    @Test
+    public void testScenarioSaveAndLoadAndDelete() {
+        sut.save(SESSION_ID, Arrays.asList(entry("one", "ONE"), entry("two", "TWO")), NO_USED);
+
+        assertThat("session is saved as hash.", LETTUCE_COMMANDS.hkeys(SESSION_STORE_KEY), containsInAnyOrder("one", "two"));
+        assertThat(LETTUCE_COMMANDS.pttl(SESSION_STORE_KEY), allOf(greaterThan(0L), lessThanOrEqualTo(EXPIRES)));
+
+        assertThat(sut.load(SESSION_ID, NO_USED), containsInAnyOrder(
+            allOf(
+                hasProperty("key", is("one")),
+                hasProperty("value", is("ONE"))
+            ),
+            allOf(
+                hasProperty("key", is("two")),
+                hasProperty("value", is("TWO"))
+            )
+        ));
+
+        sut.delete(SESSION_ID, NO_USED);
+
+        assertThat("session is deleted.", LETTUCE_COMMANDS.exists(SESSION_STORE_KEY), is(0L));
+    }
+
+    @Test
+    public void testLoadEmptyListIfSessionDoesNotExist() {
+        assertThat(sut.load(SESSION_ID, NO_USED), is(empty()));
+    }
+
+    @Test
+    public void testSaveReplacesSessionIfNotLoaded() {
+        sut.save(SESSION_ID, Arrays.asList(entry("one", "ONE"), entry("two", "TWO")), NO_USED);
+        sut.save(SESSION_ID, Collections.singletonList(entry("three", "THREE")), NO_USED);
+
+        assertThat(LETTUCE_COMMANDS.hkeys(SESSION_STORE_KEY), contains("three"));
+    }
+
+    @Test
+    public void testSaveWritesOnlyChangedFields() {
+        ExecutionContext context = new ExecutionContext();
+        sut.save(SESSION_ID, Arrays.asList(entry("one", "ONE"), entry("two", "TWO"), entry("three", "THREE")), NO_USED);
+
+        List<SessionEntry> loaded = new ArrayList<>(sut.load(SESSION_ID, context));
+        loaded.removeIf(entry -> entry.getKey().equals("two"));
+        loaded.removeIf(entry -> entry.getKey().equals("three"));
+        loaded.add(entry("three", "3"));
+        clearInvocations(client);
+        sut.save(SESSION_ID, loaded, context);
+
+        verify(client).hupdate(aryEq(encoded(SESSION_STORE_KEY)),
+            (Map<String, byte[]>) argThat(hasKey("three")), eq(Collections.singletonList("two")), eq(sut.getExpiresMilliSeconds()));
+        verify(client, never()).hupdate(any(byte[].class), (Map<String, byte[]>) argThat(hasKey("one")), any(), anyLong());
+        assertThat(sut.load(SESSION_ID, NO_USED), containsInAnyOrder(
+            allOf(
+                hasProperty("key", is("one")),
+                hasProperty("value", is("ONE"))
+            ),
+            allOf(
+                hasProperty("key", is("three")),
+                hasProperty("value", is("3"))
+            )
+        ));
+    }
+
+    @Test
+    public void testSaveOnlyRefreshesExpirationIfSessionIsUnchanged() {
+        ExecutionContext context = new ExecutionContext();
+        sut.save(SESSION_ID, Arrays.asList(entry("one", "ONE"), entry("two", "TWO")), NO_USED);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID, context);
+        clearInvocations(client);
+        sut.save(SESSION_ID, loaded, context);
+
+        verify(client, never()).hupdate(any(byte[].class), anyMap(), any(), anyLong());
+        verify(client).pexpire(aryEq(encoded(SESSION_STORE_KEY)), eq(sut.getExpiresMilliSeconds()));
+    }
+
+    @Test
+    public void testSaveWritesWholeSessionIfSessionIsRemovedAfterLoad() {
+        ExecutionContext context = new ExecutionContext();
+        sut.save(SESSION_ID, Arrays.asList(entry("one", "ONE"), entry("two", "TWO")), NO_USED);
+
+        List<SessionEntry> loaded = new ArrayList<>(sut.load(SESSION_ID, context));
+        loaded.add(entry("three", "THREE"));
+        LETTUCE_COMMANDS.del(SESSION_STORE_KEY);
+        sut.save(SESSION_ID, loaded, context);
+
+        verify(client).hupdate(aryEq(encoded(SESSION_STORE_KEY)), anyMap(), isNull(), eq(sut.getExpiresMilliSeconds()));
+        assertThat(LETTUCE_COMMANDS.hkeys(SESSION_STORE_KEY), containsInAnyOrder("one", "two", "three"));
+    }
+
+    @Test
+    public void testSessionCanBeSavedOverExpirationPlaceholder() {
+        ExecutionContext context = new ExecutionContext();
+        LETTUCE_COMMANDS.set(SESSION_STORE_KEY, "");
+
+        assertThat("placeholder is loaded as empty session.", sut.load(SESSION_ID, context), is(empty()));
+
+        sut.save(SESSION_ID, Collections.singletonList(entry("one", "ONE")), context);
+
+        assertThat(LETTUCE_COMMANDS.hkeys(SESSION_STORE_KEY), contains("one"));
+    }
+
+    private SessionEntry entry(String key, Object value) {
+        return new SessionEntry(key, value, sut);
+    }
+
+    @After
+    public void after() {
+        LETTUCE_COMMANDS.keys("*").forEach(key -> LETTUCE_COMMANDS.del(key));
+        client.dispose();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        LETTUCE_CONNECTION.close();
+        LETTUCE_CLIENT.shutdown();
+    }
+
+    private static byte[] encoded(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
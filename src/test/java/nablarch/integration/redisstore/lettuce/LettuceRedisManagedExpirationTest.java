@@ -4,6 +4,7 @@ import io.lettuce.core.RedisClient;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.codec.ByteArrayCodec;
+import nablarch.common.web.session.SessionEntry;
 import nablarch.fw.ExecutionContext;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -12,9 +13,19 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class LettuceRedisManagedExpirationTest {
 
@@ -41,12 +52,13 @@ public class LettuceRedisManagedExpirationTest {
     }
 
     private LettuceRedisManagedExpiration sut;
+    private LettuceSimpleRedisClient client;
 
     @Before
     public void before() {
         sut = new LettuceRedisManagedExpiration();
 
-        LettuceSimpleRedisClient client = new LettuceSimpleRedisClient();
+        client = spy(new LettuceSimpleRedisClient());
         client.setUri(URI);
         client.initialize();
         sut.setClient(client);
@@ -100,6 +112,18 @@ public class LettuceRedisManagedExpirationTest {
         assertThat("empty array is saved in session", LETTUCE_COMMANDS.get(key).length, is(0));
     }
 
+    @Test
+    public void testDoesNotOverwriteSessionWhenInvokeSaveExpirationTime() {
+        byte[] key = encodeKey(SESSION_STORE_KEY1);
+        byte[] value = "session".getBytes(StandardCharsets.UTF_8);
+        LETTUCE_COMMANDS.set(key, value);
+
+        sut.saveExpirationDateTime(SESSION_ID1, System.currentTimeMillis() + 12345L, NO_USED_CONTEXT);
+
+        assertThat("session is not overwritten", LETTUCE_COMMANDS.get(key), is(value));
+        assertThat("ttl is set", LETTUCE_COMMANDS.pttl(key), is(greaterThan(0L)));
+    }
+
     @Test
     public void testIsDeterminable() {
         assertThat("session does not exist.", LETTUCE_COMMANDS.get(encodeKey(SESSION_STORE_KEY1)), is(nullValue()));
@@ -110,6 +134,90 @@ public class LettuceRedisManagedExpirationTest {
         assertThat("true if session exists.", sut.isDeterminable(SESSION_ID1, NO_USED_CONTEXT), is(true));
     }
 
+    @Test
+    public void testExistenceIsQueriedOnlyOnceInRequest() {
+        ExecutionContext context = new ExecutionContext();
+        LETTUCE_COMMANDS.set(encodeKey(SESSION_STORE_KEY1), new byte[0]);
+
+        assertThat("isExpired() returns false.", sut.isExpired(SESSION_ID1, NO_USED_CURRENT_TIME, context), is(false));
+        assertThat("isDeterminable() returns true.", sut.isDeterminable(SESSION_ID1, context), is(true));
+        assertThat("isExpired() returns false again.", sut.isExpired(SESSION_ID1, NO_USED_CURRENT_TIME, context), is(false));
+
+        verify(client, times(1)).pttl(aryEq(encodeKey(SESSION_STORE_KEY1)));
+    }
+
+    @Test
+    public void testCachedExistenceIsUpdatedBySaveExpirationTime() {
+        ExecutionContext context = new ExecutionContext();
+
+        assertThat("isExpired() returns true before save.", sut.isExpired(SESSION_ID1, NO_USED_CURRENT_TIME, context), is(true));
+
+        sut.saveExpirationDateTime(SESSION_ID1, System.currentTimeMillis() + 12345L, context);
+
+        assertThat("isDeterminable() returns true after save.", sut.isDeterminable(SESSION_ID1, context), is(true));
+        verify(client, times(1)).pttl(aryEq(encodeKey(SESSION_STORE_KEY1)));
+    }
+
+    @Test
+    public void testCachedExistenceIsUpdatedByStore() {
+        ExecutionContext context = new ExecutionContext();
+        LETTUCE_COMMANDS.set(encodeKey(SESSION_STORE_KEY1), new byte[0]);
+
+        LettuceRedisStore store = new LettuceRedisStore();
+        store.setClient(client);
+
+        assertThat("isExpired() returns false before delete.", sut.isExpired(SESSION_ID1, NO_USED_CURRENT_TIME, context), is(false));
+
+        store.delete(SESSION_ID1, context);
+
+        assertThat("isDeterminable() returns false after delete.", sut.isDeterminable(SESSION_ID1, context), is(false));
+        verify(client, times(1)).pttl(aryEq(encodeKey(SESSION_STORE_KEY1)));
+    }
+
+    @Test
+    public void testSaveExpirationTimeSkipsRefreshIfRemainingTimeIsAboveThreshold() {
+        ExecutionContext context = new ExecutionContext();
+        byte[] key = encodeKey(SESSION_STORE_KEY1);
+        LETTUCE_COMMANDS.set(key, new byte[0]);
+        LETTUCE_COMMANDS.pexpire(key, 10000L);
+        sut.setRefreshThresholdRatio(0.5);
+
+        sut.saveExpirationDateTime(SESSION_ID1, System.currentTimeMillis() + 12345L, context);
+
+        verify(client, never()).setnxAndPexpireat(any(byte[].class), any(), anyLong());
+        assertThat("ttl is not changed", LETTUCE_COMMANDS.pttl(key), is(lessThanOrEqualTo(10000L)));
+    }
+
+    @Test
+    public void testSaveExpirationTimeRefreshesIfRemainingTimeIsBelowThreshold() {
+        ExecutionContext context = new ExecutionContext();
+        byte[] key = encodeKey(SESSION_STORE_KEY1);
+        LETTUCE_COMMANDS.set(key, new byte[0]);
+        LETTUCE_COMMANDS.pexpire(key, 1000L);
+        sut.setRefreshThresholdRatio(0.5);
+
+        sut.saveExpirationDateTime(SESSION_ID1, System.currentTimeMillis() + 12345L, context);
+
+        assertThat("ttl is refreshed", LETTUCE_COMMANDS.pttl(key), is(greaterThan(1000L)));
+    }
+
+    @Test
+    public void testSaveExpirationTimeRefreshesIfStoreWroteShorterExpirationInRequest() {
+        ExecutionContext context = new ExecutionContext();
+        byte[] key = encodeKey(SESSION_STORE_KEY1);
+        LettuceRedisStore store = new LettuceRedisStore();
+        store.setClient(client);
+        store.setStateEncoder(new LettuceJavaSerializeStateEncoder());
+        store.setExpires(1000L, TimeUnit.MILLISECONDS);
+        sut.setRefreshThresholdRatio(0.05);
+
+        store.save(SESSION_ID1, Collections.singletonList(new SessionEntry("foo", "FOO", store)), context);
+        sut.saveExpirationDateTime(SESSION_ID1, System.currentTimeMillis() + 12345L, context);
+
+        verify(client).setnxAndPexpireat(aryEq(key), any(), anyLong());
+        assertThat("ttl is extended to the expiration", LETTUCE_COMMANDS.pttl(key), is(greaterThan(1000L)));
+    }
+
     @After
     public void after() {
         LETTUCE_COMMANDS.keys("*".getBytes(StandardCharsets.UTF_8)).forEach(key -> LETTUCE_COMMANDS.del(key));
@@ -124,4 +232,4 @@ public class LettuceRedisManagedExpirationTest {
     private static byte[] encodeKey(String key) {
         return key.getBytes(StandardCharsets.UTF_8);
     }
-}
\ No newline at end of file
+}
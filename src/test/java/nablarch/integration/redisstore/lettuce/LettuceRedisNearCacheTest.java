@@ -0,0 +1,207 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisConnectionException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * {@link LettuceRedisNearCache} のテストクラス。
+ */
+public class LettuceRedisNearCacheTest {
+
+    private final LettuceRedisClient client = mock(LettuceRedisClient.class);
+    private final CountingLoader loader = new CountingLoader();
+
+    private LettuceRedisNearCache sut;
+
+    @Before
+    public void before() {
+        sut = new LettuceRedisNearCache();
+        sut.setClient(client);
+        sut.initialize();
+    }
+
+    @Test
+    public void testInitializeDoesNotStartTracking() {
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    public void testFirstGetStartsTrackingSessionKeys() {
+        sut.get("foo", loader);
+        sut.get("foo", loader);
+
+        verify(client, times(1)).trackInvalidation("nablarch.session.", sut);
+    }
+
+    @Test
+    public void testFirstGetStartsTrackingConfiguredPrefix() {
+        LettuceRedisClient client = mock(LettuceRedisClient.class);
+        LettuceRedisNearCache sut = new LettuceRedisNearCache();
+        sut.setClient(client);
+        sut.setKeyPrefix("foo:");
+        sut.initialize();
+
+        sut.get("foo:bar", loader);
+
+        verify(client).trackInvalidation("foo:", sut);
+    }
+
+    @Test
+    public void testTrackingIsRequestedAgainIfStartFails() {
+        doThrow(new RedisConnectionException("test")).doNothing().when(client).trackInvalidation("nablarch.session.", sut);
+
+        try {
+            sut.get("foo", loader);
+            fail("RedisConnectionException must be thrown.");
+        } catch (RedisConnectionException e) {
+            assertThat(e.getMessage(), is("test"));
+        }
+        sut.get("foo", loader);
+
+        verify(client, times(2)).trackInvalidation("nablarch.session.", sut);
+        assertThat(loader.count.get(), is(1));
+    }
+
+    @Test
+    public void testGetReturnsCachedValueWhileTracking() {
+        sut.onTrackingStarted();
+
+        byte[] first = sut.get("foo", loader);
+        byte[] second = sut.get("foo", loader);
+
+        assertThat("loader is invoked only once.", loader.count.get(), is(1));
+        assertThat("cached value is returned.", second, is(sameInstance(first)));
+        assertThat(sut.getHitCount(), is(1L));
+        assertThat(sut.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testGetDoesNotCacheBeforeTrackingStarts() {
+        sut.get("foo", loader);
+        sut.get("foo", loader);
+
+        assertThat("loader is invoked every time.", loader.count.get(), is(2));
+        assertThat(sut.getHitCount(), is(0L));
+        assertThat(sut.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void testGetDoesNotCacheAfterTrackingStops() {
+        sut.onTrackingStarted();
+        sut.get("foo", loader);
+
+        sut.onTrackingStopped();
+        sut.get("foo", loader);
+        sut.get("foo", loader);
+
+        assertThat("loader is invoked every time after tracking stops.", loader.count.get(), is(3));
+    }
+
+    @Test
+    public void testGetDoesNotCacheNull() {
+        sut.onTrackingStarted();
+
+        assertThat(sut.get("foo", key -> null), is(nullValue()));
+        sut.get("foo", loader);
+
+        assertThat("loader is invoked because null is not cached.", loader.count.get(), is(1));
+    }
+
+    @Test
+    public void testInvalidatedKeyIsLoadedAgain() {
+        sut.onTrackingStarted();
+        sut.get("foo", loader);
+        sut.get("bar", loader);
+
+        sut.onInvalidated("foo");
+        sut.get("foo", loader);
+        sut.get("bar", loader);
+
+        assertThat("only invalidated key is loaded again.", loader.count.get(), is(3));
+        assertThat(sut.getInvalidationCount(), is(1L));
+    }
+
+    @Test
+    public void testAllKeysAreLoadedAgainAfterInvalidatedAll() {
+        sut.onTrackingStarted();
+        sut.get("foo", loader);
+        sut.get("bar", loader);
+
+        sut.onInvalidatedAll();
+        sut.get("foo", loader);
+        sut.get("bar", loader);
+
+        assertThat("all keys are loaded again.", loader.count.get(), is(4));
+        assertThat(sut.getInvalidationCount(), is(1L));
+    }
+
+    @Test
+    public void testLocalInvalidationDoesNotCountAsNotification() {
+        sut.onTrackingStarted();
+        sut.get("foo", loader);
+
+        sut.invalidate("foo");
+        sut.get("foo", loader);
+
+        assertThat(loader.count.get(), is(2));
+        assertThat(sut.getInvalidationCount(), is(0L));
+    }
+
+    @Test
+    public void testValueLoadedDuringInvalidationIsNotCached() {
+        sut.onTrackingStarted();
+
+        sut.get("foo", key -> {
+            sut.onInvalidated(key);
+            return loader.apply(key);
+        });
+        sut.get("foo", loader);
+
+        assertThat("stale value is not cached.", loader.count.get(), is(2));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        LettuceRedisNearCache sut = new LettuceRedisNearCache();
+        sut.setClient(client);
+        sut.setMaxEntries(2);
+        sut.initialize();
+        sut.onTrackingStarted();
+
+        sut.get("foo", loader);
+        sut.get("bar", loader);
+        sut.get("foo", loader);
+        sut.get("buzz", loader);
+
+        sut.get("foo", loader);
+        assertThat("recently used entry is kept.", loader.count.get(), is(3));
+        sut.get("bar", loader);
+        assertThat("least recently used entry is evicted.", loader.count.get(), is(4));
+    }
+
+    private static class CountingLoader implements Function<String, byte[]> {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public byte[] apply(String key) {
+            count.incrementAndGet();
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
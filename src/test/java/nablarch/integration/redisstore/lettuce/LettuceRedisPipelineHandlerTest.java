@@ -0,0 +1,64 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisException;
+import nablarch.fw.ExecutionContext;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link LettuceRedisPipelineHandler} のテストクラス。
+ */
+public class LettuceRedisPipelineHandlerTest {
+
+    private final LettucePipeliningRedisClient client = mock(LettucePipeliningRedisClient.class);
+    private final LettuceRedisPipelineHandler sut = new LettuceRedisPipelineHandler();
+
+    {
+        sut.setClient(client);
+    }
+
+    @Test
+    public void testPipelineWrapsSubsequentHandlers() {
+        ExecutionContext context = mock(ExecutionContext.class);
+        when(context.handleNext("input")).thenAnswer(invocation -> {
+            client.del("foo");
+            return "result";
+        });
+
+        Object result = sut.handle("input", context);
+
+        assertThat(result, is("result"));
+        InOrder inOrder = inOrder(client);
+        inOrder.verify(client).beginPipeline();
+        inOrder.verify(client).del("foo");
+        inOrder.verify(client).syncPipeline();
+    }
+
+    @Test
+    public void testPipelineIsSyncedWhenSubsequentHandlerFails() {
+        RuntimeException failure = new IllegalStateException("test");
+        RedisException syncFailure = new RedisException("sync");
+        doThrow(syncFailure).when(client).syncPipeline();
+
+        ExecutionContext context = mock(ExecutionContext.class);
+        when(context.handleNext("input")).thenThrow(failure);
+
+        try {
+            sut.handle("input", context);
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e, is(sameInstance(failure)));
+            assertThat(e.getSuppressed(), arrayContaining((Throwable) syncFailure));
+        }
+    }
+}
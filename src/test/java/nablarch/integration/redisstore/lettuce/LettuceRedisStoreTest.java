@@ -13,7 +13,9 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -22,6 +24,17 @@ import java.util.List;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * {@link LettuceRedisStore} のテストクラス。
@@ -63,7 +76,11 @@ public class LettuceRedisStoreTest {
         LETTUCE_COMMANDS = LETTUCE_CONNECTION.sync();
     }
 
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
     private LettuceRedisStore sut;
+    private LettuceSimpleRedisClient client;
 
     @Before
     public void before() {
@@ -72,7 +89,7 @@ public class LettuceRedisStoreTest {
         sut.setStateEncoder(STATE_ENCODER);
         sut.setExpires(EXPIRES);
 
-        LettuceSimpleRedisClient client = new LettuceSimpleRedisClient();
+        client = spy(new LettuceSimpleRedisClient());
         client.setUri(URI);
         client.initialize();
         sut.setClient(client);
@@ -181,6 +198,326 @@ public class LettuceRedisStoreTest {
         ));
     }
 
+    @Test
+    public void testSaveRewritesUnchangedSessionIfExpiredAfterLoad() {
+        ExecutionContext context = new ExecutionContext();
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+        byte[] saved = getFromRedis(SESSION_STORE_KEY1);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, context);
+        LETTUCE_COMMANDS.del(encoded(SESSION_STORE_KEY1));
+        clearInvocations(client);
+        sut.save(SESSION_ID1, loaded, context);
+
+        verify(client).setnxAndPexpireat(aryEq(encoded(SESSION_STORE_KEY1)), aryEq(saved), anyLong());
+        verify(client, never()).pexpireIfExists(any(byte[].class), anyLong());
+        assertThat("session is saved again.", getFromRedis(SESSION_STORE_KEY1), is(saved));
+    }
+
+    @Test
+    public void testSaveOnlyRefreshesExpirationIfSessionIsUnchanged() {
+        ExecutionContext context = new ExecutionContext();
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+        byte[] saved = getFromRedis(SESSION_STORE_KEY1);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, context);
+        clearInvocations(client);
+        sut.save(SESSION_ID1, loaded, context);
+
+        verify(client, never()).psetex(aryEq(encoded(SESSION_STORE_KEY1)), anyLong(), any());
+        verify(client).setnxAndPexpireat(aryEq(encoded(SESSION_STORE_KEY1)), any(), anyLong());
+        assertThat("session in redis is not changed.", getFromRedis(SESSION_STORE_KEY1), is(saved));
+        assertThat("expiration is refreshed.", LETTUCE_COMMANDS.pttl(SESSION_STORE_KEY1.getBytes(StandardCharsets.UTF_8)),
+            is(greaterThan(0L)));
+    }
+
+    @Test
+    public void testSaveWritesSessionIfSessionIsChanged() {
+        ExecutionContext context = new ExecutionContext();
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+
+        sut.load(SESSION_ID1, context);
+        clearInvocations(client);
+        sut.save(SESSION_ID1, sessionEntryList2, context);
+
+        verify(client).psetex(aryEq(encoded(SESSION_STORE_KEY1)), eq(sut.getExpiresMilliSeconds()), any());
+        verify(client, never()).setnxAndPexpireat(any(byte[].class), any(), anyLong());
+        assertThat("changed session is loaded.", sut.load(SESSION_ID1, NO_USED), contains(
+            allOf(
+                hasProperty("key", is("four")),
+                hasProperty("value", is("FOUR"))
+            ),
+            allOf(
+                hasProperty("key", is("five")),
+                hasProperty("value", is("FIVE"))
+            )
+        ));
+    }
+
+    @Test
+    public void testSaveSkipsRefreshIfRemainingTimeIsAboveThreshold() {
+        ExecutionContext context = new ExecutionContext();
+        sut.setRefreshThresholdRatio(0.5);
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, context);
+        clearInvocations(client);
+        sut.save(SESSION_ID1, loaded, context);
+
+        verify(client).pttl(aryEq(encoded(SESSION_STORE_KEY1)));
+        verify(client, never()).setnxAndPexpireat(any(byte[].class), any(), anyLong());
+        verify(client, never()).psetex(any(byte[].class), anyLong(), any());
+    }
+
+    @Test
+    public void testSaveRefreshesIfRemainingTimeIsBelowThreshold() {
+        ExecutionContext context = new ExecutionContext();
+        sut.setRefreshThresholdRatio(0.5);
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+        LETTUCE_COMMANDS.pexpire(SESSION_STORE_KEY1.getBytes(StandardCharsets.UTF_8), 1000L);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, context);
+        clearInvocations(client);
+        sut.save(SESSION_ID1, loaded, context);
+
+        verify(client).setnxAndPexpireat(aryEq(encoded(SESSION_STORE_KEY1)), any(), anyLong());
+        assertThat("expiration is refreshed.", LETTUCE_COMMANDS.pttl(SESSION_STORE_KEY1.getBytes(StandardCharsets.UTF_8)),
+            is(greaterThan(1000L)));
+    }
+
+    @Test
+    public void testThrowsExceptionIfRefreshThresholdRatioIsOutOfRange() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("refreshThresholdRatio must be greater than 0 and less than or equal to 1. refreshThresholdRatio=1.5");
+
+        sut.setRefreshThresholdRatio(1.5);
+    }
+
+    @Test
+    public void testLoadUsesNearCache() {
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+        byte[] saved = getFromRedis(SESSION_STORE_KEY1);
+        LettuceRedisNearCache nearCache = mock(LettuceRedisNearCache.class);
+        when(nearCache.get(eq(SESSION_STORE_KEY1), any())).thenReturn(saved);
+        sut.setNearCache(nearCache);
+        clearInvocations(client);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, NO_USED);
+
+        verify(client, never()).get(any(byte[].class));
+        assertThat("session is loaded from near cache.", loaded, hasSize(3));
+    }
+
+    @Test
+    public void testSaveAndDeleteInvalidateNearCache() {
+        LettuceRedisNearCache nearCache = mock(LettuceRedisNearCache.class);
+        sut.setNearCache(nearCache);
+
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+        sut.delete(SESSION_ID1, NO_USED);
+
+        verify(nearCache, times(2)).invalidate(SESSION_STORE_KEY1);
+    }
+
+    @Test
+    public void testSaveAndLoadWithPayloadTransformer() {
+        LettuceDeflatePayloadTransformer transformer = new LettuceDeflatePayloadTransformer();
+        transformer.setThreshold(0);
+        sut.setPayloadTransformer(transformer);
+        List<SessionEntry> entries = Collections.singletonList(entry("large", String.join("", Collections.nCopies(1000, "abc"))));
+
+        sut.save(SESSION_ID1, entries, NO_USED);
+
+        assertThat("session in redis is compressed.", getFromRedis(SESSION_STORE_KEY1).length,
+            is(lessThan(STATE_ENCODER.encode(entries.get(0).getValue()).length)));
+        assertThat("compressed session is loaded.", sut.load(SESSION_ID1, NO_USED), contains(
+            allOf(
+                hasProperty("key", is("large")),
+                hasProperty("value", is(entries.get(0).getValue()))
+            )
+        ));
+    }
+
+    @Test
+    public void testLoadUncompressedSessionWithPayloadTransformer() {
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+        LettuceDeflatePayloadTransformer transformer = new LettuceDeflatePayloadTransformer();
+        transformer.setThreshold(0);
+        sut.setPayloadTransformer(transformer);
+
+        assertThat("session saved before compression is enabled is loaded.", sut.load(SESSION_ID1, NO_USED), hasSize(3));
+    }
+
+    @Test
+    public void testSaveOnlyRefreshesExpirationIfSessionIsUnchangedWithPayloadTransformer() {
+        ExecutionContext context = new ExecutionContext();
+        LettuceDeflatePayloadTransformer transformer = new LettuceDeflatePayloadTransformer();
+        transformer.setThreshold(0);
+        sut.setPayloadTransformer(transformer);
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, context);
+        clearInvocations(client);
+        sut.save(SESSION_ID1, loaded, context);
+
+        verify(client, never()).psetex(any(byte[].class), anyLong(), any());
+        verify(client).setnxAndPexpireat(aryEq(encoded(SESSION_STORE_KEY1)), any(), anyLong());
+    }
+
+    @Test
+    public void testLoadWithStreamStateDecoder() {
+        List<SessionEntry> entries = Arrays.asList(entry("one", "ONE"), entry("null", null), entry("list", Arrays.asList(1, 2, 3)));
+        sut.save(SESSION_ID1, entries, NO_USED);
+        sut.setStateEncoder(new LettuceJavaSerializeStateEncoder());
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, NO_USED);
+
+        assertThat("session saved by JavaSerializeStateEncoder is loaded.", loaded, contains(
+            allOf(hasProperty("key", is("one")), hasProperty("value", is("ONE"))),
+            allOf(hasProperty("key", is("null")), hasProperty("value", is(nullValue()))),
+            allOf(hasProperty("key", is("list")), hasProperty("value", is(Arrays.asList(1, 2, 3))))
+        ));
+    }
+
+    @Test
+    public void testSaveLazilyDecodedSession() {
+        sut.setLazyDecode(true);
+        sut.save(SESSION_ID1, Arrays.asList(entry("one", "ONE"), entry("list", Arrays.asList(1, 2, 3))), NO_USED);
+        byte[] saved = getFromRedis(SESSION_STORE_KEY1);
+
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, NO_USED);
+        assertThat(loaded.get(0).getValue(), is("ONE"));
+        sut.save(SESSION_ID1, loaded, NO_USED);
+
+        assertThat("untouched entries are written as loaded.", getFromRedis(SESSION_STORE_KEY1), is(saved));
+    }
+
+    @Test
+    public void testSaveAndLoadChunkedSession() {
+        sut.setChunkThreshold(1000);
+        sut.setChunkSize(512);
+        String large = String.join("", Collections.nCopies(2000, "x"));
+
+        sut.save(SESSION_ID1, Arrays.asList(entry("large", large), entry("one", "ONE")), NO_USED);
+
+        byte[] manifest = getFromRedis(SESSION_STORE_KEY1);
+        assertThat("manifest is saved in the session key.", ChunkManifest.isManifest(manifest), is(true));
+        List<byte[]> chunkKeys = chunkKeys(SESSION_STORE_KEY1);
+        assertThat(chunkKeys.size(), is(ChunkManifest.parse(manifest).getChunkCount()));
+        for (byte[] chunkKey : chunkKeys) {
+            assertThat(LETTUCE_COMMANDS.pttl(chunkKey), is(both(greaterThan(0L)).and(lessThanOrEqualTo(EXPIRES))));
+        }
+
+        assertThat(sut.load(SESSION_ID1, NO_USED), contains(
+            allOf(hasProperty("key", is("large")), hasProperty("value", is(large))),
+            allOf(hasProperty("key", is("one")), hasProperty("value", is("ONE")))
+        ));
+    }
+
+    @Test
+    public void testSmallSessionIsNotChunked() {
+        sut.setChunkThreshold(1000);
+
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+
+        assertThat(ChunkManifest.isManifest(getFromRedis(SESSION_STORE_KEY1)), is(false));
+        assertThat(chunkKeys(SESSION_STORE_KEY1), is(empty()));
+        assertThat(sut.load(SESSION_ID1, NO_USED), hasSize(3));
+    }
+
+    @Test
+    public void testReplaceChunkedSessionUnlinksOldChunks() {
+        sut.setChunkThreshold(1000);
+        sut.setChunkSize(512);
+        sut.save(SESSION_ID1, Collections.singletonList(entry("large", String.join("", Collections.nCopies(2000, "x")))), NO_USED);
+        ExecutionContext context = new ExecutionContext();
+
+        sut.load(SESSION_ID1, context);
+        sut.save(SESSION_ID1, Collections.singletonList(entry("large", String.join("", Collections.nCopies(3000, "y")))), context);
+
+        assertThat("old chunks are unlinked.", chunkKeys(SESSION_STORE_KEY1).size(),
+                is(ChunkManifest.parse(getFromRedis(SESSION_STORE_KEY1)).getChunkCount()));
+
+        sut.load(SESSION_ID1, context);
+        sut.save(SESSION_ID1, sessionEntryList1, context);
+
+        assertThat("chunks are unlinked when the session gets smaller.", chunkKeys(SESSION_STORE_KEY1), is(empty()));
+        assertThat(sut.load(SESSION_ID1, NO_USED), hasSize(3));
+    }
+
+    @Test
+    public void testDeleteChunkedSession() {
+        sut.setChunkThreshold(1000);
+        sut.setChunkSize(512);
+        sut.save(SESSION_ID1, Collections.singletonList(entry("large", String.join("", Collections.nCopies(2000, "x")))), NO_USED);
+        ExecutionContext context = new ExecutionContext();
+
+        sut.load(SESSION_ID1, context);
+        sut.delete(SESSION_ID1, context);
+
+        assertThat(getFromRedis(SESSION_STORE_KEY1), is(nullValue()));
+        assertThat(chunkKeys(SESSION_STORE_KEY1), is(empty()));
+        verify(client).unlink(aryEq(encoded(SESSION_STORE_KEY1)));
+    }
+
+    @Test
+    public void testRefreshUnchangedChunkedSession() {
+        sut.setChunkThreshold(1000);
+        sut.setChunkSize(512);
+        sut.save(SESSION_ID1, Collections.singletonList(entry("large", String.join("", Collections.nCopies(2000, "x")))), NO_USED);
+        for (byte[] chunkKey : chunkKeys(SESSION_STORE_KEY1)) {
+            LETTUCE_COMMANDS.pexpire(chunkKey, 1000L);
+        }
+        ExecutionContext context = new ExecutionContext();
+
+        sut.save(SESSION_ID1, sut.load(SESSION_ID1, context), context);
+
+        for (byte[] chunkKey : chunkKeys(SESSION_STORE_KEY1)) {
+            assertThat(LETTUCE_COMMANDS.pttl(chunkKey), is(greaterThan(1000L)));
+        }
+    }
+
+    @Test
+    public void testThrowsExceptionIfChunkThresholdIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("chunkThreshold must be greater than 0. chunkThreshold=0");
+        sut.setChunkThreshold(0);
+    }
+
+    @Test
+    public void testThrowsExceptionIfChunkSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("chunkSize must be greater than 0. chunkSize=-1");
+        sut.setChunkSize(-1);
+    }
+
+    @Test
+    public void testSaveWithReusedEncodeBuffer() {
+        sut.setReuseEncodeBuffer(true);
+        ExecutionContext context = new ExecutionContext();
+
+        sut.save(SESSION_ID1, sessionEntryList1, NO_USED);
+        List<SessionEntry> loaded = sut.load(SESSION_ID1, context);
+        sut.save(SESSION_ID1, loaded, context);
+
+        verify(client, times(1)).psetex(any(byte[].class), anyLong(), any(byte[].class));
+        verify(client).setnxAndPexpireat(aryEq(encoded(SESSION_STORE_KEY1)), any(), anyLong());
+
+        sut.save(SESSION_ID1, sessionEntryList2, context);
+        assertThat(sut.load(SESSION_ID1, NO_USED), hasSize(2));
+    }
+
+    @Test
+    public void testThrowsExceptionIfMaxReusedEncodeBufferSizeIsNotPositive() {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("maxReusedEncodeBufferSize must be greater than 0. maxReusedEncodeBufferSize=0");
+        sut.setMaxReusedEncodeBufferSize(0);
+    }
+
+    private static List<byte[]> chunkKeys(String key) {
+        return LETTUCE_COMMANDS.keys(encoded("{" + key + "}.chunk.*"));
+    }
+
     private SessionEntry entry(String key, Object value) {
         return new SessionEntry(key, value, sut);
     }
@@ -199,4 +536,8 @@ public class LettuceRedisStoreTest {
         LETTUCE_CONNECTION.close();
         LETTUCE_CLIENT.shutdown();
     }
-}
\ No newline at end of file
+
+    private static byte[] encoded(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
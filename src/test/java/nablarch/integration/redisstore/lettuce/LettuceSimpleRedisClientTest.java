@@ -1,26 +1,48 @@
 package nablarch.integration.redisstore.lettuce;
 
+import io.lettuce.core.ClientOptions;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
 import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.Command;
+import io.lettuce.core.protocol.CommandType;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * {@link LettuceSimpleRedisClient} のテストクラス。
@@ -43,6 +65,9 @@ public class LettuceSimpleRedisClientTest {
         LETTUCE_COMMANDS = LETTUCE_CONNECTION.sync();
     }
 
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
     private LettuceSimpleRedisClient sut;
 
     @Before
@@ -61,6 +86,34 @@ public class LettuceSimpleRedisClientTest {
         assertThat("foo was set after set", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
     }
 
+    @Test
+    public void testPsetex() {
+        assertThat("null value before psetex", LETTUCE_COMMANDS.get("foo"), is(nullValue()));
+
+        long expiration = 12345L;
+        long start = System.currentTimeMillis();
+        sut.psetex("foo", expiration, "testてすと".getBytes(StandardCharsets.UTF_8));
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+        long time = System.currentTimeMillis() - start;
+
+        assertThat("foo was set after psetex", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
+        assertThat("pttl is greater than 0 after psetex", ttl,
+            allOf(
+                greaterThanOrEqualTo(expiration - time),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
+    @Test
+    public void testPexpireIfExists() {
+        LETTUCE_COMMANDS.set("foo", "FOO");
+
+        assertThat(sut.pexpireIfExists("foo", 12345L), is(true));
+        assertThat(LETTUCE_COMMANDS.pttl("foo"), is(greaterThan(0L)));
+        assertThat("key does not exist.", sut.pexpireIfExists("bar", 12345L), is(false));
+    }
+
     @Test
     public void testPexpire() {
         LETTUCE_COMMANDS.set("foo", "FOO");
@@ -99,6 +152,111 @@ public class LettuceSimpleRedisClientTest {
         );
     }
 
+    @Test
+    public void testSetnxAndPexpireatSavesValueIfKeyDoesNotExist() {
+        assertThat("null value before setnxAndPexpireat", LETTUCE_COMMANDS.get("foo"), is(nullValue()));
+
+        long expiration = 12345L;
+        sut.setnxAndPexpireat("foo", "testてすと".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis() + expiration);
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+
+        assertThat("foo was set after setnxAndPexpireat", LETTUCE_COMMANDS.get("foo"), is("testてすと"));
+        assertThat("pttl is greater than 0 after setnxAndPexpireat", ttl,
+            allOf(
+                greaterThan(0L),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
+    @Test
+    public void testSetnxAndPexpireatDoesNotOverwriteValueIfKeyExists() {
+        LETTUCE_COMMANDS.set("foo", "FOO");
+
+        long expiration = 12345L;
+        sut.setnxAndPexpireat("foo", "BAR".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis() + expiration);
+        long ttl = LETTUCE_COMMANDS.pttl("foo");
+
+        assertThat("value is not overwritten", LETTUCE_COMMANDS.get("foo"), is("FOO"));
+        assertThat("pttl is greater than 0 after setnxAndPexpireat", ttl,
+            allOf(
+                greaterThan(0L),
+                lessThanOrEqualTo(expiration)
+            )
+        );
+    }
+
+    @Test
+    public void testHgetall() {
+        assertThat("empty map if key does not exist.", sut.hgetall("foo").isEmpty(), is(true));
+
+        LETTUCE_COMMANDS.hset("foo", "one", "ONE");
+        LETTUCE_COMMANDS.hset("foo", "two", "TWO");
+
+        Map<String, byte[]> fields = sut.hgetall("foo");
+        assertThat(fields.keySet(), containsInAnyOrder("one", "two"));
+        assertThat(new String(fields.get("one"), StandardCharsets.UTF_8), is("ONE"));
+        assertThat(new String(fields.get("two"), StandardCharsets.UTF_8), is("TWO"));
+    }
+
+    @Test
+    public void testHupdateReplacesKey() {
+        LETTUCE_COMMANDS.set("foo", "");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "ONE".getBytes(StandardCharsets.UTF_8)), null, 12345L);
+
+        assertThat(updated, is(true));
+        assertThat(LETTUCE_COMMANDS.hgetall("foo"), is(Collections.singletonMap("one", "ONE")));
+        assertThat(LETTUCE_COMMANDS.pttl("foo"), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+    }
+
+    @Test
+    public void testHupdateUpdatesOnlySpecifiedFields() {
+        LETTUCE_COMMANDS.hset("foo", "one", "ONE");
+        LETTUCE_COMMANDS.hset("foo", "two", "TWO");
+        LETTUCE_COMMANDS.hset("foo", "three", "THREE");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "1".getBytes(StandardCharsets.UTF_8)),
+            Collections.singletonList("two"), 12345L);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("one", "1");
+        expected.put("three", "THREE");
+        assertThat(updated, is(true));
+        assertThat(LETTUCE_COMMANDS.hgetall("foo"), is(expected));
+        assertThat(LETTUCE_COMMANDS.pttl("foo"), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+    }
+
+    @Test
+    public void testHupdateDoesNothingIfHashDoesNotExist() {
+        LETTUCE_COMMANDS.set("foo", "");
+
+        boolean updated = sut.hupdate("foo", Collections.singletonMap("one", "ONE".getBytes(StandardCharsets.UTF_8)),
+            Collections.emptyList(), 12345L);
+
+        assertThat(updated, is(false));
+        assertThat(LETTUCE_COMMANDS.get("foo"), is(""));
+        assertThat(sut.hupdate("bar", Collections.emptyMap(), Collections.emptyList(), 12345L), is(false));
+        assertThat(LETTUCE_COMMANDS.exists("bar"), is(0L));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        LettuceRedisAsyncClient async = sut.async();
+
+        async.psetex("foo", 12345L, "FOO".getBytes(StandardCharsets.UTF_8)).toCompletableFuture().get();
+
+        assertThat(LETTUCE_COMMANDS.get("foo"), is("FOO"));
+        assertThat(new String(async.get("foo").toCompletableFuture().get(), StandardCharsets.UTF_8), is("FOO"));
+        assertThat(async.exists("foo").toCompletableFuture().get(), is(true));
+        assertThat(async.pttl("foo").toCompletableFuture().get(), allOf(greaterThan(0L), lessThanOrEqualTo(12345L)));
+
+        async.del("foo").toCompletableFuture().get();
+
+        assertThat(async.exists("foo").toCompletableFuture().get(), is(false));
+        assertThat(async.get("foo").toCompletableFuture().get(), is(nullValue()));
+    }
+
     @Test
     public void testPttl() {
         assertThat("pttl -2 if key does not exist.", sut.pttl("foo"), is(-2L));
@@ -156,6 +314,19 @@ public class LettuceSimpleRedisClientTest {
         assertThat(actual, is("simple"));
     }
 
+    @Test
+    public void testTrackInvalidation() throws Exception {
+        RecordingKeyInvalidationListener listener = new RecordingKeyInvalidationListener();
+        sut.trackInvalidation("tracked:", listener);
+
+        assertThat("tracking is started.", listener.awaitTrackingStarted(), is(true));
+
+        LETTUCE_COMMANDS.set("untracked:foo", "FOO");
+        LETTUCE_COMMANDS.set("tracked:foo", "FOO");
+
+        assertThat("only tracked key is notified.", listener.pollInvalidatedKey(), is("tracked:foo"));
+    }
+
     @Test
     public void testDispose() {
         RedisClient client = mock(RedisClient.class);
@@ -181,6 +352,191 @@ public class LettuceSimpleRedisClientTest {
         verify(client).shutdown();
     }
 
+    @Test
+    public void testCommandsAreDistributedToConnectionsByKey() {
+        List<RedisCommands<byte[], byte[]>> commandsList = new ArrayList<>();
+        LettuceSimpleRedisClient sut = createMockedClient(3, commandsList);
+
+        for (int i = 0; i < 30; i++) {
+            sut.get("key" + i);
+            sut.get("key" + i);
+        }
+
+        long usedConnections = commandsList.stream()
+            .filter(commands -> !mockingDetails(commands).getInvocations().isEmpty())
+            .count();
+        assertThat("commands are distributed.", usedConnections, is(greaterThan(1L)));
+        for (RedisCommands<byte[], byte[]> commands : commandsList) {
+            assertThat("same key is always executed on the same connection.",
+                mockingDetails(commands).getInvocations().size() % 2, is(0));
+        }
+    }
+
+    @Test
+    public void testInFlightCommandCounts() {
+        List<RedisCommands<byte[], byte[]>> commandsList = new ArrayList<>();
+        LettuceSimpleRedisClient sut = createMockedClient(2, commandsList);
+        List<int[]> countsDuringCommand = new ArrayList<>();
+        for (RedisCommands<byte[], byte[]> commands : commandsList) {
+            when(commands.get(any())).thenAnswer(invocation -> {
+                countsDuringCommand.add(sut.getInFlightCommandCounts());
+                return null;
+            });
+        }
+
+        sut.get("foo");
+
+        assertThat("command is counted while executing.", Arrays.stream(countsDuringCommand.get(0)).sum(), is(1));
+        assertThat("count is decremented after command.", sut.getInFlightCommandCounts(), is(new int[] {0, 0}));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsyncCommandsAreCountedAsInFlightUntilCompleted() {
+        List<StatefulRedisConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceSimpleRedisClient sut = createMockedClient(1, new ArrayList<>(), connections);
+        RedisAsyncCommands<byte[], byte[]> asyncCommands = mock(RedisAsyncCommands.class);
+        when(connections.get(0).async()).thenReturn(asyncCommands);
+        AsyncCommand<byte[], byte[], String> future =
+                new AsyncCommand<>(new Command<>(CommandType.SET, new StatusOutput<>(ByteArrayCodec.INSTANCE)));
+        when(asyncCommands.set(any(), any())).thenReturn(future);
+
+        sut.async().set("foo", "bar".getBytes(StandardCharsets.UTF_8));
+        assertThat("command is counted until completed.", sut.getInFlightCommandCounts(), is(new int[] {1}));
+
+        future.complete("OK");
+        assertThat("count is decremented after completion.", sut.getInFlightCommandCounts(), is(new int[] {0}));
+    }
+
+    @Test
+    public void testDisposeClosesAllConnections() {
+        List<RedisCommands<byte[], byte[]>> commandsList = new ArrayList<>();
+        List<StatefulRedisConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceSimpleRedisClient sut = createMockedClient(3, commandsList, connections);
+
+        sut.dispose();
+
+        assertThat(connections.size(), is(3));
+        connections.forEach(connection -> verify(connection).close());
+    }
+
+    @Test
+    public void testClientOptionsAreApplied() {
+        RedisClient client = mock(RedisClient.class);
+        when(client.getOptions()).thenReturn(ClientOptions.create());
+        LettuceClientOptions clientOptions = new LettuceClientOptions();
+        clientOptions.setRequestQueueSize(100);
+        clientOptions.setDisconnectedBehavior("REJECT_COMMANDS");
+
+        LettuceSimpleRedisClient sut = new LettuceSimpleRedisClient() {
+            @Override
+            protected RedisClient createClient() {
+                return client;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected StatefulRedisConnection<byte[], byte[]> createConnection(RedisClient client) {
+                return mock(StatefulRedisConnection.class);
+            }
+        };
+        sut.setClientOptions(clientOptions);
+        sut.initialize();
+
+        ArgumentCaptor<ClientOptions> captor = ArgumentCaptor.forClass(ClientOptions.class);
+        verify(client).setOptions(captor.capture());
+        assertThat(captor.getValue().getRequestQueueSize(), is(100));
+        assertThat(captor.getValue().getDisconnectedBehavior(), is(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS));
+    }
+
+    @Test
+    public void testWritesExceedingMaxPendingWriteBytesAreRejected() {
+        List<RedisCommands<byte[], byte[]>> commandsList = new ArrayList<>();
+        LettuceSimpleRedisClient sut = createMockedClient(1, commandsList, new ArrayList<>(), 10L);
+        RedisCommands<byte[], byte[]> commands = commandsList.get(0);
+        byte[] value = "1234567".getBytes(StandardCharsets.UTF_8);
+
+        sut.set("foo", value);
+        verify(commands).set("foo".getBytes(StandardCharsets.UTF_8), value);
+        assertThat("released after the write is completed.", sut.getPendingWriteBytes(), is(0L));
+
+        exception.expect(RedisException.class);
+        exception.expectMessage("Pending write bytes exceeded the limit. pendingWriteBytes=0, bytes=11, maxPendingWriteBytes=10");
+        sut.psetex("fooo", 1000L, value);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsyncWritesAreCountedUntilCompleted() {
+        List<StatefulRedisConnection<byte[], byte[]>> connections = new ArrayList<>();
+        LettuceSimpleRedisClient sut = createMockedClient(1, new ArrayList<>(), connections, 20L);
+        RedisAsyncCommands<byte[], byte[]> asyncCommands = mock(RedisAsyncCommands.class);
+        when(connections.get(0).async()).thenReturn(asyncCommands);
+        AsyncCommand<byte[], byte[], String> future =
+                new AsyncCommand<>(new Command<>(CommandType.SET, new StatusOutput<>(ByteArrayCodec.INSTANCE)));
+        when(asyncCommands.set(any(), any())).thenReturn(future);
+        byte[] value = "1234567890".getBytes(StandardCharsets.UTF_8);
+
+        sut.async().set("foo", value);
+        assertThat(sut.getPendingWriteBytes(), is(13L));
+        try {
+            sut.async().set("bar", value);
+            fail("RedisException must be thrown.");
+        } catch (RedisException e) {
+            assertThat(e.getMessage(), is("Pending write bytes exceeded the limit. pendingWriteBytes=13, bytes=13, maxPendingWriteBytes=20"));
+        }
+
+        future.complete("OK");
+        assertThat(sut.getPendingWriteBytes(), is(0L));
+    }
+
+    @Test
+    public void testThrowsExceptionIfConnectionCountIsLessThanOne() {
+        LettuceSimpleRedisClient sut = new LettuceSimpleRedisClient();
+
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("connectionCount must be greater than 0. connectionCount=0");
+
+        sut.setConnectionCount(0);
+    }
+
+    private static LettuceSimpleRedisClient createMockedClient(int connectionCount, List<RedisCommands<byte[], byte[]>> commandsList) {
+        return createMockedClient(connectionCount, commandsList, new ArrayList<>());
+    }
+
+    private static LettuceSimpleRedisClient createMockedClient(int connectionCount,
+            List<RedisCommands<byte[], byte[]>> commandsList, List<StatefulRedisConnection<byte[], byte[]>> connections) {
+        return createMockedClient(connectionCount, commandsList, connections, 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LettuceSimpleRedisClient createMockedClient(int connectionCount,
+            List<RedisCommands<byte[], byte[]>> commandsList, List<StatefulRedisConnection<byte[], byte[]>> connections,
+            long maxPendingWriteBytes) {
+        LettuceSimpleRedisClient sut = new LettuceSimpleRedisClient() {
+            @Override
+            protected RedisClient createClient() {
+                return mock(RedisClient.class);
+            }
+
+            @Override
+            protected StatefulRedisConnection<byte[], byte[]> createConnection(RedisClient client) {
+                StatefulRedisConnection<byte[], byte[]> connection = mock(StatefulRedisConnection.class);
+                RedisCommands<byte[], byte[]> commands = mock(RedisCommands.class);
+                when(connection.sync()).thenReturn(commands);
+                connections.add(connection);
+                commandsList.add(commands);
+                return connection;
+            }
+        };
+        sut.setConnectionCount(connectionCount);
+        if (maxPendingWriteBytes > 0L) {
+            sut.setMaxPendingWriteBytes(maxPendingWriteBytes);
+        }
+        sut.initialize();
+        return sut;
+    }
+
     @After
     public void after() {
         sut.dispose();
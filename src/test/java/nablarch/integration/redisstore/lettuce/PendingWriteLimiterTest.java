@@ -0,0 +1,49 @@
+package nablarch.integration.redisstore.lettuce;
+
+import io.lettuce.core.RedisException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link PendingWriteLimiter} のテストクラス。
+ */
+public class PendingWriteLimiterTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void testBytesAreAcquiredAndReleased() {
+        PendingWriteLimiter sut = new PendingWriteLimiter(10L);
+
+        sut.acquire(4L);
+        sut.acquire(6L);
+        assertThat(sut.getPendingWriteBytes(), is(10L));
+
+        sut.release(4L);
+        sut.acquire(3L);
+        assertThat(sut.getPendingWriteBytes(), is(9L));
+    }
+
+    @Test
+    public void testThrowsExceptionIfLimitIsExceeded() {
+        PendingWriteLimiter sut = new PendingWriteLimiter(10L);
+        sut.acquire(8L);
+
+        exception.expect(RedisException.class);
+        exception.expectMessage("Pending write bytes exceeded the limit. pendingWriteBytes=8, bytes=3, maxPendingWriteBytes=10");
+
+        sut.acquire(3L);
+    }
+
+    @Test
+    public void testUnlimitedDoesNotCount() {
+        PendingWriteLimiter.UNLIMITED.acquire(Long.MAX_VALUE);
+
+        assertThat(PendingWriteLimiter.UNLIMITED.getPendingWriteBytes(), is(0L));
+    }
+}
@@ -0,0 +1,39 @@
+package nablarch.integration.redisstore.lettuce;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link RecentWriteTracker} のテストクラス。
+ */
+public class RecentWriteTrackerTest {
+
+    private static final byte[] FOO = "foo".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BAR = "bar".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testWrittenKeyIsRecentlyWritten() {
+        RecentWriteTracker sut = new RecentWriteTracker(60000L);
+
+        assertThat("not written key.", sut.isRecentlyWritten(FOO), is(false));
+
+        sut.recordWrite(FOO);
+
+        assertThat("written key.", sut.isRecentlyWritten(FOO), is(true));
+        assertThat("key in other slot.", sut.isRecentlyWritten(BAR), is(false));
+    }
+
+    @Test
+    public void testKeyIsNotRecentlyWrittenAfterWindow() throws Exception {
+        RecentWriteTracker sut = new RecentWriteTracker(1L);
+
+        sut.recordWrite(FOO);
+        Thread.sleep(10L);
+
+        assertThat(sut.isRecentlyWritten(FOO), is(false));
+    }
+}
@@ -0,0 +1,52 @@
+package nablarch.integration.redisstore.lettuce;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通知されたキーを記録する {@link LettuceKeyInvalidationListener} のテスト用実装。
+ */
+class RecordingKeyInvalidationListener implements LettuceKeyInvalidationListener {
+    private static final long TIMEOUT_SECONDS = 5L;
+
+    private final CountDownLatch trackingStarted = new CountDownLatch(1);
+    private final BlockingQueue<String> invalidatedKeys = new LinkedBlockingQueue<>();
+
+    @Override
+    public void onTrackingStarted() {
+        trackingStarted.countDown();
+    }
+
+    @Override
+    public void onTrackingStopped() {
+    }
+
+    @Override
+    public void onInvalidated(String key) {
+        invalidatedKeys.add(key);
+    }
+
+    @Override
+    public void onInvalidatedAll() {
+    }
+
+    /**
+     * 追跡が開始されるまで待機する。
+     * @return 追跡が開始された場合は {@code true}
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    boolean awaitTrackingStarted() throws InterruptedException {
+        return trackingStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 通知されたキーを、通知された順に取得する。
+     * @return 通知されたキー。タイムアウトした場合は {@code null}
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    String pollInvalidatedKey() throws InterruptedException {
+        return invalidatedKeys.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
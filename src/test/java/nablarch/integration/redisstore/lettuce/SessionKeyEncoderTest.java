@@ -0,0 +1,39 @@
+package nablarch.integration.redisstore.lettuce;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link SessionKeyEncoder} のテストクラス。
+ */
+public class SessionKeyEncoderTest {
+
+    @Test
+    public void testEncodeAsciiSessionId() {
+        SessionKeyEncoder sut = new SessionKeyEncoder(SessionKeyEncoder.DEFAULT_PREFIX);
+
+        assertThat(sut.encode("0123-abcd"), is(LettuceRedisStore.toSessionStoreKey("0123-abcd").getBytes(StandardCharsets.UTF_8)));
+        assertThat(sut.toKey("0123-abcd"), is(LettuceRedisStore.toSessionStoreKey("0123-abcd")));
+    }
+
+    @Test
+    public void testEncodeNonAsciiSessionId() {
+        SessionKeyEncoder sut = new SessionKeyEncoder("セッション:");
+
+        assertThat(sut.encode("id-あいう"), is("セッション:id-あいう".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testEncodeReturnsNewArrayEveryTime() {
+        SessionKeyEncoder sut = new SessionKeyEncoder("foo:");
+
+        byte[] first = sut.encode("bar");
+        first[0] = 'x';
+
+        assertThat(sut.encode("bar"), is("foo:bar".getBytes(StandardCharsets.UTF_8)));
+    }
+}